@@ -2,7 +2,7 @@ import type { Dispatch, SetStateAction } from 'react';
 import type { DashboardFilters } from '../types';
 
 const LIMIT_OPTIONS = [25, 50, 100] as const;
-const VERDICT_OPTIONS = ['ALL', 'ALLOWED', 'BLOCKED', 'ERROR'] as const;
+const VERDICT_OPTIONS = ['ALL', 'ALLOWED', 'BLOCKED', 'ERROR', 'SHED'] as const;
 
 type FiltersProps = {
   filters: DashboardFilters;
@@ -1,4 +1,4 @@
-export type Verdict = 'ALL' | 'ALLOWED' | 'BLOCKED' | 'ERROR';
+export type Verdict = 'ALL' | 'ALLOWED' | 'BLOCKED' | 'ERROR' | 'SHED';
 
 export type Transaction = {
   timestampMs: number;
@@ -0,0 +1,105 @@
+package org.example.policy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PathBlockRule's compiled trie against the linear scan it replaced, for a host with `rules`
+ * blocked paths. The requests are a mix of blocked paths, paths below them and misses.
+ *
+ *   mvn -Pbench package -DskipTests
+ *   java -jar target/benchmarks.jar PathBlockRuleBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PathBlockRuleBenchmark {
+    private static final String HOST = "example.com";
+
+    @Param({ "10", "1000", "5000" })
+    int rules;
+
+    private PathBlockRule trie;
+    private LinearScan linear;
+    private String[] requests;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Set<String> paths = new HashSet<>();
+        for (int i = 0; i < rules; i++) {
+            paths.add("/api/v" + (i % 7) + "/tenant-" + i);
+        }
+        trie = new PathBlockRule(Map.of(HOST, paths));
+        linear = new LinearScan(paths);
+        requests = new String[] {
+                "/api/v1/tenant-1",
+                "/api/v" + ((rules - 1) % 7) + "/tenant-" + (rules - 1) + "/orders/42",
+                "/api/v2/tenant-" + (rules + 5) + "/orders",
+                "/static/app.js",
+                "/API/V3/Tenant-3/",
+                "/api/v4/tenant-4?page=2",
+        };
+    }
+
+    @Benchmark
+    public PolicyDecision trie() {
+        return trie.evaluatePathForHost(HOST, nextRequest());
+    }
+
+    @Benchmark
+    public PolicyDecision linearScan() {
+        return linear.evaluatePathForHost(HOST, nextRequest());
+    }
+
+    private String nextRequest() {
+        String request = requests[next];
+        next = (next + 1) % requests.length;
+        return request;
+    }
+
+    // the matching PathBlockRule did before its rules were compiled into a trie
+    private static final class LinearScan {
+        private final Set<String> blockedPaths;
+
+        LinearScan(Set<String> blockedPaths) {
+            this.blockedPaths = Set.copyOf(blockedPaths);
+        }
+
+        PolicyDecision evaluatePathForHost(String host, String path) {
+            String normalizedHost = host.trim().toLowerCase();
+            String normalizedPath = path.trim().toLowerCase();
+            if (normalizedPath.isEmpty()) return null;
+            if (!normalizedPath.startsWith("/")) normalizedPath = "/" + normalizedPath;
+            if (normalizedPath.endsWith("/") && normalizedPath.length() > 1) {
+                normalizedPath = normalizedPath.substring(0, normalizedPath.length() - 1);
+            }
+            for (String blocked : blockedPaths) {
+                if (normalizedPath.equals(blocked)) {
+                    return PolicyDecision.block(403, "Blocked path " + blocked + " on host " + normalizedHost);
+                }
+                if (normalizedPath.startsWith(blocked + "/")) {
+                    return PolicyDecision.block(403, "Blocked path " + blocked + " on host " + normalizedHost);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package org.example;
 import org.example.api.ApiServer;
-import org.example.log.TransactionStore;
-import org.example.policy.PolicyEngine;
+import org.example.proxy.ProxyContext;
+import org.example.server.NioProxyServer;
 import org.example.server.ProxyServer;
 import org.example.util.Config;
 import org.example.util.ConfigLoader;
+import org.example.util.Engine;
 import org.example.util.Mode;
 
 public class Main {
@@ -19,20 +20,35 @@ public class Main {
             return;
         }
 
-        TransactionStore store = new TransactionStore(config.getMaxTransactions());
-        PolicyEngine policyEngine = new PolicyEngine(config);
+        ProxyContext context = new ProxyContext(config);
 
-        // start proxy server
-        if (config.getMode() == Mode.PROXY_ONLY || config.getMode() == Mode.BOTH) {
-            ProxyServer proxy = new ProxyServer(config, store, policyEngine);
-            new Thread(proxy::start, "proxy-server").start();
+        // start proxy server (forward or, with --mode=reverse, reverse proxy)
+        if (config.getMode() != Mode.API_ONLY) {
+            int drainTimeoutMs = config.getServerOptions().drainTimeoutMs();
+            if (config.getServerOptions().engine() == Engine.NIO) {
+                NioProxyServer proxy = new NioProxyServer(context);
+                new Thread(proxy::start, "proxy-server").start();
+                onShutdown(() -> proxy.drain(drainTimeoutMs), context);
+            } else {
+                ProxyServer proxy = new ProxyServer(context);
+                new Thread(proxy::start, "proxy-server").start();
+                onShutdown(() -> proxy.drain(drainTimeoutMs), context);
+            }
         }
 
         // start api server
-        if (config.getMode() == Mode.API_ONLY || config.getMode() == Mode.BOTH) {
-            ApiServer api = new ApiServer(config, store);
+        if (config.getMode() != Mode.PROXY_ONLY) {
+            ApiServer api = new ApiServer(context);
             new Thread(api::start, "api-server").start();
         }
 
     }
+
+    // SIGTERM / SIGINT: drain the proxy before the JVM exits, so a deploy does not cut requests off
+    private static void onShutdown(Runnable drain, ProxyContext context) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            drain.run();
+            context.shutdown();
+        }, "proxy-drain"));
+    }
 }
\ No newline at end of file
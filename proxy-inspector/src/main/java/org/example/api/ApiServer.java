@@ -6,8 +6,7 @@ import org.example.api.http.ApiHttp;
 import org.example.api.http.ResponseWriter;
 import org.example.api.json.JsonWriter;
 import org.example.log.Transaction;
-import org.example.log.TransactionStore;
-import org.example.util.Config;
+import org.example.proxy.ProxyContext;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -23,9 +22,9 @@ public class ApiServer {
     private final HttpServer apiServer;
     private final TransactionController txController;
 
-    public ApiServer(Config config, TransactionStore store) {
-        PORT = config.getApiPort();
-        this.txController = new TransactionController(store);
+    public ApiServer(ProxyContext context) {
+        PORT = context.getConfig().getApiPort();
+        this.txController = new TransactionController(context);
 
         try {
             this.apiServer = HttpServer.create(new InetSocketAddress(PORT), 0);
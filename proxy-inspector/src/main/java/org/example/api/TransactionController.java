@@ -1,9 +1,21 @@
 package org.example.api;
 
+import org.example.cache.Coalescer;
+import org.example.cache.ResponseCache;
 import org.example.log.Transaction;
 import org.example.log.TransactionStore;
 import org.example.log.Verdict;
-import org.example.server.ProxyServer;
+import org.example.proxy.AcceptCounters;
+import org.example.proxy.AdmissionControl;
+import org.example.proxy.ProxyContext;
+import org.example.proxy.BufferPool;
+import org.example.upstream.AdaptiveTimeouts;
+import org.example.upstream.Bulkheads;
+import org.example.upstream.CircuitBreakers;
+import org.example.upstream.DnsCache;
+import org.example.upstream.HedgePolicy;
+import org.example.upstream.LoadBalancer;
+import org.example.upstream.UpstreamPool;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -13,7 +25,7 @@ import java.util.List;
  * <p>
  * This class is used by the API to:
  * - List recent transactions
- * - filter transactions by verdict (ALLOW, BLOCKED, ERROR)
+ * - filter transactions by verdict (ALLOW, BLOCKED, ERROR, SHED)
  * - provide statistics for dashboards or monitoring
  * <p>
  * It does not modify transactions, only reads from TransactionStore
@@ -23,9 +35,16 @@ public class TransactionController {
     private static final int DEFAULT_LIMIT = 50;  // default number of transactions if no limit is provided
     private static final int MAX_LIMIT = 1000; // max limit for transactions to prevent large memory responses
     private final TransactionStore store;
+    private final ProxyContext context; // null when only the store is available (e.g. tests)
 
     public TransactionController(TransactionStore store) {
         this.store = store;
+        this.context = null;
+    }
+
+    public TransactionController(ProxyContext context) {
+        this.store = context.getStore();
+        this.context = context;
     }
 
 
@@ -38,7 +57,7 @@ public class TransactionController {
         // Parse verdict filter if provided
         Verdict verdict = parseVerdictOrNull(verdictStr);
         if (verdictStr != null && verdict == null) {
-            return ApiResponse.error(400, "Invalid verdict. Use ALLOWED, BLOCKED or ERROR");
+            return ApiResponse.error(400, "Invalid verdict. Use ALLOWED, BLOCKED, ERROR or SHED");
         }
 
         // No verdict filter: return all recent transactions
@@ -68,6 +87,7 @@ public class TransactionController {
         long allowed = 0;
         long blocked = 0;
         long error = 0;
+        long shed = 0;
 
         long bytes = 0;
         long sumDurationMs = 0;
@@ -82,6 +102,7 @@ public class TransactionController {
             if (tx.getVerdict() == Verdict.ALLOWED) allowed++;
             else if (tx.getVerdict() == Verdict.BLOCKED) blocked++;
             else if (tx.getVerdict() == Verdict.ERROR) error++;
+            else if (tx.getVerdict() == Verdict.SHED) shed++;
 
             bytes += Math.max(0, tx.getBytesFromServer());
 
@@ -94,13 +115,39 @@ public class TransactionController {
 
         long avgMs = (durationCount == 0) ? 0 : (sumDurationMs / durationCount);
 
+        UpstreamPool.Stats pool = (context == null) ? null : context.getUpstreamPool().stats();
+        BufferPool.Stats buffers = (context == null) ? null : context.getBufferPool().stats();
+        DnsCache.Stats dns = (context == null) ? null : context.getDnsCache().stats();
+        AdmissionControl.Stats admission = (context == null) ? null : context.getAdmission().stats();
+        List<AcceptCounters.Stats> acceptors = (context == null) ? null : context.getAcceptCounters().stats();
+        List<Bulkheads.Stats> bulkheads = (context == null) ? null : context.getBulkheads().stats();
+        List<AdaptiveTimeouts.Stats> timeouts = (context == null) ? null : context.getTimeouts().stats();
+        ResponseCache.Stats cache = (context == null) ? null : context.getCache().stats();
+        Coalescer.Stats coalescing = (context == null) ? null : context.getCoalescer().stats();
+        List<CircuitBreakers.Stats> breakers = (context == null) ? null : context.getBreakers().stats();
+        List<LoadBalancer.Stats> backends = (context == null) ? null : context.getLoadBalancer().stats();
+        HedgePolicy.Stats hedging = (context == null) ? null : context.getHedging().stats();
+
         StatsResponse stats = new StatsResponse(
                 total,
                 allowed,
                 blocked,
                 error,
+                shed,
                 bytes,
-                avgMs
+                avgMs,
+                pool,
+                buffers,
+                dns,
+                admission,
+                acceptors,
+                bulkheads,
+                timeouts,
+                cache,
+                coalescing,
+                breakers,
+                backends,
+                hedging
         );
 
         return ApiResponse.ok(stats);
@@ -135,8 +182,20 @@ public class TransactionController {
 
     /**
      * Simple record class used for /stats responses.
+     * pool holds the upstream connection pool counters, buffers the relay buffer pool usage and
+     * dns the resolver cache counters, admission the in-flight limit and queue wait, acceptors
+     * the accept counters per acceptor thread, bulkheads the per upstream concurrency limits,
+     * timeouts the observed latency and current timeouts per upstream host, cache the response
+     * cache counters, coalescing the shared upstream fetches, breakers the circuit breaker state per upstream,
+     * backends the reverse proxy's backends with their load and latency, hedging the second attempts and their
+     * budget (all null when no proxy context is available).
      */
-    public record StatsResponse(long total, long allowed, long blocked, long error, long bytesFromServerTotal,
-                                long avgDurationMs) {
+    public record StatsResponse(long total, long allowed, long blocked, long error, long shed, long bytesFromServerTotal,
+                                long avgDurationMs, UpstreamPool.Stats pool, BufferPool.Stats buffers,
+                                DnsCache.Stats dns, AdmissionControl.Stats admission,
+                                List<AcceptCounters.Stats> acceptors, List<Bulkheads.Stats> bulkheads,
+                                List<AdaptiveTimeouts.Stats> timeouts, ResponseCache.Stats cache,
+                                Coalescer.Stats coalescing, List<CircuitBreakers.Stats> breakers,
+                                List<LoadBalancer.Stats> backends, HedgePolicy.Stats hedging) {
     }
 }
@@ -2,7 +2,20 @@ package org.example.api.json;
 
 import org.example.api.ApiResponse;
 import org.example.api.TransactionController;
+import org.example.cache.Coalescer;
+import org.example.cache.DiskTier;
+import org.example.cache.ResponseCache;
 import org.example.log.Transaction;
+import org.example.proxy.AcceptCounters;
+import org.example.proxy.AdmissionControl;
+import org.example.proxy.BufferPool;
+import org.example.upstream.AdaptiveTimeouts;
+import org.example.upstream.Bulkheads;
+import org.example.upstream.CircuitBreakers;
+import org.example.upstream.DnsCache;
+import org.example.upstream.HedgePolicy;
+import org.example.upstream.LoadBalancer;
+import org.example.upstream.UpstreamPool;
 
 import java.util.List;
 
@@ -42,12 +55,186 @@ public final class JsonWriter {
                     + "\"allowed\":" + s.allowed() + ","
                     + "\"blocked\":" + s.blocked() + ","
                     + "\"error\":" + s.error() + ","
+                    + "\"shed\":" + s.shed() + ","
                     + "\"bytesFromServerTotal\":" + s.bytesFromServerTotal() + ","
-                    + "\"avgDurationMs\":" + s.avgDurationMs()
+                    + "\"avgDurationMs\":" + s.avgDurationMs() + ","
+                    + "\"pool\":" + valueToJson(s.pool()) + ","
+                    + "\"buffers\":" + valueToJson(s.buffers()) + ","
+                    + "\"dns\":" + valueToJson(s.dns()) + ","
+                    + "\"admission\":" + valueToJson(s.admission()) + ","
+                    + "\"acceptors\":" + valueToJson(s.acceptors()) + ","
+                    + "\"bulkheads\":" + valueToJson(s.bulkheads()) + ","
+                    + "\"timeouts\":" + valueToJson(s.timeouts()) + ","
+                    + "\"cache\":" + valueToJson(s.cache()) + ","
+                    + "\"coalescing\":" + valueToJson(s.coalescing()) + ","
+                    + "\"breakers\":" + valueToJson(s.breakers()) + ","
+                    + "\"backends\":" + valueToJson(s.backends()) + ","
+                    + "\"hedging\":" + valueToJson(s.hedging())
                     + "}";
         }
 
-        // List<?> (used for List<Transaction>)
+        // Upstream connection pool counters
+        if (v instanceof UpstreamPool.Stats p) {
+            return "{"
+                    + "\"hits\":" + p.hits() + ","
+                    + "\"misses\":" + p.misses() + ","
+                    + "\"idleConnections\":" + p.idleConnections() + ","
+                    + "\"evictions\":" + p.evictions() + ","
+                    + "\"staleDiscards\":" + p.staleDiscards()
+                    + "}";
+        }
+
+        // Relay buffer pool usage
+        if (v instanceof BufferPool.Stats b) {
+            return "{"
+                    + "\"directAllocated\":" + b.directAllocated() + ","
+                    + "\"idle\":" + b.idle() + ","
+                    + "\"heapFallbacks\":" + b.heapFallbacks()
+                    + "}";
+        }
+
+        // Resolver cache counters, hitRate rounded to 3 decimals
+        if (v instanceof DnsCache.Stats d) {
+            return "{"
+                    + "\"hits\":" + d.hits() + ","
+                    + "\"negativeHits\":" + d.negativeHits() + ","
+                    + "\"misses\":" + d.misses() + ","
+                    + "\"refreshes\":" + d.refreshes() + ","
+                    + "\"evictions\":" + d.evictions() + ","
+                    + "\"entries\":" + d.entries() + ","
+                    + "\"hitRate\":" + Math.round(d.hitRate() * 1000) / 1000.0
+                    + "}";
+        }
+
+        // Admission control, queue waits rounded to 3 decimals
+        if (v instanceof AdmissionControl.Stats a) {
+            return "{"
+                    + "\"inFlight\":" + a.inFlight() + ","
+                    + "\"queued\":" + a.queued() + ","
+                    + "\"maxInFlight\":" + a.maxInFlight() + ","
+                    + "\"admitted\":" + a.admitted() + ","
+                    + "\"shed\":" + a.shed() + ","
+                    + "\"avgQueueWaitMs\":" + Math.round(a.avgQueueWaitMs() * 1000) / 1000.0 + ","
+                    + "\"maxQueueWaitMs\":" + Math.round(a.maxQueueWaitMs() * 1000) / 1000.0
+                    + "}";
+        }
+
+        // Accept counters of one acceptor thread
+        if (v instanceof AcceptCounters.Stats a) {
+            return "{"
+                    + "\"name\":" + jsonString(a.name()) + ","
+                    + "\"accepted\":" + a.accepted() + ","
+                    + "\"acceptsPerSec\":" + a.acceptsPerSec()
+                    + "}";
+        }
+
+        // Concurrency limit of one upstream host or host group
+        if (v instanceof Bulkheads.Stats b) {
+            return "{"
+                    + "\"name\":" + jsonString(b.name()) + ","
+                    + "\"limit\":" + b.limit() + ","
+                    + "\"inFlight\":" + b.inFlight() + ","
+                    + "\"waiting\":" + b.waiting() + ","
+                    + "\"admitted\":" + b.admitted() + ","
+                    + "\"rejected\":" + b.rejected() + ","
+                    + "\"avgWaitMs\":" + Math.round(b.avgWaitMs() * 1000) / 1000.0
+                    + "}";
+        }
+
+        // Circuit breaker of one upstream host:port
+        if (v instanceof CircuitBreakers.Stats b) {
+            return "{"
+                    + "\"upstream\":" + jsonString(b.upstream()) + ","
+                    + "\"state\":" + jsonString(b.state()) + ","
+                    + "\"samples\":" + b.samples() + ","
+                    + "\"failureRate\":" + b.failureRate() + ","
+                    + "\"opened\":" + b.opened() + ","
+                    + "\"rejected\":" + b.rejected() + ","
+                    + "\"probes\":" + b.probes() + ","
+                    + "\"retryAfterMs\":" + b.retryAfterMs()
+                    + "}";
+        }
+
+        // Hedged requests, connect retries and their shared budget
+        if (v instanceof HedgePolicy.Stats h) {
+            return "{"
+                    + "\"enabled\":" + h.enabled() + ","
+                    + "\"hedged\":" + h.hedged() + ","
+                    + "\"hedgesWon\":" + h.hedgesWon() + ","
+                    + "\"retries\":" + h.retries() + ","
+                    + "\"overBudget\":" + h.overBudget() + ","
+                    + "\"budget\":" + h.budget()
+                    + "}";
+        }
+
+        // One reverse-proxy backend of a virtual host
+        if (v instanceof LoadBalancer.Stats b) {
+            return "{"
+                    + "\"vhost\":" + jsonString(b.vhost()) + ","
+                    + "\"backend\":" + jsonString(b.backend()) + ","
+                    + "\"outstanding\":" + b.outstanding() + ","
+                    + "\"requests\":" + b.requests() + ","
+                    + "\"failures\":" + b.failures() + ","
+                    + "\"latencyMs\":" + b.latencyMs()
+                    + "}";
+        }
+
+        // Latency and current timeouts of one upstream host, p99s rounded to 3 decimals
+        if (v instanceof AdaptiveTimeouts.Stats t) {
+            return "{"
+                    + "\"host\":" + jsonString(t.host()) + ","
+                    + "\"connectSamples\":" + t.connectSamples() + ","
+                    + "\"connectP99Ms\":" + Math.round(t.connectP99Ms() * 1000) / 1000.0 + ","
+                    + "\"connectTimeoutMs\":" + t.connectTimeoutMs() + ","
+                    + "\"firstByteSamples\":" + t.firstByteSamples() + ","
+                    + "\"firstByteP99Ms\":" + Math.round(t.firstByteP99Ms() * 1000) / 1000.0 + ","
+                    + "\"readTimeoutMs\":" + t.readTimeoutMs()
+                    + "}";
+        }
+
+        // Response cache counters, hitRate rounded to 3 decimals
+        if (v instanceof ResponseCache.Stats c) {
+            return "{"
+                    + "\"hits\":" + c.hits() + ","
+                    + "\"misses\":" + c.misses() + ","
+                    + "\"revalidated\":" + c.revalidated() + ","
+                    + "\"stores\":" + c.stores() + ","
+                    + "\"evictions\":" + c.evictions() + ","
+                    + "\"entries\":" + c.entries() + ","
+                    + "\"bytes\":" + c.bytes() + ","
+                    + "\"maxBytes\":" + c.maxBytes() + ","
+                    + "\"hitRate\":" + Math.round(c.hitRate() * 1000) / 1000.0 + ","
+                    + "\"disk\":" + valueToJson(c.disk())
+                    + "}";
+        }
+
+        // Request coalescing counters
+        if (v instanceof Coalescer.Stats c) {
+            return "{"
+                    + "\"flights\":" + c.flights() + ","
+                    + "\"coalesced\":" + c.coalesced() + ","
+                    + "\"passed\":" + c.passed() + ","
+                    + "\"cut\":" + c.cut() + ","
+                    + "\"waiting\":" + c.waiting()
+                    + "}";
+        }
+
+        // Disk tier of the response cache
+        if (v instanceof DiskTier.Stats d) {
+            return "{"
+                    + "\"hits\":" + d.hits() + ","
+                    + "\"entries\":" + d.entries() + ","
+                    + "\"bytes\":" + d.bytes() + ","
+                    + "\"maxBytes\":" + d.maxBytes() + ","
+                    + "\"segments\":" + d.segments() + ","
+                    + "\"writes\":" + d.writes() + ","
+                    + "\"dropped\":" + d.dropped() + ","
+                    + "\"evictions\":" + d.evictions() + ","
+                    + "\"compactions\":" + d.compactions()
+                    + "}";
+        }
+
+        // List<?> (used for List<Transaction> and the acceptor, bulkhead and timeout counters)
         if (v instanceof List<?> list) {
             StringBuilder sb = new StringBuilder();
             sb.append("[");
@@ -69,9 +256,23 @@ public final class JsonWriter {
                     + "\"host\":" + jsonString(t.getHost()) + ","
                     + "\"port\":" + t.getPort() + ","
                     + "\"path\":" + jsonString(t.getPath()) + ","
+                    + "\"backend\":" + (t.getBackend() == null ? "null" : jsonString(t.getBackend())) + ","
                     + "\"verdict\":" + (t.getVerdict() == null ? "null" : jsonString(t.getVerdict().name())) + ","
                     + "\"bytesFromServer\":" + t.getBytesFromServer() + ","
+                    + "\"requestBodyBytes\":" + t.getRequestBodyBytes() + ","
                     + "\"durationMs\":" + t.getDurationMs() + ","
+                    + "\"upstreamReused\":" + t.isUpstreamReused() + ","
+                    + "\"tunnel\":" + t.isTunnel() + ","
+                    + "\"addressFamily\":" + (t.getAddressFamily() == null ? "null" : jsonString(t.getAddressFamily())) + ","
+                    + "\"connectMs\":" + (t.getConnectNs() < 0 ? "null" : String.valueOf(t.getConnectNs() / 1_000_000)) + ","
+                    + "\"cacheStatus\":" + (t.getCacheStatus() == null ? "null" : jsonString(t.getCacheStatus().name())) + ","
+                    + "\"coalesced\":" + t.isCoalesced() + ","
+                    + "\"contentEncoding\":" + (t.getContentEncoding() == null ? "null" : jsonString(t.getContentEncoding())) + ","
+                    + "\"originBodyBytes\":" + (t.getOriginBodyBytes() < 0 ? "null" : String.valueOf(t.getOriginBodyBytes())) + ","
+                    + "\"wireBodyBytes\":" + (t.getWireBodyBytes() < 0 ? "null" : String.valueOf(t.getWireBodyBytes())) + ","
+                    + "\"hedges\":" + t.getHedges() + ","
+                    + "\"hedgeWon\":" + t.isHedgeWon() + ","
+                    + "\"retries\":" + t.getRetries() + ","
                     + "\"errorMessage\":" + (t.getErrorMessage() == null ? "null" : jsonString(t.getErrorMessage()))
                     + "}";
         }
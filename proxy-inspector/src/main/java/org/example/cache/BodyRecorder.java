@@ -0,0 +1,174 @@
+package org.example.cache;
+
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies a response body into direct memory while it is relayed to the client, so it can be
+ * stored once the response is complete (see ResponseCache.store).
+ *
+ * The buffer starts at the Content-Length when there is one and doubles otherwise. A body that
+ * grows past the cache's max object size is dropped on the spot; relaying goes on untouched.
+ *
+ * With a disk tier, a body too large for memory is spilled to a file in the cache directory
+ * instead, and handed to the disk tier's writer once complete. Spilling is a plain append to
+ * the page cache (never forced to disk), and any failure only stops the recording.
+ */
+public final class BodyRecorder implements BodyTap {
+    private static final int INITIAL_BYTES = 16 * 1024;
+    private static final int MAX_SLACK_BYTES = 4 * 1024;
+
+    final String key;
+    final HttpRequest request;
+    final ResponseHead head;
+    final boolean untilClose; // the body ends with the connection, the stored copy gets a Content-Length
+    final long requestMs;
+    final long responseMs;
+    private final long maxBytes;
+    private final DiskTier disk;
+    private ByteBuffer body;
+    private Path spillPath;
+    private FileChannel spill;
+    private long spilledBytes;
+
+    /**
+     * @param expectedBytes - the Content-Length, -1 when not known up front
+     * @param maxBytes      - the most kept in memory
+     * @param disk          - where larger bodies spill to, null when there is no disk tier
+     */
+    BodyRecorder(String key, HttpRequest request, ResponseHead head, boolean untilClose, long requestMs,
+                 long responseMs, long expectedBytes, long maxBytes, DiskTier disk) {
+        this.key = key;
+        this.request = request;
+        this.head = head;
+        this.untilClose = untilClose;
+        this.requestMs = requestMs;
+        this.responseMs = responseMs;
+        this.maxBytes = maxBytes;
+        this.disk = disk;
+        long initial = (expectedBytes >= 0 && expectedBytes <= maxBytes) ? expectedBytes : Math.min(INITIAL_BYTES, maxBytes);
+        this.body = ByteBuffer.allocateDirect((int) initial);
+    }
+
+    @Override
+    public void append(ByteBuffer src) {
+        if (!src.hasRemaining()) return;
+        if (spill != null) {
+            spill(src.duplicate());
+            return;
+        }
+        if (body == null || !ensureRoom(src.remaining())) return;
+        if (spill != null) {
+            spill(src.duplicate());
+            return;
+        }
+        body.put(src.duplicate());
+    }
+
+    /** Whether the body is still being kept (it did not outgrow the max object size). */
+    public boolean isRecording() {
+        return body != null || spill != null;
+    }
+
+    /** Deletes what was recorded, for a response that did not go through completely. */
+    public void discard() {
+        body = null;
+        closeSpill(true);
+    }
+
+    boolean isSpilled() {
+        return spill != null;
+    }
+
+    long spilledBytes() {
+        return spilledBytes;
+    }
+
+    /** Hands the spill file over to the caller, who deletes it once done with it. */
+    Path finishSpill() {
+        Path path = spillPath;
+        closeSpill(false);
+        return path;
+    }
+
+    /** The recorded body as a read-only buffer, trimmed when the buffer grew well past it. */
+    ByteBuffer finish() {
+        ByteBuffer recorded = body.flip();
+        if (recorded.capacity() - recorded.limit() > MAX_SLACK_BYTES) {
+            recorded = ByteBuffer.allocateDirect(recorded.limit()).put(recorded).flip();
+        }
+        body = null;
+        return recorded.asReadOnlyBuffer();
+    }
+
+    // false when the body stops being recorded, with spill set when it moved to a file instead
+    private boolean ensureRoom(int len) {
+        if (body.remaining() >= len) {
+            return true;
+        }
+        long needed = (long) body.position() + len;
+        if (needed > maxBytes) {
+            ByteBuffer recorded = body.flip();
+            body = null; // too large for memory, the garbage collector frees the direct memory
+            if (disk != null && needed <= disk.maxObjectBytes()) {
+                startSpill(recorded);
+            }
+            return spill != null;
+        }
+        long capacity = Math.min(Math.max(needed, body.capacity() * 2L), maxBytes);
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+        grown.put(body.flip());
+        body = grown;
+        return true;
+    }
+
+    private void startSpill(ByteBuffer recorded) {
+        try {
+            spillPath = disk.newSpillFile();
+            spill = FileChannel.open(spillPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            closeSpill(true);
+            return;
+        }
+        spill(recorded);
+    }
+
+    private void spill(ByteBuffer src) {
+        if (spilledBytes + src.remaining() > disk.maxObjectBytes()) {
+            closeSpill(true);
+            return;
+        }
+        try {
+            spilledBytes += src.remaining();
+            while (src.hasRemaining()) {
+                spill.write(src);
+            }
+        } catch (IOException e) {
+            closeSpill(true);
+        }
+    }
+
+    private void closeSpill(boolean delete) {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+            }
+            spill = null;
+        }
+        if (delete && spillPath != null) {
+            try {
+                Files.deleteIfExists(spillPath);
+            } catch (IOException ignored) {
+            }
+        }
+        spillPath = null;
+    }
+}
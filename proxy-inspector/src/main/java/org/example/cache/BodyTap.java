@@ -0,0 +1,27 @@
+package org.example.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Gets a copy of a response body's bytes, in order, while the body is relayed to the client:
+ * a BodyRecorder for the cache, a Flight for coalesced clients.
+ */
+public interface BodyTap {
+
+    /** Takes src[position, limit) without moving src's position. */
+    void append(ByteBuffer src);
+
+    default void append(byte[] buf, int off, int len) {
+        append(ByteBuffer.wrap(buf, off, len));
+    }
+
+    /** Both taps (either may be null), null when there is none. */
+    static BodyTap both(BodyTap first, BodyTap second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        return src -> {
+            first.append(src);
+            second.append(src);
+        };
+    }
+}
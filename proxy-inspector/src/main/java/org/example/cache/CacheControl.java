@@ -0,0 +1,73 @@
+package org.example.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache-Control directives of a request or response (RFC 9111 section 5.2).
+ *
+ * Names are case-insensitive and values may be quoted. A quoted value can contain commas
+ * (private="Set-Cookie, X-Token"), so the list is split outside of quotes only.
+ */
+final class CacheControl {
+    static final CacheControl EMPTY = new CacheControl(Map.of());
+
+    private final Map<String, String> directives; // lower case name -> value, "" when it has none
+
+    private CacheControl(Map<String, String> directives) {
+        this.directives = directives;
+    }
+
+    /**
+     * @param header - all Cache-Control values of the message joined with commas, may be null
+     */
+    static CacheControl parse(String header) {
+        if (header == null || header.isBlank()) {
+            return EMPTY;
+        }
+
+        Map<String, String> directives = new HashMap<>();
+        int start = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= header.length(); i++) {
+            char c = (i < header.length()) ? header.charAt(i) : ',';
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                add(directives, header.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return new CacheControl(directives);
+    }
+
+    boolean has(String directive) {
+        return directives.containsKey(directive);
+    }
+
+    /** delta-seconds of a directive such as max-age, -1 when absent or not a number. */
+    long seconds(String directive) {
+        String value = directives.get(directive);
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void add(Map<String, String> directives, String part) {
+        String directive = part.trim();
+        if (directive.isEmpty()) return;
+
+        int eq = directive.indexOf('=');
+        String name = (eq < 0) ? directive : directive.substring(0, eq).trim();
+        String value = (eq < 0) ? "" : directive.substring(eq + 1).trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        directives.putIfAbsent(name.toLowerCase(), value); // the first occurrence wins
+    }
+}
@@ -0,0 +1,292 @@
+package org.example.cache;
+
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+
+import java.nio.ByteBuffer;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One stored response: its head, its body off-heap, and what freshness and age are computed from.
+ *
+ * Immutable once created. The body is a read-only direct buffer that is never written again,
+ * every reader gets its own duplicate. A 304 from the end server creates a new entry with the
+ * updated head that shares the same body.
+ *
+ * The body is kept exactly as it came over the wire, a chunked body keeps its chunk framing
+ * (and Transfer-Encoding header), so a hit is replayed byte for byte.
+ */
+public final class CachedResponse {
+    private static final long MAX_HEURISTIC_MS = TimeUnit.DAYS.toMillis(1);
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final String key;
+    private final ResponseHead head;
+    private final ByteBuffer body;
+    private final long requestMs;
+    private final long responseMs;
+    private final long correctedInitialAgeMs;
+    private final long freshnessMs;
+    private final List<String> varyNames;
+    private final List<String> varyValues;
+    private final long sizeBytes;
+
+    private CachedResponse(String key, ResponseHead head, ByteBuffer body, long requestMs, long responseMs,
+                           List<String> varyNames, List<String> varyValues) {
+        this.key = key;
+        this.head = head;
+        this.body = body;
+        this.requestMs = requestMs;
+        this.responseMs = responseMs;
+        this.correctedInitialAgeMs = correctedInitialAge(head, requestMs, responseMs);
+        this.freshnessMs = freshnessLifetime(head, responseMs);
+        this.varyNames = varyNames;
+        this.varyValues = varyValues;
+        this.sizeBytes = body.capacity() + head.toBytes().length + ENTRY_OVERHEAD_BYTES;
+    }
+
+    /**
+     * @param head      - the end server's head without hop-by-hop headers, owned by the entry from here on
+     * @param requestMs - wall clock time the request was sent
+     * @param responseMs - wall clock time the response head arrived
+     */
+    static CachedResponse create(String key, HttpRequest request, ResponseHead head, ByteBuffer body,
+                                 long requestMs, long responseMs) {
+        List<String> names = varyNames(head);
+        List<String> values = new ArrayList<>(names.size());
+        for (String name : names) {
+            values.add(normalize(request.getHeader(name)));
+        }
+        return new CachedResponse(key, head, body, requestMs, responseMs, List.copyOf(names), values);
+    }
+
+    /** An entry read back from the disk tier, exactly as create() made it. */
+    static CachedResponse restore(String key, ResponseHead head, ByteBuffer body, long requestMs, long responseMs,
+                                  List<String> varyNames, List<String> varyValues) {
+        return new CachedResponse(key, head, body, requestMs, responseMs, varyNames, varyValues);
+    }
+
+    /** The same response with its body somewhere else (the disk tier's copy). */
+    CachedResponse withBody(ByteBuffer newBody) {
+        return new CachedResponse(key, head, newBody, requestMs, responseMs, varyNames, varyValues);
+    }
+
+    /**
+     * The entry after a 304: stored headers are replaced by those of the 304 (RFC 9111 section 3.2),
+     * except the ones describing the stored body's framing.
+     */
+    CachedResponse revalidated(ResponseHead notModified, long requestMs, long responseMs) {
+        Set<String> updated = new HashSet<>();
+        for (Map.Entry<String, String> h : notModified.getHeaders()) {
+            String name = h.getKey().toLowerCase();
+            if (!name.equals("content-length") && !name.equals("transfer-encoding")
+                    && !name.equals("content-encoding") && !ResponseCache.isHopByHop(name)) {
+                updated.add(name);
+            }
+        }
+
+        ResponseHead merged = head.copy();
+        merged.getHeaders().removeIf(h -> updated.contains(h.getKey().toLowerCase()));
+        for (Map.Entry<String, String> h : notModified.getHeaders()) {
+            if (updated.contains(h.getKey().toLowerCase())) {
+                merged.getHeaders().add(Map.entry(h.getKey(), h.getValue()));
+            }
+        }
+        return new CachedResponse(key, merged, body, requestMs, responseMs, varyNames, varyValues);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    /** A copy of the stored head, to be adjusted for one client. */
+    public ResponseHead head() {
+        return head.copy();
+    }
+
+    /** The body as received, in a buffer of its own (position 0, limit = size). */
+    public ByteBuffer body() {
+        return body.duplicate();
+    }
+
+    /** The stored head as sent by the end server, for the disk tier. */
+    byte[] headBytes() {
+        return head.toBytes();
+    }
+
+    long getRequestMs() {
+        return requestMs;
+    }
+
+    long getResponseMs() {
+        return responseMs;
+    }
+
+    List<String> getVaryNames() {
+        return varyNames;
+    }
+
+    List<String> getVaryValues() {
+        return varyValues;
+    }
+
+    int getBodyBytes() {
+        return body.capacity();
+    }
+
+    long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /** current_age of RFC 9111 section 4.2.3. */
+    long ageMs(long nowMs) {
+        return correctedInitialAgeMs + Math.max(0, nowMs - responseMs);
+    }
+
+    long getFreshnessMs() {
+        return freshnessMs;
+    }
+
+    /** Whether the request selects this variant: its Vary'd headers equal those stored (RFC 9111 section 4.1). */
+    boolean matches(HttpRequest request) {
+        for (int i = 0; i < varyNames.size(); i++) {
+            if (!Objects.equals(varyValues.get(i), normalize(request.getHeader(varyNames.get(i))))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether both were stored for the same values of the Vary'd request headers. */
+    boolean sameVariant(CachedResponse other) {
+        return varyNames.equals(other.varyNames) && varyValues.equals(other.varyValues);
+    }
+
+    public boolean hasValidators() {
+        return head.getHeader("ETag") != null || head.getHeader("Last-Modified") != null;
+    }
+
+    /** Conditional headers that ask the end server whether this entry is still current. */
+    public Map<String, String> validators() {
+        Map<String, String> validators = new LinkedHashMap<>();
+        String etag = head.getHeader("ETag");
+        if (etag != null) {
+            validators.put("If-None-Match", etag);
+        }
+        String lastModified = head.getHeader("Last-Modified");
+        if (lastModified != null) {
+            validators.put("If-Modified-Since", lastModified);
+        }
+        return validators;
+    }
+
+    /**
+     * Whether the client's own validators match this entry, so it can be answered with 304
+     * (RFC 9110 section 13.1; If-None-Match takes precedence over If-Modified-Since).
+     */
+    boolean notModified(HttpRequest request) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            String etag = head.getHeader("ETag");
+            if (etag == null) return false;
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.equals("*") || weak(t).equals(weak(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long since = parseDate(request.getHeader("If-Modified-Since"));
+        long lastModified = parseDate(head.getHeader("Last-Modified"));
+        return since >= 0 && lastModified >= 0 && lastModified <= since;
+    }
+
+    static List<String> varyNames(ResponseHead head) {
+        String vary = head.getHeaderValues("Vary");
+        if (vary == null) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : vary.split(",")) {
+            String n = name.trim().toLowerCase();
+            if (!n.isEmpty() && !names.contains(n)) names.add(n);
+        }
+        return names;
+    }
+
+    /** IMF-fixdate (and the RFC 1123 variants servers send) in epoch ms, -1 when absent or invalid. */
+    static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // RFC 9111 section 4.2.3
+    private static long correctedInitialAge(ResponseHead head, long requestMs, long responseMs) {
+        long ageValueMs = 0;
+        String age = head.getHeader("Age");
+        if (age != null) {
+            try {
+                ageValueMs = TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(age.trim())));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        long date = parseDate(head.getHeader("Date"));
+        long apparentAgeMs = (date < 0) ? 0 : Math.max(0, responseMs - date);
+        long correctedAgeMs = ageValueMs + Math.max(0, responseMs - requestMs);
+        return Math.max(apparentAgeMs, correctedAgeMs);
+    }
+
+    // RFC 9111 section 4.2.1, as a shared cache: s-maxage before max-age before Expires before the heuristic
+    private static long freshnessLifetime(ResponseHead head, long responseMs) {
+        CacheControl cc = CacheControl.parse(head.getHeaderValues("Cache-Control"));
+        if (cc.has("no-cache")) {
+            return 0; // may be stored, but every use needs a revalidation
+        }
+        long seconds = cc.seconds("s-maxage");
+        if (seconds < 0) seconds = cc.seconds("max-age");
+        if (seconds >= 0) {
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+
+        long date = parseDate(head.getHeader("Date"));
+        if (date < 0) date = responseMs;
+        String expires = head.getHeader("Expires");
+        if (expires != null) {
+            long expiresMs = parseDate(expires);
+            return (expiresMs < 0) ? 0 : Math.max(0, expiresMs - date); // an invalid Expires means already expired
+        }
+
+        // heuristic (section 4.2.2): a tenth of the time since the last modification
+        long lastModified = parseDate(head.getHeader("Last-Modified"));
+        if (lastModified >= 0 && lastModified < date) {
+            return Math.min((date - lastModified) / 10, MAX_HEURISTIC_MS);
+        }
+        return 0;
+    }
+
+    private static String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String normalize(String headerValue) {
+        return (headerValue == null) ? null : headerValue.trim();
+    }
+}
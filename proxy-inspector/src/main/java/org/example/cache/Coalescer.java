@@ -0,0 +1,113 @@
+package org.example.cache;
+
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight for cacheable GETs: while one request for a URL waits for the end server,
+ * identical requests wait for its response instead of sending their own, and get the body
+ * streamed to them as it arrives (see Flight). A popular URL right after a deploy or an
+ * expiry then costs the end server one request instead of one per client.
+ *
+ * Only requests the cache would apply to are coalesced: GET, no Authorization, no no-store.
+ * Conditional and Range requests are not either, their responses are not the same for everyone.
+ * Which requests are identical is settled once the head is in: same URL (host, port, path)
+ * and the same values for the headers the response Varies on.
+ */
+public final class Coalescer {
+    private static final String[] PERSONAL_HEADERS = {
+            "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range", "Range" };
+
+    private final boolean enabled;
+    private final ResponseCache cache;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>(); // waiting for their head
+
+    private final LongAdder leaders = new LongAdder();
+    final LongAdder coalesced = new LongAdder();
+    final LongAdder passed = new LongAdder();
+    final LongAdder cut = new LongAdder();
+
+    /**
+     * @param cache - whose storability rules decide whether a response may be shared
+     */
+    public Coalescer(boolean enabled, ResponseCache cache) {
+        this.enabled = enabled;
+        this.cache = cache;
+    }
+
+    /**
+     * Where a request stands.
+     *
+     * @param flight   - the flight to lead or follow
+     * @param follower - null for the leader, which fetches
+     */
+    public record Ticket(Flight flight, Flight.Follower follower) {
+        public boolean leads() {
+            return follower == null;
+        }
+    }
+
+    /** Leads a new flight for the request or follows the one in the air, null when the request is not coalesced. */
+    public Ticket join(HttpRequest request) {
+        if (!enabled || !appliesTo(request)) {
+            return null;
+        }
+        String key = ResponseCache.key(request);
+        while (true) {
+            Flight[] created = new Flight[1];
+            Flight flight = flights.computeIfAbsent(key, k -> created[0] = new Flight(this, k, request));
+            if (flight == created[0]) {
+                leaders.increment();
+                return new Ticket(flight, null);
+            }
+            Flight.Follower follower = flight.follow(request);
+            if (follower != null) {
+                return new Ticket(flight, follower);
+            }
+            flights.remove(key, flight); // its head came in meanwhile, start a new one
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(leaders.sum(), coalesced.sum(), passed.sum(), cut.sum(), flights.size());
+    }
+
+    // the flight's head came in (or it ended), later requests start their own
+    void landed(Flight flight) {
+        flights.remove(flight.getKey(), flight);
+    }
+
+    boolean isShareable(HttpRequest request, ResponseHead head) {
+        return head.getStatusCode() != 304 && cache.isStorable(request, head);
+    }
+
+    private static boolean appliesTo(HttpRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || !ResponseCache.appliesTo(request)) {
+            return false;
+        }
+        if (CacheControl.parse(request.getHeader("Cache-Control")).has("no-store")) {
+            return false;
+        }
+        for (String name : PERSONAL_HEADERS) {
+            if (request.getHeader(name) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counters exposed through /stats.
+     *
+     * @param flights   - upstream fetches that could be shared (each one's request led it)
+     * @param coalesced - requests answered with another request's response
+     * @param passed    - requests that waited, then fetched on their own (response not shareable, or too slow)
+     * @param cut       - followers dropped for falling too far behind the body
+     * @param waiting   - flights waiting for their response head right now
+     */
+    public record Stats(long flights, long coalesced, long passed, long cut, int waiting) {
+    }
+}
@@ -0,0 +1,628 @@
+package org.example.cache;
+
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+import org.example.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Second cache tier: responses in append-only segment files on disk, read through memory maps.
+ *
+ * - Every response the cache stores is also appended to the active segment (64 MiB, a larger
+ *   response gets a segment of its own). A full segment is sealed: forced to disk, trimmed,
+ *   and never written again.
+ * - The index (URL to variants, each a head plus a slice of a segment's map) lives in memory,
+ *   so a lookup never touches the disk. The body is paged in when it is written to the client,
+ *   by the worker serving it.
+ * - All writes happen on one writer thread behind a bounded queue. When the disk falls behind,
+ *   writes are dropped rather than queued without limit; the relay never waits for the disk.
+ * - Over the budget, the oldest segment is evicted. Entries read since they were written get a
+ *   second chance and are copied forward first (CLOCK over segments). A sealed segment that is
+ *   mostly dead (replaced or invalidated entries) is compacted the same way.
+ * - A restart replays the segments in order, so the proxy comes back with the same entries.
+ *   Invalidations are appended as removal records for that replay, and kept as long as an older
+ *   segment may still hold the removed response.
+ *
+ * Record layout: magic, type, meta length, body length, CRC-32 of the type, lengths and meta,
+ * then meta (key, request and response times, head, Vary'd request header values) and the body.
+ * The header is written last, a torn record at the end of a segment is ignored on replay.
+ */
+public final class DiskTier {
+    static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int HEADER_BYTES = 17;
+    private static final int MAGIC = 0x50494331; // "PIC1"
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int MAX_VARIANTS = 8;
+    private static final double COMPACT_BELOW_LIVE_RATIO = 0.5;
+    private static final int WRITE_QUEUE = 64;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String SPILL_SUFFIX = ".spill";
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxObjectBytes;
+    private final int segmentBytes;
+    private final ExecutorService writer;
+    private final AtomicLong spillIds = new AtomicLong();
+
+    // guarded by index; segments are only added, written and removed by the writer thread
+    private final Map<String, List<DiskEntry>> index = new HashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>(); // oldest first, the last one is active
+    private long bytes;
+    private int entryCount;
+    private int nextSegmentId;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    private DiskTier(Path dir, long maxBytes, long maxObjectBytes, int segmentBytes, ExecutorService writer) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxObjectBytes = maxObjectBytes;
+        this.segmentBytes = segmentBytes;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the cache directory, creating it when needed, and replays its segments.
+     *
+     * @param segmentBytes - size of a segment, SEGMENT_BYTES outside of tests
+     * @param writer       - runs the writes, one at a time, in order
+     */
+    static DiskTier open(Path dir, long maxBytes, long maxObjectBytes, int segmentBytes,
+                         ExecutorService writer) throws IOException {
+        Files.createDirectories(dir);
+        DiskTier disk = new DiskTier(dir, maxBytes, maxObjectBytes, segmentBytes, writer);
+        disk.replay();
+        return disk;
+    }
+
+    static ThreadPoolExecutor newWriter() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(WRITE_QUEUE), r -> {
+            Thread t = new Thread(r, "cache-disk-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    long maxObjectBytes() {
+        return maxObjectBytes;
+    }
+
+    /** A fresh file for BodyRecorder to spill a large body to. */
+    Path newSpillFile() throws IOException {
+        return Files.createFile(dir.resolve(spillIds.incrementAndGet() + SPILL_SUFFIX));
+    }
+
+    /** The stored response selected by the request, null on a miss. Memory only. */
+    CachedResponse find(String key, HttpRequest request) {
+        synchronized (index) {
+            List<DiskEntry> variants = index.get(key);
+            if (variants == null) {
+                return null;
+            }
+            for (DiskEntry entry : variants) {
+                if (entry.response.matches(request)) {
+                    entry.accessed = true;
+                    hits.increment();
+                    return entry.response;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Queues a copy of the response, it replaces the stored one of the same variant. */
+    void store(CachedResponse response) {
+        if (response.getBodyBytes() > maxObjectBytes) {
+            return;
+        }
+        submit(() -> append(response, response.body(), null), null);
+    }
+
+    /**
+     * Queues a response whose body was spilled to a file, the file is deleted once copied.
+     *
+     * @param response - the response with an empty body
+     */
+    void storeSpilled(CachedResponse response, Path spillFile, long bodyBytes) {
+        submit(() -> {
+            try (FileChannel in = FileChannel.open(spillFile, StandardOpenOption.READ)) {
+                if (in.size() == bodyBytes) {
+                    append(response, null, in);
+                }
+            } finally {
+                Files.deleteIfExists(spillFile);
+            }
+        }, spillFile);
+    }
+
+    /** Drops every variant of the URL and queues a removal record for the next replay. */
+    void remove(String key) {
+        submit(() -> appendRemoval(key), null); // behind any store of the key still queued
+    }
+
+    /** Writes what is queued and seals the active segment, the next start begins a new one. */
+    void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                return; // still writing, the replay trims whatever it leaves behind
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        Segment active = segments.peekLast();
+        if (active != null) {
+            try {
+                seal(active);
+            } catch (IOException e) {
+                Log.e("Cache disk tier: could not seal " + active.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    Stats stats() {
+        synchronized (index) {
+            return new Stats(hits.sum(), entryCount, bytes, maxBytes, segments.size(), writes.sum(), dropped.sum(),
+                    evictions.sum(), compactions.sum());
+        }
+    }
+
+    private interface Write {
+        void run() throws IOException;
+    }
+
+    private void submit(Write write, Path spillFile) {
+        try {
+            writer.execute(() -> {
+                try {
+                    write.run();
+                    compactOne();
+                } catch (IOException | RuntimeException e) {
+                    dropped.increment();
+                    Log.e("Cache disk write failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dropped.increment(); // the disk is behind (or closing), this response is only cached in memory
+            if (spillFile != null) {
+                try {
+                    Files.deleteIfExists(spillFile);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // ---- writer thread ----
+
+    private void append(CachedResponse response, ByteBuffer body, FileChannel spill) throws IOException {
+        int bodyBytes = (body != null) ? body.remaining() : (int) spill.size();
+        byte[] meta = meta(response);
+        int length = HEADER_BYTES + meta.length + bodyBytes;
+        if (length > maxBytes) {
+            return;
+        }
+        makeRoom(length);
+        writeRecord(response, meta, body, spill, bodyBytes);
+    }
+
+    // copies made by compaction and eviction skip makeRoom, they replace what is being deleted
+    private void writeRecord(CachedResponse response, byte[] meta, ByteBuffer body, FileChannel spill,
+                             int bodyBytes) throws IOException {
+        int length = HEADER_BYTES + meta.length + bodyBytes;
+        Segment segment = segmentFor(length);
+        int offset = segment.end;
+        ByteBuffer out = segment.map.duplicate().position(offset + HEADER_BYTES);
+        out.put(meta);
+        int bodyOffset = out.position();
+        if (body != null) {
+            out.put(body);
+        } else {
+            ByteBuffer dst = segment.map.slice(bodyOffset, bodyBytes);
+            long position = 0;
+            while (dst.hasRemaining()) {
+                int n = spill.read(dst, position);
+                if (n < 0) throw new IOException("Spill file shorter than its body");
+                position += n;
+            }
+        }
+        writeHeader(segment, offset, PUT, meta, bodyBytes);
+        segment.end += length;
+        writes.increment();
+
+        ByteBuffer mapped = segment.map.slice(bodyOffset, bodyBytes).asReadOnlyBuffer();
+        DiskEntry entry = new DiskEntry(segment, length, response.withBody(mapped));
+        synchronized (index) {
+            bytes += length;
+            put(entry);
+        }
+    }
+
+    private void appendRemoval(String key) throws IOException {
+        List<DiskEntry> removed;
+        synchronized (index) {
+            removed = index.remove(key);
+            if (removed == null) return;
+            removed.forEach(this::dead);
+        }
+        writeRemoval(key);
+    }
+
+    private void writeRemoval(String key) throws IOException {
+        byte[] meta = removalMeta(key);
+        int length = HEADER_BYTES + meta.length;
+        Segment segment = segmentFor(length);
+        int offset = segment.end;
+        segment.map.duplicate().position(offset + HEADER_BYTES).put(meta);
+        writeHeader(segment, offset, REMOVE, meta, 0);
+        segment.end += length;
+        segment.removals.add(key);
+        segment.removalBytes += length;
+        synchronized (index) {
+            bytes += length;
+        }
+    }
+
+    // the active segment when the record fits, otherwise a new one (sized to the record when it is larger)
+    private Segment segmentFor(int length) throws IOException {
+        Segment active = segments.peekLast();
+        if (active != null && !active.sealed && active.end + length <= active.map.capacity()) {
+            return active;
+        }
+        if (active != null) {
+            seal(active);
+        }
+        int capacity = Math.max(segmentBytes, length);
+        Path path = dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, nextSegmentId, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(nextSegmentId++, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        synchronized (index) {
+            segments.addLast(segment);
+        }
+        return segment;
+    }
+
+    private static void seal(Segment segment) throws IOException {
+        if (segment.sealed) {
+            return;
+        }
+        segment.map.force();
+        segment.channel.truncate(segment.end); // the mapping stays valid up to end
+        segment.channel.close();
+        segment.sealed = true;
+    }
+
+    // evicts the oldest segments until length more bytes fit
+    private void makeRoom(int length) throws IOException {
+        while (bytes + length > maxBytes) {
+            Segment oldest;
+            synchronized (index) {
+                oldest = segments.peekFirst();
+            }
+            if (oldest == null) {
+                return;
+            }
+            if (oldest == segments.peekLast()) {
+                seal(oldest); // the active segment itself has to go, the next record starts a new one
+            }
+            rewrite(oldest, true);
+        }
+    }
+
+    // one sparse sealed segment per write, so compaction keeps pace without stalling the queue.
+    // Removal records count as live: they only go away with the oldest segment.
+    private void compactOne() throws IOException {
+        Segment sparse = null;
+        synchronized (index) {
+            for (Segment segment : segments) {
+                if (segment.sealed && segment.liveBytes + segment.removalBytes < segment.end * COMPACT_BELOW_LIVE_RATIO) {
+                    sparse = segment;
+                    break;
+                }
+            }
+        }
+        if (sparse != null) {
+            rewrite(sparse, false);
+            compactions.increment();
+        }
+    }
+
+    /**
+     * Copies a segment's live entries forward and deletes it.
+     *
+     * @param evicting - only entries read since they were written are kept (and lose that mark)
+     */
+    private void rewrite(Segment segment, boolean evicting) throws IOException {
+        List<DiskEntry> keep = new ArrayList<>();
+        synchronized (index) {
+            segments.remove(segment);
+            bytes -= segment.end;
+            for (DiskEntry entry : segment.entries) {
+                if (!entry.live) continue;
+                if (evicting && !entry.accessed) {
+                    unlink(entry);
+                    evictions.increment();
+                } else {
+                    keep.add(entry);
+                }
+            }
+        }
+        for (DiskEntry entry : keep) {
+            synchronized (index) {
+                if (!entry.live) continue; // replaced in the meantime
+                entry.accessed = false;
+            }
+            writeRecord(entry.response, meta(entry.response), entry.response.body(), null, entry.response.getBodyBytes());
+        }
+        boolean older;
+        synchronized (index) {
+            older = !segments.isEmpty() && segments.peekFirst().id < segment.id;
+        }
+        if (older) {
+            for (String key : segment.removals) {
+                writeRemoval(key); // an older segment may still hold what it removed
+            }
+        }
+        if (!segment.sealed) {
+            segment.channel.close();
+        }
+        Files.deleteIfExists(segment.path); // readers keep their mapping, the space is freed once it is unmapped
+    }
+
+    // caller holds the index lock
+    private void put(DiskEntry entry) {
+        String key = entry.response.getKey();
+        List<DiskEntry> variants = index.computeIfAbsent(key, k -> new ArrayList<>(1));
+        Iterator<DiskEntry> it = variants.iterator();
+        while (it.hasNext()) {
+            DiskEntry old = it.next();
+            if (old.response.sameVariant(entry.response)) {
+                it.remove();
+                dead(old);
+            }
+        }
+        variants.add(0, entry);
+        entry.segment.entries.add(entry);
+        entry.segment.liveBytes += entry.length;
+        entryCount++;
+        if (variants.size() > MAX_VARIANTS) {
+            dead(variants.remove(variants.size() - 1));
+        }
+    }
+
+    // caller holds the index lock
+    private void unlink(DiskEntry entry) {
+        List<DiskEntry> variants = index.get(entry.response.getKey());
+        if (variants != null) {
+            variants.remove(entry);
+            if (variants.isEmpty()) {
+                index.remove(entry.response.getKey());
+            }
+        }
+        dead(entry);
+    }
+
+    // caller holds the index lock
+    private void dead(DiskEntry entry) {
+        if (entry.live) {
+            entry.live = false;
+            entry.segment.liveBytes -= entry.length;
+            entryCount--;
+        }
+    }
+
+    private static void writeHeader(Segment segment, int offset, byte type, byte[] meta, int bodyBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(ByteBuffer.allocate(8).putInt(meta.length).putInt(bodyBytes).flip());
+        crc.update(meta);
+        segment.map.duplicate().position(offset)
+                .putInt(MAGIC).put(type).putInt(meta.length).putInt(bodyBytes).putInt((int) crc.getValue());
+    }
+
+    private static byte[] meta(CachedResponse response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(response.getKey());
+        out.writeLong(response.getRequestMs());
+        out.writeLong(response.getResponseMs());
+        byte[] head = response.headBytes();
+        out.writeInt(head.length);
+        out.write(head);
+        List<String> names = response.getVaryNames();
+        out.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            out.writeUTF(names.get(i));
+            String value = response.getVaryValues().get(i);
+            out.writeBoolean(value != null);
+            if (value != null) out.writeUTF(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] removalMeta(String key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        new DataOutputStream(bytes).writeUTF(key);
+        return bytes.toByteArray();
+    }
+
+    // ---- replay, before the writer starts ----
+
+    private void replay() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(SPILL_SUFFIX)) {
+                    Files.deleteIfExists(path); // a body that was being recorded when the proxy stopped
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    files.add(path);
+                }
+            }
+        }
+        files.sort(null); // zero padded ids, name order is age order
+
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+            replaySegment(id, path);
+        }
+        if (!files.isEmpty()) {
+            Log.i("Cache disk tier: " + entryCount + " responses in " + segments.size() + " segments (" + bytes / (1024 * 1024) + " MiB)");
+        }
+    }
+
+    private void replaySegment(int id, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        Segment segment = new Segment(id, path, channel, map);
+        segment.sealed = true;
+
+        while (segment.end + HEADER_BYTES <= map.capacity()) {
+            int offset = segment.end;
+            ByteBuffer in = map.duplicate().position(offset);
+            if (in.getInt() != MAGIC) break; // the unwritten rest of a segment that was active
+            byte type = in.get();
+            int metaLength = in.getInt();
+            int bodyBytes = in.getInt();
+            int crcValue = in.getInt();
+            long length = (long) HEADER_BYTES + metaLength + bodyBytes;
+            if (metaLength < 0 || bodyBytes < 0 || offset + length > map.capacity()) break;
+
+            byte[] meta = new byte[metaLength];
+            in.get(meta);
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(ByteBuffer.allocate(8).putInt(metaLength).putInt(bodyBytes).flip());
+            crc.update(meta);
+            if ((int) crc.getValue() != crcValue) break;
+
+            segment.end += (int) length;
+            bytes += length;
+            if (type == REMOVE) {
+                String key = new DataInputStream(new ByteArrayInputStream(meta)).readUTF();
+                segment.removals.add(key);
+                segment.removalBytes += length;
+                List<DiskEntry> removed = index.remove(key);
+                if (removed != null) removed.forEach(this::dead);
+            } else if (type == PUT) {
+                ByteBuffer body = map.slice(offset + HEADER_BYTES + metaLength, bodyBytes).asReadOnlyBuffer();
+                put(new DiskEntry(segment, (int) length, restore(meta, body)));
+            }
+        }
+
+        if (segment.end < map.capacity()) {
+            channel.truncate(segment.end); // cut off what a stop left unwritten (or torn)
+        }
+        channel.close();
+        if (segment.end == 0) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        segments.addLast(segment);
+    }
+
+    private static CachedResponse restore(byte[] meta, ByteBuffer body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(meta));
+        String key = in.readUTF();
+        long requestMs = in.readLong();
+        long responseMs = in.readLong();
+        byte[] head = new byte[in.readInt()];
+        in.readFully(head);
+        int varyCount = in.readInt();
+        List<String> names = new ArrayList<>(varyCount);
+        List<String> values = new ArrayList<>(varyCount);
+        for (int i = 0; i < varyCount; i++) {
+            names.add(in.readUTF());
+            values.add(in.readBoolean() ? in.readUTF() : null);
+        }
+        return CachedResponse.restore(key, ResponseHead.parse(head, head.length), body, requestMs, responseMs,
+                List.copyOf(names), values);
+    }
+
+    /** One segment file, mapped whole. Written only by the writer thread, up to end. */
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        final List<DiskEntry> entries = new ArrayList<>();
+        final List<String> removals = new ArrayList<>();
+        int end;
+        long liveBytes;
+        long removalBytes;
+        boolean sealed;
+
+        Segment(int id, Path path, FileChannel channel, MappedByteBuffer map) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.map = map;
+        }
+    }
+
+    /** A record in a segment, live until it is replaced, removed, or evicted. */
+    private static final class DiskEntry {
+        final Segment segment;
+        final int length;
+        final CachedResponse response;
+        volatile boolean accessed; // read since written, set by lookups
+        boolean live = true;
+
+        DiskEntry(Segment segment, int length, CachedResponse response) {
+            this.segment = segment;
+            this.length = length;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Disk tier counters, part of the cache's /stats.
+     *
+     * @param hits      - lookups answered from a segment
+     * @param bytes     - size of the segment files
+     * @param writes    - records appended, copies made by compaction and eviction included
+     * @param dropped   - responses not written because the writer was behind (or a write failed)
+     * @param evictions - entries dropped with the oldest segment
+     */
+    public record Stats(long hits, int entries, long bytes, long maxBytes, int segments, long writes, long dropped,
+                        long evictions, long compactions) {
+    }
+}
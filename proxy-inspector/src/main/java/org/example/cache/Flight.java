@@ -0,0 +1,277 @@
+package org.example.cache;
+
+import org.example.http.BodyFramer;
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One upstream fetch shared by identical concurrent GETs (see Coalescer).
+ *
+ * The leader's Forwarder fetches as usual and tells the flight about the response head, every
+ * body byte (as a BodyTap) and the end. Followers wait for the head, then read the body in the
+ * same chunks the leader relayed, each at its own pace. Followers only join before the head
+ * arrives, so every one of them sees the body from its first byte.
+ *
+ * The body is kept only until the slowest follower has written it; a follower more than
+ * MAX_BACKLOG_BYTES behind the leader is cut off (its connection is closed) so one stalled
+ * client cannot pin an artifact's worth of memory.
+ *
+ * Followers are released to fetch on their own ("passed") when the response cannot be shared:
+ * a shared cache could not store it, its Vary'd headers differ from theirs, it refreshed a
+ * cached response (304), or the leader failed before the head.
+ */
+public final class Flight implements BodyTap {
+    private static final long MAX_BACKLOG_BYTES = 16L * 1024 * 1024;
+
+    private enum State { WAITING, STREAMING, COMPLETE, PASSED, FAILED }
+
+    private final Coalescer owner;
+    private final String key;
+    private final HttpRequest request;
+
+    // guarded by this
+    private State state = State.WAITING;
+    private final List<Follower> followers = new ArrayList<>();
+    private final List<ByteBuffer> chunks = new ArrayList<>(); // nulled once every follower wrote them
+    private long appendedBytes;
+    private ResponseHead head;
+    private boolean untilClose;
+
+    Flight(Coalescer owner, String key, HttpRequest request) {
+        this.owner = owner;
+        this.key = key;
+        this.request = request;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    /** A follower for the request, null once the head is in (too late to join). */
+    synchronized Follower follow(HttpRequest followerRequest) {
+        if (state != State.WAITING) {
+            return null;
+        }
+        Follower follower = new Follower(followerRequest);
+        followers.add(follower);
+        return follower;
+    }
+
+    /**
+     * The leader got the response head. Followers whose request it fits get it (without the end
+     * server's hop-by-hop headers), the others are passed.
+     */
+    public void start(ResponseHead responseHead, BodyFramer.Mode mode) {
+        owner.landed(this);
+        boolean shareable = owner.isShareable(request, responseHead);
+        synchronized (this) {
+            if (state != State.WAITING) return;
+            if (!shareable) {
+                release(State.PASSED);
+                return;
+            }
+            head = responseHead.copy();
+            ResponseCache.stripHopHeaders(head);
+            untilClose = mode == BodyFramer.Mode.UNTIL_CLOSE;
+            List<String> vary = CachedResponse.varyNames(head);
+            for (Follower follower : List.copyOf(followers)) {
+                if (!sameVariant(vary, follower.request)) {
+                    follower.passed = true;
+                    followers.remove(follower);
+                    owner.passed.increment();
+                }
+            }
+            state = State.STREAMING;
+            notifyAll();
+        }
+    }
+
+    /** The response is not for the followers (the 304 of a revalidation), they look again and fetch on their own. */
+    public void pass() {
+        owner.landed(this);
+        synchronized (this) {
+            if (state == State.WAITING) {
+                release(State.PASSED);
+            }
+        }
+    }
+
+    @Override
+    public void append(ByteBuffer src) {
+        synchronized (this) {
+            if (state != State.STREAMING || followers.isEmpty() || !src.hasRemaining()) {
+                return;
+            }
+        }
+        ByteBuffer copy = ByteBuffer.allocate(src.remaining()).put(src.duplicate()).flip(); // outside the lock
+        synchronized (this) {
+            if (state != State.STREAMING || followers.isEmpty()) return;
+            chunks.add(copy.asReadOnlyBuffer());
+            appendedBytes += copy.remaining();
+            for (Follower follower : List.copyOf(followers)) {
+                if (appendedBytes - follower.writtenBytes > MAX_BACKLOG_BYTES) {
+                    follower.cut = true;
+                    followers.remove(follower);
+                    owner.cut.increment();
+                }
+            }
+            trim();
+            notifyAll();
+        }
+    }
+
+    /** The leader relayed the whole body. */
+    public synchronized void complete() {
+        if (state == State.STREAMING) {
+            state = State.COMPLETE;
+            notifyAll();
+        }
+    }
+
+    /**
+     * The leader is done with the flight, a no-op after complete(). Before the head the
+     * followers fetch on their own, during the body they fail along with the leader.
+     */
+    public void abort() {
+        owner.landed(this);
+        synchronized (this) {
+            if (state == State.WAITING) {
+                release(State.PASSED);
+            } else if (state == State.STREAMING) {
+                state = State.FAILED;
+                notifyAll();
+            }
+        }
+    }
+
+    // caller holds the lock
+    private void release(State end) {
+        state = end;
+        owner.passed.add(followers.size());
+        for (Follower follower : followers) {
+            follower.passed = true;
+        }
+        followers.clear();
+        notifyAll();
+    }
+
+    // caller holds the lock: drop the chunks every follower has written
+    private void trim() {
+        int slowest = chunks.size();
+        for (Follower follower : followers) {
+            slowest = Math.min(slowest, follower.nextChunk);
+        }
+        for (int i = slowest - 1; i >= 0 && chunks.get(i) != null; i--) {
+            chunks.set(i, null);
+        }
+    }
+
+    private boolean sameVariant(List<String> vary, HttpRequest follower) {
+        for (String name : vary) {
+            if (name.equals("*") || !Objects.equals(trim(request.getHeader(name)), trim(follower.getHeader(name)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String trim(String value) {
+        return (value == null) ? null : value.trim();
+    }
+
+    /** A client waiting on the flight, used by its own worker thread. */
+    public final class Follower {
+        private final HttpRequest request;
+        private int nextChunk;
+        private long writtenBytes;
+        private boolean passed; // guarded by the flight
+        private boolean cut;    // guarded by the flight
+
+        private Follower(HttpRequest request) {
+            this.request = request;
+        }
+
+        /**
+         * Waits for the leader's response head.
+         *
+         * @return a copy of the head to send, null when this client has to fetch on its own
+         *         (the response could not be shared, or it took longer than timeoutMs)
+         */
+        public ResponseHead awaitHead(long timeoutMs) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            synchronized (Flight.this) {
+                while (state == State.WAITING && !passed) {
+                    long leftNs = deadline - System.nanoTime();
+                    if (leftNs <= 0) {
+                        leave();
+                        owner.passed.increment();
+                        return null;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(Flight.this, leftNs);
+                }
+                if (passed || head == null) {
+                    return null;
+                }
+                owner.coalesced.increment();
+                return head.copy();
+            }
+        }
+
+        /** Whether the body ends with the leader's upstream connection, so this client's connection has to close. */
+        public boolean untilClose() {
+            synchronized (Flight.this) {
+                return untilClose;
+            }
+        }
+
+        /**
+         * The next part of the body, in a buffer of its own.
+         *
+         * @return null at the end of the body
+         * @throws IOException when the leader failed, this client fell too far behind, or nothing came for timeoutMs
+         */
+        public ByteBuffer next(long timeoutMs) throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            synchronized (Flight.this) {
+                while (true) {
+                    if (cut) {
+                        throw new IOException("Fell too far behind the coalesced response");
+                    }
+                    if (nextChunk < chunks.size()) {
+                        ByteBuffer chunk = chunks.get(nextChunk++).duplicate();
+                        writtenBytes += chunk.remaining();
+                        trim();
+                        return chunk;
+                    }
+                    if (state == State.COMPLETE) {
+                        return null;
+                    }
+                    if (state == State.FAILED) {
+                        throw new IOException("The coalesced upstream response failed");
+                    }
+                    long leftNs = deadline - System.nanoTime();
+                    if (leftNs <= 0) {
+                        throw new SocketTimeoutException("Read timed out waiting for the coalesced response");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(Flight.this, leftNs);
+                }
+            }
+        }
+
+        /** Stops following (this client went away), so the body is not kept for it. */
+        public void leave() {
+            synchronized (Flight.this) {
+                followers.remove(this);
+                trim();
+            }
+        }
+    }
+}
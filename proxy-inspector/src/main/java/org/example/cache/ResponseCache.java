@@ -0,0 +1,506 @@
+package org.example.cache;
+
+import org.example.http.BodyFramer;
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+import org.example.log.Transaction;
+import org.example.util.CacheOptions;
+import org.example.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Shared HTTP response cache between the client connections and the end servers (RFC 9111).
+ *
+ * - GET responses are stored when a shared cache may store them: a cacheable status, no
+ *   no-store / private, no Set-Cookie, not Vary: *, and either explicit freshness (max-age,
+ *   s-maxage, Expires) or a validator. Requests with Authorization bypass the cache.
+ * - GET and HEAD requests are answered from a fresh entry without contacting the end server,
+ *   honouring the request's no-cache, max-age and min-fresh. A client whose own validators
+ *   match gets a 304.
+ * - A stale entry with an ETag or Last-Modified is revalidated with a conditional request,
+ *   a 304 from the end server refreshes it and the stored body is served.
+ * - Vary: each URL keeps up to MAX_VARIANTS responses, selected by the Vary'd request headers.
+ * - A successful unsafe request (POST, PUT, DELETE, ...) invalidates its URL.
+ *
+ * Bodies are kept in direct memory, outside the Java heap, and written to the client channel
+ * straight from there. The total size is bounded by maxBytes, the least recently used URLs
+ * (with all their variants) are evicted first.
+ *
+ * With a cache directory, every stored response is also written to the DiskTier, which keeps
+ * far more than memory can (large artifacts included, recorded through a spill file) and comes
+ * back after a restart. Lookups try memory first, then the disk tier's in-memory index; a disk
+ * hit is served from the segment's map (the page cache) and is not copied back into memory.
+ */
+public final class ResponseCache {
+    private static final int MAX_VARIANTS = 8;
+    // understood by this cache and cacheable by default (RFC 9110 section 15.1)
+    private static final Set<Integer> CACHEABLE_STATUS = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+    private static final Set<String> HOP_BY_HOP = Set.of(
+            "connection", "keep-alive", "proxy-connection", "te", "upgrade", "proxy-authenticate", "proxy-authorization");
+    // what a 304 carries of the stored response (RFC 9110 section 15.4.5)
+    private static final Set<String> NOT_MODIFIED_HEADERS = Set.of(
+            "cache-control", "content-location", "date", "etag", "expires", "vary", "last-modified");
+
+    private final long maxBytes;
+    private final long maxObjectBytes;
+    private final LongSupplier clockMs;
+    private final DiskTier disk; // null without a cache directory
+
+    // access ordered: iteration starts at the least recently used URL, newest variant first
+    private final Map<String, List<CachedResponse>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;     // guarded by entries
+    private int responses;  // guarded by entries
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache(CacheOptions options) {
+        this(options, System::currentTimeMillis, openDisk(options));
+    }
+
+    ResponseCache(CacheOptions options, LongSupplier clockMs) {
+        this(options, clockMs, null);
+    }
+
+    ResponseCache(CacheOptions options, LongSupplier clockMs, DiskTier disk) {
+        this.maxBytes = options.maxBytes();
+        this.maxObjectBytes = options.maxObjectBytes();
+        this.clockMs = clockMs;
+        this.disk = disk;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 || disk != null;
+    }
+
+    /** Wall clock in ms, HTTP dates and ages are computed against it. */
+    public long now() {
+        return clockMs.getAsLong();
+    }
+
+    /**
+     * Result of a lookup.
+     *
+     * @param entry - the stored response selected by the request, null on a miss
+     * @param fresh - whether entry may be served without asking the end server
+     */
+    public record Lookup(CachedResponse entry, boolean fresh) {
+        public boolean isHit() {
+            return entry != null && fresh;
+        }
+
+        /** The entry to revalidate, null when there is none or it is fresh. */
+        public CachedResponse stale() {
+            return fresh ? null : entry;
+        }
+    }
+
+    /**
+     * @return null when the cache does not apply to this request at all (caching off, not GET
+     *         or HEAD, Authorization, no-store), otherwise the lookup result
+     */
+    public Lookup lookup(HttpRequest request) {
+        if (!isEnabled() || !appliesTo(request)) {
+            return null;
+        }
+        CacheControl cc = CacheControl.parse(request.getHeader("Cache-Control"));
+        if (cc.has("no-store")) {
+            return null;
+        }
+
+        String key = key(request);
+        CachedResponse entry = find(key, request);
+        if (entry == null && disk != null) {
+            entry = disk.find(key, request);
+        }
+        boolean fresh = entry != null && isFresh(entry, request, cc);
+        (fresh ? hits : misses).increment();
+        return new Lookup(entry, fresh);
+    }
+
+    /** Whether the client asked for a stored response only (only-if-cached, RFC 9111 section 5.2.1.7). */
+    public boolean onlyIfCached(HttpRequest request) {
+        return CacheControl.parse(request.getHeader("Cache-Control")).has("only-if-cached");
+    }
+
+    /**
+     * Starts keeping a copy of a response body that is about to be relayed.
+     *
+     * @param requestMs  - now() when the request was sent
+     * @param responseMs - now() when the response head arrived
+     * @return null when the response must not (or cannot) be stored
+     */
+    public BodyRecorder startRecording(HttpRequest request, ResponseHead head, BodyFramer.Mode mode,
+                                       long requestMs, long responseMs) {
+        if (!isEnabled() || !"GET".equalsIgnoreCase(request.getMethod()) || !isStorable(request, head)) {
+            return null;
+        }
+
+        long expected = -1;
+        if (mode == BodyFramer.Mode.NONE) {
+            expected = 0;
+        } else if (mode == BodyFramer.Mode.FIXED) {
+            expected = contentLength(head);
+            if (expected > maxObjectBytes && (disk == null || expected > disk.maxObjectBytes())) return null;
+        } else if (mode == BodyFramer.Mode.UNTIL_CLOSE && head.getHeader("Transfer-Encoding") != null) {
+            return null; // a transfer coding we cannot re-frame with Content-Length
+        }
+
+        ResponseHead stored = head.copy();
+        stripHopHeaders(stored);
+        return new BodyRecorder(key(request), request, stored, mode == BodyFramer.Mode.UNTIL_CLOSE,
+                requestMs, responseMs, expected, maxObjectBytes, disk);
+    }
+
+    /** Stores a response whose body was relayed completely, a no-op when it was too large. */
+    public void store(BodyRecorder recorder) {
+        if (!recorder.isRecording()) {
+            return;
+        }
+        ResponseHead head = recorder.head;
+        if (recorder.isSpilled()) {
+            long length = recorder.spilledBytes();
+            if (recorder.untilClose) {
+                head.setHeader("Content-Length", String.valueOf(length));
+            }
+            CachedResponse entry = CachedResponse.create(recorder.key, recorder.request, head,
+                    ByteBuffer.allocate(0), recorder.requestMs, recorder.responseMs);
+            disk.storeSpilled(entry, recorder.finishSpill(), length); // too large for memory
+            stores.increment();
+            return;
+        }
+        ByteBuffer body = recorder.finish();
+        if (recorder.untilClose) {
+            head.setHeader("Content-Length", String.valueOf(body.limit())); // the stored copy has a known length
+        }
+
+        CachedResponse entry = CachedResponse.create(recorder.key, recorder.request, head, body,
+                recorder.requestMs, recorder.responseMs);
+        if (disk != null) {
+            disk.store(entry);
+        }
+        if (entry.getSizeBytes() > maxBytes) {
+            if (disk != null) stores.increment();
+            return;
+        }
+
+        synchronized (entries) {
+            List<CachedResponse> variants = entries.computeIfAbsent(entry.getKey(), k -> new ArrayList<>(1));
+            Iterator<CachedResponse> it = variants.iterator();
+            while (it.hasNext()) {
+                CachedResponse old = it.next();
+                if (old.sameVariant(entry)) {
+                    it.remove();
+                    removed(old);
+                }
+            }
+            variants.add(0, entry);
+            bytes += entry.getSizeBytes();
+            responses++;
+            if (variants.size() > MAX_VARIANTS) {
+                removed(variants.remove(variants.size() - 1));
+                evictions.increment();
+            }
+            evictOverBudget();
+        }
+        stores.increment();
+    }
+
+    /**
+     * The end server answered the revalidation of stale with 304: its headers are merged into
+     * the entry and its age starts over.
+     *
+     * @return the refreshed entry, to be served instead of stale
+     */
+    public CachedResponse revalidated(CachedResponse stale, ResponseHead notModified, long requestMs, long responseMs) {
+        CachedResponse fresh = stale.revalidated(notModified, requestMs, responseMs);
+        revalidated.increment();
+
+        synchronized (entries) {
+            List<CachedResponse> variants = entries.get(stale.getKey());
+            int index = (variants == null) ? -1 : variants.indexOf(stale);
+            if (index >= 0) {
+                variants.set(index, fresh);
+                bytes += fresh.getSizeBytes() - stale.getSizeBytes();
+                evictOverBudget();
+            }
+        }
+        if (disk != null) {
+            disk.store(fresh); // the refreshed head for the next restart
+        }
+        return fresh;
+    }
+
+    /** A successful unsafe request may have changed the resource (RFC 9111 section 4.4). */
+    public void invalidate(HttpRequest request, ResponseHead head) {
+        if (!isEnabled() || isSafe(request.getMethod())) {
+            return;
+        }
+        int status = head.getStatusCode();
+        if (status < 200 || status >= 400) {
+            return;
+        }
+        String key = key(request);
+        synchronized (entries) {
+            List<CachedResponse> variants = entries.remove(key);
+            if (variants != null) {
+                variants.forEach(this::removed);
+            }
+        }
+        if (disk != null) {
+            disk.remove(key);
+        }
+    }
+
+    /**
+     * Writes a stored response to the client, with its current Age and our Connection header.
+     * The body goes from direct memory straight to the client channel when there is one.
+     *
+     * Stored responses are kept as the end server sent them. encoding rewrites the head the way
+     * it rewrites a relayed response (Vary, ETag, Content-Encoding), so a hit looks like a miss,
+     * and encodes the body when it picked a coding.
+     */
+    public void serve(CachedResponse entry, HttpRequest request, Socket client, boolean keepAlive, Encoding encoding,
+                      Transaction transaction) throws IOException {
+        boolean notModified = entry.notModified(request);
+        boolean bodyless = notModified || "HEAD".equalsIgnoreCase(request.getMethod());
+        ResponseHead head = entry.head();
+        // a relayed HEAD response has no body to encode, its head is left alone
+        String coding = "HEAD".equalsIgnoreCase(request.getMethod()) ? null : encoding.prepare(request, head);
+        if (notModified) {
+            head = head.withStatus(304, "Not Modified"); // with the Vary and ETag the 200 went out with
+            head.getHeaders().removeIf(h -> !NOT_MODIFIED_HEADERS.contains(h.getKey().toLowerCase()));
+        }
+        head.setHeader("Age", String.valueOf(entry.ageMs(now()) / 1000));
+        head.setHeader("Connection", keepAlive ? "keep-alive" : "close");
+
+        OutputStream out = client.getOutputStream();
+        out.write(head.toBytes());
+        if (!bodyless) {
+            if (coding != null) {
+                encoding.write(coding, entry.body(), out, transaction);
+            } else {
+                writeBody(entry.body(), client.getChannel(), out);
+            }
+        }
+        out.flush();
+    }
+
+    public Stats stats() {
+        int entryCount;
+        long size;
+        synchronized (entries) {
+            entryCount = responses;
+            size = bytes;
+        }
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        double hitRate = (lookups == 0) ? 0.0 : (double) hitCount / lookups;
+        return new Stats(hitCount, misses.sum(), revalidated.sum(), stores.sum(), evictions.sum(),
+                entryCount, size, maxBytes, hitRate, (disk == null) ? null : disk.stats());
+    }
+
+    /** Finishes the disk tier's queued writes, so they are there after a restart. */
+    public void shutdown() {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    // a cache directory that cannot be used leaves the memory tier working on its own
+    private static DiskTier openDisk(CacheOptions options) {
+        Path dir = options.diskDir();
+        if (dir == null) {
+            return null;
+        }
+        try {
+            return DiskTier.open(dir, options.diskMaxBytes(), options.diskMaxObjectBytes(),
+                    DiskTier.SEGMENT_BYTES, DiskTier.newWriter());
+        } catch (IOException | RuntimeException e) {
+            Log.e("Cache directory " + dir + " not usable, disk tier disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static boolean isHopByHop(String lowerCaseName) {
+        return HOP_BY_HOP.contains(lowerCaseName);
+    }
+
+    private CachedResponse find(String key, HttpRequest request) {
+        synchronized (entries) {
+            List<CachedResponse> variants = entries.get(key);
+            if (variants == null) {
+                return null;
+            }
+            for (CachedResponse entry : variants) {
+                if (entry.matches(request)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    // RFC 9111 section 4.2 plus the request's own limits (section 5.2.1)
+    private boolean isFresh(CachedResponse entry, HttpRequest request, CacheControl cc) {
+        long ageMs = entry.ageMs(now());
+        long lifetimeMs = entry.getFreshnessMs();
+        if (ageMs >= lifetimeMs) {
+            return false;
+        }
+        if (cc.has("no-cache") || (cc == CacheControl.EMPTY && hasNoCachePragma(request))) {
+            return false;
+        }
+        long maxAge = cc.seconds("max-age");
+        if (maxAge >= 0 && ageMs > maxAge * 1000) {
+            return false;
+        }
+        long minFresh = cc.seconds("min-fresh");
+        return minFresh < 0 || lifetimeMs - ageMs >= minFresh * 1000;
+    }
+
+    // RFC 9111 section 3, for a shared cache
+    boolean isStorable(HttpRequest request, ResponseHead head) {
+        if (!appliesTo(request) || CacheControl.parse(request.getHeader("Cache-Control")).has("no-store")) {
+            return false;
+        }
+        if (!CACHEABLE_STATUS.contains(head.getStatusCode())) {
+            return false;
+        }
+        CacheControl cc = CacheControl.parse(head.getHeaderValues("Cache-Control"));
+        if (cc.has("no-store") || cc.has("private")) {
+            return false;
+        }
+        if (head.getHeader("Set-Cookie") != null || CachedResponse.varyNames(head).contains("*")) {
+            return false; // never hand one client's cookies to another, Vary: * never matches
+        }
+        boolean explicit = cc.has("max-age") || cc.has("s-maxage") || head.getHeader("Expires") != null;
+        return explicit || head.getHeader("ETag") != null || head.getHeader("Last-Modified") != null;
+    }
+
+    static boolean appliesTo(HttpRequest request) {
+        String method = request.getMethod();
+        return ("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method))
+                && request.getHeader("Authorization") == null
+                && !request.hasBody(); // a hit would leave the body unread on the client connection
+    }
+
+    private static boolean isSafe(String method) {
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)
+                || "OPTIONS".equalsIgnoreCase(method) || "TRACE".equalsIgnoreCase(method);
+    }
+
+    private static boolean hasNoCachePragma(HttpRequest request) {
+        String pragma = request.getHeader("Pragma");
+        return pragma != null && pragma.toLowerCase().contains("no-cache");
+    }
+
+    static String key(HttpRequest request) {
+        return request.getHost().toLowerCase() + ":" + request.getPort() + request.getPath();
+    }
+
+    private static long contentLength(ResponseHead head) {
+        try {
+            return Long.parseLong(head.getHeader("Content-Length").split(",")[0].trim());
+        } catch (RuntimeException e) {
+            return -1; // BodyFramer already rejected anything it could not frame
+        }
+    }
+
+    // hop-by-hop headers and the ones named in Connection describe the end server's hop, not the response
+    static void stripHopHeaders(ResponseHead head) {
+        String connection = head.getHeaderValues("Connection");
+        List<String> named = new ArrayList<>();
+        if (connection != null) {
+            for (String token : connection.split(",")) {
+                named.add(token.trim().toLowerCase());
+            }
+        }
+        head.getHeaders().removeIf(h -> {
+            String name = h.getKey().toLowerCase();
+            return HOP_BY_HOP.contains(name) || named.contains(name);
+        });
+    }
+
+    private static void writeBody(ByteBuffer body, SocketChannel channel, OutputStream out) throws IOException {
+        if (channel != null) {
+            out.flush();
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+            return;
+        }
+        byte[] chunk = new byte[8192];
+        while (body.hasRemaining()) {
+            int n = Math.min(chunk.length, body.remaining());
+            body.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    // caller holds the entries lock
+    private void evictOverBudget() {
+        Iterator<Map.Entry<String, List<CachedResponse>>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            List<CachedResponse> variants = it.next().getValue();
+            it.remove();
+            for (CachedResponse entry : variants) {
+                removed(entry);
+                evictions.increment();
+            }
+        }
+    }
+
+    // caller holds the entries lock
+    private void removed(CachedResponse entry) {
+        bytes -= entry.getSizeBytes();
+        responses--;
+    }
+
+    /**
+     * How serve() encodes a stored response for the client (ResponseCompression).
+     */
+    public interface Encoding {
+        /**
+         * Rewrites the head of a stored response (Content-Length framed) for this client.
+         *
+         * @return the coding to write the body with, null to send it as stored
+         */
+        String prepare(HttpRequest request, ResponseHead head);
+
+        /** Writes body encoded with coding as the whole message body, recorded on transaction. */
+        void write(String coding, ByteBuffer body, OutputStream client, Transaction transaction) throws IOException;
+    }
+
+    /**
+     * Counters exposed through /stats.
+     *
+     * @param hits        - requests answered from a fresh entry
+     * @param misses      - cacheable requests that went to the end server (no entry, or a stale one)
+     * @param revalidated - misses on a stale entry the end server confirmed with 304, served from the cache
+     * @param entries     - stored responses in memory (variants count separately)
+     * @param bytes       - size of the stored responses in memory, bodies in direct memory
+     * @param hitRate     - hits / (hits + misses), both tiers
+     * @param disk        - the disk tier's counters, null without a cache directory
+     */
+    public record Stats(long hits, long misses, long revalidated, long stores, long evictions,
+                        int entries, long bytes, long maxBytes, double hitRate, DiskTier.Stats disk) {
+    }
+}
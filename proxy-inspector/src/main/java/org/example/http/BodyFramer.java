@@ -0,0 +1,260 @@
+package org.example.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Tracks where an HTTP message body ends while its bytes are copied through untouched.
+ *
+ * Bytes are fed in as they arrive from the socket. feed() returns how many of them still belong
+ * to the body, anything after that belongs to the next message on the connection.
+ *
+ * NONE        - no body (HEAD responses, 204, 304, requests without Content-Length)
+ * FIXED       - Content-Length bytes
+ * CHUNKED     - Transfer-Encoding: chunked, ends after the last chunk and trailers
+ * UNTIL_CLOSE - no framing, the body ends when the sender closes the connection
+ */
+public final class BodyFramer {
+
+    public enum Mode { NONE, FIXED, CHUNKED, UNTIL_CLOSE }
+
+    // chunked states
+    private static final int SIZE = 0;          // hex digits of the chunk size
+    private static final int SIZE_EXTENSION = 1; // ";name=value" until CR
+    private static final int SIZE_LF = 2;
+    private static final int DATA = 3;
+    private static final int DATA_CR = 4;
+    private static final int DATA_LF = 5;
+    private static final int TRAILER_START = 6; // start of a trailer line, or the final CRLF
+    private static final int TRAILER_LINE = 7;
+    private static final int TRAILER_END_LF = 8;
+    private static final int DONE = 9;
+
+    private final Mode mode;
+    private long remaining; // FIXED: body bytes left, CHUNKED: data bytes left in the current chunk
+    private int chunkState = SIZE;
+    private long chunkSize;
+    private int sizeDigits;
+    private boolean complete;
+
+    private BodyFramer(Mode mode, long length) {
+        this.mode = mode;
+        this.remaining = length;
+        this.complete = (mode == Mode.NONE) || (mode == Mode.FIXED && length == 0);
+    }
+
+    public static BodyFramer none() {
+        return new BodyFramer(Mode.NONE, 0);
+    }
+
+    public static BodyFramer fixed(long length) {
+        return new BodyFramer(Mode.FIXED, length);
+    }
+
+    public static BodyFramer chunked() {
+        return new BodyFramer(Mode.CHUNKED, 0);
+    }
+
+    public static BodyFramer untilClose() {
+        return new BodyFramer(Mode.UNTIL_CLOSE, 0);
+    }
+
+    /**
+     * Framing of a response body (RFC 9112 section 6.3).
+     *
+     * @param requestMethod - method of the request this response answers (HEAD responses have no body)
+     */
+    public static BodyFramer forResponse(String requestMethod, ResponseHead head) throws IOException {
+        int status = head.getStatusCode();
+        if ("HEAD".equalsIgnoreCase(requestMethod) || (status >= 100 && status < 200) || status == 204 || status == 304) {
+            return none();
+        }
+
+        String transferEncoding = head.getHeader("Transfer-Encoding");
+        if (transferEncoding != null) {
+            return isChunkedLast(transferEncoding) ? chunked() : untilClose();
+        }
+
+        String contentLength = head.getHeader("Content-Length");
+        if (contentLength != null) {
+            return fixed(parseContentLength(contentLength));
+        }
+
+        return untilClose();
+    }
+
+    /**
+     * Framing of a request body (RFC 9112 section 6.3). A request without Content-Length or
+     * Transfer-Encoding has no body; a Transfer-Encoding that does not end in chunked cannot be framed.
+     */
+    public static BodyFramer forRequest(HttpRequest request) {
+        String transferEncoding = request.getHeader("Transfer-Encoding");
+        if (transferEncoding != null) {
+            if (!isChunkedLast(transferEncoding)) {
+                throw new InvalidRequestException("Unsupported Transfer-Encoding: " + transferEncoding);
+            }
+            return chunked();
+        }
+
+        String contentLength = request.getHeader("Content-Length");
+        if (contentLength == null) {
+            return none();
+        }
+        try {
+            return fixed(parseContentLength(contentLength));
+        } catch (IOException e) {
+            throw new InvalidRequestException("Invalid Content-Length header", e);
+        }
+    }
+
+    /**
+     * Feeds bytes that arrived after the head (or after earlier feeds).
+     *
+     * @return how many bytes of buf[off, off + len) belong to this body
+     */
+    public int feed(byte[] buf, int off, int len) throws IOException {
+        return feed(ByteBuffer.wrap(buf), off, off + len);
+    }
+
+    /**
+     * Same as {@link #feed(byte[], int, int)} for buf[from, to), using absolute indexes so the
+     * buffer position is left alone (works for heap and direct buffers alike).
+     */
+    public int feed(ByteBuffer buf, int from, int to) throws IOException {
+        int len = to - from;
+        if (complete || len <= 0) {
+            return 0;
+        }
+
+        switch (mode) {
+            case UNTIL_CLOSE:
+                return len;
+            case FIXED: {
+                int take = (int) Math.min(remaining, len);
+                remaining -= take;
+                complete = (remaining == 0);
+                return take;
+            }
+            case CHUNKED:
+                return feedChunked(buf, from, to);
+            default:
+                return 0;
+        }
+    }
+
+    /** Whether the whole body has been seen. UNTIL_CLOSE bodies only complete via {@link #closed()}. */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /** The sender closed the connection; only an UNTIL_CLOSE body ends cleanly that way. */
+    public boolean closed() {
+        if (mode == Mode.UNTIL_CLOSE) {
+            complete = true;
+        }
+        return complete;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    private int feedChunked(ByteBuffer buf, int from, int end) throws IOException {
+        int i = from;
+
+        while (i < end && chunkState != DONE) {
+            if (chunkState == DATA) {
+                int take = (int) Math.min(remaining, end - i);
+                i += take;
+                remaining -= take;
+                if (remaining == 0) chunkState = DATA_CR;
+                continue;
+            }
+
+            byte b = buf.get(i++);
+            switch (chunkState) {
+                case SIZE -> {
+                    int digit = Character.digit(b, 16);
+                    if (digit >= 0) {
+                        if (++sizeDigits > 15) throw new IOException("Chunk size too large");
+                        chunkSize = (chunkSize << 4) | digit;
+                    } else if (sizeDigits == 0) {
+                        throw new IOException("Invalid chunk size");
+                    } else if (b == '\r') {
+                        chunkState = SIZE_LF;
+                    } else if (b == ';' || b == ' ' || b == '\t') {
+                        chunkState = SIZE_EXTENSION;
+                    } else {
+                        throw new IOException("Invalid chunk size");
+                    }
+                }
+                case SIZE_EXTENSION -> {
+                    if (b == '\r') chunkState = SIZE_LF;
+                }
+                case SIZE_LF -> {
+                    expect(b, '\n');
+                    if (chunkSize == 0) {
+                        chunkState = TRAILER_START; // last chunk
+                    } else {
+                        remaining = chunkSize;
+                        chunkState = DATA;
+                    }
+                    chunkSize = 0;
+                    sizeDigits = 0;
+                }
+                case DATA_CR -> {
+                    expect(b, '\r');
+                    chunkState = DATA_LF;
+                }
+                case DATA_LF -> {
+                    expect(b, '\n');
+                    chunkState = SIZE;
+                }
+                case TRAILER_START -> chunkState = (b == '\r') ? TRAILER_END_LF : TRAILER_LINE;
+                case TRAILER_LINE -> {
+                    if (b == '\n') chunkState = TRAILER_START;
+                }
+                case TRAILER_END_LF -> {
+                    expect(b, '\n');
+                    chunkState = DONE;
+                }
+                default -> throw new IllegalStateException("Unknown chunk state " + chunkState);
+            }
+        }
+
+        if (chunkState == DONE) {
+            complete = true;
+        }
+        return i - from;
+    }
+
+    private static void expect(byte actual, char expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Malformed chunked body");
+        }
+    }
+
+    private static boolean isChunkedLast(String transferEncoding) {
+        String[] codings = transferEncoding.split(",");
+        return codings[codings.length - 1].trim().equalsIgnoreCase("chunked");
+    }
+
+    private static long parseContentLength(String raw) throws IOException {
+        try {
+            // repeated identical values ("10, 10") are allowed, anything else is an error
+            String[] values = raw.split(",");
+            long length = Long.parseLong(values[0].trim());
+            for (String v : values) {
+                if (Long.parseLong(v.trim()) != length) {
+                    throw new IOException("Conflicting Content-Length values");
+                }
+            }
+            if (length < 0) {
+                throw new IOException("Negative Content-Length");
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Content-Length: " + raw, e);
+        }
+    }
+}
@@ -1,60 +1,361 @@
 package org.example.http;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+/**
+ * Byte level request head parser.
+ *
+ * A parser belongs to one client connection and owns a reusable read buffer for it. readRequest()
+ * fills the buffer until the empty line that ends a head, tokenises the head as ASCII bytes
+ * (no charset decoding, no regex) and leaves every byte after the head in the buffer.
+ * The request body, and any pipelined request after it, is read through getInputStream().
+ *
+ * Header names and values are not turned into Strings here, see RequestHeaders.
+ */
 public class HttpParser {
-    private BufferedReader reader;
+    public static final int MAX_REQUEST_LINE_BYTES = 8 * 1024;
+    public static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final int INITIAL_BUFFER_BYTES = 8 * 1024;
 
-    public HttpParser(BufferedReader reader) {
-        this.reader = reader;
+    private final InputStream in;
+    private final int maxRequestLineBytes;
+    private final int maxHeaderBytes;
+    private final InputStream remaining = new Remaining();
+
+    // read mode between calls: [position, limit) holds bytes not consumed yet
+    private ByteBuffer buf = ByteBuffer.allocate(INITIAL_BUFFER_BYTES).limit(0);
+    private int markPos = -1;
+
+    public HttpParser(InputStream in) {
+        this(in, MAX_REQUEST_LINE_BYTES, MAX_HEADER_BYTES);
     }
 
+    public HttpParser(InputStream in, int maxRequestLineBytes, int maxHeaderBytes) {
+        this.in = in;
+        this.maxRequestLineBytes = maxRequestLineBytes;
+        this.maxHeaderBytes = maxHeaderBytes;
+    }
+
+    /**
+     * Reads the next request head from the connection.
+     *
+     * @return the request, or null if the client closed the connection before sending one
+     */
     public HttpRequest readRequest() throws IOException {
-        // Read request line: "METHOD TARGET VERSION"
-        String requestLine = reader.readLine();
-        if (requestLine == null) {
-            return null; // client closed connection before sending anything
+        int scanned = 0; // bytes after position already searched for the end of the head
+        while (true) {
+            skipEmptyLines(); // RFC 9112: ignore CRLFs before a request line
+
+            byte[] bytes = buf.array();
+            int start = buf.position();
+            int end = findHeadEnd(bytes, start + Math.max(0, scanned - 2), buf.limit());
+            if (end >= 0) {
+                byte[] head = new byte[end - start]; // owned by the request, header values point into it
+                System.arraycopy(bytes, start, head, 0, head.length);
+                buf.position(end);
+                return parse(head, head.length, maxRequestLineBytes, maxHeaderBytes);
+            }
+            scanned = buf.remaining();
+            checkIncompleteHead(bytes, start, buf.limit());
+
+            if (readMore() == -1) {
+                if (buf.hasRemaining()) {
+                    throw new InvalidRequestException("Incomplete request head");
+                }
+                return null; // client closed connection before sending anything
+            }
+        }
+    }
+
+    /**
+     * The connection's bytes after the last head returned by readRequest(): first whatever is
+     * still buffered, then the socket. Supports mark/reset within the buffered bytes.
+     */
+    public InputStream getInputStream() {
+        return remaining;
+    }
+
+    /**
+     * Returns the index just past the empty line ending a head (CRLF CRLF, bare LFs tolerated),
+     * or -1 if buf[from, to) holds no complete head.
+     */
+    public static int findHeadEnd(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] != '\n') continue;
+            if (i + 1 < to && buf[i + 1] == '\n') return i + 2;
+            if (i + 2 < to && buf[i + 1] == '\r' && buf[i + 2] == '\n') return i + 3;
         }
-        requestLine = requestLine.trim();
-        if (requestLine.isEmpty()) {
+        return -1;
+    }
+
+    /**
+     * Parses one complete request head. The array is kept by the returned request, do not reuse it.
+     *
+     * @param head - bytes of the head, including the terminating empty line
+     * @param len  - number of head bytes
+     */
+    public static HttpRequest parse(byte[] head, int len, int maxRequestLineBytes, int maxHeaderBytes) {
+        int i = 0;
+        while (i < len && (head[i] == '\r' || head[i] == '\n')) i++;
+
+        // Request line: "METHOD TARGET VERSION"
+        int lineEnd = indexOf(head, '\n', i, len);
+        if (lineEnd < 0) {
             throw new InvalidRequestException("Empty request line");
         }
+        int lineStop = stripCr(head, i, lineEnd);
+        if (lineStop - i > maxRequestLineBytes) {
+            throw new InvalidRequestException(414, "Request line too long");
+        }
 
-        String[] parts = requestLine.split("\\s+");
-        if (parts.length != 3) {
+        int methodStart = skipBlanks(head, i, lineStop);
+        int methodEnd = token(head, methodStart, lineStop);
+        int targetStart = skipBlanks(head, methodEnd, lineStop);
+        int targetEnd = token(head, targetStart, lineStop);
+        int versionStart = skipBlanks(head, targetEnd, lineStop);
+        int versionEnd = token(head, versionStart, lineStop);
+        if (methodStart == methodEnd || targetStart == targetEnd || versionStart == versionEnd
+                || skipBlanks(head, versionEnd, lineStop) != lineStop) {
             throw new InvalidRequestException("Invalid request line");
         }
 
-        String method = parts[0];
-        String target = parts[1];
-        String version = parts[2];
+        String method = method(head, methodStart, methodEnd);
+        String target = ascii(head, targetStart, targetEnd);
+        String version = version(head, versionStart, versionEnd);
 
-        // read headers until empty line
-        Map<String, String> headers = new HashMap<>();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            if (line.isEmpty()) { // end of headers
-                break;
-            }
+        // Header lines until the empty line, only offsets are recorded
+        int headerStart = lineEnd + 1;
+        int[] offsets = new int[16 * 4];
+        int lines = 0;
+        int pos = headerStart;
+        while (pos < len) {
+            int end = indexOf(head, '\n', pos, len);
+            if (end < 0) end = len;
+            int stop = stripCr(head, pos, end);
+            if (stop == pos) break; // end of headers
 
-            int colonIndex = line.indexOf(":");
+            if (end - headerStart > maxHeaderBytes) {
+                throw new InvalidRequestException(431, "Request headers too large");
+            }
+            if (head[pos] == ' ' || head[pos] == '\t') {
+                throw new InvalidRequestException("Obsolete header line folding is not supported");
+            }
 
-            if (colonIndex <= 0) {
+            int colon = pos;
+            while (colon < stop && head[colon] != ':') {
+                if (!isTokenChar(head[colon])) {
+                    throw new InvalidRequestException("Invalid header line");
+                }
+                colon++;
+            }
+            if (colon == pos || colon == stop) {
                 throw new InvalidRequestException("Invalid header line");
             }
 
-            String key = line.substring(0, colonIndex).trim();
-            String value = line.substring(colonIndex + 1).trim();
+            int valueStart = skipBlanks(head, colon + 1, stop);
+            int valueEnd = stop;
+            while (valueEnd > valueStart && (head[valueEnd - 1] == ' ' || head[valueEnd - 1] == '\t')) valueEnd--;
+            for (int k = valueStart; k < valueEnd; k++) {
+                int c = head[k] & 0xff;
+                if ((c < 0x20 && c != '\t') || c == 0x7f) {
+                    throw new InvalidRequestException("Invalid header value");
+                }
+            }
 
-            headers.put(key, value);
+            if ((lines + 1) * 4 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[lines * 4] = pos;
+            offsets[lines * 4 + 1] = colon;
+            offsets[lines * 4 + 2] = valueStart;
+            offsets[lines * 4 + 3] = valueEnd;
+            lines++;
+
+            pos = end + 1;
         }
 
-        String body = null; // TODO:add body logic later
+        // the body is not read here, it is streamed from the connection by the forwarder
+        return new HttpRequest(method, target, version, new RequestHeaders(head, offsets, lines), null);
+    }
+
+    // Tokenising helpers, all on raw bytes
 
-        return new HttpRequest(method, target, version, headers, body);
+    private static int indexOf(byte[] buf, char b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int stripCr(byte[] buf, int from, int lfIndex) {
+        return (lfIndex > from && buf[lfIndex - 1] == '\r') ? lfIndex - 1 : lfIndex;
+    }
 
+    private static int skipBlanks(byte[] buf, int from, int to) {
+        int i = from;
+        while (i < to && (buf[i] == ' ' || buf[i] == '\t')) i++;
+        return i;
+    }
+
+    // request line tokens are visible ASCII
+    private static int token(byte[] buf, int from, int to) {
+        int i = from;
+        while (i < to && buf[i] != ' ' && buf[i] != '\t') {
+            if (buf[i] < 0x21 || buf[i] > 0x7e) {
+                throw new InvalidRequestException("Invalid request line");
+            }
+            i++;
+        }
+        return i;
+    }
+
+    // RFC 9110 tchar
+    private static boolean isTokenChar(byte b) {
+        if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')) return true;
+        return switch (b) {
+            case '!', '#', '$', '%', '&', '\'', '*', '+', '-', '.', '^', '_', '`', '|', '~' -> true;
+            default -> false;
+        };
+    }
+
+    private static String ascii(byte[] buf, int from, int to) {
+        return new String(buf, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    // common methods and versions map to constants instead of a new String per request
+    private static String method(byte[] buf, int from, int to) {
+        if (matches(buf, from, to, "GET")) return "GET";
+        if (matches(buf, from, to, "POST")) return "POST";
+        if (matches(buf, from, to, "HEAD")) return "HEAD";
+        if (matches(buf, from, to, "PUT")) return "PUT";
+        if (matches(buf, from, to, "DELETE")) return "DELETE";
+        if (matches(buf, from, to, "OPTIONS")) return "OPTIONS";
+        if (matches(buf, from, to, "PATCH")) return "PATCH";
+        if (matches(buf, from, to, "CONNECT")) return "CONNECT";
+        return ascii(buf, from, to);
+    }
+
+    private static String version(byte[] buf, int from, int to) {
+        if (matches(buf, from, to, "HTTP/1.1")) return "HTTP/1.1";
+        if (matches(buf, from, to, "HTTP/1.0")) return "HTTP/1.0";
+        return ascii(buf, from, to);
+    }
+
+    private static boolean matches(byte[] buf, int from, int to, String constant) {
+        if (to - from != constant.length()) return false;
+        for (int i = 0; i < constant.length(); i++) {
+            if (buf[from + i] != constant.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hands over the bytes already read past the last head without touching the socket,
+     * e.g. a TLS ClientHello the client sent right behind a CONNECT.
+     */
+    public byte[] takeBuffered() {
+        byte[] rest = new byte[buf.remaining()];
+        buf.get(rest);
+        return rest;
+    }
+
+    // Buffer management
+
+    private void skipEmptyLines() {
+        byte[] bytes = buf.array();
+        int pos = buf.position();
+        while (pos < buf.limit() && (bytes[pos] == '\r' || bytes[pos] == '\n')) pos++;
+        buf.position(pos);
+    }
+
+    // fail early instead of buffering an endless request line or header block
+    private void checkIncompleteHead(byte[] bytes, int from, int to) {
+        if (to - from > maxRequestLineBytes && indexOf(bytes, '\n', from, from + maxRequestLineBytes + 2) < 0) {
+            throw new InvalidRequestException(414, "Request line too long");
+        }
+        if (to - from >= maxRequestLineBytes + maxHeaderBytes) {
+            throw new InvalidRequestException(431, "Request headers too large");
+        }
+    }
+
+    /**
+     * Appends bytes from the socket after limit. Unconsumed bytes are moved to the front
+     * (or the buffer grows) only when there is no room left at the end.
+     */
+    private int readMore() throws IOException {
+        if (buf.limit() == buf.capacity()) {
+            int unread = buf.remaining();
+            if (buf.position() > 0) {
+                System.arraycopy(buf.array(), buf.position(), buf.array(), 0, unread);
+                markPos = (markPos >= buf.position()) ? markPos - buf.position() : -1;
+                buf.position(0).limit(unread);
+            } else {
+                // only reached while reading a head, checkIncompleteHead keeps it below the limit
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(buf.capacity() * 2, maxRequestLineBytes + maxHeaderBytes + 4));
+                bigger.put(buf);
+                buf = bigger.flip();
+            }
+        }
+
+        int n = in.read(buf.array(), buf.limit(), buf.capacity() - buf.limit());
+        if (n > 0) {
+            buf.limit(buf.limit() + n);
+        }
+        return n;
+    }
+
+    /**
+     * Request body bytes: the buffered rest first, then the socket through the same buffer.
+     */
+    private final class Remaining extends InputStream {
+        @Override
+        public int read() throws IOException {
+            if (!buf.hasRemaining() && readMore() == -1) return -1;
+            return buf.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining() && readMore() == -1) return -1;
+
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(Math.max(n, 0), buf.remaining());
+            buf.position(buf.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buf.remaining() + in.available();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            markPos = buf.position();
+        }
+
+        @Override
+        public void reset() throws IOException {
+            if (markPos < 0) {
+                throw new IOException("Mark is no longer valid");
+            }
+            buf.position(markPos);
+        }
     }
 }
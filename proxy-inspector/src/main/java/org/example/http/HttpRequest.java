@@ -49,10 +49,29 @@ public class HttpRequest {
         return header.port;
     }
 
+    /**
+     * Origin-form path for the end server. A CONNECT request has no path, its authority-form target is returned.
+     */
     public String getPath() {
+        if (isConnect()) {
+            return target;
+        }
         return toOriginFormTarget(target);
     }
 
+    /** CONNECT host:port asks for a tunnel instead of carrying an HTTP exchange. */
+    public boolean isConnect() {
+        return "CONNECT".equalsIgnoreCase(method);
+    }
+
+    /** RFC 9110 9.2.2: sending it twice has the same effect as once, so it may be retried automatically. */
+    public boolean isIdempotent() {
+        return switch ((method == null) ? "" : method.toUpperCase()) {
+            case "GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE" -> true;
+            default -> false;
+        };
+    }
+
     private String toOriginFormTarget(String target) {
         if (target == null || target.isEmpty()) {
             return "/";
@@ -75,7 +94,11 @@ public class HttpRequest {
         return target;
     }
 
-    private String getHeaderIgnoreCase(String name) {
+    /** Returns a header value (case-insensitive name lookup), or null if the header is absent. */
+    public String getHeader(String name) {
+        if (headers instanceof RequestHeaders parsed) {
+            return parsed.getIgnoreCase(name); // compares against the raw bytes, no iteration over entries
+        }
         for (Map.Entry<String, String> e : headers.entrySet()) {
             if (e.getKey() != null && e.getKey().equalsIgnoreCase(name)) {
                 return e.getValue();
@@ -84,12 +107,64 @@ public class HttpRequest {
         return null;
     }
 
+    /**
+     * Whether the client asked for a persistent connection.
+     * HTTP/1.1 connections persist unless "close" is sent, HTTP/1.0 ones only with an explicit "keep-alive".
+     * Proxy-Connection is the legacy header some clients still send to proxies, it is treated like Connection.
+     */
+    public boolean wantsKeepAlive() {
+        String connection = getHeader("Connection");
+        String proxyConnection = getHeader("Proxy-Connection");
+
+        if (hasToken(connection, "close") || hasToken(proxyConnection, "close")) {
+            return false;
+        }
+        if ("HTTP/1.1".equalsIgnoreCase(version)) {
+            return true;
+        }
+        return hasToken(connection, "keep-alive") || hasToken(proxyConnection, "keep-alive");
+    }
+
+    /** Whether the request announces a body (Content-Length > 0 or Transfer-Encoding). */
+    public boolean hasBody() {
+        if (getHeader("Transfer-Encoding") != null) {
+            return true;
+        }
+        String contentLength = getHeader("Content-Length");
+        if (contentLength == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(contentLength.trim()) > 0;
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid Content-Length header", e);
+        }
+    }
+
+    /** Whether the client waits for "100 Continue" before sending its body. */
+    public boolean expectsContinue() {
+        return hasToken(getHeader("Expect"), "100-continue");
+    }
+
+    // comma separated header values, e.g. "Connection: keep-alive, Upgrade"
+    private static boolean hasToken(String headerValue, String token) {
+        if (headerValue == null) return false;
+        for (String part : headerValue.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // CONNECT names its destination in the request target (authority-form), everything else in Host
     private HostPort parseHostHeader() {
         if (cachedHostPort != null) return cachedHostPort;
 
-        String hostHeader = getHeaderIgnoreCase("Host");
+        String hostHeader = isConnect() ? target : getHeader("Host");
+        int defaultPort = isConnect() ? 443 : 80;
         if (hostHeader == null || hostHeader.isEmpty()) {
-            throw new InvalidRequestException("Missing host header");
+            throw new InvalidRequestException(isConnect() ? "Missing CONNECT authority" : "Missing host header");
         }
 
 
@@ -109,12 +184,12 @@ public class HttpRequest {
                     }
                     portPart = Integer.parseInt(hostHeader.substring(closing + 2));
                 } else {
-                    portPart = 80;
+                    portPart = defaultPort;
                 }
             } else {
                 String[] parts = hostHeader.split(":", 2);
                 hostPart = parts[0];
-                portPart = (parts.length == 2) ? Integer.parseInt(parts[1]) : 80;
+                portPart = (parts.length == 2) ? Integer.parseInt(parts[1]) : defaultPort;
             }
 
             if (hostPart.isBlank() || portPart <= 0 || portPart > 65535) {
@@ -8,6 +8,21 @@ public class HttpSerializer {
     private static final String CRLF = "\r\n";
 
     public String serializeRequest(HttpRequest req) {
+        return serializeRequest(req, false);
+    }
+
+    /**
+     * @param keepAlive - ask the end server to keep the connection open so it can be pooled
+     */
+    public String serializeRequest(HttpRequest req, boolean keepAlive) {
+        return serializeRequest(req, keepAlive, Map.of());
+    }
+
+    /**
+     * @param keepAlive    - ask the end server to keep the connection open so it can be pooled
+     * @param extraHeaders - added by the proxy itself (e.g. the validators of a cached response)
+     */
+    public String serializeRequest(HttpRequest req, boolean keepAlive, Map<String, String> extraHeaders) {
         String method = req.getMethod();
         String targetForServer = req.getPath(); // convert target URL for end server
         String version = req.getVersion();
@@ -15,7 +30,8 @@ public class HttpSerializer {
         String body = req.getBody();
 
         // Copy + normalize headers for end server
-        Map<String, String> filteredHeaders = stripHopHeaders(headers);
+        Map<String, String> filteredHeaders = stripHopHeaders(headers, keepAlive);
+        filteredHeaders.putAll(extraHeaders);
 
         StringBuilder sb = new StringBuilder();
         sb.append(method).append(" ").append(targetForServer).append(" ").append(version).append(CRLF);
@@ -42,7 +58,7 @@ public class HttpSerializer {
      *
      * They must NOT be forwarded to the next hop, which is from our proxy server to the end server.
      */
-    private Map<String, String> stripHopHeaders(Map<String, String> headers) {
+    private Map<String, String> stripHopHeaders(Map<String, String> headers, boolean keepAlive) {
         Map<String, String> filteredHeaders = new LinkedHashMap<>();
 
         for (Map.Entry<String, String> h : headers.entrySet()) {
@@ -53,8 +69,12 @@ public class HttpSerializer {
             if (key.equalsIgnoreCase("Proxy-Connection")) continue;
             if (key.equalsIgnoreCase("Connection")) continue;
             if (key.equalsIgnoreCase("Keep-Alive")) continue;
-            if (key.equalsIgnoreCase("Transfer-Encoding")) continue;
             if (key.equalsIgnoreCase("Upgrade")) continue;
+            if (key.equalsIgnoreCase("Expect")) continue; // the proxy answers 100-continue itself
+
+            // the body is relayed byte for byte, so its Transfer-Encoding stays valid on our hop.
+            // With both present, Transfer-Encoding wins and Content-Length must not be forwarded
+            if (key.equalsIgnoreCase("Content-Length") && containsHeaderIgnoreCase(headers, "Transfer-Encoding")) continue;
 
             filteredHeaders.put(key, value);
         }
@@ -67,8 +87,8 @@ public class HttpSerializer {
             }
         }
 
-        // force close, simplifies response handling (read until server closes)
-        filteredHeaders.put("Connection", "close");
+        // our own hop: keep-alive when the connection goes back into the upstream pool
+        filteredHeaders.put("Connection", keepAlive ? "keep-alive" : "close");
 
         return filteredHeaders;
     }
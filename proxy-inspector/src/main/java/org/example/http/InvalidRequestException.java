@@ -1,11 +1,26 @@
 package org.example.http;
 
 public class InvalidRequestException extends RuntimeException {
+    private final int statusCode;
+
     public InvalidRequestException(String message) {
-        super(message);
+        this(400, message);
     }
 
     public InvalidRequestException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = 400;
+    }
+
+    /**
+     * @param statusCode - status the client gets, e.g. 414 or 431 for oversized heads (400 otherwise)
+     */
+    public InvalidRequestException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
     }
 }
@@ -0,0 +1,189 @@
+package org.example.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only header map backed by the raw request head bytes.
+ *
+ * The parser only records where each name and value starts and ends. Strings are created
+ * when a header is actually looked up or iterated, so a request that is blocked by policy
+ * or only has a few headers inspected never pays for the rest.
+ *
+ * Repeated header lines (case-insensitive) are one entry whose value is the comma separated
+ * list of all occurrences in order (RFC 9110 section 5.3), keyed by the first spelling of the name.
+ */
+final class RequestHeaders extends AbstractMap<String, String> {
+    private static final int NAME_START = 0;
+    private static final int NAME_END = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE_END = 3;
+
+    private final byte[] head;
+    private final int[] offsets; // 4 ints per header line
+    private final int[] next;    // index of the next line with the same name, or -1
+    private final boolean[] repeat; // line continues an earlier one with the same name
+    private final int lines;
+    private final int distinct;
+
+    private String[] names;  // per line, materialised on demand
+    private String[] values; // per first line, combined value materialised on demand
+    private Set<Map.Entry<String, String>> entrySet;
+
+    RequestHeaders(byte[] head, int[] offsets, int lines) {
+        this.head = head;
+        this.offsets = offsets;
+        this.lines = lines;
+        this.next = new int[lines];
+        this.repeat = new boolean[lines];
+
+        int distinct = 0;
+        for (int i = 0; i < lines; i++) {
+            next[i] = -1;
+            int previous = -1;
+            for (int j = 0; j < i && previous < 0; j++) {
+                if (!repeat[j] && sameName(j, i)) previous = j;
+            }
+            if (previous < 0) {
+                distinct++;
+                continue;
+            }
+            repeat[i] = true;
+            while (next[previous] >= 0) previous = next[previous];
+            next[previous] = i;
+        }
+        this.distinct = distinct;
+    }
+
+    /** Case-insensitive lookup straight on the head bytes, no allocation unless found. */
+    String getIgnoreCase(String name) {
+        for (int i = 0; i < lines; i++) {
+            if (!repeat[i] && nameEqualsIgnoreCase(i, name)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String name)) return null;
+        for (int i = 0; i < lines; i++) {
+            if (!repeat[i] && name(i).equals(name)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return distinct;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return distinct;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private String name(int line) {
+        if (names == null) names = new String[lines];
+        String name = names[line];
+        if (name == null) {
+            int start = offsets[line * 4 + NAME_START];
+            name = new String(head, start, offsets[line * 4 + NAME_END] - start, StandardCharsets.ISO_8859_1);
+            names[line] = name;
+        }
+        return name;
+    }
+
+    private String value(int line) {
+        if (values == null) values = new String[lines];
+        String value = values[line];
+        if (value == null) {
+            value = rawValue(line);
+            for (int i = next[line]; i >= 0; i = next[i]) {
+                value = value + ", " + rawValue(i);
+            }
+            values[line] = value;
+        }
+        return value;
+    }
+
+    private String rawValue(int line) {
+        int start = offsets[line * 4 + VALUE_START];
+        return new String(head, start, offsets[line * 4 + VALUE_END] - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean nameEqualsIgnoreCase(int line, String name) {
+        int start = offsets[line * 4 + NAME_START];
+        int len = offsets[line * 4 + NAME_END] - start;
+        if (len != name.length()) return false;
+        for (int k = 0; k < len; k++) {
+            if (toLower(head[start + k]) != toLower(name.charAt(k))) return false;
+        }
+        return true;
+    }
+
+    private boolean sameName(int a, int b) {
+        int aStart = offsets[a * 4 + NAME_START];
+        int bStart = offsets[b * 4 + NAME_START];
+        int len = offsets[a * 4 + NAME_END] - aStart;
+        if (len != offsets[b * 4 + NAME_END] - bStart) return false;
+        for (int k = 0; k < len; k++) {
+            if (toLower(head[aStart + k]) != toLower(head[bStart + k])) return false;
+        }
+        return true;
+    }
+
+    // header names are validated ASCII tokens, so ASCII case folding is enough
+    private static int toLower(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int line = advance(0);
+
+        private int advance(int from) {
+            int i = from;
+            while (i < lines && repeat[i]) i++;
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return line < lines;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (line >= lines) throw new NoSuchElementException();
+            Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(name(line), value(line));
+            line = advance(line + 1);
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Streaming parser that finds the exact end of one HTTP response while its bytes are relayed.
+ *
+ * Bytes are fed in exactly as they were read from the end server, in chunks of any size.
+ * The framer collects the response head until CRLF CRLF, decides the body framing from it
+ * (Content-Length, chunked, no body for 1xx/204/304/HEAD, or until close) and then tracks
+ * the body with a BodyFramer. Interim 1xx heads are reported and followed by the next head.
+ *
+ * feed() never consumes past the end of a head in one call, so a caller that wants to rewrite
+ * the head (the blocking Forwarder) can pick it up with pollHead() before any body byte is relayed.
+ * A caller that copies bytes through untouched (the NIO engine) simply keeps feeding.
+ */
+public final class ResponseFramer {
+    private static final int DEFAULT_MAX_HEAD_BYTES = 64 * 1024;
+
+    private final String requestMethod;
+    private final int maxHeadBytes;
+
+    private byte[] headBuf;
+    private int headLen;
+    private ResponseHead completedHead; // picked up by pollHead()
+    private ResponseHead finalHead;
+    private BodyFramer body;
+
+    /**
+     * @param requestMethod - method of the request being answered (HEAD responses never have a body)
+     */
+    public ResponseFramer(String requestMethod) {
+        this(requestMethod, DEFAULT_MAX_HEAD_BYTES);
+    }
+
+    public ResponseFramer(String requestMethod, int maxHeadBytes) {
+        this.requestMethod = requestMethod;
+        this.maxHeadBytes = maxHeadBytes;
+        this.headBuf = new byte[Math.min(1024, maxHeadBytes)];
+    }
+
+    /**
+     * @return how many bytes of buf[off, off + len) belong to this response
+     */
+    public int feed(byte[] buf, int off, int len) throws IOException {
+        return feed(ByteBuffer.wrap(buf), off, off + len);
+    }
+
+    /**
+     * Feeds buf[from, to) using absolute indexes, the buffer position is not changed.
+     *
+     * @return how many of those bytes belong to this response; less than to - from when a head
+     *         just completed (call again for the rest) or when the response is complete
+     */
+    public int feed(ByteBuffer buf, int from, int to) throws IOException {
+        if (body != null) {
+            return body.feed(buf, from, to);
+        }
+
+        // still in a head: copy until CRLF CRLF
+        int i = from;
+        while (i < to) {
+            byte b = buf.get(i++);
+            if (headLen == headBuf.length) {
+                if (headBuf.length >= maxHeadBytes) {
+                    throw new IOException("Response head too large");
+                }
+                headBuf = Arrays.copyOf(headBuf, Math.min(headBuf.length * 2, maxHeadBytes));
+            }
+            headBuf[headLen++] = b;
+
+            if (b == '\n' && endsWithBlankLine()) {
+                onHeadComplete();
+                break;
+            }
+        }
+        return i - from;
+    }
+
+    /**
+     * Returns a head completed by the last feed (interim or final) exactly once, otherwise null.
+     */
+    public ResponseHead pollHead() {
+        ResponseHead head = completedHead;
+        completedHead = null;
+        return head;
+    }
+
+    /** The final (non 1xx) response head, or null while it has not been fully received. */
+    public ResponseHead getHead() {
+        return finalHead;
+    }
+
+    public boolean isHeadComplete() {
+        return finalHead != null;
+    }
+
+    /** Whether the whole response (head and body) has been seen. */
+    public boolean isComplete() {
+        return body != null && body.isComplete();
+    }
+
+    /**
+     * The end server closed the connection.
+     *
+     * @return true if that legitimately ended the response (a body without framing)
+     */
+    public boolean closed() {
+        return body != null && body.closed();
+    }
+
+    /** Body framing of the final response, or null while the head is incomplete. */
+    public BodyFramer.Mode getBodyMode() {
+        return (body == null) ? null : body.getMode();
+    }
+
+    private boolean endsWithBlankLine() {
+        return headLen >= 4
+                && headBuf[headLen - 4] == '\r'
+                && headBuf[headLen - 3] == '\n'
+                && headBuf[headLen - 2] == '\r';
+    }
+
+    private void onHeadComplete() throws IOException {
+        ResponseHead head = ResponseHead.parse(headBuf, headLen);
+        headLen = 0;
+        completedHead = head;
+
+        if (head.isInterim()) {
+            return; // 100 Continue / 103 Early Hints: the real response head follows
+        }
+        finalHead = head;
+        body = BodyFramer.forResponse(requestMethod, head);
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.http;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Status line + headers of a response coming back from the end server.
+ *
+ * Headers are kept as an ordered list instead of a map, because responses legitimately repeat
+ * headers (Set-Cookie) and the head is written back to the client after hop-by-hop rewriting.
+ */
+public final class ResponseHead {
+    private static final String CRLF = "\r\n";
+
+    private final String version;
+    private final int statusCode;
+    private final String reason;
+    private final List<Map.Entry<String, String>> headers;
+
+    private ResponseHead(String version, int statusCode, String reason, List<Map.Entry<String, String>> headers) {
+        this.version = version;
+        this.statusCode = statusCode;
+        this.reason = reason;
+        this.headers = headers;
+    }
+
+    /**
+     * Parses a complete response head (including the terminating empty line).
+     *
+     * @param buf - bytes starting at the status line
+     * @param len - number of head bytes in buf
+     */
+    public static ResponseHead parse(byte[] buf, int len) throws IOException {
+        String head = new String(buf, 0, len, StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+        if (lines.length == 0 || !lines[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid status line from upstream");
+        }
+
+        // "HTTP/1.1 200 OK" - the reason phrase is optional and may contain spaces
+        String statusLine = lines[0];
+        int firstSpace = statusLine.indexOf(' ');
+        if (firstSpace < 0) {
+            throw new IOException("Invalid status line from upstream");
+        }
+        int secondSpace = statusLine.indexOf(' ', firstSpace + 1);
+        String codePart = (secondSpace < 0)
+                ? statusLine.substring(firstSpace + 1)
+                : statusLine.substring(firstSpace + 1, secondSpace);
+
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(codePart.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid status code from upstream: " + codePart, e);
+        }
+
+        String version = statusLine.substring(0, firstSpace);
+        String reason = (secondSpace < 0) ? "" : statusLine.substring(secondSpace + 1);
+
+        List<Map.Entry<String, String>> headers = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.isEmpty()) break;
+
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Invalid header line from upstream");
+            }
+            headers.add(new AbstractMap.SimpleEntry<>(line.substring(0, colon).trim(), line.substring(colon + 1).trim()));
+        }
+
+        return new ResponseHead(version, statusCode, reason, headers);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public List<Map.Entry<String, String>> getHeaders() {
+        return headers;
+    }
+
+    /** Returns the first value of a header (case-insensitive), or null. */
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> h : headers) {
+            if (h.getKey().equalsIgnoreCase(name)) {
+                return h.getValue();
+            }
+        }
+        return null;
+    }
+
+    /** Removes every occurrence of a header (case-insensitive). */
+    public void removeHeader(String name) {
+        Iterator<Map.Entry<String, String>> it = headers.iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().equalsIgnoreCase(name)) {
+                it.remove();
+            }
+        }
+    }
+
+    /** Replaces all occurrences of a header with a single value. */
+    public void setHeader(String name, String value) {
+        removeHeader(name);
+        headers.add(new AbstractMap.SimpleEntry<>(name, value));
+    }
+
+    /** Returns every value of a header (case-insensitive) joined with ", ", or null. */
+    public String getHeaderValues(String name) {
+        String joined = null;
+        for (Map.Entry<String, String> h : headers) {
+            if (h.getKey().equalsIgnoreCase(name)) {
+                joined = (joined == null) ? h.getValue() : joined + ", " + h.getValue();
+            }
+        }
+        return joined;
+    }
+
+    /** An independent copy, e.g. of a cached head that is adjusted for one client. */
+    public ResponseHead copy() {
+        return withStatus(statusCode, reason);
+    }
+
+    /** A copy with another status line and the same headers. */
+    public ResponseHead withStatus(int statusCode, String reason) {
+        List<Map.Entry<String, String>> copy = new ArrayList<>(headers.size());
+        for (Map.Entry<String, String> h : headers) {
+            copy.add(new AbstractMap.SimpleEntry<>(h.getKey(), h.getValue()));
+        }
+        return new ResponseHead(version, statusCode, reason, copy);
+    }
+
+    /** 1xx responses (except 101 Switching Protocols) are followed by the real response. */
+    public boolean isInterim() {
+        return statusCode >= 100 && statusCode < 200 && statusCode != 101;
+    }
+
+    public byte[] toBytes() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(version).append(' ').append(statusCode);
+        if (!reason.isEmpty()) {
+            sb.append(' ').append(reason);
+        }
+        sb.append(CRLF);
+
+        for (Map.Entry<String, String> h : headers) {
+            sb.append(h.getKey()).append(": ").append(h.getValue()).append(CRLF);
+        }
+        sb.append(CRLF);
+
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
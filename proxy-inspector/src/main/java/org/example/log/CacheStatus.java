@@ -0,0 +1,14 @@
+package org.example.log;
+
+/**
+ * How the response cache answered a cacheable request.
+ *
+ * HIT         - served from the cache, the end server was not contacted
+ * REVALIDATED - the cached response was stale and the end server confirmed it with 304
+ * MISS        - forwarded to the end server (no usable cached response)
+ */
+public enum CacheStatus {
+    HIT,
+    REVALIDATED,
+    MISS
+}
@@ -2,7 +2,7 @@
  * Represents a single HTTP proxy transaction.
  *
  * A transaction captures request metadata (method, host, path),
- * timing information, transferred response byte size, and the final verdict
+ * timing information, transferred request body and response byte sizes, and the final verdict
  * for a single HTTP request.
  */
 
@@ -19,8 +19,22 @@ public class Transaction {
     private long endNs;
 
     private long bytesFromServer;
+    private long requestBodyBytes;
     private Verdict verdict;
     private String errorMessage;
+    private boolean upstreamReused;
+    private boolean tunnel; // CONNECT: byte counts cover both directions of the tunnel
+    private String addressFamily; // IPv4 / IPv6 of a new upstream connection, null when none was opened
+    private long connectNs = -1;
+    private CacheStatus cacheStatus; // null when the response cache did not apply
+    private boolean coalesced; // answered with the response another client's request fetched
+    private String contentEncoding; // gzip / deflate when the proxy encoded the body, null when relayed as is
+    private long originBodyBytes = -1;
+    private long wireBodyBytes = -1;
+    private String backend; // host:port the reverse proxy sent the request to, null in forward mode
+    private int hedges; // second attempts sent because the first had no response head in time
+    private boolean hedgeWon; // the response came from the second attempt
+    private int retries; // connects tried again after a failed one
 
     public Transaction(String method, String host, int port, String path, long startNs) {
         this.method = method;
@@ -43,6 +57,10 @@ public class Transaction {
         this.bytesFromServer = bytesFromServer;
     }
 
+    public void setRequestBodyBytes(long requestBodyBytes) {
+        this.requestBodyBytes = requestBodyBytes;
+    }
+
     public void setVerdict(Verdict verdict) {
         this.verdict = verdict;
     }
@@ -51,6 +69,59 @@ public class Transaction {
         this.errorMessage = errorMessage;
     }
 
+    public void setUpstreamReused(boolean upstreamReused) {
+        this.upstreamReused = upstreamReused;
+    }
+
+    /**
+     * Marks a CONNECT tunnel. requestBodyBytes then counts every byte client -> server and
+     * bytesFromServer every byte server -> client; the duration is the lifetime of the tunnel.
+     */
+    public void setTunnel(boolean tunnel) {
+        this.tunnel = tunnel;
+    }
+
+    /**
+     * Records the upstream connection opened for this transaction: the winning address family
+     * and how long the connect took (from the first attempt, racing included).
+     */
+    public void setUpstreamConnect(String addressFamily, long connectNs) {
+        this.addressFamily = addressFamily;
+        this.connectNs = connectNs;
+    }
+
+    public void setCacheStatus(CacheStatus cacheStatus) {
+        this.cacheStatus = cacheStatus;
+    }
+
+    public void setCoalesced(boolean coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * Records a body the proxy compressed: its size as the end server sent it and as it went to
+     * the client (chunk framing included).
+     */
+    public void setEncoding(String contentEncoding, long originBodyBytes, long wireBodyBytes) {
+        this.contentEncoding = contentEncoding;
+        this.originBodyBytes = originBodyBytes;
+        this.wireBodyBytes = wireBodyBytes;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    /** Records a hedged request: a second attempt went out, won tells which one answered. */
+    public void setHedged(boolean won) {
+        this.hedges = 1;
+        this.hedgeWon = won;
+    }
+
+    public void addRetry() {
+        retries++;
+    }
+
     /*
     GETTERS
      */
@@ -86,6 +157,10 @@ public class Transaction {
         return bytesFromServer;
     }
 
+    public long getRequestBodyBytes() {
+        return requestBodyBytes;
+    }
+
     public Verdict getVerdict() {
         return verdict;
     }
@@ -94,6 +169,64 @@ public class Transaction {
         return errorMessage;
     }
 
+    public boolean isUpstreamReused() {
+        return upstreamReused;
+    }
+
+    public boolean isTunnel() {
+        return tunnel;
+    }
+
+    public String getAddressFamily() {
+        return addressFamily;
+    }
+
+    /** Connect time of a new upstream connection, -1 when the transaction did not open one. */
+    public long getConnectNs() {
+        return connectNs;
+    }
+
+    /** How the response cache answered, null when the request was not cacheable (or caching is off). */
+    public CacheStatus getCacheStatus() {
+        return cacheStatus;
+    }
+
+    public boolean isCoalesced() {
+        return coalesced;
+    }
+
+    /** The coding the proxy applied to the body, null when it was relayed as it came. */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /** Body bytes before the proxy's encoding, -1 when it did not encode. */
+    public long getOriginBodyBytes() {
+        return originBodyBytes;
+    }
+
+    /** Body bytes sent to the client after the proxy's encoding, -1 when it did not encode. */
+    public long getWireBodyBytes() {
+        return wireBodyBytes;
+    }
+
+    /** The reverse proxy's backend (host:port) for this request, null in forward mode. */
+    public String getBackend() {
+        return backend;
+    }
+
+    public int getHedges() {
+        return hedges;
+    }
+
+    public boolean isHedgeWon() {
+        return hedgeWon;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
     public long getDurationNs() {
         if (endNs == 0) return 0;
         return endNs - startNs;
@@ -112,7 +245,14 @@ public class Transaction {
                 " " + method +
                 " " + host + ":" + port +
                 " " + path +
+                (backend != null ? " -> " + backend : "") +
                 " bytes=" + bytesFromServer +
+                (tunnel ? " bytesToServer=" + requestBodyBytes : "") +
+                (cacheStatus != null ? " cache=" + cacheStatus : "") +
+                (coalesced ? " coalesced" : "") +
+                (hedges > 0 ? (hedgeWon ? " hedge=won" : " hedge=lost") : "") +
+                (retries > 0 ? " retries=" + retries : "") +
+                (contentEncoding != null ? " " + contentEncoding + "=" + originBodyBytes + "->" + wireBodyBytes : "") +
                 " durationMs=" + getDurationMs() +
                 (errorMessage != null ? " error=\"" + errorMessage + "\"" : "");
     }
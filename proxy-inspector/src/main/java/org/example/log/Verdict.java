@@ -3,5 +3,6 @@ package org.example.log;
 public enum Verdict {
     ALLOWED,
     BLOCKED,
-    ERROR
+    ERROR,
+    SHED // rejected with a 503 to protect the proxy: admission control (before the request was read) or a full upstream bulkhead
 }
@@ -3,11 +3,27 @@ package org.example.policy;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Blocks hosts by name. A rule is one of
+ *
+ * example.com    - exactly this host
+ * .example.com   - the domain and every name below it
+ * *.example.com  - every name below the domain, not the domain itself
+ *
+ * Exact rules are a set lookup, tried first. The other two are compiled into a HostTrie, which
+ * walks the host's labels right to left, so a blocklist of domains covers subdomains nobody
+ * could enumerate.
+ */
 public class HostBlockRule {
+    private static final PolicyDecision BLOCKED = PolicyDecision.block(403, "Host is on blocked list");
+
     private final Set<String> blockedHosts;
+    private final HostTrie blockedDomains; // null without suffix and wildcard rules
 
     public HostBlockRule(Set<String> blockedHosts) {
         Set<String> normalizedHosts = new HashSet<>();
+        Set<String> suffixes = new HashSet<>();
+        Set<String> wildcards = new HashSet<>();
 
         if (blockedHosts != null && !blockedHosts.isEmpty()) {
             for (String host : blockedHosts) {
@@ -20,11 +36,26 @@ public class HostBlockRule {
                     continue;
                 }
 
-                normalizedHosts.add(normalizedHost);
+                if (normalizedHost.startsWith("*.")) {
+                    addDomain(wildcards, normalizedHost.substring(2));
+                } else if (normalizedHost.startsWith(".")) {
+                    addDomain(suffixes, normalizedHost.substring(1));
+                } else {
+                    normalizedHosts.add(normalizedHost);
+                }
             }
         }
 
         this.blockedHosts = Set.copyOf(normalizedHosts); // immutable
+        this.blockedDomains = (suffixes.isEmpty() && wildcards.isEmpty()) ? null : new HostTrie(suffixes, wildcards);
+    }
+
+    // a domain with an empty label (*., .., example..com) would never match anything, it is dropped
+    private static void addDomain(Set<String> domains, String domain) {
+        if (domain.isEmpty() || domain.startsWith(".") || domain.endsWith(".") || domain.contains("..")) {
+            return;
+        }
+        domains.add(domain);
     }
 
     public PolicyDecision evaluateHost(String host) {
@@ -33,12 +64,19 @@ public class HostBlockRule {
         }
 
         String normalizedHost = host.trim().toLowerCase();
+        if (normalizedHost.endsWith(".")) {
+            // example.com. is the fully qualified example.com, the same rules apply to both
+            normalizedHost = normalizedHost.substring(0, normalizedHost.length() - 1);
+        }
         if (normalizedHost.isEmpty()) {
             return null;
         }
 
         if (this.blockedHosts.contains(normalizedHost)) {
-            return PolicyDecision.block(403, "Host is on blocked list");
+            return BLOCKED;
+        }
+        if (this.blockedDomains != null && this.blockedDomains.matches(normalizedHost)) {
+            return BLOCKED;
         }
 
         return null;
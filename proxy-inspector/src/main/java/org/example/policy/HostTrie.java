@@ -0,0 +1,118 @@
+package org.example.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Domain rules in a trie of their labels, last label first: the rules for ads.example.com and
+ * example.org share the root's "com" and "org" children.
+ *
+ * A suffix rule (.example.com) covers the domain and every name below it, a wildcard rule
+ * (*.example.com) only the names below it. A lookup walks the host's labels right to left
+ * in one pass; each label is looked up by a hash computed over the host's own characters,
+ * so no label strings are cut out of the host and nothing is allocated.
+ */
+final class HostTrie {
+    private final Node root;
+
+    /**
+     * @param suffixes  - lower case domains covered with everything below them
+     * @param wildcards - lower case domains whose subdomains are covered, but not themselves
+     */
+    HostTrie(Iterable<String> suffixes, Iterable<String> wildcards) {
+        Builder builder = new Builder();
+        for (String domain : suffixes) {
+            builder.add(domain).suffix = true;
+        }
+        for (String domain : wildcards) {
+            builder.add(domain).wildcard = true;
+        }
+        this.root = builder.build();
+    }
+
+    /**
+     * @param host - lower case, without a port and without the trailing dot of a fully qualified name
+     */
+    boolean matches(String host) {
+        Node node = root;
+        int end = host.length();
+        while (end > 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.child(host, start, end);
+            if (node == null) return false;
+            boolean below = start > 1; // a label on the left, not just a leading dot
+            if (node.suffix || (node.wildcard && below)) return true;
+            end = start - 1;
+        }
+        return false;
+    }
+
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    private static final class Node {
+        // open addressing over the children's labels, the table is at most half full
+        private final String[] labels;
+        private final int[] hashes;
+        private final Node[] children;
+        private final boolean suffix;
+        private final boolean wildcard;
+
+        Node(Map<String, Builder> children, boolean suffix, boolean wildcard) {
+            int size = children.isEmpty() ? 1 : Integer.highestOneBit(children.size() * 2 - 1) << 1;
+            this.labels = new String[size];
+            this.hashes = new int[size];
+            this.children = new Node[size];
+            this.suffix = suffix;
+            this.wildcard = wildcard;
+            for (Map.Entry<String, Builder> child : children.entrySet()) {
+                String label = child.getKey();
+                int h = label.hashCode(); // the same as hash(label, 0, length)
+                int i = h & (size - 1);
+                while (labels[i] != null) i = (i + 1) & (size - 1);
+                labels[i] = label;
+                hashes[i] = h;
+                this.children[i] = child.getValue().build();
+            }
+        }
+
+        Node child(String host, int start, int end) {
+            int h = hash(host, start, end);
+            int len = end - start;
+            int mask = labels.length - 1;
+            for (int i = h & mask; labels[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == h && labels[i].length() == len && host.regionMatches(start, labels[i], 0, len)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Builder {
+        private final Map<String, Builder> children = new HashMap<>();
+        private boolean suffix;
+        private boolean wildcard;
+
+        // the node of domain, created label by label from the right
+        Builder add(String domain) {
+            Builder node = this;
+            int end = domain.length();
+            while (end > 0) {
+                int start = domain.lastIndexOf('.', end - 1) + 1;
+                node = node.children.computeIfAbsent(domain.substring(start, end), label -> new Builder());
+                end = start - 1;
+            }
+            return node;
+        }
+
+        Node build() {
+            return new Node(children, suffix, wildcard);
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package org.example.policy;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Blocks paths per host. The rules of each host are compiled once into a PathTrie, so checking a
+ * request costs one walk over its path however many paths the host has blocked.
+ */
 public class PathBlockRule {
-    private final Map<String, Set<String>> blockedHostPaths; // all the paths blocked for a specific host
+    private final Map<String, PathTrie> blockedHostPaths; // all the paths blocked for a specific host
 
     public PathBlockRule(Map<String, Set<String>> blockedPaths) {
-        Map<String, Set<String>> normalized = new HashMap<>();
+        Map<String, PathTrie> compiled = new HashMap<>();
 
         if (blockedPaths != null && !blockedPaths.isEmpty()) {
             for (Map.Entry<String, Set<String>> entry : blockedPaths.entrySet()) {
@@ -25,7 +28,7 @@ public class PathBlockRule {
                     continue;
                 }
 
-                Set<String> normalizedPaths = new HashSet<>();
+                Map<String, PolicyDecision> decisions = new HashMap<>();
                 for (String path : paths) {
                     if (path == null) {
                         continue;
@@ -47,48 +50,35 @@ public class PathBlockRule {
                         normalizedPath = normalizedPath.substring(0, normalizedPath.length() - 1);
                     }
 
-                    normalizedPaths.add(normalizedPath);
+                    decisions.put(normalizedPath,
+                            PolicyDecision.block(403, "Blocked path " + normalizedPath + " on host " + normalizedHost));
                 }
 
-                if (!normalizedPaths.isEmpty()) {
-                    normalized.put(normalizedHost, Set.copyOf(normalizedPaths));
+                if (!decisions.isEmpty()) {
+                    compiled.put(normalizedHost, new PathTrie(decisions));
                 }
             }
         }
 
-        this.blockedHostPaths = Map.copyOf(normalized); // immutable
+        this.blockedHostPaths = Map.copyOf(compiled); // immutable
     }
 
 
     public PolicyDecision evaluatePathForHost(String host, String path) {
         if (host == null || path == null) return null;
 
+        // trim and toLowerCase return the host itself when it is normalized already
         String normalizedHost = host.trim().toLowerCase();
-        if (normalizedHost.isEmpty()) return null;
-
-        // normalize
-        String normalizedPath = path.trim().toLowerCase();
-        if (normalizedPath.isEmpty()) return null;
-        if (!normalizedPath.startsWith("/")) normalizedPath = "/" + normalizedPath;
-        if (normalizedPath.endsWith("/") && normalizedPath.length() > 1) {
-            normalizedPath = normalizedPath.substring(0, normalizedPath.length() - 1);
+        if (normalizedHost.endsWith(".")) {
+            normalizedHost = normalizedHost.substring(0, normalizedHost.length() - 1); // example.com. is example.com
         }
+        if (normalizedHost.isEmpty()) return null;
 
-        Set<String> blockedPaths = blockedHostPaths.get(normalizedHost);
-        if (blockedPaths == null || blockedPaths.isEmpty()) return null;
-
-        for (String blocked : blockedPaths) {
-            // exact match
-            if (normalizedPath.equals(blocked)) {
-                return PolicyDecision.block(403, "Blocked path " + blocked + " on host " + normalizedHost);
-            }
-            // prefix match, but not /admin matching /administrator
-            if (normalizedPath.startsWith(blocked + "/")) {
-                return PolicyDecision.block(403, "Blocked path " + blocked + " on host " + normalizedHost);
-            }
-        }
+        PathTrie blockedPaths = blockedHostPaths.get(normalizedHost);
+        if (blockedPaths == null) return null;
 
-        return null;
+        // exact match, or a prefix ending at a segment boundary: /admin blocks /admin/users but not /administrator
+        return blockedPaths.match(path);
     }
 
 }
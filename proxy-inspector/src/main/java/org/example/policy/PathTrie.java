@@ -0,0 +1,102 @@
+package org.example.policy;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The blocked paths of one host, compiled into a trie over their characters.
+ *
+ * A lookup walks the request path once, lower casing and normalizing it on the fly (surrounding
+ * whitespace, a missing leading and a trailing '/' are skipped the way PathBlockRule normalizes
+ * its rules), so it costs O(path length) whatever the number of rules and allocates nothing.
+ * A rule matches the path itself and everything below it: /admin blocks /admin and /admin/users
+ * but not /administrator. Every rule ends in a node holding its PolicyDecision, built once.
+ */
+final class PathTrie {
+    private final Node root;
+
+    /**
+     * @param decisions - normalized path (lower case, leading '/', no trailing '/') -> its decision
+     */
+    PathTrie(Map<String, PolicyDecision> decisions) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, PolicyDecision> entry : decisions.entrySet()) {
+            Builder node = builder;
+            String path = entry.getKey();
+            for (int i = 0; i < path.length(); i++) {
+                node = node.children.computeIfAbsent(path.charAt(i), c -> new Builder());
+            }
+            node.decision = entry.getValue();
+        }
+        this.root = builder.build();
+    }
+
+    /**
+     * @return the decision of the shortest rule covering path, null when none does
+     */
+    PolicyDecision match(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) <= ' ') start++; // as String.trim()
+        while (end > start && path.charAt(end - 1) <= ' ') end--;
+        if (start == end) return null;
+
+        boolean slashMissing = path.charAt(start) != '/';
+        if (path.charAt(end - 1) == '/' && (end - start > 1 || slashMissing)) {
+            end--; // /admin/ is looked up as /admin
+        }
+        Node node = root;
+        if (slashMissing) {
+            node = node.child('/'); // admin is looked up as /admin
+            if (node == null) return null;
+            if (node.decision != null && boundary(path, start, end)) return node.decision;
+        }
+
+        for (int i = start; i < end; i++) {
+            node = node.child(Character.toLowerCase(path.charAt(i)));
+            if (node == null) return null;
+            if (node.decision != null && boundary(path, i + 1, end)) return node.decision;
+        }
+        return null;
+    }
+
+    // a rule ending before i covers the path when the path ends there too or goes on with a new segment
+    private static boolean boundary(String path, int i, int end) {
+        return i == end || path.charAt(i) == '/';
+    }
+
+    private static final class Node {
+        private final char[] keys; // sorted
+        private final Node[] children;
+        private final PolicyDecision decision; // null when no rule ends here
+
+        Node(char[] keys, Node[] children, PolicyDecision decision) {
+            this.keys = keys;
+            this.children = children;
+            this.decision = decision;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return (i < 0) ? null : children[i];
+        }
+    }
+
+    private static final class Builder {
+        private final TreeMap<Character, Builder> children = new TreeMap<>();
+        private PolicyDecision decision;
+
+        Node build() {
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                nodes[i] = child.getValue().build();
+                i++;
+            }
+            return new Node(keys, nodes, decision);
+        }
+    }
+}
@@ -30,6 +30,11 @@ public final class PolicyEngine {
             return decision;
         }
 
+        // a CONNECT tunnel is opaque, only its authority is known
+        if (request.isConnect()) {
+            return PolicyDecision.allow();
+        }
+
         // block paths for specific hosts
         decision = pathRule.evaluatePathForHost(targetHost, targetPath);
         if (decision != null && decision.isBlocked()) {
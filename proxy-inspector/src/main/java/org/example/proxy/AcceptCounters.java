@@ -0,0 +1,83 @@
+package org.example.proxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accept counters of the proxy's acceptor threads, one Counter per acceptor.
+ *
+ * The rate is the number of accepts in the last completed one second window, so a burst shows up
+ * in /stats for about a second and an acceptor that stopped accepting drops back to 0.
+ */
+public final class AcceptCounters {
+    private static final long WINDOW_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Counter> counters = new CopyOnWriteArrayList<>();
+
+    public Counter register(String name) {
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public List<Stats> stats() {
+        long now = System.nanoTime();
+        List<Stats> stats = new ArrayList<>(counters.size());
+        for (Counter counter : counters) {
+            stats.add(counter.stats(now));
+        }
+        return stats;
+    }
+
+    /** Updated by a single acceptor thread, read by the API. */
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong accepted = new AtomicLong(0);
+        private volatile long windowStartNs = System.nanoTime();
+        private volatile double lastRate;
+        private volatile long windowCount;
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void accepted() {
+            long now = System.nanoTime();
+            long elapsed = now - windowStartNs;
+            if (elapsed >= WINDOW_NS) {
+                // a window without accepts in between means the rate dropped to 0 meanwhile
+                lastRate = (elapsed < 2 * WINDOW_NS) ? windowCount * (double) WINDOW_NS / elapsed : 0;
+                windowCount = 0;
+                windowStartNs = now;
+            }
+            windowCount++;
+            accepted.incrementAndGet();
+        }
+
+        private Stats stats(long now) {
+            long start = windowStartNs;
+            long count = windowCount;
+            long elapsed = now - start;
+            double rate;
+            if (elapsed < WINDOW_NS) {
+                rate = lastRate;
+            } else if (elapsed < 2 * WINDOW_NS) {
+                // the current window is complete, the acceptor just had no accept since to roll it over
+                rate = count * (double) WINDOW_NS / elapsed;
+            } else {
+                rate = 0;
+            }
+            return new Stats(name, accepted.get(), Math.round(rate * 10) / 10.0);
+        }
+    }
+
+    /**
+     * @param accepted      - connections accepted since start
+     * @param acceptsPerSec - accepts in the last completed second
+     */
+    public record Stats(String name, long accepted, double acceptsPerSec) {
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.proxy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of client connections in flight (waiting for a worker or being served).
+ *
+ * The acceptor asks tryAdmit() for every new connection. Over the limit the connection is shed
+ * right away with a 503 instead of queueing behind the others: under overload a fast rejection
+ * lets the client retry elsewhere, a long queue only serves requests the clients gave up on.
+ *
+ * A connection goes admitted -> started (picked up by a worker or event loop, which ends its
+ * queue wait) -> finished (closed).
+ */
+public final class AdmissionControl {
+    private static final long DRAIN_POLL_MS = 20;
+
+    private final int maxInFlight;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder queueWaitNsTotal = new LongAdder();
+    private final AtomicLong queueWaitNsMax = new AtomicLong(0);
+
+    public AdmissionControl(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return true if the connection may be queued, false if it has to be shed
+     */
+    public boolean tryAdmit() {
+        int count = inFlight.get();
+        while (count < maxInFlight) {
+            if (inFlight.compareAndSet(count, count + 1)) {
+                queued.incrementAndGet();
+                admitted.increment();
+                return true;
+            }
+            count = inFlight.get();
+        }
+        shed.increment();
+        return false;
+    }
+
+    /** An admitted connection was picked up, acceptedNs is when it was accepted. */
+    public void started(long acceptedNs) {
+        long waitNs = System.nanoTime() - acceptedNs;
+        queued.decrementAndGet();
+        started.increment();
+        queueWaitNsTotal.add(waitNs);
+        queueWaitNsMax.accumulateAndGet(waitNs, Math::max);
+    }
+
+    /** An admitted connection was closed. */
+    public void finished() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Waits until every admitted connection finished, or timeoutMs passed.
+     *
+     * @return the connections still in flight (0 when fully drained)
+     */
+    public int awaitDrained(long timeoutMs) throws InterruptedException {
+        long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        int count;
+        while ((count = inFlight.get()) > 0 && System.nanoTime() - deadlineNs < 0) {
+            Thread.sleep(DRAIN_POLL_MS);
+        }
+        return count;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public Stats stats() {
+        long count = started.sum();
+        long avgWaitNs = (count == 0) ? 0 : queueWaitNsTotal.sum() / count;
+        return new Stats(
+                inFlight.get(),
+                queued.get(),
+                maxInFlight,
+                admitted.sum(),
+                shed.sum(),
+                TimeUnit.NANOSECONDS.toMicros(avgWaitNs) / 1000.0,
+                TimeUnit.NANOSECONDS.toMicros(queueWaitNsMax.get()) / 1000.0
+        );
+    }
+
+    /**
+     * Admission counters exposed through /stats.
+     *
+     * @param inFlight        - connections queued or being served right now
+     * @param queued          - connections accepted but not picked up by a worker yet (queue depth)
+     * @param shed            - connections rejected with a 503 because maxInFlight was reached
+     * @param avgQueueWaitMs  - average time from accept to a worker picking the connection up
+     * @param maxQueueWaitMs  - longest such wait so far
+     */
+    public record Stats(int inFlight, int queued, int maxInFlight, long admitted, long shed,
+                        double avgQueueWaitMs, double maxQueueWaitMs) {
+    }
+}
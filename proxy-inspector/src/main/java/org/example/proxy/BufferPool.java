@@ -0,0 +1,72 @@
+package org.example.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recycles the direct ByteBuffers used to relay bodies between sockets.
+ *
+ * Socket I/O from a direct buffer goes straight to the kernel, a heap buffer is first copied into
+ * a temporary direct one by the JDK. Direct buffers are expensive to allocate and only freed by GC,
+ * so they are allocated once and handed back here after every relay.
+ *
+ * At most maxDirect buffers are ever allocated. Beyond that acquire() falls back to plain heap
+ * buffers, which keeps direct memory bounded under connection spikes.
+ */
+public final class BufferPool {
+    private final int bufferSize;
+    private final int maxDirect;
+
+    private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocated = new AtomicInteger(0);
+    private final LongAdder heapFallbacks = new LongAdder();
+
+    public BufferPool(int bufferSize, int maxDirect) {
+        this.bufferSize = bufferSize;
+        this.maxDirect = maxDirect;
+    }
+
+    /** Returns a cleared buffer of bufferSize bytes, direct whenever the budget allows. */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer != null) {
+            return buffer.clear();
+        }
+
+        int count = allocated.get();
+        while (count < maxDirect) {
+            if (allocated.compareAndSet(count, count + 1)) {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+            count = allocated.get();
+        }
+
+        heapFallbacks.increment();
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    /** Hands a buffer from acquire() back. Heap fallbacks are simply dropped. */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect()) {
+            idle.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public Stats stats() {
+        return new Stats(allocated.get(), idle.size(), heapFallbacks.sum());
+    }
+
+    /**
+     * @param directAllocated - direct buffers allocated so far (never more than maxDirect)
+     * @param idle            - direct buffers currently waiting in the pool
+     * @param heapFallbacks   - acquires served with a heap buffer because the direct budget was used up
+     */
+    public record Stats(int directAllocated, int idle, long heapFallbacks) {}
+}
@@ -0,0 +1,135 @@
+package org.example.proxy;
+
+import org.example.cache.BodyTap;
+import org.example.http.ResponseFramer;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Moves a response body from the end server channel to the client channel through a pooled
+ * direct buffer, without passing through a byte[] on the Java heap.
+ *
+ * Writes are coalesced adaptively: the relay keeps reading while the end server has bytes ready
+ * and the buffer has room, and only writes to the client when the buffer is full, the response
+ * is complete, or the end server has nothing more right now (so a slow stream is never held back).
+ * A fast download therefore costs one write per 64 KiB instead of one per read.
+ *
+ * The upstream channel is switched to non-blocking mode for the relay so the read timeout can be
+ * enforced with a selector (blocking channel reads ignore SO_TIMEOUT), and switched back after.
+ */
+public final class ChannelRelay {
+    private final BufferPool buffers;
+    private final Queue<Selector> idleSelectors = new ConcurrentLinkedQueue<>();
+
+    public ChannelRelay(BufferPool buffers) {
+        this.buffers = buffers;
+    }
+
+    /**
+     * @param bytesRead     - bytes read from the end server
+     * @param trailingBytes - the end server sent bytes after the end of the response
+     */
+    record Result(long bytesRead, boolean trailingBytes) {}
+
+    /**
+     * Relays until the framer reports the end of the response (or the end server closes an unframed one).
+     *
+     * @param client   - blocking client channel
+     * @param tap      - gets a copy of the body (for the response cache, coalesced clients), null when none does
+     */
+    Result relay(SocketChannel upstream, SocketChannel client, ResponseFramer framer, int readTimeoutMs,
+                 BodyTap tap) throws IOException {
+        ByteBuffer buf = buffers.acquire();
+        Selector selector = null;
+        SelectionKey key = null;
+        long read = 0;
+        boolean trailing = false;
+
+        upstream.configureBlocking(false);
+        try {
+            while (!framer.isComplete()) {
+                int start = buf.position();
+                int n = upstream.read(buf);
+
+                if (n > 0) {
+                    read += n;
+                    int take = framer.feed(buf, start, start + n);
+                    if (take < n) {
+                        trailing = true; // the connection is out of sync, never reused
+                        buf.position(start + take);
+                    }
+                    if (buf.hasRemaining() && !framer.isComplete()) {
+                        continue; // more may already be waiting, write it in one go
+                    }
+                    writeFully(client, buf, tap);
+
+                } else if (n == 0) {
+                    if (buf.position() > 0) {
+                        writeFully(client, buf, tap); // nothing more right now, don't hold back what we have
+                        continue;
+                    }
+                    if (selector == null) {
+                        selector = acquireSelector();
+                        key = upstream.register(selector, SelectionKey.OP_READ);
+                    }
+                    if (selector.select(readTimeoutMs) == 0) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                    selector.selectedKeys().clear();
+
+                } else {
+                    if (!framer.closed()) {
+                        throw new IOException("Upstream closed before the end of the response body");
+                    }
+                    break;
+                }
+            }
+            writeFully(client, buf, tap);
+            return new Result(read, trailing);
+
+        } finally {
+            buffers.release(buf);
+            if (key != null) {
+                key.cancel();
+                selector.selectNow(); // deregisters the channel, required before it can block again
+                idleSelectors.offer(selector);
+            }
+            if (upstream.isOpen()) {
+                upstream.configureBlocking(true); // back to stream use (and the pool)
+            }
+        }
+    }
+
+    public void shutdown() {
+        Selector selector;
+        while ((selector = idleSelectors.poll()) != null) {
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private Selector acquireSelector() throws IOException {
+        Selector selector = idleSelectors.poll();
+        return (selector != null) ? selector : Selector.open();
+    }
+
+    private static void writeFully(SocketChannel client, ByteBuffer buf, BodyTap tap) throws IOException {
+        buf.flip();
+        if (tap != null) {
+            tap.append(buf);
+        }
+        while (buf.hasRemaining()) {
+            client.write(buf);
+        }
+        buf.clear();
+    }
+}
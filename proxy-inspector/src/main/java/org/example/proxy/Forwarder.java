@@ -1,71 +1,673 @@
 package org.example.proxy;
 
+import org.example.cache.BodyRecorder;
+import org.example.cache.BodyTap;
+import org.example.cache.CachedResponse;
+import org.example.cache.Flight;
+import org.example.cache.ResponseCache;
+import org.example.http.BodyFramer;
 import org.example.http.HttpRequest;
 import org.example.http.HttpSerializer;
+import org.example.http.ResponseFramer;
+import org.example.http.ResponseHead;
+import org.example.log.CacheStatus;
 import org.example.log.Transaction;
+import org.example.upstream.AdaptiveTimeouts;
+import org.example.upstream.ConnectRacer;
+import org.example.upstream.DnsCache;
+import org.example.upstream.HedgePolicy;
+import org.example.upstream.PooledConnection;
+import org.example.upstream.UpstreamPool;
 
 import java.io.*;
-import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Forwarder {
+    private static final int MAX_RESPONSE_HEAD_BYTES = 64 * 1024;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
     private final HttpRequest request;
+    private final String host; // where the request goes: its Host, or the reverse proxy's backend
+    private final int port;
     private final HttpSerializer serializer;
+    private final UpstreamPool pool;
+    private final DnsCache dns;
+    private final ChannelRelay relay;
+    private final AdaptiveTimeouts timeouts;
+    private final ResponseCache cache;
+    private final ResponseCompression compression;
+    private final HedgePolicy hedging;
+
+    // per forward state, a Forwarder handles exactly one request
+    private final byte[] buffer = new byte[8192];
+    private int pos;
+    private int filled;
+    private long bytesFromServer;
+    private long requestBodyBytes;
+    private boolean trailingBytes;
+    private int readTimeoutMs;
+    private BodyRecorder recorder; // copies the body for the response cache, null when it is not stored
+    private BodyTap tap; // the recorder and the coalesced clients' flight, null when neither wants the body
+    private int statusCode = -1;
+    private long firstByteNs = -1;
+    private long sentNs;
+    private Hedge hedge; // the second attempt once one went out
 
-    public Forwarder(HttpRequest request, HttpSerializer serializer) {
+    public Forwarder(HttpRequest request, String host, int port, HttpSerializer serializer, UpstreamPool pool,
+                     DnsCache dns, ChannelRelay relay, AdaptiveTimeouts timeouts, ResponseCache cache,
+                     ResponseCompression compression, HedgePolicy hedging) {
         this.request = request;
+        this.host = host;
+        this.port = port;
         this.serializer = serializer;
+        this.pool = pool;
+        this.dns = dns;
+        this.relay = relay;
+        this.timeouts = timeouts;
+        this.cache = cache;
+        this.compression = compression;
+        this.hedging = hedging;
     }
 
-
-    public void forwardToServer(OutputStream clientOut, Transaction transaction) {
-        String host = request.getHost();
-        int port = request.getPort();
+    /**
+     * Forwards the request and relays the response back to the client.
+     *
+     * The end server connection comes from the UpstreamPool when possible and goes back into it
+     * when the response ended cleanly on its message boundary.
+     *
+     * A request body is streamed from clientIn to the end server through one fixed buffer,
+     * so uploads of any size use constant memory. clientIn must support mark/reset
+     * (a BufferedInputStream), it is left positioned exactly after the body.
+     *
+     * When both sockets were opened as channels the response body is moved by the ChannelRelay
+     * (pooled direct buffer, coalesced writes), otherwise through the streams.
+     *
+     * Connect and read timeouts are the host's current AdaptiveTimeouts, and the connect time
+     * and time to the first response byte of this request feed back into them.
+     *
+     * The HedgePolicy decides on second attempts: a failed connect may be retried, and a GET/HEAD
+     * without a response head by the host's hedging percentile is sent again on another connection,
+     * the first of the two heads to arrive is relayed.
+     *
+     * A storable response is copied into the ResponseCache while it is relayed. With a stale
+     * cached response the request carries its validators; a 304 refreshes the cached response,
+     * which is then served instead.
+     *
+     * When the request leads a Flight, the response head and body are shared with the clients
+     * following it as they arrive.
+     *
+     * An uncompressed text response the client accepts gzip or deflate for is encoded on the way
+     * (see ResponseCompression). It goes through the streams then, the cache and the flight
+     * still get the end server's bytes.
+     *
+     * @param keepClientAlive - whether the client connection should stay open after this response
+     * @param stale           - the cached response to revalidate, null when there is none
+     * @param flight          - the flight this request leads, null when it is not coalesced
+     * @return true if the client connection can be reused, i.e. keepClientAlive was requested
+     *         and the response carries its own framing (so the client does not rely on us closing)
+     */
+    public boolean forwardToServer(Socket client, InputStream clientIn, Transaction transaction, boolean keepClientAlive,
+                                   CachedResponse stale, Flight flight) {
+        // the client's own conditional request is passed through as is, it is not ours to answer
+        boolean revalidate = stale != null && stale.hasValidators() && "GET".equalsIgnoreCase(request.getMethod())
+                && request.getHeader("If-None-Match") == null && request.getHeader("If-Modified-Since") == null;
 
         // serialize request
-        String rawRequest = serializer.serializeRequest(request);
+        String rawRequest = revalidate
+                ? serializer.serializeRequest(request, pool.isEnabled(), stale.validators())
+                : serializer.serializeRequest(request, pool.isEnabled());
         if (rawRequest == null || rawRequest.isEmpty()) {
             System.err.println("Could not serialize request");
-            return;
+            return false;
         }
+        byte[] rawBytes = rawRequest.getBytes(StandardCharsets.UTF_8);
+        BodyFramer requestBody = BodyFramer.forRequest(request);
 
-        int connectTimeoutMs = 3_000;
-        int readTimeoutMs = 15_000;
+        PooledConnection connection = null;
+        boolean upstreamReusable = false;
+        readTimeoutMs = timeouts.readTimeoutMs(host);
+        hedging.deposit();
+        int hedgeAfterMs = requestBody.isComplete() ? hedging.hedgeAfterMs(host, request.getMethod()) : 0;
+        if (hedgeAfterMs >= readTimeoutMs) {
+            hedgeAfterMs = 0; // the first attempt times out before a hedge would go
+        }
+
+        try {
+            OutputStream clientOut = client.getOutputStream();
+            connection = pool.acquire(host, port);
+            if (connection == null) {
+                connection = connect(host, port, transaction);
+            } else {
+                connection.getSocket().setSoTimeout(readTimeoutMs); // the host's timeout may have moved since
+            }
 
-        try (Socket targetSocket = new Socket()) {
-            SocketAddress address = new InetSocketAddress(host, port);
+            // 1) send request to end server and wait for the response head
+            long requestMs = cache.now();
+            ResponseFramer framer = null;
+            IOException failed = null;
+            try {
+                framer = exchange(connection, rawBytes, requestBody, clientIn, clientOut, hedgeAfterMs);
+            } catch (IOException e) {
+                // a timeout means the server is slow, not that the pooled connection went stale. The server
+                // may have processed the request before the connection failed, so only idempotent ones are resent
+                if (hedge != null || !connection.isReused() || bytesFromServer > 0 || requestBodyBytes > 0
+                        || e instanceof SocketTimeoutException || !request.isIdempotent()) {
+                    failed = e;
+                } else {
+                    // most likely the server closed the pooled connection right after our liveness check, retry once on a fresh one
+                    pool.release(connection, false);
+                    connection = connect(host, port, transaction);
+                    try {
+                        framer = exchange(connection, rawBytes, requestBody, clientIn, clientOut, hedgeAfterMs);
+                    } catch (IOException retryFailed) {
+                        failed = retryFailed;
+                    }
+                }
+            }
+            if (hedge == null && failed != null) {
+                throw failed;
+            }
+            if (hedge != null) {
+                // the first response head to arrive is relayed, the other attempt is closed
+                transaction.setHedged(false);
+                if (framer == null || !hedge.firstWins()) {
+                    if (bytesFromServer == 0) {
+                        timeouts.recordFirstByte(host, System.nanoTime() - sentNs); // at least this slow
+                    }
+                    pool.release(connection, false);
+                    connection = null;
+                    framer = hedge.await(failed);
+                    connection = hedge.connection;
+                    adopt(hedge.attempt);
+                    hedging.hedgeWon();
+                    transaction.setHedged(true);
+                }
+            }
+            transaction.setUpstreamReused(connection.isReused());
+            long responseMs = cache.now();
 
-            targetSocket.connect(address, connectTimeoutMs); // connect and timeout after 3 seconds if not able to
-            targetSocket.setSoTimeout(readTimeoutMs); // timeout after 15 seconds, avoids hanging forever
+            ResponseHead head = framer.getHead();
+            cache.invalidate(request, head);
+            if (revalidate && head.getStatusCode() == 304) {
+                // the cached body is still current: refresh the entry and serve it, the 304 has no body
+                CachedResponse fresh = cache.revalidated(stale, head, requestMs, responseMs);
+                if (flight != null) {
+                    flight.pass(); // the followers find the refreshed response in the cache
+                }
+                cache.serve(fresh, request, client, keepClientAlive, compression, transaction);
+                upstreamReusable = pos == filled && serverAllowsReuse(head);
 
-            OutputStream serverOut = targetSocket.getOutputStream(); // used for sending to server
-            InputStream serverIn = targetSocket.getInputStream(); // used for listening to server
+                transaction.setCacheStatus(CacheStatus.REVALIDATED);
+                transaction.setBytesFromServer(bytesFromServer);
+                transaction.setRequestBodyBytes(requestBodyBytes);
+                transaction.setEndNs(System.nanoTime());
+                return keepClientAlive;
+            }
+            recorder = cache.startRecording(request, head, framer.getBodyMode(), requestMs, responseMs);
+            if (flight != null) {
+                flight.start(head, framer.getBodyMode());
+            }
+            tap = BodyTap.both(recorder, flight);
+            String coding = compression.prepare(request, head, framer.getBodyMode()); // after the copies above
 
-            // 1) send request to end server
-            byte[] rawBytes = rawRequest.getBytes(StandardCharsets.UTF_8);
-            serverOut.write(rawBytes); // send raw bytes to server
-            serverOut.flush();  // flush buffered bytes
+            // 2) send the response head with our own hop-by-hop headers back to the client
+            boolean untilClose = framer.getBodyMode() == BodyFramer.Mode.UNTIL_CLOSE;
+            boolean clientReusable = keepClientAlive && (!untilClose || coding != null); // encoded bodies are chunked
+            rewriteHopHeaders(head, clientReusable);
+            clientOut.write(head.toBytes());
 
-            // 2) send response from server back to client
-            byte[] buffer = new byte[8192];
-            int n;
-            long bytesFromServer = 0;
-            while ((n = serverIn.read(buffer)) != -1) {
-                bytesFromServer += n;
-                clientOut.write(buffer, 0, n);
-                clientOut.flush();
+            // 3) relay the body, stop exactly at the end of the message
+            SocketChannel clientChannel = client.getChannel();
+            SocketChannel serverChannel = connection.getSocket().getChannel();
+            if (coding != null) {
+                relayEncoded(connection.getInputStream(), clientOut, framer, coding, transaction);
+            } else if (relay != null && clientChannel != null && serverChannel != null) {
+                relayChannels(serverChannel, clientChannel, clientOut, framer);
+            } else {
+                relayBody(connection.getInputStream(), clientOut, framer);
+            }
+            upstreamReusable = !trailingBytes && !untilClose && serverAllowsReuse(head);
+            if (recorder != null) {
+                cache.store(recorder); // the whole body went through
+            }
+            if (flight != null) {
+                flight.complete();
             }
 
             transaction.setBytesFromServer(bytesFromServer); // set response bytes to transaction object
+            transaction.setRequestBodyBytes(requestBodyBytes);
             transaction.setEndNs(System.nanoTime()); // set end time for response
 
+            return clientReusable;
 
         } catch (IOException e) {
+            transaction.setRequestBodyBytes(requestBodyBytes);
             throw new RuntimeException("Failed to forward to " + host + ":" + port, e);
+        } finally {
+            pool.release(connection, upstreamReusable);
+            if (recorder != null) {
+                recorder.discard(); // a no-op once stored, otherwise drops a partial body (and its spill file)
+            }
         }
     }
 
-}
+    /** Status of the end server's final response, -1 until its head arrived. */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /** From the request being sent to the first response byte, -1 when nothing came back. */
+    public long getFirstByteNs() {
+        return firstByteNs;
+    }
+
+    /**
+     * Opens the end server connection of a CONNECT tunnel. The channel is never pooled,
+     * it belongs to the tunnel from here on.
+     */
+    public SocketChannel openTunnel(Transaction transaction) {
+        try {
+            return race(host, port, transaction).channel();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to forward to " + host + ":" + port, e);
+        }
+    }
+
+    private PooledConnection connect(String host, int port, Transaction transaction) throws IOException {
+        // channel backed, so the body can be relayed channel to channel
+        SocketChannel channel = race(host, port, transaction).channel();
+        Socket targetSocket = channel.socket();
+        try {
+            targetSocket.setSoTimeout(readTimeoutMs); // avoids hanging forever on a silent server
+            return pool.adopt(host, port, channel);
+        } catch (IOException e) {
+            targetSocket.close();
+            throw e;
+        }
+    }
+
+    // a connect that failed is tried again while the HedgePolicy allows it, nothing was sent yet
+    private ConnectRacer.Connected race(String host, int port, Transaction transaction) throws IOException {
+        for (int failed = 1; ; failed++) {
+            try {
+                return raceOnce(host, port, transaction);
+            } catch (UnknownHostException e) {
+                throw e; // resolves the same way the next time
+            } catch (IOException e) {
+                if (!hedging.tryRetry(failed)) {
+                    throw e;
+                }
+                if (transaction != null) {
+                    transaction.addRetry();
+                }
+            }
+        }
+    }
+
+    // every address of the host races, the whole race times out after the host's connect timeout
+    private ConnectRacer.Connected raceOnce(String host, int port, Transaction transaction) throws IOException {
+        ConnectRacer.Connected connected;
+        try {
+            connected = ConnectRacer.connect(dns.resolveAll(host), port, timeouts.connectTimeoutMs(host));
+        } catch (SocketTimeoutException e) {
+            timeouts.recordConnectTimeout(host);
+            throw e;
+        }
+        timeouts.recordConnect(host, connected.connectNs());
+        if (transaction != null) {
+            transaction.setUpstreamConnect(connected.family(), connected.connectNs()); // null for a hedged attempt
+        }
+        return connected;
+    }
+
+    /**
+     * Sends the request (head and body) and reads up to the final response head. Interim 1xx
+     * responses (100 Continue, 103 Early Hints) are passed straight through to the client.
+     * Bytes read past the head stay in buffer[pos, filled).
+     *
+     * @param hedgeAfterMs - when nothing came back after this long a Hedge is started (if the
+     *                       budget allows) and the read goes on for the rest of the read timeout; 0 = never
+     */
+    private ResponseFramer exchange(PooledConnection connection,
+                                    byte[] rawRequest,
+                                    BodyFramer requestBody,
+                                    InputStream clientIn,
+                                    OutputStream clientOut,
+                                    int hedgeAfterMs) throws IOException {
+        OutputStream serverOut = connection.getOutputStream(); // used for sending to server
+        InputStream serverIn = connection.getInputStream(); // used for listening to server
+
+        serverOut.write(rawRequest); // send raw bytes to server
+        if (!requestBody.isComplete()) {
+            sendBody(clientIn, clientOut, serverOut, requestBody);
+        }
+        serverOut.flush();  // flush buffered bytes
+        sentNs = System.nanoTime();
+
+        Socket socket = connection.getSocket();
+        boolean armed = hedgeAfterMs > 0 && hedge == null;
+        boolean shortened = armed; // the socket's timeout is not readTimeoutMs until the first byte
+        if (armed) {
+            socket.setSoTimeout(hedgeAfterMs);
+        }
+        ResponseFramer framer = new ResponseFramer(request.getMethod(), MAX_RESPONSE_HEAD_BYTES);
+        pos = 0;
+        filled = 0;
+        while (true) {
+            if (pos == filled) {
+                int n;
+                try {
+                    n = serverIn.read(buffer);
+                } catch (SocketTimeoutException e) {
+                    if (armed) {
+                        armed = false;
+                        socket.setSoTimeout(readTimeoutMs - hedgeAfterMs);
+                        if (hedging.tryHedge()) {
+                            hedge = new Hedge(rawRequest, connection);
+                            hedging.execute(hedge);
+                        }
+                        continue;
+                    }
+                    timeouts.recordReadTimeout(host);
+                    throw e;
+                }
+                if (n == -1) {
+                    throw new IOException("Upstream closed before sending a complete response head");
+                }
+                if (shortened) {
+                    armed = false;
+                    shortened = false;
+                    socket.setSoTimeout(readTimeoutMs);
+                }
+                if (bytesFromServer == 0) {
+                    firstByteNs = System.nanoTime() - sentNs;
+                    timeouts.recordFirstByte(host, firstByteNs);
+                }
+                bytesFromServer += n;
+                pos = 0;
+                filled = n;
+            }
+
+            pos += framer.feed(buffer, pos, filled - pos);
+
+            ResponseHead head = framer.pollHead();
+            if (head == null) continue;
+            if (framer.isHeadComplete()) {
+                statusCode = head.getStatusCode();
+                return framer;
+            }
+            clientOut.write(head.toBytes()); // interim, the real response follows
+        }
+    }
 
+    /**
+     * Copies the request body from the client to the end server as it arrives, chunked bodies
+     * keep their chunk framing. Reads never go past the end of the body: whatever follows
+     * (a pipelined request) is pushed back into clientIn.
+     */
+    private void sendBody(InputStream clientIn, OutputStream clientOut, OutputStream serverOut, BodyFramer body) throws IOException {
+        if (request.expectsContinue()) {
+            // Expect is not forwarded, so tell the client to go ahead ourselves
+            clientOut.write(CONTINUE);
+            clientOut.flush();
+        }
+
+        while (!body.isComplete()) {
+            clientIn.mark(buffer.length);
+            int n = clientIn.read(buffer);
+            if (n == -1) {
+                throw new IOException("Client closed before the end of the request body");
+            }
+
+            int take = body.feed(buffer, 0, n);
+            if (take < n) {
+                clientIn.reset();
+                clientIn.skipNBytes(take);
+            }
+            serverOut.write(buffer, 0, take);
+            requestBodyBytes += take;
+        }
+    }
+
+    // the hedge's response head and what it read past it, the body is relayed from its connection
+    private void adopt(Forwarder attempt) {
+        System.arraycopy(attempt.buffer, 0, buffer, 0, attempt.filled);
+        pos = attempt.pos;
+        filled = attempt.filled;
+        bytesFromServer += attempt.bytesFromServer;
+        statusCode = attempt.statusCode;
+        firstByteNs = attempt.firstByteNs;
+    }
+
+    /**
+     * The second attempt of a hedged request: the same request on another connection, with a
+     * Forwarder of its own on one of the HedgePolicy's threads. Interim responses it gets are
+     * dropped. The attempt that completes its response head first claims the win and closes the
+     * other one's socket, which fails the loser wherever it is blocked.
+     */
+    private final class Hedge implements Runnable {
+        private static final int OPEN = 0;
+        private static final int FIRST = 1;
+        private static final int SECOND = 2;
+
+        private final Forwarder attempt;
+        private final byte[] rawRequest;
+        private final PooledConnection first;
+        private final AtomicInteger winner = new AtomicInteger(OPEN);
+        private final CompletableFuture<ResponseFramer> head = new CompletableFuture<>();
+        private volatile PooledConnection connection;
+
+        Hedge(byte[] rawRequest, PooledConnection first) {
+            this.attempt = new Forwarder(request, host, port, serializer, pool, dns, relay, timeouts, cache,
+                    compression, hedging);
+            this.attempt.readTimeoutMs = readTimeoutMs;
+            this.rawRequest = rawRequest;
+            this.first = first;
+        }
+
+        @Override
+        public void run() {
+            PooledConnection own = null;
+            try {
+                own = pool.acquire(host, port);
+                if (own == null) {
+                    own = attempt.connect(host, port, null);
+                } else {
+                    own.getSocket().setSoTimeout(readTimeoutMs);
+                }
+                connection = own;
+                if (winner.get() == FIRST) {
+                    throw new IOException("Hedged attempt no longer needed");
+                }
+                ResponseFramer framer = attempt.exchange(own, rawRequest, BodyFramer.forRequest(request), null,
+                        OutputStream.nullOutputStream(), 0);
+                if (!winner.compareAndSet(OPEN, SECOND)) {
+                    throw new IOException("Hedged attempt lost");
+                }
+                closeSocket(first);
+                head.complete(framer);
+            } catch (IOException | RuntimeException e) {
+                pool.release(own, false);
+                head.completeExceptionally(e);
+            }
+        }
+
+        /** The first attempt's head is complete: true when that beat the hedge, which is closed then. */
+        boolean firstWins() {
+            if (!winner.compareAndSet(OPEN, FIRST)) {
+                return false;
+            }
+            PooledConnection own = connection;
+            if (own != null) {
+                closeSocket(own); // its thread releases it
+            }
+            return true;
+        }
+
+        /**
+         * Waits for the hedge's response head once the first attempt lost or failed.
+         *
+         * @param firstFailure - why the first attempt failed, added to the hedge's failure; null when it lost
+         */
+        ResponseFramer await(IOException firstFailure) throws IOException {
+            try {
+                return head.get();
+            } catch (ExecutionException e) {
+                IOException failure = (e.getCause() instanceof IOException io) ? io : new IOException(e.getCause());
+                if (firstFailure != null) {
+                    firstFailure.addSuppressed(failure);
+                    throw firstFailure;
+                }
+                throw failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the hedged attempt");
+            }
+        }
+
+        private void closeSocket(PooledConnection connection) {
+            try {
+                connection.getSocket().close();
+            } catch (IOException ignored) {
+                // it is being given up on anyway
+            }
+        }
+    }
+
+    private void relayChannels(SocketChannel serverChannel,
+                               SocketChannel clientChannel,
+                               OutputStream clientOut,
+                               ResponseFramer framer) throws IOException {
+        writeLeftoverBody(clientOut, framer);
+        if (framer.isComplete() || trailingBytes) {
+            return;
+        }
+
+        ChannelRelay.Result result = relay.relay(serverChannel, clientChannel, framer, readTimeoutMs, tap);
+        bytesFromServer += result.bytesRead();
+        trailingBytes = result.trailingBytes();
+    }
+
+    /**
+     * Stream fallback. Reads are coalesced like in the ChannelRelay: bytes go out when the
+     * buffer is full, the response is complete, or nothing more is immediately available.
+     */
+    private void relayBody(InputStream serverIn, OutputStream clientOut, ResponseFramer framer) throws IOException {
+        writeLeftoverBody(clientOut, framer);
+
+        int len = 0;
+        while (!framer.isComplete()) {
+            int n = serverIn.read(buffer, len, buffer.length - len);
+            if (n == -1) {
+                if (!framer.closed()) {
+                    throw new IOException("Upstream closed before the end of the response body");
+                }
+                break;
+            }
+            bytesFromServer += n;
+
+            int take = framer.feed(buffer, len, n);
+            trailingBytes = take < n; // anything after the message means the connection is out of sync
+            len += take;
+
+            if (len == buffer.length || framer.isComplete() || serverIn.available() == 0) {
+                write(clientOut, len);
+                len = 0;
+            }
+        }
+        if (len > 0) {
+            write(clientOut, len);
+        }
+        clientOut.flush();
+    }
+
+    /**
+     * Like relayBody, with the body going through a ResponseEncoder. Each time the end server has
+     * nothing more right now, what was compressed so far is flushed to the client.
+     */
+    private void relayEncoded(InputStream serverIn, OutputStream clientOut, ResponseFramer framer, String coding,
+                              Transaction transaction) throws IOException {
+        ResponseEncoder encoder = compression.newEncoder(coding, clientOut);
+        try {
+            if (pos < filled) {
+                int take = framer.feed(buffer, pos, filled - pos);
+                if (tap != null) {
+                    tap.append(buffer, pos, take);
+                }
+                encoder.write(buffer, pos, take);
+                trailingBytes = take < filled - pos;
+            }
+            while (!framer.isComplete()) {
+                int n = serverIn.read(buffer);
+                if (n == -1) {
+                    if (!framer.closed()) {
+                        throw new IOException("Upstream closed before the end of the response body");
+                    }
+                    break;
+                }
+                bytesFromServer += n;
+
+                int take = framer.feed(buffer, 0, n);
+                trailingBytes = take < n;
+                if (tap != null) {
+                    tap.append(buffer, 0, take);
+                }
+                encoder.write(buffer, 0, take);
+                if (!framer.isComplete() && serverIn.available() == 0) {
+                    encoder.flush();
+                }
+            }
+            encoder.finish();
+        } finally {
+            encoder.close();
+            transaction.setEncoding(coding, encoder.originBytes(), encoder.wireBytes());
+        }
+    }
+
+    // body bytes that arrived together with the head
+    private void writeLeftoverBody(OutputStream clientOut, ResponseFramer framer) throws IOException {
+        if (pos < filled) {
+            int take = framer.feed(buffer, pos, filled - pos);
+            if (tap != null) {
+                tap.append(buffer, pos, take);
+            }
+            clientOut.write(buffer, pos, take);
+            trailingBytes = take < filled - pos;
+        }
+    }
+
+    private void write(OutputStream clientOut, int len) throws IOException {
+        if (tap != null) {
+            tap.append(buffer, 0, len);
+        }
+        clientOut.write(buffer, 0, len);
+    }
+
+    // HTTP/1.1 servers keep the connection unless they say close, HTTP/1.0 ones only with keep-alive
+    private boolean serverAllowsReuse(ResponseHead head) {
+        String connection = head.getHeader("Connection");
+        String value = (connection == null) ? "" : connection.toLowerCase();
+        if (value.contains("close")) {
+            return false;
+        }
+        return "HTTP/1.1".equalsIgnoreCase(head.getVersion()) || value.contains("keep-alive");
+    }
+
+    /**
+     * Connection related headers from the end server describe the proxy -> server hop,
+     * the client gets our own decision instead.
+     */
+    private void rewriteHopHeaders(ResponseHead head, boolean keepAlive) {
+        head.removeHeader("Keep-Alive");
+        head.removeHeader("Proxy-Connection");
+        head.setHeader("Connection", keepAlive ? "keep-alive" : "close");
+    }
+
+}
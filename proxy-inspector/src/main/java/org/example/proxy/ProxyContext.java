@@ -0,0 +1,140 @@
+package org.example.proxy;
+
+import org.example.cache.Coalescer;
+import org.example.cache.ResponseCache;
+import org.example.log.TransactionStore;
+import org.example.policy.PolicyEngine;
+import org.example.upstream.AdaptiveTimeouts;
+import org.example.upstream.Bulkheads;
+import org.example.upstream.CircuitBreakers;
+import org.example.upstream.DnsCache;
+import org.example.upstream.HedgePolicy;
+import org.example.upstream.LoadBalancer;
+import org.example.upstream.UpstreamPool;
+import org.example.util.Config;
+
+/**
+ * The long-lived components of a running proxy.
+ *
+ * Created once in Main and shared by the proxy engines (which use them for every request)
+ * and the API server (which reads their transactions and counters).
+ */
+public final class ProxyContext {
+    private static final int RELAY_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_DIRECT_BUFFERS = 1024; // 64 MiB of direct memory at most
+
+    private final Config config;
+    private final TransactionStore store;
+    private final PolicyEngine policyEngine;
+    private final UpstreamPool upstreamPool;
+    private final DnsCache dnsCache;
+    private final BufferPool bufferPool;
+    private final ChannelRelay channelRelay;
+    private final AdmissionControl admission;
+    private final AcceptCounters acceptCounters;
+    private final Bulkheads bulkheads;
+    private final AdaptiveTimeouts timeouts;
+    private final ResponseCache cache;
+    private final Coalescer coalescer;
+    private final ResponseCompression compression;
+    private final CircuitBreakers breakers;
+    private final LoadBalancer loadBalancer;
+    private final HedgePolicy hedging;
+
+    public ProxyContext(Config config) {
+        this.config = config;
+        this.store = new TransactionStore(config.getMaxTransactions());
+        this.policyEngine = new PolicyEngine(config);
+        this.upstreamPool = new UpstreamPool(config.getUpstreamOptions());
+        this.dnsCache = new DnsCache(config.getUpstreamOptions());
+        this.bufferPool = new BufferPool(RELAY_BUFFER_BYTES, MAX_DIRECT_BUFFERS);
+        this.channelRelay = new ChannelRelay(bufferPool);
+        this.admission = new AdmissionControl(config.getServerOptions().maxInFlight());
+        this.acceptCounters = new AcceptCounters();
+        this.bulkheads = new Bulkheads(config.getBulkheadOptions());
+        this.timeouts = new AdaptiveTimeouts(config.getTimeoutOptions());
+        this.cache = new ResponseCache(config.getCacheOptions());
+        this.coalescer = new Coalescer(config.getCacheOptions().coalesce(), cache);
+        this.compression = new ResponseCompression(config.getCompressionOptions());
+        this.breakers = new CircuitBreakers(config.getBreakerOptions(), dnsCache, timeouts);
+        this.loadBalancer = new LoadBalancer(config.getReverseProxyOptions(), timeouts, breakers);
+        this.hedging = new HedgePolicy(config.getHedgeOptions(), timeouts);
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public TransactionStore getStore() {
+        return store;
+    }
+
+    public PolicyEngine getPolicyEngine() {
+        return policyEngine;
+    }
+
+    public UpstreamPool getUpstreamPool() {
+        return upstreamPool;
+    }
+
+    public DnsCache getDnsCache() {
+        return dnsCache;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public ChannelRelay getChannelRelay() {
+        return channelRelay;
+    }
+
+    public AdmissionControl getAdmission() {
+        return admission;
+    }
+
+    public AcceptCounters getAcceptCounters() {
+        return acceptCounters;
+    }
+
+    public Bulkheads getBulkheads() {
+        return bulkheads;
+    }
+
+    public AdaptiveTimeouts getTimeouts() {
+        return timeouts;
+    }
+
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    public Coalescer getCoalescer() {
+        return coalescer;
+    }
+
+    public ResponseCompression getCompression() {
+        return compression;
+    }
+
+    public CircuitBreakers getBreakers() {
+        return breakers;
+    }
+
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public HedgePolicy getHedging() {
+        return hedging;
+    }
+
+    public void shutdown() {
+        upstreamPool.shutdown();
+        dnsCache.shutdown();
+        channelRelay.shutdown();
+        cache.shutdown();
+        breakers.shutdown();
+        hedging.shutdown();
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.proxy;
+
+import org.example.cache.ResponseCache;
+import org.example.http.BodyFramer;
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+import org.example.log.Transaction;
+import org.example.util.CompressionOptions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Decides which responses are gzip / deflate encoded on their way to the client (see ResponseEncoder).
+ *
+ * A response is encoded when the client accepts gzip or deflate, the end server sent it
+ * uncompressed (no Content-Encoding) with Content-Length or until close, its type is text-like,
+ * and it is at least minBytes long. The encoded response is chunked, so it keeps the client
+ * connection alive even when the end server's body ran until close.
+ *
+ * Responses with Cache-Control: no-transform, partial content, and anything to or from an
+ * HTTP/1.0 peer (no chunked framing) pass through untouched, as do chunked responses: their
+ * bytes are relayed as they came, framing included, and re-encoding them would mean de-chunking.
+ *
+ * The cache stores responses as the end server sent them and encodes its hits through the same
+ * decision, so a hit carries the same Vary, ETag and coding as the miss before it.
+ */
+public final class ResponseCompression implements ResponseCache.Encoding {
+    private final CompressionOptions options;
+
+    public ResponseCompression(CompressionOptions options) {
+        this.options = options;
+    }
+
+    public boolean isEnabled() {
+        return options.enabled();
+    }
+
+    /**
+     * Picks the coding for a response and rewrites its head for it: chunked, Content-Encoding,
+     * a weak ETag (it names the uncompressed bytes). A response that could be encoded for
+     * another client gets Vary: Accept-Encoding either way.
+     *
+     * @return "gzip" or "deflate", null when the response is relayed as it is
+     */
+    public String prepare(HttpRequest request, ResponseHead head, BodyFramer.Mode mode) {
+        if (!options.enabled() || !isEncodable(request, head, mode)) {
+            return null;
+        }
+        addVary(head);
+        String coding = accepted(request.getHeader("Accept-Encoding"));
+        if (coding == null) {
+            return null;
+        }
+        head.removeHeader("Content-Length");
+        head.removeHeader("Accept-Ranges"); // byte ranges of the encoded body are not something we can serve
+        head.setHeader("Transfer-Encoding", "chunked");
+        head.setHeader("Content-Encoding", coding);
+        String etag = head.getHeader("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            head.setHeader("ETag", "W/" + etag);
+        }
+        return coding;
+    }
+
+    /** A stored response: the cache keeps bodies with a Content-Length. */
+    @Override
+    public String prepare(HttpRequest request, ResponseHead head) {
+        return prepare(request, head, BodyFramer.Mode.FIXED);
+    }
+
+    @Override
+    public void write(String coding, ByteBuffer body, OutputStream client, Transaction transaction) throws IOException {
+        ResponseEncoder encoder = newEncoder(coding, client);
+        try {
+            if (body.hasArray()) {
+                encoder.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } else {
+                byte[] chunk = new byte[8192]; // a direct or mapped buffer is deflated from a heap copy
+                while (body.hasRemaining()) {
+                    int n = Math.min(chunk.length, body.remaining());
+                    body.get(chunk, 0, n);
+                    encoder.write(chunk, 0, n);
+                }
+            }
+            encoder.finish();
+        } finally {
+            encoder.close();
+            transaction.setEncoding(coding, encoder.originBytes(), encoder.wireBytes());
+        }
+    }
+
+    ResponseEncoder newEncoder(String coding, OutputStream client) {
+        return new ResponseEncoder(coding, options.level(), client);
+    }
+
+    private boolean isEncodable(HttpRequest request, ResponseHead head, BodyFramer.Mode mode) {
+        if (mode != BodyFramer.Mode.FIXED && mode != BodyFramer.Mode.UNTIL_CLOSE) {
+            return false;
+        }
+        if (head.getStatusCode() != 200 || !"HTTP/1.1".equalsIgnoreCase(head.getVersion())
+                || !"HTTP/1.1".equalsIgnoreCase(request.getVersion())) {
+            return false;
+        }
+        String encoding = head.getHeader("Content-Encoding");
+        if ((encoding != null && !encoding.trim().equalsIgnoreCase("identity"))
+                || head.getHeader("Transfer-Encoding") != null || head.getHeader("Content-Range") != null) {
+            return false;
+        }
+        String cacheControl = head.getHeaderValues("Cache-Control");
+        if (cacheControl != null && cacheControl.toLowerCase(Locale.ROOT).contains("no-transform")) {
+            return false;
+        }
+        if (mode == BodyFramer.Mode.FIXED) {
+            try {
+                if (Long.parseLong(head.getHeader("Content-Length").trim()) < options.minBytes()) {
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return isCompressible(head.getHeader("Content-Type"));
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int semicolon = type.indexOf(';');
+        if (semicolon >= 0) {
+            type = type.substring(0, semicolon);
+        }
+        type = type.trim();
+        return type.startsWith("text/")
+                || type.endsWith("+json") || type.endsWith("+xml")
+                || type.equals("application/json") || type.equals("application/xml")
+                || type.equals("application/javascript") || type.equals("application/x-javascript")
+                || type.equals("application/x-ndjson") || type.equals("application/graphql-response+json");
+    }
+
+    /** gzip or deflate when Accept-Encoding allows it (q > 0, directly or through *), gzip first. */
+    static String accepted(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            switch (coding) {
+                case "gzip", "x-gzip" -> gzip = Math.max(gzip, q);
+                case "deflate" -> deflate = Math.max(deflate, q);
+                case "*" -> any = q;
+                default -> { }
+            }
+        }
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+        if (gzip > 0 && gzip >= deflate) return "gzip";
+        if (deflate > 0) return "deflate";
+        return null;
+    }
+
+    private static void addVary(ResponseHead head) {
+        String vary = head.getHeaderValues("Vary");
+        if (vary == null) {
+            head.setHeader("Vary", "Accept-Encoding");
+            return;
+        }
+        for (String name : vary.split(",")) {
+            String n = name.trim();
+            if (n.equals("*") || n.equalsIgnoreCase("Accept-Encoding")) {
+                return;
+            }
+        }
+        head.setHeader("Vary", vary + ", Accept-Encoding");
+    }
+}
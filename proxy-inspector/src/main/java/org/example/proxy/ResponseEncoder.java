@@ -0,0 +1,147 @@
+package org.example.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses a response body on its way to the client and frames the result as chunks.
+ *
+ * Input is deflated as it is written; flush() pushes out everything compressed so far
+ * (a sync flush), so the client sees a slow stream as it comes instead of once the deflater's
+ * window is full. The gzip wrapper (RFC 1952) is written by hand around a raw deflater so the
+ * deflater can be released on every path, including a relay that failed half way.
+ *
+ * Nothing is written to the client after close() without finish(): a failed response ends
+ * without its last chunk, which tells the client it is incomplete.
+ */
+final class ResponseEncoder {
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_BYTES = 8192;
+
+    private final boolean gzip;
+    private final Deflater deflater;
+    private final ChunkWriter chunks;
+    private final DeflaterOutputStream out;
+    private final CRC32 crc = new CRC32();
+    private long originBytes;
+
+    /**
+     * @param coding - "gzip" or "deflate" (zlib wrapped, as HTTP means it)
+     */
+    ResponseEncoder(String coding, int level, OutputStream client) {
+        this.gzip = "gzip".equals(coding);
+        this.deflater = new Deflater(level, gzip);
+        this.chunks = new ChunkWriter(client);
+        this.out = new DeflaterOutputStream(chunks, deflater, BUFFER_BYTES, true);
+    }
+
+    void write(byte[] buf, int off, int len) throws IOException {
+        if (len == 0) return;
+        if (originBytes == 0 && gzip) {
+            chunks.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        }
+        if (gzip) {
+            crc.update(buf, off, len);
+        }
+        originBytes += len;
+        out.write(buf, off, len);
+    }
+
+    /** Sends what was compressed so far. */
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    /** Ends the encoded body and the chunked message. */
+    void finish() throws IOException {
+        if (originBytes == 0 && gzip) {
+            chunks.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        }
+        out.finish();
+        if (gzip) {
+            byte[] trailer = new byte[8];
+            writeIntLE(trailer, 0, (int) crc.getValue());
+            writeIntLE(trailer, 4, (int) originBytes); // ISIZE is the length mod 2^32
+            chunks.write(trailer, 0, trailer.length);
+        }
+        chunks.finish();
+    }
+
+    /** Releases the deflater, the client stream stays open. */
+    void close() {
+        chunks.closed = true;
+        deflater.end();
+    }
+
+    /** Body bytes as the end server sent them. */
+    long originBytes() {
+        return originBytes;
+    }
+
+    /** Bytes sent to the client, chunk framing included. */
+    long wireBytes() {
+        return chunks.written;
+    }
+
+    private static void writeIntLE(byte[] b, int off, int v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >>> 8);
+        b[off + 2] = (byte) (v >>> 16);
+        b[off + 3] = (byte) (v >>> 24);
+    }
+
+    // one write per chunk: size line, data and CRLF go out together
+    private static final class ChunkWriter extends OutputStream {
+        private final OutputStream client;
+        private final byte[] frame = new byte[BUFFER_BYTES + 16];
+        private long written;
+        private boolean closed;
+
+        ChunkWriter(OutputStream client) {
+            this.client = client;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int take = Math.min(len, BUFFER_BYTES);
+                byte[] size = (Integer.toHexString(take) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(size, 0, frame, 0, size.length);
+                System.arraycopy(b, off, frame, size.length, take);
+                frame[size.length + take] = '\r';
+                frame[size.length + take + 1] = '\n';
+                send(frame, size.length + take + 2);
+                off += take;
+                len -= take;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!closed) {
+                client.flush();
+            }
+        }
+
+        void finish() throws IOException {
+            send(LAST_CHUNK, LAST_CHUNK.length);
+            flush();
+        }
+
+        private void send(byte[] b, int len) throws IOException {
+            if (closed) return;
+            client.write(b, 0, len);
+            written += len;
+        }
+    }
+}
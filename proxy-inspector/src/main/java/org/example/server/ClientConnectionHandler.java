@@ -1,21 +1,41 @@
 package org.example.server;
 
+import org.example.cache.Coalescer;
+import org.example.cache.Flight;
+import org.example.cache.ResponseCache;
 import org.example.http.HttpParser;
 import org.example.http.HttpRequest;
 import org.example.http.HttpSerializer;
+import org.example.http.ResponseHead;
+import org.example.log.CacheStatus;
 import org.example.log.Transaction;
 import org.example.log.TransactionStore;
 import org.example.log.Verdict;
 import org.example.policy.PolicyDecision;
 import org.example.policy.PolicyEngine;
+import org.example.proxy.AdmissionControl;
+import org.example.proxy.ChannelRelay;
 import org.example.proxy.Forwarder;
+import org.example.proxy.ProxyContext;
+import org.example.proxy.ResponseCompression;
+import org.example.upstream.AdaptiveTimeouts;
+import org.example.upstream.Bulkheads;
+import org.example.upstream.CircuitBreakers;
+import org.example.upstream.DnsCache;
+import org.example.upstream.HedgePolicy;
+import org.example.upstream.LoadBalancer;
+import org.example.upstream.UpstreamPool;
 import org.example.util.Config;
+import org.example.util.Mode;
+import org.example.util.ServerOptions;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -25,36 +45,142 @@ public class ClientConnectionHandler implements Callable<Void> {
     private final TransactionStore store;
     private final PolicyEngine engine;
     private final Config config;
+    private final UpstreamPool upstreamPool;
+    private final DnsCache dnsCache;
+    private final ChannelRelay channelRelay;
+    private final Bulkheads bulkheads;
+    private final AdaptiveTimeouts timeouts;
+    private final ResponseCache cache;
+    private final Coalescer coalescer;
+    private final ResponseCompression compression;
+    private final CircuitBreakers breakers;
+    private final LoadBalancer balancer; // null unless --mode=reverse
+    private final HedgePolicy hedging;
+    private final NioEventLoop tunnelLoop;
+    private final AdmissionControl admission;
+    private final long acceptedNs;
+    private final LiveConnections live;
+    private boolean tunnelled; // the connection was handed to a NioTunnel, which closes it
+    private volatile boolean idle; // waiting for the next request on a kept-alive connection
 
+    /**
+     * @param tunnelLoop - the event loop CONNECT tunnels of this connection are spliced on
+     * @param acceptedNs - when the connection was accepted (and admitted), the start of its queue wait
+     * @param live       - the handlers being served, for draining
+     */
     ClientConnectionHandler(Socket connection,
                             AtomicInteger connectionCounter,
-                            TransactionStore store,
-                            PolicyEngine engine,
-                            Config config) {
+                            ProxyContext context,
+                            NioEventLoop tunnelLoop,
+                            long acceptedNs,
+                            LiveConnections live) {
         this.connection = connection;
         this.connectionCounter = connectionCounter;
-        this.store = store;
-        this.engine = engine;
-        this.config = config;
+        this.tunnelLoop = tunnelLoop;
+        this.admission = context.getAdmission();
+        this.acceptedNs = acceptedNs;
+        this.live = live;
+        this.store = context.getStore();
+        this.engine = context.getPolicyEngine();
+        this.config = context.getConfig();
+        this.upstreamPool = context.getUpstreamPool();
+        this.dnsCache = context.getDnsCache();
+        this.channelRelay = context.getChannelRelay();
+        this.bulkheads = context.getBulkheads();
+        this.timeouts = context.getTimeouts();
+        this.cache = context.getCache();
+        this.coalescer = context.getCoalescer();
+        this.compression = context.getCompression();
+        this.breakers = context.getBreakers();
+        this.balancer = (config.getMode() == Mode.REVERSE) ? context.getLoadBalancer() : null;
+        this.hedging = context.getHedging();
     }
 
     @Override
     public Void call() {
-        Transaction tx = null;
         String clientIp = connection.getInetAddress().getHostAddress();
+        ServerOptions options = config.getServerOptions();
 
+        admission.started(acceptedNs);
         try {
             int active = connectionCounter.incrementAndGet();
+            live.add(this);
 
-            // Read and parse one HTTP request from the client connection
-            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+            // One parser (and read buffer) for the whole connection: it reads the heads,
+            // the forwarder streams request bodies from what follows them
+            HttpParser parser = new HttpParser(connection.getInputStream());
+            InputStream in = parser.getInputStream();
             logVerbose(() -> printClientInfo(connection, active));
 
-            HttpParser parser = new HttpParser(in);
-            HttpRequest request = parser.readRequest();
+            if (options.isKeepAliveEnabled()) {
+                connection.setSoTimeout(options.keepAliveTimeoutMs()); // idle timeout between requests
+            }
+
+            int served = 0;
+            boolean keepAlive = true;
+            while (keepAlive) {
+                served++;
+                boolean mayReuse = options.isKeepAliveEnabled() && served < options.maxRequestsPerConnection()
+                        && !live.isDraining();
+                keepAlive = handleRequest(parser, in, clientIp, mayReuse, served > 1);
+            }
+
+        } catch (IOException e) {
+            logVerbose(() -> System.out.println("client connection error: " + e.getMessage()));
+        } finally {
+            live.remove(this);
+            if (!tunnelled) {
+                closeConnection();
+            }
+        }
+
+        return null;
+    }
+
+    // drain: a connection idle between requests would only wait for its keep-alive timeout
+    void closeIfIdle() {
+        if (idle) {
+            forceClose();
+        }
+    }
+
+    // closing the socket makes the worker's blocked read or write fail, which ends call()
+    void forceClose() {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Reads, evaluates and forwards one request from the client connection.
+     * Every request gets its own Transaction.
+     *
+     * @param mayReuse - whether this connection is still allowed to serve another request afterwards
+     * @param kept     - a previous request was served on this connection, it is kept alive for this one
+     * @return true if the connection should stay open for the next request
+     */
+    private boolean handleRequest(HttpParser parser, InputStream in, String clientIp, boolean mayReuse, boolean kept) {
+        Transaction tx = null;
+        Flight leading = null; // the flight this request fetches for, identical requests follow it
+
+        try {
+            // Read and parse one HTTP request from the client connection
+            HttpRequest request;
+            try {
+                idle = kept;
+                if (kept && live.isDraining()) {
+                    return false; // draining began while the previous response was sent
+                }
+                request = parser.readRequest();
+            } catch (SocketTimeoutException e) {
+                return false; // idle keep-alive connection, close quietly
+            } finally {
+                idle = false;
+            }
             if (request == null) {
-                // Client connected then closed without sending a request
-                return null;
+                // Client closed the connection without sending (another) request
+                return false;
             }
 
             // Create a transaction for logging + store (start timer here)
@@ -78,17 +204,124 @@ public class ClientConnectionHandler implements Callable<Void> {
                 logLine(tx.toString()); // non-verbose: always show the final one-line summary
 
                 writeErrorResponse(decision.getHttpStatus(),
-                        statusText(decision.getHttpStatus()),
+                        HttpErrors.statusText(decision.getHttpStatus()),
                         decision.getReason());
-                return null;
+                return false;
             }
 
             // Forward to end server
             logVerbose(() -> System.out.println("new request from client:\n" + request));
 
-            HttpSerializer serializer = new HttpSerializer();
-            Forwarder forwarder = new Forwarder(request, serializer);
-            forwarder.forwardToServer(connection.getOutputStream(), tx);
+            if (request.isConnect()) {
+                if (balancer != null) {
+                    return reject(tx, 405, "CONNECT is not supported by the reverse proxy");
+                }
+                openTunnel(request, parser, tx);
+                return false;
+            }
+
+            boolean keepClientAlive = mayReuse && request.wantsKeepAlive();
+
+            // a fresh cached response needs neither the end server nor a bulkhead permit
+            ResponseCache.Lookup lookup = cache.lookup(request);
+            if (lookup != null && lookup.isHit()) {
+                return serveHit(lookup, request, tx, keepClientAlive);
+            }
+            if (lookup != null && cache.onlyIfCached(request)) {
+                tx.setCacheStatus(CacheStatus.MISS);
+                tx.setVerdict(Verdict.ERROR);
+                tx.setErrorMessage("Not cached (only-if-cached)");
+                tx.setEndNs(System.nanoTime());
+                store.add(tx);
+                logLine(tx.toString());
+
+                writeErrorResponse(504, HttpErrors.statusText(504), "Not cached (only-if-cached)");
+                return false;
+            }
+
+            // an identical request is already waiting for the end server: take its response instead
+            Coalescer.Ticket ticket = coalescer.join(request);
+            if (ticket != null && !ticket.leads()) {
+                String host = request.getHost();
+                ResponseHead head = ticket.follower().awaitHead(
+                        timeouts.connectTimeoutMs(host) + (long) timeouts.readTimeoutMs(host));
+                if (head != null) {
+                    return relayCoalesced(ticket.follower(), head, request, tx, keepClientAlive);
+                }
+                // not shareable (or it refreshed a cached response): on our own from here
+                ticket = null;
+                lookup = cache.lookup(request);
+                if (lookup != null && lookup.isHit()) {
+                    return serveHit(lookup, request, tx, keepClientAlive);
+                }
+            }
+            leading = (ticket == null) ? null : ticket.flight();
+
+            if (lookup != null) {
+                tx.setCacheStatus(CacheStatus.MISS); // REVALIDATED when the end server confirms a stale one
+            }
+
+            // reverse proxy: one of the virtual host's backends, otherwise where the Host header says
+            LoadBalancer.Backend backend = null;
+            if (balancer != null) {
+                backend = balancer.choose(request.getHost());
+                if (backend == null) {
+                    return reject(tx, 421, "No virtual host for " + request.getHost());
+                }
+                tx.setBackend(backend.getName());
+            }
+            String upstreamHost = (backend == null) ? request.getHost() : backend.getHost();
+            int upstreamPort = (backend == null) ? request.getPort() : backend.getPort();
+
+            // an upstream that keeps failing is not tried until its breaker lets a trial through
+            CircuitBreakers.Breaker breaker = breakers.forUpstream(upstreamHost, upstreamPort);
+            if (breaker != null && !breaker.allow()) {
+                tx.setVerdict(Verdict.SHED);
+                tx.setErrorMessage("Circuit open for " + breaker.getName());
+                tx.setBytesFromServer(0);
+                tx.setEndNs(System.nanoTime());
+                store.add(tx);
+                logLine(tx.toString());
+
+                writeResponse(HttpErrors.circuitOpen(breaker));
+                return false;
+            }
+
+            // a slow origin may only hold the workers of its own bulkhead
+            Bulkheads.Bulkhead bulkhead = bulkheads.forHost(upstreamHost);
+            if (bulkhead != null && !bulkhead.acquire(bulkheads.getQueueTimeoutMs())) {
+                String message = "Bulkhead " + bulkhead.getName() + " full (" + bulkhead.getLimit() + " in flight)";
+                tx.setVerdict(Verdict.SHED);
+                tx.setErrorMessage(message);
+                tx.setBytesFromServer(0);
+                tx.setEndNs(System.nanoTime());
+                store.add(tx);
+                logLine(tx.toString());
+
+                if (breaker != null) breaker.skip(); // never reached the upstream, nothing to judge it by
+                writeResponse(HttpErrors.serviceUnavailable(message, NioShedConnection.RETRY_AFTER_SECONDS));
+                return false;
+            }
+
+            boolean reusable;
+            Forwarder forwarder = null;
+            if (backend != null) backend.start();
+            try {
+                HttpSerializer serializer = new HttpSerializer();
+                forwarder = new Forwarder(request, upstreamHost, upstreamPort, serializer, upstreamPool, dnsCache,
+                        channelRelay, timeouts, cache, compression, hedging);
+                reusable = forwarder.forwardToServer(connection, in, tx, keepClientAlive,
+                        (lookup == null) ? null : lookup.stale(), leading);
+            } finally {
+                if (bulkhead != null) bulkhead.release();
+                if (breaker != null && forwarder != null) {
+                    breaker.record(forwarder.getStatusCode(), forwarder.getFirstByteNs());
+                }
+                if (backend != null) {
+                    backend.finish((forwarder == null) ? -1 : forwarder.getStatusCode(),
+                            (forwarder == null) ? -1 : forwarder.getFirstByteNs());
+                }
+            }
 
             // Mark success, store, log
             tx.setVerdict(Verdict.ALLOWED);
@@ -97,8 +330,10 @@ public class ClientConnectionHandler implements Callable<Void> {
             logLine(tx.toString()); // non-verbose: always show the final one-line summary
             logVerbose(() -> System.out.println("store size=" + store.sizeSafe())); // see helper below
 
+            return reusable;
+
         } catch (org.example.http.InvalidRequestException e) {
-            // Parser/validation error => 400
+            // Parser/validation error => 400 (414/431 for oversized heads)
             if (tx != null) {
                 tx.setVerdict(Verdict.ERROR);
                 tx.setErrorMessage(e.getMessage());
@@ -107,7 +342,7 @@ public class ClientConnectionHandler implements Callable<Void> {
                 store.add(tx);
                 logLine(tx.toString());
             }
-            writeErrorResponse(400, "Bad Request", e.getMessage());
+            writeErrorResponse(e.getStatusCode(), HttpErrors.statusText(e.getStatusCode()), e.getMessage());
 
         } catch (RuntimeException e) {
             // Forwarding failures => 502
@@ -132,20 +367,110 @@ public class ClientConnectionHandler implements Callable<Void> {
                 logLine(tx.toString());
             }
             writeErrorResponse(502, "Bad Gateway", "Unexpected proxy error");
-
         } finally {
-            try {
-                connection.close();
-            } catch (IOException ignored) {
-            } finally {
-                int active = connectionCounter.decrementAndGet();
-                logVerbose(() -> System.out.println("CONNECT -- active connections: " + active));
+            if (leading != null) {
+                leading.abort(); // a no-op once the response went through, otherwise releases the followers
             }
         }
 
-        return null;
+        return false;
     }
 
+    // a request the proxy answers itself with an error, recorded as ERROR
+    private boolean reject(Transaction tx, int statusCode, String message) {
+        tx.setVerdict(Verdict.ERROR);
+        tx.setErrorMessage(message);
+        tx.setBytesFromServer(0);
+        tx.setEndNs(System.nanoTime());
+        store.add(tx);
+        logLine(tx.toString());
+
+        writeErrorResponse(statusCode, HttpErrors.statusText(statusCode), message);
+        return false;
+    }
+
+    private boolean serveHit(ResponseCache.Lookup lookup, HttpRequest request, Transaction tx,
+                             boolean keepClientAlive) throws IOException {
+        cache.serve(lookup.entry(), request, connection, keepClientAlive, compression, tx);
+        tx.setCacheStatus(CacheStatus.HIT);
+        tx.setVerdict(Verdict.ALLOWED);
+        tx.setEndNs(System.nanoTime());
+        store.add(tx);
+        logLine(tx.toString());
+        return keepClientAlive;
+    }
+
+    /**
+     * Sends the response another request is fetching, as its body arrives. Once the head is out
+     * a failure can only close the connection, the client sees a truncated response.
+     */
+    private boolean relayCoalesced(Flight.Follower follower, ResponseHead head, HttpRequest request, Transaction tx,
+                                   boolean keepClientAlive) {
+        boolean reusable = keepClientAlive && !follower.untilClose();
+        head.setHeader("Connection", reusable ? "keep-alive" : "close");
+        tx.setCoalesced(true); // nothing came from the end server for this one
+        try {
+            OutputStream out = connection.getOutputStream();
+            out.write(head.toBytes());
+            out.flush();
+            SocketChannel channel = connection.getChannel();
+            int readTimeoutMs = timeouts.readTimeoutMs(request.getHost());
+            ByteBuffer chunk;
+            while ((chunk = follower.next(readTimeoutMs)) != null) {
+                if (channel != null) {
+                    while (chunk.hasRemaining()) channel.write(chunk);
+                } else {
+                    out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                }
+            }
+            out.flush();
+            tx.setVerdict(Verdict.ALLOWED);
+        } catch (IOException e) {
+            follower.leave();
+            tx.setVerdict(Verdict.ERROR);
+            tx.setErrorMessage(e.getMessage());
+            reusable = false;
+        } catch (InterruptedException e) {
+            follower.leave(); // interrupted while waiting for the next chunk (a drain), the head is out already
+            Thread.currentThread().interrupt();
+            tx.setVerdict(Verdict.ERROR);
+            tx.setErrorMessage("Interrupted while relaying a coalesced response");
+            reusable = false;
+        }
+        tx.setEndNs(System.nanoTime());
+        store.add(tx);
+        logLine(tx.toString());
+        return reusable;
+    }
+
+    /**
+     * Connects to the CONNECT authority and hands both channels to the tunnel loop. From here on
+     * the tunnel owns the client connection and records the transaction when it ends.
+     */
+    private void openTunnel(HttpRequest request, HttpParser parser, Transaction tx) {
+        SocketChannel client = connection.getChannel();
+        if (client == null || tunnelLoop == null) {
+            throw new RuntimeException("CONNECT is not supported on this connection");
+        }
+
+        SocketChannel upstream = new Forwarder(request, request.getHost(), request.getPort(), new HttpSerializer(),
+                upstreamPool, dnsCache, channelRelay, timeouts, cache, compression, hedging)
+                .openTunnel(tx);
+        byte[] early = parser.takeBuffered();
+        tunnelled = true;
+        tunnelLoop.execute(() -> NioTunnel.open(tunnelLoop, client, upstream, tx, early));
+    }
+
+    private void closeConnection() {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+        } finally {
+            int active = connectionCounter.decrementAndGet();
+            admission.finished();
+            logVerbose(() -> System.out.println("CONNECT -- active connections: " + active));
+        }
+    }
 
     //Non-verbose logging:
     //only print the final transaction summary line (ALLOWED/BLOCKED/ERROR).
@@ -171,31 +496,14 @@ public class ClientConnectionHandler implements Callable<Void> {
     // HTTP error writing
 
     private void writeErrorResponse(int statusCode, String statusText, String message) {
+        writeResponse(HttpErrors.errorResponse(statusCode, statusText, message));
+    }
+
+    private void writeResponse(byte[] response) {
         try {
-            String body = (message == null || message.isEmpty()) ? statusText : message;
-            byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
-
-            String headers =
-                    "HTTP/1.1 " + statusCode + " " + statusText + "\r\n" +
-                            "Connection: close\r\n" +
-                            "Content-Type: text/plain; charset=utf-8\r\n" +
-                            "Content-Length: " + bodyBytes.length + "\r\n" +
-                            "\r\n";
-
-            connection.getOutputStream().write(headers.getBytes(StandardCharsets.UTF_8));
-            connection.getOutputStream().write(bodyBytes);
+            connection.getOutputStream().write(response);
             connection.getOutputStream().flush();
         } catch (IOException ignored) {
         }
     }
-
-    private String statusText(int status) {
-        return switch (status) {
-            case 400 -> "Bad Request";
-            case 403 -> "Forbidden";
-            case 429 -> "Too Many Requests";
-            case 502 -> "Bad Gateway";
-            default -> "Error";
-        };
-    }
 }
\ No newline at end of file
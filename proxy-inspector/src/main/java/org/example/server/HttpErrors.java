@@ -0,0 +1,64 @@
+package org.example.server;
+
+import org.example.upstream.CircuitBreakers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the small plain-text error responses the proxy sends itself (400, 403, 429, 502 ...).
+ * Shared by the blocking handler and the NIO engine so both paths answer clients identically.
+ */
+final class HttpErrors {
+
+    private HttpErrors() {}
+
+    static byte[] errorResponse(int statusCode, String statusText, String message) {
+        return errorResponse(statusCode, statusText, message, "");
+    }
+
+    /** 503 for a connection shed by admission control, the client may retry after retryAfterSeconds. */
+    static byte[] serviceUnavailable(String message, int retryAfterSeconds) {
+        return errorResponse(503, statusText(503), message, "Retry-After: " + retryAfterSeconds + "\r\n");
+    }
+
+    /** 503 for a request to an upstream whose circuit breaker is open, Retry-After is when it lets a trial through. */
+    static byte[] circuitOpen(CircuitBreakers.Breaker breaker) {
+        long seconds = Math.max(1, (breaker.retryAfterMs() + 999) / 1000);
+        return serviceUnavailable("Circuit open for " + breaker.getName(), (int) seconds);
+    }
+
+    private static byte[] errorResponse(int statusCode, String statusText, String message, String extraHeaders) {
+        String body = (message == null || message.isEmpty()) ? statusText : message;
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+
+        String headers =
+                "HTTP/1.1 " + statusCode + " " + statusText + "\r\n" +
+                        "Connection: close\r\n" +
+                        "Content-Type: text/plain; charset=utf-8\r\n" +
+                        "Content-Length: " + bodyBytes.length + "\r\n" +
+                        extraHeaders +
+                        "\r\n";
+
+        byte[] headerBytes = headers.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[headerBytes.length + bodyBytes.length];
+        System.arraycopy(headerBytes, 0, out, 0, headerBytes.length);
+        System.arraycopy(bodyBytes, 0, out, headerBytes.length, bodyBytes.length);
+        return out;
+    }
+
+    static String statusText(int status) {
+        return switch (status) {
+            case 400 -> "Bad Request";
+            case 403 -> "Forbidden";
+            case 405 -> "Method Not Allowed";
+            case 414 -> "URI Too Long";
+            case 421 -> "Misdirected Request";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "Error";
+        };
+    }
+}
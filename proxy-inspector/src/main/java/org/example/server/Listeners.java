@@ -0,0 +1,67 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Opens the listening channels of the proxy port.
+ *
+ * With several acceptors every acceptor gets its own channel bound with SO_REUSEPORT, so the
+ * kernel spreads new connections across them (Linux hashes the connection 4-tuple) instead of
+ * all acceptors contending for one accept queue. Where SO_REUSEPORT is not supported a single
+ * channel is returned and the acceptors share it.
+ *
+ * reusePort also sets SO_REUSEPORT on a single listener: a new instance of the proxy can then bind
+ * the same port while this one still serves, and take over once this one drains (hot restart).
+ */
+final class Listeners {
+
+    private Listeners() {}
+
+    static ServerSocketChannel[] open(int port, int acceptors, boolean reusePort) throws IOException {
+        if ((acceptors > 1 || reusePort) && !supportsReusePort()) {
+            System.err.println("SO_REUSEPORT is not supported here, " + acceptors + " acceptors share one listener");
+            acceptors = 1;
+            reusePort = false;
+        }
+        // unless asked to, a lone listener does not set SO_REUSEPORT: no other process can bind next to it
+        reusePort |= acceptors > 1;
+
+        ServerSocketChannel[] channels = new ServerSocketChannel[acceptors];
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channels[i] = channel;
+                if (reusePort) {
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                channel.bind(new InetSocketAddress(port));
+            }
+        } catch (IOException e) {
+            close(channels);
+            throw e;
+        }
+        return channels;
+    }
+
+    static void close(ServerSocketChannel[] channels) {
+        for (ServerSocketChannel channel : channels) {
+            if (channel == null) continue;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing listener: " + e);
+            }
+        }
+    }
+
+    private static boolean supportsReusePort() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.server;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The client connections a blocking engine worker is serving right now, so a drain can reach them.
+ *
+ * Draining stops keep-alive: a handler finishes the request it is serving and then closes, one
+ * that is idle between requests is closed right away. What is still open when the drain deadline
+ * passes gets closed by closeAll().
+ */
+final class LiveConnections {
+    private final Set<ClientConnectionHandler> handlers = ConcurrentHashMap.newKeySet();
+    private volatile boolean draining;
+
+    void add(ClientConnectionHandler handler) {
+        handlers.add(handler);
+    }
+
+    void remove(ClientConnectionHandler handler) {
+        handlers.remove(handler);
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    void drain() {
+        draining = true; // set before the sweep: a handler going idle afterwards sees it and closes itself
+        for (ClientConnectionHandler handler : handlers) {
+            handler.closeIfIdle();
+        }
+    }
+
+    void closeAll() {
+        for (ClientConnectionHandler handler : handlers) {
+            handler.forceClose();
+        }
+    }
+}
@@ -0,0 +1,760 @@
+package org.example.server;
+
+import org.example.http.BodyFramer;
+import org.example.http.HttpParser;
+import org.example.http.HttpRequest;
+import org.example.http.HttpSerializer;
+import org.example.http.InvalidRequestException;
+import org.example.http.ResponseFramer;
+import org.example.log.Transaction;
+import org.example.log.Verdict;
+import org.example.policy.PolicyDecision;
+import org.example.upstream.Bulkheads;
+import org.example.upstream.CircuitBreakers;
+import org.example.upstream.ConnectRacer;
+import org.example.upstream.LoadBalancer;
+import org.example.util.Mode;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One client connection on the NIO engine, driven as a state machine by its NioEventLoop.
+ *
+ * READING_HEAD  - buffer client bytes until the end of the request head (CRLF CRLF)
+ * QUEUED        - the upstream's bulkhead is full, a timer polls it for a free permit
+ * RESOLVING     - policy passed, upstream name lookup runs on the resolver pool (unless the DnsCache has it)
+ * CONNECTING    - happy eyeballs: staggered non-blocking connects to the resolved addresses, first one wins
+ * RELAYING      - serialized request + request body bytes go upstream, response bytes go back
+ * WRITING_ERROR - a proxy generated error response (400/403/429/502) is being written
+ *
+ * The request body is framed like the response: client bytes are read only while the body
+ * lasts and reach upstream through the fixed size fromClient buffer, so uploads use constant memory.
+ *
+ * The upstream request is sent with "Connection: close". Response bytes are copied through
+ * untouched while a ResponseFramer follows them, so the transaction completes at the exact end
+ * of the response (Content-Length, last chunk, or the upstream closing for unframed bodies)
+ * once every byte of it reached the client.
+ *
+ * A CONNECT request goes through the same policy, resolve and connect steps, then both channels
+ * (and their keys) are handed to a NioTunnel on this loop and the connection steps out.
+ *
+ * With --mode=reverse the upstream is the backend the LoadBalancer picks for the Host's virtual
+ * host instead, and CONNECT is refused.
+ */
+final class NioConnection implements NioEventLoop.LoopConnection {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEAD_BYTES = HttpParser.MAX_REQUEST_LINE_BYTES + HttpParser.MAX_HEADER_BYTES;
+    private static final int MAX_RESPONSE_HEAD_BYTES = 64 * 1024;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final long IDLE_TIMEOUT_NS = TimeUnit.MILLISECONDS.toNanos(15_000);
+
+    private static final long BULKHEAD_POLL_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private enum State { READING_HEAD, QUEUED, RESOLVING, CONNECTING, RELAYING, WRITING_ERROR, CLOSED }
+
+    private final NioEventLoop loop;
+    private final SocketChannel client;
+    private final SelectionKey clientKey;
+    private final String clientIp;
+
+    private SocketChannel upstream;
+    private SelectionKey upstreamKey;
+
+    // both buffers are kept in "fill" mode between events
+    private ByteBuffer fromClient = ByteBuffer.allocate(BUFFER_SIZE); // request head, then request body bytes
+    private ByteBuffer fromUpstream; // response bytes, a pooled direct buffer borrowed once the request is allowed
+    private ByteBuffer pendingOut; // serialized request head (to upstream) or error response (to client)
+
+    private State state = State.READING_HEAD;
+    private Transaction tx;
+    private BodyFramer requestBody;
+    private ResponseFramer framer;
+    private long deadlineNs;
+    private boolean clientEof;
+    private boolean upstreamEof; // upstream closed, or the response is complete and upstream was let go
+    private long bytesFromServer;
+    private long requestBodyBytes;
+    private int headScanFrom;
+    private boolean tunnel; // CONNECT: hand over to a NioTunnel once upstream is connected
+    private long connectTimeoutNs; // the host's AdaptiveTimeouts, for resolve + connect race
+    private long idleTimeoutNs = IDLE_TIMEOUT_NS; // the host's read timeout once RELAYING
+    private long requestSentNs; // request head fully written upstream, 0 before
+    private Bulkheads.Bulkhead bulkhead; // set while this connection holds one of its permits or waits for one
+    private long queuedNs;
+    private CircuitBreakers.Breaker breaker; // set while the request it let through awaits the upstream's verdict
+    private long firstByteNs = -1;
+    private LoadBalancer.Backend backend; // reverse proxy: the pick, in flight from resolve() until its verdict
+
+    // happy eyeballs state while CONNECTING
+    private String upstreamHost;
+    private int upstreamPort;
+    private List<InetAddress> candidates;
+    private int nextCandidate;
+    private final List<ConnectAttempt> attempts = new ArrayList<>(2);
+    private long connectStartNs;
+    private IOException lastConnectError;
+
+    /**
+     * @param acceptedNs - when the connection was accepted (and admitted), the start of its queue wait
+     */
+    NioConnection(NioEventLoop loop, SocketChannel client, long acceptedNs) throws IOException {
+        this.loop = loop;
+        this.client = client;
+        this.clientIp = client.socket().getInetAddress().getHostAddress();
+
+        client.configureBlocking(false);
+        this.clientKey = client.register(loop.selector(), SelectionKey.OP_READ, this);
+        this.deadlineNs = System.nanoTime() + IDLE_TIMEOUT_NS;
+
+        int active = loop.connectionCounter.incrementAndGet();
+        loop.admission.started(acceptedNs);
+        logVerbose(() -> {
+            System.out.println("New client connected from: " + client.socket().getInetAddress() + " port: " + client.socket().getPort());
+            System.out.println("CONNECT ++ active connections: " + active);
+        });
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+        if (key == clientKey) {
+            if (key.isReadable()) onClientReadable();
+            if (state != State.CLOSED && key.isValid() && key.isWritable()) onClientWritable();
+        } else {
+            if (key.isReadable()) onUpstreamReadable();
+            if (state != State.CLOSED && key.isValid() && key.isWritable()) onUpstreamWritable();
+        }
+        updateInterest();
+    }
+
+    // Client side
+
+    private void onClientReadable() throws IOException {
+        int n = client.read(fromClient);
+        if (n == -1) {
+            clientEof = true;
+            if (state == State.READING_HEAD) {
+                close(); // closed before (or in the middle of) a request head
+            } else if (requestBody != null && !requestBody.isComplete()) {
+                throw new IOException("Client closed before the end of the request body");
+            }
+            return;
+        }
+
+        touch();
+        if (state == State.READING_HEAD) {
+            parseHead();
+        } else if (state == State.RELAYING) {
+            frameRequestBody(fromClient.position() - n);
+            writeToUpstream(); // optimistic write, saves a selector round trip
+        }
+    }
+
+    private void onClientWritable() throws IOException {
+        if (state == State.WRITING_ERROR) {
+            client.write(pendingOut);
+            if (!pendingOut.hasRemaining()) {
+                close();
+            }
+            return;
+        }
+        writeToClient();
+    }
+
+    private void writeToClient() throws IOException {
+        if (fromUpstream.position() > 0) {
+            fromUpstream.flip();
+            client.write(fromUpstream);
+            fromUpstream.compact();
+            touch();
+        }
+        if (upstreamEof && fromUpstream.position() == 0) {
+            complete();
+        }
+    }
+
+    // Request head + policy
+
+    private void parseHead() {
+        int end = indexOfHeadEnd();
+        if (end < 0) {
+            if (!fromClient.hasRemaining()) {
+                if (fromClient.capacity() >= MAX_HEAD_BYTES) {
+                    respondError(431, HttpErrors.statusText(431), "Request head too large");
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(fromClient.capacity() * 2, MAX_HEAD_BYTES));
+                fromClient.flip();
+                bigger.put(fromClient);
+                fromClient = bigger;
+            }
+            return;
+        }
+
+        byte[] head = Arrays.copyOf(fromClient.array(), end);
+
+        // keep whatever followed the head (start of a request body) for the upstream
+        fromClient.flip();
+        fromClient.position(end);
+        fromClient.compact();
+
+        HttpRequest request;
+        try {
+            request = HttpParser.parse(head, head.length, HttpParser.MAX_REQUEST_LINE_BYTES, HttpParser.MAX_HEADER_BYTES);
+            tx = new Transaction(
+                    request.getMethod(),
+                    request.getHost(),
+                    request.getPort(),
+                    request.getPath(),
+                    System.nanoTime()
+            );
+        } catch (InvalidRequestException e) {
+            respondError(e.getStatusCode(), HttpErrors.statusText(e.getStatusCode()), e.getMessage());
+            return;
+        }
+
+        PolicyDecision decision = loop.engine.evaluate(request, clientIp);
+        if (decision.isBlocked()) {
+            tx.setVerdict(Verdict.BLOCKED);
+            tx.setErrorMessage(decision.getReason());
+            tx.setBytesFromServer(0);
+            tx.setEndNs(System.nanoTime());
+            record();
+
+            respondError(decision.getHttpStatus(), HttpErrors.statusText(decision.getHttpStatus()), decision.getReason());
+            return;
+        }
+
+        logVerbose(() -> System.out.println("new request from client:\n" + request));
+
+        boolean reverse = loop.config.getMode() == Mode.REVERSE;
+        if (reverse && request.isConnect()) {
+            reject(405, "CONNECT is not supported by the reverse proxy");
+            return;
+        }
+        if (request.isConnect()) {
+            tunnel = true; // bytes sent right behind the head (a TLS ClientHello) wait in fromClient
+        } else {
+            fromUpstream = loop.buffers.acquire();
+            try {
+                requestBody = BodyFramer.forRequest(request);
+                frameRequestBody(0); // body bytes that arrived together with the head
+            } catch (InvalidRequestException | IOException e) {
+                respondError(400, "Bad Request", e.getMessage());
+                return;
+            }
+            if (!requestBody.isComplete() && request.expectsContinue()) {
+                fromUpstream.put(CONTINUE); // Expect is not forwarded, the client goes ahead on our answer
+            }
+            framer = new ResponseFramer(request.getMethod(), MAX_RESPONSE_HEAD_BYTES);
+            pendingOut = ByteBuffer.wrap(new HttpSerializer().serializeRequest(request).getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (reverse) { // after framing, close() must not cancel() a backend that a 400 kept from resolve()
+            backend = loop.balancer.choose(request.getHost());
+            if (backend == null) {
+                reject(421, "No virtual host for " + request.getHost());
+                return;
+            }
+            tx.setBackend(backend.getName());
+        }
+        upstreamHost = (backend == null) ? request.getHost() : backend.getHost();
+        upstreamPort = (backend == null) ? request.getPort() : backend.getPort();
+
+        if (!tunnel) { // tunnels live as long as the client wants, bulkheads only limit forwarded requests
+            CircuitBreakers.Breaker circuit = loop.breakers.forUpstream(upstreamHost, upstreamPort);
+            if (circuit != null && !circuit.allow()) {
+                circuitOpen(circuit);
+                return;
+            }
+            breaker = circuit;
+
+            Bulkheads.Bulkhead limit = loop.bulkheads.forHost(upstreamHost);
+            if (limit != null && !limit.tryAcquire()) {
+                bulkhead = limit;
+                if (loop.bulkheads.getQueueTimeoutMs() == 0) {
+                    bulkheadFull();
+                    return;
+                }
+                limit.enqueue();
+                state = State.QUEUED;
+                queuedNs = System.nanoTime();
+                deadlineNs = queuedNs + TimeUnit.MILLISECONDS.toNanos(loop.bulkheads.getQueueTimeoutMs());
+                loop.schedule(BULKHEAD_POLL_NS, this::pollBulkhead);
+                return;
+            }
+            bulkhead = limit;
+        }
+        resolve();
+    }
+
+    private void pollBulkhead() {
+        if (state != State.QUEUED) return; // the client went away meanwhile
+
+        long now = System.nanoTime();
+        if (bulkhead.tryAcquire()) {
+            bulkhead.dequeue(now - queuedNs);
+            resolve();
+        } else if (now - deadlineNs >= 0) {
+            bulkhead.dequeue(now - queuedNs);
+            bulkheadFull();
+        } else {
+            loop.schedule(BULKHEAD_POLL_NS, this::pollBulkhead);
+        }
+        updateInterest();
+    }
+
+    // open breaker: 503 with Retry-After, recorded as SHED
+    private void circuitOpen(CircuitBreakers.Breaker open) {
+        backend = null; // never sent
+        tx.setVerdict(Verdict.SHED);
+        tx.setErrorMessage("Circuit open for " + open.getName());
+        tx.setBytesFromServer(0);
+        tx.setEndNs(System.nanoTime());
+        record();
+        respond(HttpErrors.circuitOpen(open));
+    }
+
+    // no permit: 503 with Retry-After, recorded as SHED
+    private void bulkheadFull() {
+        Bulkheads.Bulkhead full = bulkhead;
+        bulkhead = null; // nothing to release
+        full.reject();
+        if (breaker != null) {
+            breaker.skip(); // never reached the upstream
+            breaker = null;
+        }
+        backend = null;
+
+        String message = "Bulkhead " + full.getName() + " full (" + full.getLimit() + " in flight)";
+        tx.setVerdict(Verdict.SHED);
+        tx.setErrorMessage(message);
+        tx.setBytesFromServer(0);
+        tx.setEndNs(System.nanoTime());
+        record();
+        respond(HttpErrors.serviceUnavailable(message, NioShedConnection.RETRY_AFTER_SECONDS));
+    }
+
+    private void resolve() {
+        String host = upstreamHost;
+        state = State.RESOLVING;
+        if (backend != null) backend.start();
+        connectTimeoutNs = TimeUnit.MILLISECONDS.toNanos(loop.timeouts.connectTimeoutMs(host));
+        deadlineNs = System.nanoTime() + connectTimeoutNs;
+
+        try {
+            InetAddress[] cached = loop.dns.resolveCached(host);
+            if (cached != null) {
+                onResolved(cached, null); // cache hit, no hop to the resolver pool
+                return;
+            }
+            loop.resolver.execute(() -> {
+                try {
+                    InetAddress[] addresses = loop.dns.resolveAll(host);
+                    loop.execute(() -> onResolved(addresses, null));
+                } catch (UnknownHostException e) {
+                    loop.execute(() -> onResolved(null, e));
+                }
+            });
+        } catch (UnknownHostException | RejectedExecutionException e) {
+            fail(e);
+        }
+    }
+
+    // request body bytes in fromClient[from, position), anything after the body is dropped
+    private void frameRequestBody(int from) throws IOException {
+        int end = fromClient.position();
+        int take = requestBody.feed(fromClient, from, end);
+        fromClient.position(from + take);
+        requestBodyBytes += take;
+    }
+
+    // returns the index just past the empty line ending the head, or -1 if the head is not complete yet
+    private int indexOfHeadEnd() {
+        byte[] buf = fromClient.array();
+        int limit = fromClient.position();
+        int start = 0;
+        while (start < limit && (buf[start] == '\r' || buf[start] == '\n')) start++; // CRLFs before a request line
+
+        int end = HttpParser.findHeadEnd(buf, Math.max(start, headScanFrom - 2), limit);
+        if (end < 0) {
+            headScanFrom = limit;
+        }
+        return end;
+    }
+
+    // Upstream side
+
+    private void onResolved(InetAddress[] addresses, UnknownHostException error) {
+        if (state != State.RESOLVING) return; // timed out or client went away meanwhile
+        if (error != null) {
+            fail(error);
+            return;
+        }
+
+        candidates = ConnectRacer.interleave(addresses);
+        connectStartNs = System.nanoTime();
+        state = State.CONNECTING;
+        deadlineNs = connectStartNs + connectTimeoutNs; // for the whole race
+        startNextAttempt();
+    }
+
+    /**
+     * Happy eyeballs: starts a connect to the next candidate address. Unless this one fails or
+     * wins first, another one follows after ConnectRacer.ATTEMPT_DELAY_NS.
+     */
+    private void startNextAttempt() {
+        while (state == State.CONNECTING && nextCandidate < candidates.size()) {
+            InetSocketAddress address = new InetSocketAddress(candidates.get(nextCandidate++), upstreamPort);
+            ConnectAttempt attempt = new ConnectAttempt(address);
+            try {
+                attempt.channel = SocketChannel.open();
+                attempt.channel.configureBlocking(false);
+                if (attempt.channel.connect(address)) {
+                    won(attempt);
+                    return;
+                }
+                attempt.key = attempt.channel.register(loop.selector(), SelectionKey.OP_CONNECT, attempt);
+            } catch (IOException e) {
+                NioEventLoop.closeQuietly(attempt.channel); // e.g. no route for this family, try the next one now
+                lastConnectError = e;
+                continue;
+            }
+
+            attempts.add(attempt);
+            int started = nextCandidate;
+            loop.schedule(ConnectRacer.ATTEMPT_DELAY_NS, () -> {
+                if (state == State.CONNECTING && nextCandidate == started) startNextAttempt();
+            });
+            return;
+        }
+
+        if (state == State.CONNECTING && attempts.isEmpty()) {
+            fail(lastConnectError != null ? lastConnectError : new ConnectException("No address to connect to"));
+        }
+    }
+
+    private void attemptFailed(ConnectAttempt attempt, IOException e) {
+        attempts.remove(attempt);
+        NioEventLoop.closeQuietly(attempt.channel);
+        lastConnectError = e;
+        startNextAttempt(); // right away, or fails the race once nothing is left
+    }
+
+    private void won(ConnectAttempt winner) throws IOException {
+        attempts.remove(winner);
+        closeAttempts();
+
+        upstream = winner.channel;
+        if (winner.key != null) {
+            upstreamKey = winner.key;
+            upstreamKey.attach(this);
+        } else {
+            upstreamKey = upstream.register(loop.selector(), 0, this);
+        }
+        long connectNs = System.nanoTime() - connectStartNs;
+        tx.setUpstreamConnect(ConnectRacer.family(winner.address.getAddress()), connectNs);
+        loop.timeouts.recordConnect(upstreamHost, connectNs);
+        connected();
+        updateInterest();
+    }
+
+    private void closeAttempts() {
+        for (ConnectAttempt attempt : attempts) {
+            NioEventLoop.closeQuietly(attempt.channel);
+        }
+        attempts.clear();
+    }
+
+    private void connected() {
+        if (!tunnel) {
+            state = State.RELAYING;
+            idleTimeoutNs = TimeUnit.MILLISECONDS.toNanos(loop.timeouts.readTimeoutMs(upstreamHost));
+            touch();
+            return;
+        }
+
+        byte[] early = Arrays.copyOf(fromClient.array(), fromClient.position());
+        Transaction t = tx;
+        tx = null;
+        state = State.CLOSED; // the tunnel owns both channels and the connection count from here
+        loop.closed(this);
+        NioTunnel.open(loop, client, upstream, t, early);
+    }
+
+    private void onUpstreamReadable() throws IOException {
+        // keep reading while the server has bytes ready and there is room: one client write per batch
+        int n;
+        do {
+            int start = fromUpstream.position();
+            n = upstream.read(fromUpstream);
+            if (n == -1) {
+                if (!framer.closed()) {
+                    throw new IOException("Upstream closed before the end of the response");
+                }
+                upstreamEof = true;
+                break;
+            }
+
+            if (bytesFromServer == 0 && n > 0 && requestSentNs != 0) {
+                firstByteNs = System.nanoTime() - requestSentNs;
+                loop.timeouts.recordFirstByte(upstreamHost, firstByteNs);
+            }
+
+            int end = start + n;
+            int take = 0;
+            while (start + take < end && !framer.isComplete()) {
+                take += framer.feed(fromUpstream, start + take, end);
+            }
+            fromUpstream.position(start + take); // drop anything after the end of the response
+            bytesFromServer += take;
+
+            if (framer.isComplete()) {
+                upstreamEof = true;
+                NioEventLoop.closeQuietly(upstream); // nothing more to read, don't wait for the server to close
+                break;
+            }
+        } while (n > 0 && fromUpstream.hasRemaining());
+
+        touch();
+        writeToClient();
+    }
+
+    private void onUpstreamWritable() throws IOException {
+        writeToUpstream();
+    }
+
+    private void writeToUpstream() throws IOException {
+        if (state != State.RELAYING || !upstream.isOpen()) return;
+
+        if (pendingOut != null) {
+            upstream.write(pendingOut);
+            if (pendingOut.hasRemaining()) return;
+            pendingOut = null;
+            requestSentNs = System.nanoTime();
+        }
+        if (fromClient.position() > 0) {
+            fromClient.flip();
+            upstream.write(fromClient);
+            fromClient.compact();
+        }
+        touch();
+    }
+
+    // Interest ops, completion and failure
+
+    private void updateInterest() {
+        if (state == State.CLOSED) return;
+
+        int clientOps = 0;
+        int upstreamOps = 0;
+
+        switch (state) {
+            case READING_HEAD -> clientOps = SelectionKey.OP_READ;
+            case RELAYING -> {
+                if (!clientEof && !requestBody.isComplete() && fromClient.hasRemaining()) clientOps |= SelectionKey.OP_READ;
+                if (fromUpstream.position() > 0) clientOps |= SelectionKey.OP_WRITE;
+                if (!upstreamEof && fromUpstream.hasRemaining()) upstreamOps |= SelectionKey.OP_READ;
+                if (pendingOut != null || fromClient.position() > 0) upstreamOps |= SelectionKey.OP_WRITE;
+            }
+            case WRITING_ERROR -> clientOps = SelectionKey.OP_WRITE;
+            default -> {
+                // RESOLVING, CONNECTING: nothing to do until the lookup or a connect attempt finishes
+            }
+        }
+
+        if (clientKey.isValid()) clientKey.interestOps(clientOps);
+        if (upstreamKey != null && upstreamKey.isValid()) upstreamKey.interestOps(upstreamOps);
+    }
+
+    private void complete() {
+        tx.setBytesFromServer(bytesFromServer);
+        tx.setRequestBodyBytes(requestBodyBytes);
+        tx.setEndNs(System.nanoTime());
+        tx.setVerdict(Verdict.ALLOWED);
+        record();
+        reportBreaker();
+        reportBackend();
+        close();
+    }
+
+    @Override
+    public void fail(Exception e) {
+        if (state == State.CLOSED) return;
+        if (state == State.WRITING_ERROR || tx == null) {
+            close(); // nothing left to report to the client
+            return;
+        }
+
+        String message = "Failed to forward to " + upstreamHost + ":" + upstreamPort;
+        logVerbose(() -> System.out.println(message + ": " + e));
+
+        tx.setVerdict(Verdict.ERROR);
+        tx.setErrorMessage(message);
+        tx.setBytesFromServer(0);
+        tx.setRequestBodyBytes(requestBodyBytes);
+        tx.setEndNs(System.nanoTime());
+        record();
+        reportBreaker();
+        reportBackend();
+
+        if (bytesFromServer == 0) {
+            respondError(502, "Bad Gateway", message);
+        } else {
+            close(); // response already partially relayed, a 502 would corrupt it
+        }
+    }
+
+    @Override
+    public void checkTimeout(long nowNs) {
+        if (state == State.CLOSED || nowNs - deadlineNs < 0) return;
+
+        switch (state) {
+            case QUEUED -> { } // pollBulkhead() gives up at the deadline
+            case RESOLVING, CONNECTING -> {
+                if (state == State.CONNECTING) loop.timeouts.recordConnectTimeout(upstreamHost);
+                fail(new SocketTimeoutException("Connect timed out"));
+            }
+            case RELAYING -> {
+                if (bytesFromServer == 0) loop.timeouts.recordReadTimeout(upstreamHost);
+                fail(new SocketTimeoutException("Read timed out"));
+            }
+            default -> close();
+        }
+    }
+
+    // a request the proxy answers itself with an error, recorded as ERROR
+    private void reject(int statusCode, String message) {
+        tx.setVerdict(Verdict.ERROR);
+        tx.setErrorMessage(message);
+        tx.setBytesFromServer(0);
+        tx.setEndNs(System.nanoTime());
+        record();
+        respondError(statusCode, HttpErrors.statusText(statusCode), message);
+    }
+
+    private void respondError(int statusCode, String statusText, String message) {
+        respond(HttpErrors.errorResponse(statusCode, statusText, message));
+    }
+
+    private void respond(byte[] response) {
+        pendingOut = ByteBuffer.wrap(response);
+        state = State.WRITING_ERROR;
+        deadlineNs = System.nanoTime() + IDLE_TIMEOUT_NS;
+
+        NioEventLoop.closeQuietly(upstream);
+        closeAttempts();
+        upstream = null;
+        upstreamKey = null;
+        updateInterest();
+    }
+
+    @Override
+    public void close() {
+        if (state == State.CLOSED) return;
+        boolean wasQueued = state == State.QUEUED;
+        state = State.CLOSED;
+
+        NioEventLoop.closeQuietly(client);
+        NioEventLoop.closeQuietly(upstream);
+        closeAttempts();
+        releaseBulkhead(wasQueued);
+        if (breaker != null) {
+            breaker.skip(); // the client went away before the upstream's verdict
+            breaker = null;
+        }
+        if (backend != null && !wasQueued) {
+            backend.cancel(); // in flight since resolve(), the client went away before the verdict
+        }
+        backend = null;
+        loop.closed(this);
+        loop.buffers.release(fromUpstream);
+        fromUpstream = null;
+
+        int active = loop.connectionCounter.decrementAndGet();
+        loop.admission.finished();
+        logVerbose(() -> System.out.println("CONNECT -- active connections: " + active));
+    }
+
+    private void releaseBulkhead(boolean queued) {
+        if (bulkhead == null) return;
+        if (queued) {
+            bulkhead.dequeue(System.nanoTime() - queuedNs); // gave up waiting, never held a permit
+        } else {
+            bulkhead.release();
+        }
+        bulkhead = null;
+    }
+
+    /**
+     * One racing connect, its key is handed to the connection if it wins.
+     */
+    private final class ConnectAttempt implements NioEventLoop.KeyHandler {
+        private final InetSocketAddress address;
+        private SocketChannel channel;
+        private SelectionKey key;
+
+        ConnectAttempt(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        public void handle(SelectionKey key) {
+            if (state != State.CONNECTING || !key.isConnectable()) return;
+            try {
+                if (channel.finishConnect()) {
+                    won(this);
+                }
+            } catch (IOException e) {
+                attemptFailed(this, e);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    // Helpers
+
+    // the backend's verdict for the balancer, once per request
+    private void reportBackend() {
+        if (backend == null) return;
+        backend.finish(framer.isHeadComplete() ? framer.getHead().getStatusCode() : -1, firstByteNs);
+        backend = null;
+    }
+
+    // the upstream's verdict for its circuit breaker, once per request
+    private void reportBreaker() {
+        if (breaker == null) return;
+        breaker.record(framer.isHeadComplete() ? framer.getHead().getStatusCode() : -1, firstByteNs);
+        breaker = null;
+    }
+
+    private void record() {
+        loop.store.add(tx);
+        System.out.println(tx); // non-verbose: always show the final one-line summary
+        tx = null; // a transaction is recorded exactly once
+    }
+
+    private void touch() {
+        deadlineNs = System.nanoTime() + idleTimeoutNs;
+    }
+
+    private void logVerbose(Runnable r) {
+        if (loop.config != null && loop.config.isVerbose()) {
+            r.run();
+        }
+    }
+}
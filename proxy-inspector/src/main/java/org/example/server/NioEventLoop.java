@@ -0,0 +1,235 @@
+package org.example.server;
+
+import org.example.log.TransactionStore;
+import org.example.policy.PolicyEngine;
+import org.example.proxy.AdmissionControl;
+import org.example.proxy.BufferPool;
+import org.example.proxy.ProxyContext;
+import org.example.upstream.AdaptiveTimeouts;
+import org.example.upstream.Bulkheads;
+import org.example.upstream.CircuitBreakers;
+import org.example.upstream.DnsCache;
+import org.example.upstream.LoadBalancer;
+import org.example.util.Config;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single selector thread of the NIO engine.
+ *
+ * Every channel registered here is only ever touched from this thread. Other threads
+ * (the acceptor loop, the resolver pool, blocking handlers opening a tunnel) hand work over
+ * through execute(), which queues a task and wakes the selector up.
+ *
+ * Connections can also schedule() work a short time ahead (e.g. the next happy eyeballs connect
+ * attempt), the selector then wakes up no later than the earliest timer.
+ */
+final class NioEventLoop implements Runnable {
+    private static final long SELECT_TIMEOUT_MS = 500; // also the granularity of timeout checks
+
+    /**
+     * Attached to every SelectionKey owned by this loop.
+     */
+    interface KeyHandler {
+        void handle(SelectionKey key) throws IOException;
+    }
+
+    /**
+     * A connection owned by this loop (NioConnection, NioTunnel): closed on shutdown,
+     * checked for timeouts, and told about errors thrown from its handle().
+     */
+    interface LoopConnection extends KeyHandler {
+        void fail(Exception e);
+
+        void checkTimeout(long nowNs);
+
+        void close();
+    }
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<LoopConnection> connections = new HashSet<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong(Timer::dueNs));
+    private volatile boolean running = true;
+    private long lastTimeoutCheckNs = System.nanoTime();
+
+    final TransactionStore store;
+    final PolicyEngine engine;
+    final Config config;
+    final AtomicInteger connectionCounter;
+    final Executor resolver;
+    final DnsCache dns;
+    final BufferPool buffers;
+    final AdmissionControl admission;
+    final Bulkheads bulkheads;
+    final AdaptiveTimeouts timeouts;
+    final CircuitBreakers breakers;
+    final LoadBalancer balancer; // the backends of --mode=reverse
+
+    /**
+     * @param resolver - runs blocking name lookups, null for loops that only carry tunnels
+     */
+    NioEventLoop(ProxyContext context, AtomicInteger connectionCounter, Executor resolver) throws IOException {
+        this.selector = Selector.open();
+        this.store = context.getStore();
+        this.engine = context.getPolicyEngine();
+        this.config = context.getConfig();
+        this.connectionCounter = connectionCounter;
+        this.resolver = resolver;
+        this.dns = context.getDnsCache();
+        this.buffers = context.getBufferPool();
+        this.admission = context.getAdmission();
+        this.bulkheads = context.getBulkheads();
+        this.timeouts = context.getTimeouts();
+        this.breakers = context.getBreakers();
+        this.balancer = context.getLoadBalancer();
+    }
+
+    void registerAcceptor(SelectableChannel server, KeyHandler handler) throws ClosedChannelException {
+        server.register(selector, SelectionKey.OP_ACCEPT, handler);
+    }
+
+    // hand a freshly accepted and admitted client over to this loop (may be called from any thread)
+    void register(SocketChannel channel, long acceptedNs) {
+        execute(() -> {
+            try {
+                connections.add(new NioConnection(this, channel, acceptedNs));
+            } catch (IOException e) {
+                closeQuietly(channel);
+                admission.finished();
+            }
+        });
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    // only on this loop's thread
+    void schedule(long delayNs, Runnable task) {
+        timers.add(new Timer(System.nanoTime() + delayNs, task));
+    }
+
+    // only on this loop's thread
+    void adopt(LoopConnection connection) {
+        connections.add(connection);
+    }
+
+    void closed(LoopConnection connection) {
+        connections.remove(connection);
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(selectTimeoutMs());
+                runTasks();
+                runTimers();
+                processSelectedKeys();
+                expireTimeouts();
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Event loop error: " + e.getMessage());
+            }
+        } finally {
+            for (LoopConnection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private long selectTimeoutMs() {
+        Timer next = timers.peek();
+        if (next == null) return SELECT_TIMEOUT_MS;
+        long untilDueMs = TimeUnit.NANOSECONDS.toMillis(next.dueNs() - System.nanoTime());
+        return Math.max(1, Math.min(SELECT_TIMEOUT_MS, untilDueMs)); // 0 would block forever
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+        Timer timer;
+        while ((timer = timers.peek()) != null && now - timer.dueNs() >= 0) {
+            timers.poll();
+            timer.task().run();
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) continue;
+
+            KeyHandler handler = (KeyHandler) key.attachment();
+            try {
+                handler.handle(key);
+            } catch (IOException | RuntimeException e) {
+                if (handler instanceof LoopConnection connection) {
+                    connection.fail(e);
+                } else if (running) {
+                    System.err.println("Accept error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void expireTimeouts() {
+        long now = System.nanoTime();
+        if (now - lastTimeoutCheckNs < TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT_MS)) return;
+        lastTimeoutCheckNs = now;
+
+        for (LoopConnection connection : new ArrayList<>(connections)) {
+            connection.checkTimeout(now);
+        }
+    }
+
+    private record Timer(long dueNs, Runnable task) {}
+
+    static void closeQuietly(SelectableChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
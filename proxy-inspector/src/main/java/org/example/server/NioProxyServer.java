@@ -0,0 +1,190 @@
+package org.example.server;
+
+import org.example.proxy.AcceptCounters;
+import org.example.proxy.AdmissionControl;
+import org.example.proxy.ProxyContext;
+import org.example.util.Config;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking alternative to ProxyServer.
+ *
+ * One selector thread (NioEventLoop) per configured event loop drives every connection as a
+ * state machine (NioConnection): read request head -> policy -> resolve -> connect -> relay.
+ * The first loop also owns the listening channel and hands accepted sockets out round-robin.
+ * With --acceptors=N the first N loops each own an SO_REUSEPORT listener (see Listeners) and
+ * accept on it, the kernel spreading new connections across them.
+ *
+ * Policy evaluation and transaction logging go through the same PolicyEngine and TransactionStore
+ * as the blocking engine, so both engines produce identical verdicts and transactions.
+ */
+public class NioProxyServer {
+    private final int port;
+    private final ServerSocketChannel[] listeners;
+    private final NioEventLoop[] loops;
+    private final ExecutorService resolver;
+    private final AtomicInteger counter = new AtomicInteger(0);
+    private final AdmissionControl admission;
+    private final AcceptCounters acceptCounters;
+    private final Acceptor[] acceptors;
+
+    public NioProxyServer(ProxyContext context) {
+        Config config = context.getConfig();
+        this.port = config.getProxyPort();
+        this.admission = context.getAdmission();
+        this.acceptCounters = context.getAcceptCounters();
+
+        // name lookups block, so they run off the event loops
+        AtomicInteger resolverIds = new AtomicInteger(1);
+        this.resolver = Executors.newFixedThreadPool(Math.max(2, config.getServerOptions().eventLoops()), r -> {
+            Thread t = new Thread(r, "nio-resolver-" + resolverIds.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            int eventLoops = config.getServerOptions().eventLoops();
+            listeners = Listeners.open(port, Math.min(config.getServerOptions().acceptors(), eventLoops),
+                    config.getServerOptions().reusePort());
+            for (ServerSocketChannel listener : listeners) {
+                listener.configureBlocking(false);
+            }
+
+            loops = new NioEventLoop[config.getServerOptions().eventLoops()];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new NioEventLoop(context, counter, resolver);
+            }
+            acceptors = new Acceptor[listeners.length];
+            for (int i = 0; i < listeners.length; i++) {
+                acceptors[i] = new Acceptor(i, listeners[i]);
+            }
+        } catch (IOException e) {
+            System.err.println("Error creating server: " + e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void start() {
+        try {
+            for (int i = 0; i < listeners.length; i++) {
+                loops[i].registerAcceptor(listeners[i], acceptors[i]);
+            }
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+            return;
+        }
+
+        for (int i = 1; i < loops.length; i++) {
+            new Thread(loops[i], "nio-loop-" + i).start();
+        }
+        System.out.println("Proxy server running on port: " + port
+                + " (engine=nio, event loops=" + loops.length + ", acceptors=" + listeners.length + ")");
+
+        loops[0].run(); // the calling thread becomes loop 0
+    }
+
+    public void stop() {
+        for (NioEventLoop loop : loops) {
+            loop.shutdown();
+        }
+        try {
+            Listeners.close(listeners);
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting and waits up to timeoutMs for the connections in flight, then closes what is
+     * left. Connections are not kept alive on this engine, so there is nothing idle to close early.
+     *
+     * @return the number of connections cut off at the deadline
+     */
+    public int drain(long timeoutMs) {
+        long startNs = System.nanoTime();
+        closeListeners();
+
+        System.out.println("Draining: stopped accepting, " + admission.stats().inFlight() + " connections in flight");
+        int cutOff;
+        try {
+            cutOff = admission.awaitDrained(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cutOff = admission.stats().inFlight();
+        }
+
+        stop(); // the loops close their remaining connections on shutdown
+        System.out.println("Drained in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs)
+                + " ms, " + cutOff + " connections cut off");
+        return cutOff;
+    }
+
+    /*
+     * Linux resets the connections still queued on a listener when it is closed. Each loop accepts
+     * what is queued on its listener one last time before closing it, so a successor bound to the
+     * same port (hot restart) only misses connections that arrive in between.
+     */
+    private void closeListeners() {
+        CountDownLatch closed = new CountDownLatch(listeners.length);
+        for (int i = 0; i < listeners.length; i++) {
+            ServerSocketChannel listener = listeners[i];
+            Acceptor acceptor = acceptors[i];
+            loops[i].execute(() -> {
+                try {
+                    acceptor.handle(null);
+                } catch (IOException e) {
+                    System.err.println("Accept error: " + e.getMessage());
+                }
+                Listeners.close(new ServerSocketChannel[] { listener });
+                closed.countDown();
+            });
+        }
+        try {
+            if (!closed.await(1, TimeUnit.SECONDS)) {
+                Listeners.close(listeners); // a loop did not respond, close from here
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Listeners.close(listeners);
+        }
+    }
+
+    // runs on the loop owning the listener whenever it has pending connections (the key is unused)
+    private final class Acceptor implements NioEventLoop.KeyHandler {
+        private final ServerSocketChannel listener;
+        private final AcceptCounters.Counter accepts;
+        private int nextLoop;
+
+        Acceptor(int id, ServerSocketChannel listener) {
+            this.listener = listener;
+            this.accepts = acceptCounters.register("acceptor-" + id);
+            this.nextLoop = id; // acceptors start their round-robin at different loops
+        }
+
+        @Override
+        public void handle(SelectionKey key) throws IOException {
+            SocketChannel channel;
+            while ((channel = listener.accept()) != null) {
+                long acceptedNs = System.nanoTime();
+                accepts.accepted();
+                NioEventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+
+                if (admission.tryAdmit()) {
+                    loop.register(channel, acceptedNs);
+                } else {
+                    NioShedConnection.shed(loop, channel, admission.getMaxInFlight());
+                }
+            }
+        }
+    }
+}
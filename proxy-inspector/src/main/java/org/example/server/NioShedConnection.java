@@ -0,0 +1,105 @@
+package org.example.server;
+
+import org.example.log.Transaction;
+import org.example.log.Verdict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client connection shed by admission control.
+ *
+ * The acceptor writes the 503 itself (it fits in the send buffer of a fresh socket, so this never
+ * blocks) and records the SHED transaction. The connection is then parked on an event loop that
+ * discards whatever the client sends until it closes, or LINGER_TIMEOUT passes: closing with an
+ * unread request in the receive buffer resets the connection, which can destroy the 503 before the
+ * client read it.
+ */
+final class NioShedConnection implements NioEventLoop.LoopConnection {
+    static final int RETRY_AFTER_SECONDS = 1;
+    private static final long LINGER_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(2);
+
+    private final NioEventLoop loop;
+    private final SocketChannel client;
+    private final ByteBuffer discard = ByteBuffer.allocate(1024);
+    private final long deadlineNs = System.nanoTime() + LINGER_TIMEOUT_NS;
+    private boolean closed;
+
+    private NioShedConnection(NioEventLoop loop, SocketChannel client) {
+        this.loop = loop;
+        this.client = client;
+    }
+
+    /**
+     * Answers 503 with Retry-After and hands the connection to loop for lingering.
+     * May be called from any thread, the channel must not be registered anywhere yet.
+     */
+    static void shed(NioEventLoop loop, SocketChannel client, int maxInFlight) {
+        long startNs = System.nanoTime();
+        String reason = "Too many connections in flight (" + maxInFlight + ")";
+        String clientIp = "unknown";
+
+        try {
+            clientIp = client.socket().getInetAddress().getHostAddress();
+            client.configureBlocking(false);
+            client.write(ByteBuffer.wrap(HttpErrors.serviceUnavailable(reason, RETRY_AFTER_SECONDS)));
+            client.shutdownOutput();
+            loop.execute(() -> new NioShedConnection(loop, client).register());
+        } catch (IOException | RuntimeException e) {
+            NioEventLoop.closeQuietly(client);
+        }
+
+        // nothing of the request was read, the transaction only tells who was turned away
+        Transaction tx = new Transaction("-", "-", 0, "-", startNs);
+        tx.setVerdict(Verdict.SHED);
+        tx.setErrorMessage(reason + ", client " + clientIp);
+        tx.setEndNs(System.nanoTime());
+        loop.store.add(tx);
+        System.out.println(tx); // non-verbose: always show the final one-line summary
+    }
+
+    private void register() {
+        try {
+            client.register(loop.selector(), SelectionKey.OP_READ, this);
+            loop.adopt(this);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+        int n;
+        do {
+            discard.clear();
+            n = client.read(discard);
+        } while (n > 0);
+
+        if (n == -1) {
+            close();
+        }
+    }
+
+    @Override
+    public void fail(Exception e) {
+        close();
+    }
+
+    @Override
+    public void checkTimeout(long nowNs) {
+        if (nowNs - deadlineNs >= 0) {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        NioEventLoop.closeQuietly(client);
+        loop.closed(this);
+    }
+}
@@ -0,0 +1,264 @@
+package org.example.server;
+
+import org.example.log.Transaction;
+import org.example.log.Verdict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two directions of a CONNECT tunnel, spliced on a NioEventLoop.
+ *
+ * Both engines end up here once the upstream connection is open: the NIO engine hands its
+ * connection's keys over to a tunnel on the same loop, the blocking engine hands the channels
+ * to one of its tunnel loops, so a tunnel never holds a blocking thread.
+ *
+ * Each direction has its own pooled buffer. When one side closes, the other side's output is
+ * shut down after the remaining bytes are flushed (TLS close_notify still gets through); the tunnel
+ * ends when both directions are done, on an error, or after being idle for IDLE_TIMEOUT.
+ * The transaction is recorded at the end with the tunnel's lifetime and bytes per direction.
+ */
+final class NioTunnel implements NioEventLoop.LoopConnection {
+    static final byte[] ESTABLISHED = "HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final long IDLE_TIMEOUT_NS = TimeUnit.MINUTES.toNanos(5);
+
+    private final NioEventLoop loop;
+    private final SocketChannel client;
+    private final SocketChannel upstream;
+    private final SelectionKey clientKey;
+    private final SelectionKey upstreamKey;
+    private Transaction tx;
+
+    // both buffers are kept in "fill" mode between events
+    private final ByteBuffer toServer;
+    private final ByteBuffer toClient;
+    private ByteBuffer early; // client bytes that arrived right behind the CONNECT head
+
+    private long bytesToServer;
+    private long bytesFromServer;
+    private boolean clientEof;
+    private boolean upstreamEof;
+    private boolean upstreamOutputShut;
+    private boolean clientOutputShut;
+    private boolean closed;
+    private long deadlineNs;
+
+    private NioTunnel(NioEventLoop loop, SocketChannel client, SocketChannel upstream, Transaction tx, byte[] earlyBytes)
+            throws IOException {
+        this.loop = loop;
+        this.client = client;
+        this.upstream = upstream;
+        this.tx = tx;
+
+        client.configureBlocking(false);
+        upstream.configureBlocking(false);
+        this.clientKey = takeOver(client);
+        this.upstreamKey = takeOver(upstream);
+
+        this.toServer = loop.buffers.acquire();
+        this.toClient = loop.buffers.acquire();
+        this.toClient.put(ESTABLISHED);
+        if (earlyBytes.length > 0) {
+            this.early = ByteBuffer.wrap(earlyBytes);
+            this.bytesToServer = earlyBytes.length;
+        }
+        this.deadlineNs = System.nanoTime() + IDLE_TIMEOUT_NS;
+        tx.setTunnel(true);
+    }
+
+    /**
+     * Starts splicing on this loop's thread. Channels already registered with the loop (NIO engine)
+     * keep their keys, others are registered. On failure both channels are closed and the
+     * transaction is recorded as an error.
+     */
+    static void open(NioEventLoop loop, SocketChannel client, SocketChannel upstream, Transaction tx, byte[] earlyBytes) {
+        NioTunnel tunnel = null;
+        try {
+            tunnel = new NioTunnel(loop, client, upstream, tx, earlyBytes);
+            loop.adopt(tunnel);
+            tunnel.writeToClient();
+            tunnel.updateInterest();
+        } catch (IOException | RuntimeException e) {
+            if (tunnel != null) {
+                tunnel.fail(e);
+                return;
+            }
+            NioEventLoop.closeQuietly(client);
+            NioEventLoop.closeQuietly(upstream);
+            loop.connectionCounter.decrementAndGet();
+            loop.admission.finished();
+
+            tx.setVerdict(Verdict.ERROR);
+            tx.setErrorMessage("Failed to open tunnel to " + tx.getHost() + ":" + tx.getPort());
+            tx.setEndNs(System.nanoTime());
+            loop.store.add(tx);
+            System.out.println(tx);
+        }
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+        if (key == clientKey) {
+            if (key.isReadable()) readClient();
+            if (!closed && key.isValid() && key.isWritable()) writeToClient();
+        } else {
+            if (key.isReadable()) readUpstream();
+            if (!closed && key.isValid() && key.isWritable()) writeToUpstream();
+        }
+        if (closed) return;
+
+        propagateHalfClose();
+        if (upstreamOutputShut && clientOutputShut) {
+            finish();
+            return;
+        }
+        updateInterest();
+    }
+
+    private void readClient() throws IOException {
+        int n = client.read(toServer);
+        if (n == -1) {
+            clientEof = true;
+            return;
+        }
+        bytesToServer += n;
+        touch();
+        writeToUpstream(); // optimistic write, saves a selector round trip
+    }
+
+    private void readUpstream() throws IOException {
+        int n = upstream.read(toClient);
+        if (n == -1) {
+            upstreamEof = true;
+            return;
+        }
+        bytesFromServer += n;
+        touch();
+        writeToClient();
+    }
+
+    private void writeToUpstream() throws IOException {
+        if (early != null) {
+            upstream.write(early);
+            if (early.hasRemaining()) return;
+            early = null;
+        }
+        if (toServer.position() > 0) {
+            toServer.flip();
+            upstream.write(toServer);
+            toServer.compact();
+        }
+    }
+
+    private void writeToClient() throws IOException {
+        if (toClient.position() > 0) {
+            toClient.flip();
+            client.write(toClient);
+            toClient.compact();
+        }
+    }
+
+    // a side that has closed and whose bytes were all delivered closes the other side's output
+    private void propagateHalfClose() throws IOException {
+        if (clientEof && !upstreamOutputShut && early == null && toServer.position() == 0) {
+            upstream.shutdownOutput();
+            upstreamOutputShut = true;
+        }
+        if (upstreamEof && !clientOutputShut && toClient.position() == 0) {
+            client.shutdownOutput();
+            clientOutputShut = true;
+        }
+    }
+
+    private void updateInterest() {
+        int clientOps = 0;
+        int upstreamOps = 0;
+
+        if (!clientEof && early == null && toServer.hasRemaining()) clientOps |= SelectionKey.OP_READ;
+        if (toClient.position() > 0) clientOps |= SelectionKey.OP_WRITE;
+        if (!upstreamEof && toClient.hasRemaining()) upstreamOps |= SelectionKey.OP_READ;
+        if (early != null || toServer.position() > 0) upstreamOps |= SelectionKey.OP_WRITE;
+
+        if (clientKey.isValid()) clientKey.interestOps(clientOps);
+        if (upstreamKey.isValid()) upstreamKey.interestOps(upstreamOps);
+    }
+
+    private void finish() {
+        tx.setVerdict(Verdict.ALLOWED);
+        record();
+        close();
+    }
+
+    @Override
+    public void fail(Exception e) {
+        if (closed) return;
+
+        // TLS peers often just reset the connection at the end, that is not an error once data flowed
+        if (bytesFromServer == 0) {
+            String message = "Tunnel to " + tx.getHost() + ":" + tx.getPort() + " failed";
+            logVerbose(() -> System.out.println(message + ": " + e));
+            tx.setVerdict(Verdict.ERROR);
+            tx.setErrorMessage(message);
+        } else {
+            tx.setVerdict(Verdict.ALLOWED);
+        }
+        record();
+        close();
+    }
+
+    @Override
+    public void checkTimeout(long nowNs) {
+        if (!closed && nowNs - deadlineNs >= 0) {
+            finish(); // idle tunnel, close it like the client would have
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        NioEventLoop.closeQuietly(client);
+        NioEventLoop.closeQuietly(upstream);
+        loop.closed(this);
+        loop.buffers.release(toServer);
+        loop.buffers.release(toClient);
+
+        int active = loop.connectionCounter.decrementAndGet();
+        loop.admission.finished();
+        logVerbose(() -> System.out.println("CONNECT -- active connections: " + active));
+    }
+
+    private SelectionKey takeOver(SocketChannel channel) throws IOException {
+        SelectionKey key = channel.keyFor(loop.selector());
+        if (key != null && key.isValid()) {
+            key.attach(this);
+            return key;
+        }
+        return channel.register(loop.selector(), 0, this);
+    }
+
+    private void record() {
+        if (tx == null) return;
+        tx.setBytesFromServer(bytesFromServer);
+        tx.setRequestBodyBytes(bytesToServer);
+        tx.setEndNs(System.nanoTime());
+        loop.store.add(tx);
+        System.out.println(tx); // non-verbose: always show the final one-line summary
+        tx = null; // a transaction is recorded exactly once
+    }
+
+    private void touch() {
+        deadlineNs = System.nanoTime() + IDLE_TIMEOUT_NS;
+    }
+
+    private void logVerbose(Runnable r) {
+        if (loop.config != null && loop.config.isVerbose()) {
+            r.run();
+        }
+    }
+}
@@ -1,35 +1,61 @@
 package org.example.server;
 
-import org.example.log.TransactionStore;
-import org.example.policy.PolicyEngine;
+import org.example.proxy.AcceptCounters;
+import org.example.proxy.AdmissionControl;
+import org.example.proxy.ProxyContext;
 import org.example.util.Config;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Blocking engine: acceptor threads hand every admitted connection to a ClientConnectionHandler
+ * on the worker executor.
+ *
+ * With --acceptors=N each acceptor blocks in accept() on its own SO_REUSEPORT listener (see
+ * Listeners), acceptor 0 runs on the calling thread. Acceptors share the worker executor, the
+ * admission limit and the CONNECT tunnel loops.
+ *
+ * drain() is the graceful variant of stop(): stop accepting, let the connections in flight finish
+ * (closing kept-alive ones between requests) up to a deadline, then cut off the rest.
+ */
 public class ProxyServer {
     private final int port;
-    private final ServerSocket server;
-    private final ExecutorService pool = Executors.newFixedThreadPool(50);
+    private final ServerSocketChannel[] listeners;
+    private final ExecutorService pool;
     private volatile boolean running;
+    private volatile boolean draining; // drain() owns the shutdown once its deadline passes
     AtomicInteger counter = new AtomicInteger(0);
-    private final TransactionStore store;
-    private final PolicyEngine engine;
+    private final ProxyContext context;
     private final Config config;
+    private final int acceptors;
+    // CONNECT tunnels are spliced here instead of holding a worker thread for their whole lifetime
+    private final NioEventLoop[] tunnelLoops;
+    private final AtomicInteger nextTunnelLoop = new AtomicInteger(0);
+    private final LiveConnections live = new LiveConnections();
 
-    public ProxyServer(Config config, TransactionStore store, PolicyEngine engine) {
-        this.config = config;
-        this.store = store;
+    public ProxyServer(ProxyContext context) {
+        this.context = context;
+        this.config = context.getConfig();
         this.port = config.getProxyPort();
-        this.engine = engine;
+        this.acceptors = config.getServerOptions().acceptors();
+        this.pool = WorkerExecutors.create(config.getServerOptions());
 
         try {
-            server = new ServerSocket(port);
+            tunnelLoops = new NioEventLoop[config.getServerOptions().eventLoops()];
+            for (int i = 0; i < tunnelLoops.length; i++) {
+                tunnelLoops[i] = new NioEventLoop(context, counter, null);
+            }
+
+            // blocking channels instead of plain ServerSockets: accepted sockets then have a
+            // SocketChannel, which lets the Forwarder relay response bodies channel to channel
+            listeners = Listeners.open(port, acceptors, config.getServerOptions().reusePort());
         } catch(IOException e) {
             System.err.println("Error creating server: " + e);
             throw new RuntimeException();
@@ -39,29 +65,105 @@ public class ProxyServer {
     public void start() {
         try {
             running = true;
-            System.out.println("Proxy server running on port: " + port);
+            for (int i = 0; i < tunnelLoops.length; i++) {
+                Thread thread = new Thread(tunnelLoops[i], "tunnel-loop-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            for (int i = 1; i < acceptors; i++) {
+                int id = i;
+                new Thread(() -> acceptLoop(id), "proxy-acceptor-" + i).start();
+            }
+            System.out.println("Proxy server running on port: " + port
+                    + " (executor=" + config.getServerOptions().executionMode().name().toLowerCase()
+                    + ", acceptors=" + acceptors + ", listeners=" + listeners.length + ")");
+
+            acceptLoop(0); // the calling thread becomes acceptor 0
+        } finally {
+            // acceptor 0 only returns on stop(), drain() or a listener error, take the other acceptors down with it
+            running = false;
+            Listeners.close(listeners);
+            if (!draining) { // a drain lets workers and tunnels run on until its deadline, then stop()s them
+                pool.shutdown();
+                shutdownTunnelLoops();
+            }
+        }
+    }
+
+    // acceptors beyond the number of listeners (no SO_REUSEPORT) share them
+    private void acceptLoop(int id) {
+        ServerSocketChannel server = listeners[id % listeners.length];
+        AcceptCounters.Counter accepts = context.getAcceptCounters().register("acceptor-" + id);
+        AdmissionControl admission = context.getAdmission();
+        try {
             while (running) {
-                Socket connection = server.accept();
-                Callable<Void> task = new ClientConnectionHandler(connection, counter, store, engine, config);
-                pool.submit(task);
+                SocketChannel channel = server.accept();
+                long acceptedNs = System.nanoTime();
+                accepts.accepted();
+                NioEventLoop tunnelLoop = tunnelLoops[Math.floorMod(nextTunnelLoop.getAndIncrement(), tunnelLoops.length)];
+
+                // over the limit: answer 503 right here instead of queueing behind everyone else
+                if (!admission.tryAdmit()) {
+                    NioShedConnection.shed(tunnelLoop, channel, admission.getMaxInFlight());
+                    continue;
+                }
+                Callable<Void> task = new ClientConnectionHandler(channel.socket(), counter, context, tunnelLoop, acceptedNs, live);
+                try {
+                    pool.submit(task);
+                } catch (RejectedExecutionException e) {
+                    admission.finished();
+                    NioShedConnection.shed(tunnelLoop, channel, admission.getMaxInFlight());
+                }
             }
         } catch (IOException e) {
             if (running) {
                 System.err.println("Server error: " + e.getMessage());
             }
-        } finally {
-            pool.shutdown();
         }
     }
 
     public void stop() {
         running = false;
         try {
-            server.close();
-        } catch (IOException e) {
-            System.err.println("Error closing connection: " + e);
+            Listeners.close(listeners);
         } finally {
             pool.shutdown();
+            shutdownTunnelLoops();
+        }
+    }
+
+    /**
+     * Stops accepting and waits up to timeoutMs for the connections in flight, then closes what is left.
+     *
+     * @return the number of connections cut off at the deadline
+     */
+    public int drain(long timeoutMs) {
+        draining = true;
+        running = false;
+        Listeners.close(listeners);
+        live.drain();
+
+        long startNs = System.nanoTime();
+        AdmissionControl admission = context.getAdmission();
+        System.out.println("Draining: stopped accepting, " + admission.stats().inFlight() + " connections in flight");
+        int cutOff;
+        try {
+            cutOff = admission.awaitDrained(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cutOff = admission.stats().inFlight();
+        }
+
+        live.closeAll();
+        stop(); // only now, the tunnel loops close the tunnels still open on shutdown
+        System.out.println("Drained in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs)
+                + " ms, " + cutOff + " connections cut off");
+        return cutOff;
+    }
+
+    private void shutdownTunnelLoops() {
+        for (NioEventLoop loop : tunnelLoops) {
+            loop.shutdown();
         }
     }
 
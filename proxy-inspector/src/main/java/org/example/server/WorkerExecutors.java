@@ -0,0 +1,49 @@
+package org.example.server;
+
+import org.example.util.ExecutionMode;
+import org.example.util.ServerOptions;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executor that runs ClientConnectionHandlers.
+ *
+ * The project still compiles for Java 17, so the virtual thread executor is looked up reflectively.
+ * On a Java 21+ runtime every connection gets its own virtual thread; on older runtimes
+ * we log a warning and fall back to the platform worker pool.
+ */
+final class WorkerExecutors {
+
+    private WorkerExecutors() {}
+
+    static ExecutorService create(ServerOptions options) {
+        if (options.executionMode() == ExecutionMode.VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            System.err.println("Virtual threads need Java 21+, falling back to a pool of "
+                    + options.workerThreads() + " worker threads");
+        }
+        return Executors.newFixedThreadPool(options.workerThreads(), namedThreads("proxy-worker-"));
+    }
+
+    // Returns null when the runtime has no virtual thread support
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger next = new AtomicInteger(1);
+        return r -> new Thread(r, prefix + next.getAndIncrement());
+    }
+}
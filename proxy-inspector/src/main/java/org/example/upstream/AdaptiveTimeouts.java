@@ -0,0 +1,168 @@
+package org.example.upstream;
+
+import org.example.util.TimeoutOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per host connect and read timeouts derived from observed latency (see TimeoutOptions).
+ *
+ * Every host keeps its last WINDOW connect times and times to the first response byte. Once
+ * MIN_SAMPLES are in, its timeout is p99Multiplier x p99, clamped to the floor and ceiling;
+ * a fast internal service then fails within a fraction of a second while a slow batch endpoint
+ * gets up to the ceiling.
+ *
+ * A timeout is recorded as a sample of the timeout itself, so a host that got slower than its
+ * timeout pushes its p99 (and with it the timeout) up instead of failing forever.
+ *
+ * Hosts are kept in an LRU of MAX_HOSTS entries, an evicted host starts over with the defaults.
+ */
+public final class AdaptiveTimeouts {
+    static final int WINDOW = 256;
+    static final int MIN_SAMPLES = 20;
+    private static final int MAX_HOSTS = 1024;
+
+    private final TimeoutOptions options;
+    private final Map<String, HostLatency> hosts = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HostLatency> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    public AdaptiveTimeouts(TimeoutOptions options) {
+        this.options = options;
+    }
+
+    public int connectTimeoutMs(String host) {
+        TimeoutOptions.HostTimeout override = options.overrides().get(host.toLowerCase());
+        if (override != null) return override.connectTimeoutMs();
+        if (!options.adaptive()) return options.connectTimeoutMs();
+        return latency(host).connect.timeoutMs(options.connectTimeoutMs(), options.connectFloorMs(), options.connectCeilingMs());
+    }
+
+    public int readTimeoutMs(String host) {
+        TimeoutOptions.HostTimeout override = options.overrides().get(host.toLowerCase());
+        if (override != null) return override.readTimeoutMs();
+        if (!options.adaptive()) return options.readTimeoutMs();
+        return latency(host).firstByte.timeoutMs(options.readTimeoutMs(), options.readFloorMs(), options.readCeilingMs());
+    }
+
+    public void recordConnect(String host, long connectNs) {
+        if (!options.adaptive()) return;
+        latency(host).connect.add(connectNs);
+    }
+
+    public void recordConnectTimeout(String host) {
+        recordConnect(host, TimeUnit.MILLISECONDS.toNanos(connectTimeoutMs(host)));
+    }
+
+    /** From the request being sent to the first byte of the response. */
+    public void recordFirstByte(String host, long firstByteNs) {
+        if (!options.adaptive()) return;
+        latency(host).firstByte.add(firstByteNs);
+    }
+
+    public void recordReadTimeout(String host) {
+        recordFirstByte(host, TimeUnit.MILLISECONDS.toNanos(readTimeoutMs(host)));
+    }
+
+    /**
+     * A percentile of the host's recent times to the first response byte.
+     *
+     * @return 0 until the host has MIN_SAMPLES (and always without adaptive timeouts, which take no samples)
+     */
+    public long firstBytePercentileNs(String host, int percentile) {
+        if (!options.adaptive()) return 0;
+        return latency(host).firstByte.percentileNs(percentile);
+    }
+
+    /** The hosts with samples, by name. */
+    public List<Stats> stats() {
+        List<Map.Entry<String, HostLatency>> entries;
+        synchronized (hosts) {
+            entries = new ArrayList<>(hosts.entrySet());
+        }
+        entries.sort(Map.Entry.comparingByKey());
+
+        List<Stats> stats = new ArrayList<>(entries.size());
+        for (Map.Entry<String, HostLatency> entry : entries) {
+            String host = entry.getKey();
+            HostLatency latency = entry.getValue();
+            stats.add(new Stats(host, latency.connect.size(), toMs(latency.connect.p99Ns()), connectTimeoutMs(host),
+                    latency.firstByte.size(), toMs(latency.firstByte.p99Ns()), readTimeoutMs(host)));
+        }
+        return stats;
+    }
+
+    private HostLatency latency(String host) {
+        String key = host.toLowerCase();
+        synchronized (hosts) {
+            return hosts.computeIfAbsent(key, k -> new HostLatency());
+        }
+    }
+
+    private static double toMs(long ns) {
+        return TimeUnit.NANOSECONDS.toMicros(ns) / 1000.0;
+    }
+
+    private final class HostLatency {
+        final LatencyWindow connect = new LatencyWindow();
+        final LatencyWindow firstByte = new LatencyWindow();
+    }
+
+    /** Ring buffer of the last WINDOW samples, percentiles come from a sorted copy refreshed every few samples. */
+    private final class LatencyWindow {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+        private long[] sorted = new long[0]; // the samples as of the last update
+        private int sinceUpdate;
+
+        synchronized void add(long ns) {
+            samples[next] = ns;
+            next = (next + 1) % WINDOW;
+            if (count < WINDOW) count++;
+            if (++sinceUpdate >= 8 || count == MIN_SAMPLES) {
+                sinceUpdate = 0;
+                sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+            }
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        long p99Ns() {
+            return percentileNs(99);
+        }
+
+        synchronized long percentileNs(int percentile) {
+            if (count < MIN_SAMPLES) return 0;
+            return sorted[(int) Math.ceil(sorted.length * percentile / 100.0) - 1];
+        }
+
+        int timeoutMs(int defaultMs, int floorMs, int ceilingMs) {
+            long p99 = p99Ns();
+            if (p99 == 0) return defaultMs;
+            long adaptive = (long) Math.ceil(TimeUnit.NANOSECONDS.toMicros(p99) * options.p99Multiplier() / 1000.0);
+            return (int) Math.max(floorMs, Math.min(ceilingMs, adaptive));
+        }
+    }
+
+    /**
+     * Latency and resulting timeouts of one host, exposed through /stats.
+     *
+     * @param connectP99Ms   - 0 until the host has MIN_SAMPLES connects
+     * @param firstByteP99Ms - same for the time to the first response byte
+     */
+    public record Stats(String host, int connectSamples, double connectP99Ms, int connectTimeoutMs,
+                        int firstByteSamples, double firstByteP99Ms, int readTimeoutMs) {
+    }
+}
@@ -0,0 +1,194 @@
+package org.example.upstream;
+
+import org.example.util.BulkheadOptions;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per upstream concurrency limits (bulkheads).
+ *
+ * Every host gets its own bulkhead of maxPerHost permits, hosts of a configured group share the
+ * group's bulkhead instead. A request holds a permit while it is forwarded; when the bulkhead is
+ * full it waits up to queueTimeoutMs for one and is rejected after that. An origin that hangs
+ * then ties up at most its own permits, not every worker of the proxy.
+ *
+ * Host bulkheads are created on first use. Past MAX_HOST_BULKHEADS the idle ones are dropped,
+ * a dropped host simply starts over with a fresh bulkhead.
+ */
+public final class Bulkheads {
+    private static final int MAX_HOST_BULKHEADS = 1024;
+
+    private final int maxPerHost;
+    private final int queueTimeoutMs;
+    private final Map<String, Bulkhead> groupByHost = new HashMap<>();
+    private final List<Bulkhead> groups = new ArrayList<>();
+    private final ConcurrentHashMap<String, Bulkhead> hosts = new ConcurrentHashMap<>();
+
+    public Bulkheads(BulkheadOptions options) {
+        this.maxPerHost = options.maxPerHost();
+        this.queueTimeoutMs = options.queueTimeoutMs();
+        for (BulkheadOptions.Group group : options.groups()) {
+            Bulkhead bulkhead = new Bulkhead(group.name(), group.limit());
+            groups.add(bulkhead);
+            for (String host : group.hosts()) {
+                groupByHost.put(host, bulkhead);
+            }
+        }
+    }
+
+    /**
+     * @return the bulkhead a request to host has to pass, null when host is not limited
+     */
+    public Bulkhead forHost(String host) {
+        String key = host.toLowerCase();
+        Bulkhead group = groupByHost.get(key);
+        if (group != null || maxPerHost == 0) {
+            return group;
+        }
+
+        Bulkhead bulkhead = hosts.get(key);
+        if (bulkhead != null) {
+            return bulkhead;
+        }
+        if (hosts.size() >= MAX_HOST_BULKHEADS) {
+            hosts.values().removeIf(Bulkhead::isIdle);
+        }
+        return hosts.computeIfAbsent(key, k -> new Bulkhead(k, maxPerHost));
+    }
+
+    public int getQueueTimeoutMs() {
+        return queueTimeoutMs;
+    }
+
+    /** Groups first, then the host bulkheads by name. */
+    public List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>();
+        for (Bulkhead group : groups) {
+            stats.add(group.stats());
+        }
+        hosts.values().stream()
+                .sorted(Comparator.comparing(Bulkhead::getName))
+                .forEach(bulkhead -> stats.add(bulkhead.stats()));
+        return stats;
+    }
+
+    /**
+     * One bulkhead. Blocking callers use acquire(), the NIO engine polls tryAcquire() from its
+     * event loop between enqueue() and dequeue() and calls reject() when it gives up.
+     */
+    public static final class Bulkhead {
+        private final String name;
+        private final int limit;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger(0);
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder queuedTotal = new LongAdder();
+        private final LongAdder waitNsTotal = new LongAdder();
+
+        Bulkhead(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+            this.permits = new Semaphore(limit, true); // fair: waiters are served in arrival order
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        /** Takes a permit if one is free right now. */
+        public boolean tryAcquire() {
+            if (permits.tryAcquire()) {
+                admitted.increment();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Takes a permit, waiting up to timeoutMs for one.
+         *
+         * @return false if the request has to be rejected
+         */
+        public boolean acquire(long timeoutMs) throws InterruptedException {
+            if (tryAcquire()) return true;
+            if (timeoutMs == 0) {
+                reject();
+                return false;
+            }
+
+            long startNs = System.nanoTime();
+            enqueue();
+            boolean acquired = false;
+            try {
+                acquired = permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+            } finally {
+                dequeue(System.nanoTime() - startNs);
+            }
+            if (acquired) {
+                admitted.increment();
+            } else {
+                reject();
+            }
+            return acquired;
+        }
+
+        public void release() {
+            permits.release();
+        }
+
+        public void enqueue() {
+            waiting.incrementAndGet();
+            queuedTotal.increment();
+        }
+
+        public void dequeue(long waitNs) {
+            waiting.decrementAndGet();
+            waitNsTotal.add(waitNs);
+        }
+
+        public void reject() {
+            rejected.increment();
+        }
+
+        public int inFlight() {
+            return limit - permits.availablePermits();
+        }
+
+        private boolean isIdle() {
+            return inFlight() == 0 && waiting.get() == 0;
+        }
+
+        Stats stats() {
+            long queued = queuedTotal.sum();
+            long avgWaitNs = (queued == 0) ? 0 : waitNsTotal.sum() / queued;
+            return new Stats(name, limit, inFlight(), waiting.get(), admitted.sum(), rejected.sum(),
+                    TimeUnit.NANOSECONDS.toMicros(avgWaitNs) / 1000.0);
+        }
+    }
+
+    /**
+     * Counters of one bulkhead exposed through /stats.
+     *
+     * @param inFlight  - permits held right now
+     * @param waiting   - requests queued for a permit right now
+     * @param rejected  - requests turned away because no permit freed up in time
+     * @param avgWaitMs - average wait of the requests that had to queue
+     */
+    public record Stats(String name, int limit, int inFlight, int waiting, long admitted, long rejected,
+                        double avgWaitMs) {
+    }
+}
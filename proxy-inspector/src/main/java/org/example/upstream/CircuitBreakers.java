@@ -0,0 +1,296 @@
+package org.example.upstream;
+
+import org.example.util.BreakerOptions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per upstream (host:port) circuit breakers.
+ *
+ * CLOSED    - requests go through; the outcomes of the last window requests are kept, and once
+ *             minRequests are in and failureRatePercent of them failed the breaker opens
+ * OPEN      - requests fail right away with 503 instead of each waiting out a connect timeout
+ * HALF_OPEN - after openMs one trial request goes through: success closes the breaker (with an
+ *             empty window), failure opens it again
+ *
+ * A failure is a request that got no response head (connect error, timeout, reset), a 502, 503
+ * or 504 from the upstream, or a head slower than slowMs. A request that failed after its head
+ * (e.g. the client went away mid-body) says nothing about the upstream and counts as a success.
+ *
+ * With probeIntervalMs, open upstreams are probed with a TCP connect in the background: a probe
+ * that connects lets the trial request through right away, one that fails keeps the breaker open
+ * for another openMs. A recovered origin then takes traffic again within one probe interval, and
+ * a dead one never costs a client request a connect timeout.
+ *
+ * Breakers are created on first use. Past MAX_BREAKERS the closed ones without failures are dropped.
+ */
+public final class CircuitBreakers {
+    private static final int MAX_BREAKERS = 1024;
+    private static final int[] FAILURE_STATUS = { 502, 503, 504 };
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final BreakerOptions options;
+    private final DnsCache dns;
+    private final AdaptiveTimeouts timeouts;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService prober;
+
+    public CircuitBreakers(BreakerOptions options, DnsCache dns, AdaptiveTimeouts timeouts) {
+        this(options, dns, timeouts, System::nanoTime);
+    }
+
+    CircuitBreakers(BreakerOptions options, DnsCache dns, AdaptiveTimeouts timeouts, LongSupplier clock) {
+        this.options = options;
+        this.dns = dns;
+        this.timeouts = timeouts;
+        this.clock = clock;
+        if (options.enabled() && options.probeIntervalMs() > 0 && dns != null) {
+            this.prober = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "breaker-prober");
+                t.setDaemon(true);
+                return t;
+            });
+            this.prober.scheduleWithFixedDelay(this::probeOpen, options.probeIntervalMs(), options.probeIntervalMs(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.prober = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return options.enabled();
+    }
+
+    /**
+     * @return the breaker of host:port, null when breakers are off
+     */
+    public Breaker forUpstream(String host, int port) {
+        if (!options.enabled()) {
+            return null;
+        }
+        String key = host.toLowerCase() + ":" + port;
+        Breaker breaker = breakers.get(key);
+        if (breaker != null) {
+            return breaker;
+        }
+        if (breakers.size() >= MAX_BREAKERS) {
+            breakers.values().removeIf(Breaker::isHealthy);
+        }
+        return breakers.computeIfAbsent(key, k -> new Breaker(k, host.toLowerCase(), port));
+    }
+
+    /** By upstream name. */
+    public List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>();
+        breakers.values().stream()
+                .sorted(Comparator.comparing(Breaker::getName))
+                .forEach(breaker -> stats.add(breaker.stats()));
+        return stats;
+    }
+
+    public void shutdown() {
+        if (prober != null) {
+            prober.shutdownNow();
+        }
+    }
+
+    // one round: every open breaker gets a TCP connect, one after the other on the prober thread
+    void probeOpen() {
+        for (Breaker breaker : breakers.values()) {
+            if (breaker.getState() != State.OPEN) continue;
+            boolean up;
+            try {
+                ConnectRacer.connect(dns.resolveAll(breaker.host), breaker.port, timeouts.connectTimeoutMs(breaker.host))
+                        .channel().close();
+                up = true;
+            } catch (IOException | RuntimeException e) {
+                up = false;
+            }
+            breaker.probed(up);
+        }
+    }
+
+    /**
+     * The breaker of one upstream. Callers ask allow() before forwarding and report every request
+     * it let through with record(). A trial request that never reports (its client went away
+     * before the upstream answered) is given up on after openMs and the next request becomes the trial.
+     */
+    public final class Breaker {
+        private final String name;
+        private final String host;
+        private final int port;
+
+        // guarded by this
+        private final boolean[] failed = new boolean[options.window()];
+        private int count;
+        private int next;
+        private int failures;
+        private State state = State.CLOSED;
+        private long openedNs;
+        private long trialNs;
+        private boolean trialRunning;
+
+        private final LongAdder opened = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder probes = new LongAdder();
+
+        private Breaker(String name, String host, int port) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        /** Whether a request may go to the upstream now; false means fail it right away. */
+        public boolean allow() {
+            synchronized (this) {
+                long now = clock.getAsLong();
+                if (state == State.OPEN && now - openedNs >= openNs()) {
+                    state = State.HALF_OPEN;
+                    trialRunning = false;
+                }
+                if (state == State.CLOSED) {
+                    return true;
+                }
+                if (state == State.HALF_OPEN && (!trialRunning || now - trialNs >= openNs())) {
+                    trialRunning = true;
+                    trialNs = now;
+                    return true;
+                }
+            }
+            rejected.increment();
+            return false;
+        }
+
+        /** How long until the breaker lets a request through again, 0 when it does now. */
+        public synchronized long retryAfterMs() {
+            if (state != State.OPEN) return 0;
+            long leftNs = openNs() - (clock.getAsLong() - openedNs);
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(leftNs));
+        }
+
+        /**
+         * Reports a request allow() let through.
+         *
+         * @param statusCode  - status of the upstream's response, -1 when no response head arrived
+         * @param firstByteNs - from the request being sent to the first response byte, -1 when unknown
+         */
+        public void record(int statusCode, long firstByteNs) {
+            boolean failure = statusCode < 0 || isFailureStatus(statusCode)
+                    || (options.slowMs() > 0 && firstByteNs > TimeUnit.MILLISECONDS.toNanos(options.slowMs()));
+            synchronized (this) {
+                if (state == State.HALF_OPEN) {
+                    trialRunning = false;
+                    if (failure) {
+                        open();
+                    } else {
+                        close();
+                    }
+                    return;
+                }
+                if (state == State.OPEN) {
+                    return; // a request from before the breaker opened
+                }
+                if (count == failed.length && failed[next]) {
+                    failures--;
+                }
+                failed[next] = failure;
+                if (failure) failures++;
+                next = (next + 1) % failed.length;
+                if (count < failed.length) count++;
+
+                if (count >= options.minRequests() && failures * 100L >= (long) options.failureRatePercent() * count) {
+                    open();
+                }
+            }
+        }
+
+        /** A request allow() let through was not sent after all (e.g. its bulkhead was full). */
+        public synchronized void skip() {
+            if (state == State.HALF_OPEN) {
+                trialRunning = false;
+            }
+        }
+
+        // a probe's verdict on an open breaker
+        synchronized void probed(boolean up) {
+            probes.increment();
+            if (state != State.OPEN) return;
+            if (up) {
+                state = State.HALF_OPEN;
+                trialRunning = false;
+            } else {
+                openedNs = clock.getAsLong(); // still down: another openMs before a client request tries
+            }
+        }
+
+        // caller holds the lock
+        private void open() {
+            state = State.OPEN;
+            openedNs = clock.getAsLong();
+            opened.increment();
+        }
+
+        // caller holds the lock
+        private void close() {
+            state = State.CLOSED;
+            count = 0;
+            next = 0;
+            failures = 0;
+        }
+
+        private long openNs() {
+            return TimeUnit.MILLISECONDS.toNanos(options.openMs());
+        }
+
+        private synchronized boolean isHealthy() {
+            return state == State.CLOSED && failures == 0;
+        }
+
+        synchronized Stats stats() {
+            double failureRate = (count == 0) ? 0 : Math.round(failures * 1000.0 / count) / 1000.0;
+            return new Stats(name, state.name(), count, failureRate, opened.sum(), rejected.sum(), probes.sum(),
+                    retryAfterMs());
+        }
+    }
+
+    private static boolean isFailureStatus(int statusCode) {
+        for (int status : FAILURE_STATUS) {
+            if (status == statusCode) return true;
+        }
+        return false;
+    }
+
+    /**
+     * State of one breaker exposed through /stats.
+     *
+     * @param upstream     - host:port
+     * @param samples      - outcomes in the window (cleared when a trial closes the breaker)
+     * @param failureRate  - share of failed outcomes in the window, 0 to 1
+     * @param opened       - times the breaker opened
+     * @param rejected     - requests failed right away while it was open
+     * @param probes       - TCP connect probes of the upstream while it was open
+     * @param retryAfterMs - time left until the next trial request, 0 unless open
+     */
+    public record Stats(String upstream, String state, int samples, double failureRate, long opened, long rejected,
+                        long probes, long retryAfterMs) {
+    }
+}
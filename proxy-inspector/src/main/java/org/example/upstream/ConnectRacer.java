@@ -0,0 +1,154 @@
+package org.example.upstream;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Happy eyeballs (RFC 8305) connects: every resolved address of a host is a candidate, attempts
+ * start ATTEMPT_DELAY apart (or right away when the previous one fails) and the first connection
+ * that completes wins, the others are closed.
+ *
+ * A blackholed address (typically an IPv6 route that silently drops SYNs) then costs 250 ms
+ * instead of the whole connect timeout. Candidates alternate between address families, starting
+ * with the family the resolver listed first.
+ *
+ * connect() runs the race on its own selector for the blocking engine, the NIO engine runs the
+ * same schedule on its event loop with interleave() and ATTEMPT_DELAY_NS.
+ */
+public final class ConnectRacer {
+    /** RFC 8305 recommended Connection Attempt Delay. */
+    public static final long ATTEMPT_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private ConnectRacer() {}
+
+    /**
+     * @param channel   - connected, in blocking mode
+     * @param connectNs - from the first attempt to the winning connection
+     */
+    public record Connected(SocketChannel channel, InetSocketAddress address, long connectNs) {
+        public String family() {
+            return ConnectRacer.family(address.getAddress());
+        }
+    }
+
+    public static String family(InetAddress address) {
+        return (address instanceof Inet6Address) ? "IPv6" : "IPv4";
+    }
+
+    /**
+     * Resolver order with the families interleaved: first address, first address of the other
+     * family, second address of the first family, and so on.
+     */
+    public static List<InetAddress> interleave(InetAddress[] addresses) {
+        if (addresses.length == 0) return List.of();
+
+        boolean firstIsV6 = addresses[0] instanceof Inet6Address;
+        Deque<InetAddress> preferred = new ArrayDeque<>();
+        Deque<InetAddress> other = new ArrayDeque<>();
+        for (InetAddress address : addresses) {
+            ((address instanceof Inet6Address) == firstIsV6 ? preferred : other).add(address);
+        }
+
+        List<InetAddress> ordered = new ArrayList<>(addresses.length);
+        while (!preferred.isEmpty() || !other.isEmpty()) {
+            if (!preferred.isEmpty()) ordered.add(preferred.poll());
+            if (!other.isEmpty()) ordered.add(other.poll());
+        }
+        return ordered;
+    }
+
+    /**
+     * Races connects to port on the given addresses, blocking until one wins or all failed.
+     *
+     * @param timeoutMs - for the whole race, not per attempt
+     * @throws IOException the error of the last failed attempt, or a SocketTimeoutException
+     */
+    public static Connected connect(InetAddress[] addresses, int port, int timeoutMs) throws IOException {
+        Connected winner;
+        try (Selector selector = Selector.open()) {
+            winner = race(selector, interleave(addresses), port, timeoutMs); // closing the selector deregisters it
+        }
+        winner.channel().configureBlocking(true);
+        return winner;
+    }
+
+    private static Connected race(Selector selector, List<InetAddress> candidates, int port, int timeoutMs) throws IOException {
+        long startNs = System.nanoTime();
+        long deadlineNs = startNs + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long nextAttemptNs = startNs;
+        int next = 0;
+        int pending = 0;
+        IOException lastError = null;
+
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                if (next < candidates.size() && (pending == 0 || now - nextAttemptNs >= 0)) {
+                    InetSocketAddress address = new InetSocketAddress(candidates.get(next++), port);
+                    SocketChannel channel = SocketChannel.open();
+                    try {
+                        channel.configureBlocking(false);
+                        if (channel.connect(address)) {
+                            return new Connected(channel, address, System.nanoTime() - startNs);
+                        }
+                        channel.register(selector, SelectionKey.OP_CONNECT, address);
+                        pending++;
+                        nextAttemptNs = now + ATTEMPT_DELAY_NS;
+                    } catch (IOException e) {
+                        channel.close(); // e.g. no route for this family, go on with the next one
+                        lastError = e;
+                    }
+                    continue;
+                }
+
+                if (pending == 0) {
+                    throw (lastError != null) ? lastError : new ConnectException("No address to connect to");
+                }
+                long waitNs = deadlineNs - now;
+                if (waitNs <= 0) {
+                    throw new SocketTimeoutException("Connect timed out");
+                }
+                if (next < candidates.size()) {
+                    waitNs = Math.min(waitNs, nextAttemptNs - now);
+                }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNs)));
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            key.cancel();
+                            return new Connected(channel, (InetSocketAddress) key.attachment(), System.nanoTime() - startNs);
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        channel.close();
+                        pending--;
+                        lastError = e;
+                        nextAttemptNs = now; // a failed attempt starts the next one right away
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            // the losers (and everything, when the race failed)
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid()) {
+                    key.channel().close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.example.upstream;
+
+import org.example.util.UpstreamOptions;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Proxy-owned cache of end server name lookups, used wherever an upstream address is built.
+ *
+ * - successful lookups are kept for the positive TTL, failed ones (unknown host) for the
+ *   negative TTL, so a typo'd host does not cost a resolver round trip on every request
+ * - at most maxEntries names are kept, the least recently used one is evicted first
+ * - refresh-ahead: a hit in the last quarter of an entry's TTL starts a background lookup,
+ *   so hosts in steady use never see an expired entry (and never wait for the resolver)
+ * - IP literals bypass the cache, there is nothing to look up
+ *
+ * The JDK resolver does not expose record TTLs, the TTLs are configured instead.
+ */
+public final class DnsCache {
+
+    /** The underlying lookup, InetAddress.getAllByName outside of tests. */
+    interface Lookup {
+        InetAddress[] lookup(String host) throws UnknownHostException;
+    }
+
+    private final int maxEntries;
+    private final long ttlNs;
+    private final long negativeTtlNs;
+    private final Lookup lookup;
+    private final LongSupplier clock;
+    private final ExecutorService refresher;
+
+    // access ordered: iteration starts at the least recently used name
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DnsCache(UpstreamOptions options) {
+        this(options.dnsCacheSize(), options.dnsTtlMs(), options.dnsNegativeTtlMs(),
+                InetAddress::getAllByName, System::nanoTime, newRefresher());
+    }
+
+    DnsCache(int maxEntries, long ttlMs, long negativeTtlMs, Lookup lookup, LongSupplier clock, ExecutorService refresher) {
+        this.maxEntries = maxEntries;
+        this.ttlNs = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.negativeTtlNs = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        this.lookup = lookup;
+        this.clock = clock;
+        this.refresher = refresher;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= DnsCache.this.maxEntries) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Resolved address of host:port, the first address the resolver returned for host.
+     *
+     * @throws UnknownHostException if the name does not resolve (possibly answered from the cache)
+     */
+    public InetSocketAddress resolve(String host, int port) throws UnknownHostException {
+        return new InetSocketAddress(resolveAll(host)[0], port);
+    }
+
+    /**
+     * All addresses of host in resolver order. The array is shared, callers must not modify it.
+     */
+    public InetAddress[] resolveAll(String host) throws UnknownHostException {
+        if (!isEnabled() || isIpLiteral(host)) {
+            return lookup.lookup(host);
+        }
+
+        InetAddress[] cached = fromCache(host);
+        if (cached != null) {
+            return cached;
+        }
+        misses.increment();
+        return lookupAndStore(host.toLowerCase(Locale.ROOT), host);
+    }
+
+    /**
+     * Like resolveAll, but never waits for the resolver: returns null when host is not cached
+     * (IP literals included). Lets the NIO engine skip the hop to its resolver pool on a hit.
+     */
+    public InetAddress[] resolveCached(String host) throws UnknownHostException {
+        if (!isEnabled() || isIpLiteral(host)) {
+            return null;
+        }
+        return fromCache(host);
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), negativeHits.sum(), misses.sum(), refreshes.sum(), evictions.sum(), size);
+    }
+
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private InetAddress[] fromCache(String host) throws UnknownHostException {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = clock.getAsLong();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || now - entry.expiresNs() >= 0) {
+            return null;
+        }
+
+        if (entry.addresses() == null) {
+            negativeHits.increment();
+            throw new UnknownHostException(host);
+        }
+        hits.increment();
+        if (now - entry.refreshAtNs() >= 0 && entry.refreshing().compareAndSet(false, true)) {
+            refreshAhead(key, host);
+        }
+        return entry.addresses();
+    }
+
+    private InetAddress[] lookupAndStore(String key, String host) throws UnknownHostException {
+        InetAddress[] addresses;
+        try {
+            addresses = lookup.lookup(host);
+        } catch (UnknownHostException e) {
+            store(key, null, negativeTtlNs);
+            throw e;
+        }
+        store(key, addresses, ttlNs);
+        return addresses;
+    }
+
+    private void refreshAhead(String key, String host) {
+        try {
+            refresher.execute(() -> {
+                refreshes.increment();
+                try {
+                    store(key, lookup.lookup(host), ttlNs);
+                } catch (UnknownHostException e) {
+                    // keep serving the current entry until it expires, the next miss looks it up again
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    private void store(String key, InetAddress[] addresses, long ttl) {
+        long now = clock.getAsLong();
+        Entry entry = new Entry(addresses, now + ttl, now + ttl - ttl / 4);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    // IPv4 dotted quads and IPv6 literals never go to the resolver
+    private static boolean isIpLiteral(String host) {
+        if (host.indexOf(':') >= 0) return true;
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) return false;
+        }
+        return !host.isEmpty();
+    }
+
+    private static ExecutorService newRefresher() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "dns-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param addresses  - null for a cached lookup failure
+     * @param refreshing - a refresh-ahead lookup was started for this entry
+     */
+    private record Entry(InetAddress[] addresses, long expiresNs, long refreshAtNs, AtomicBoolean refreshing) {
+        Entry(InetAddress[] addresses, long expiresNs, long refreshAtNs) {
+            this(addresses, expiresNs, refreshAtNs, new AtomicBoolean(false));
+        }
+    }
+
+    /**
+     * Resolver cache counters exposed through /stats.
+     *
+     * @param negativeHits - lookups answered with a cached unknown host
+     * @param refreshes    - background refresh-ahead lookups
+     */
+    public record Stats(long hits, long negativeHits, long misses, long refreshes, long evictions, int entries) {
+
+        /** Share of lookups answered from the cache, 0 before the first lookup. */
+        public double hitRate() {
+            long answered = hits + negativeHits;
+            long total = answered + misses;
+            return (total == 0) ? 0.0 : (double) answered / total;
+        }
+    }
+}
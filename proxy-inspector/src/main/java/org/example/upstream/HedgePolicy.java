@@ -0,0 +1,142 @@
+package org.example.upstream;
+
+import org.example.util.HedgeOptions;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * When a request to an end server gets a second attempt.
+ *
+ * Hedging - a GET/HEAD whose first attempt has no response head after the host's percentile
+ *           time to the first byte (see AdaptiveTimeouts) is sent again on another connection;
+ *           the first head to arrive wins and the other attempt is closed. Only the slowest
+ *           (100 - percentile)% of requests are hedged, and they are the ones that set the p99.
+ * Retries - a connect that failed is tried again up to connectRetries times. Nothing was sent
+ *           yet, so this is safe for every method.
+ *
+ * Both draw on one budget so that an upstream in trouble does not get its traffic multiplied:
+ * every forwarded request deposits budgetPercent/100 of a token, every hedge or retry takes a
+ * whole one. The balance is capped at MAX_TOKENS, an idle period buys at most that many extra
+ * attempts in a row.
+ *
+ * Hedged attempts run on a cached pool of daemon threads, the first attempt stays on the
+ * request's own thread.
+ */
+public final class HedgePolicy {
+    private static final long TOKEN = 1_000; // the budget counts thousandths of a token
+    static final long MAX_TOKENS = 10;
+
+    private final HedgeOptions options;
+    private final AdaptiveTimeouts timeouts;
+    private final AtomicLong balance = new AtomicLong();
+    private final ExecutorService attempts;
+
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder overBudget = new LongAdder();
+
+    public HedgePolicy(HedgeOptions options, AdaptiveTimeouts timeouts) {
+        this.options = options;
+        this.timeouts = timeouts;
+        if (options.enabled()) {
+            AtomicInteger threads = new AtomicInteger();
+            this.attempts = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "hedge-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.attempts = null;
+        }
+    }
+
+    /** Counts one forwarded request towards the budget. */
+    public void deposit() {
+        long deposit = options.budgetPercent() * TOKEN / 100;
+        balance.getAndUpdate(b -> Math.min(MAX_TOKENS * TOKEN, b + deposit));
+    }
+
+    /**
+     * How long the first attempt of a request to host may go without a response head before it
+     * is hedged.
+     *
+     * @return 0 when the request is not hedged: hedging is off, the method is not GET/HEAD, or the
+     *         host does not have enough samples yet
+     */
+    public int hedgeAfterMs(String host, String method) {
+        if (!options.enabled() || !("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method))) {
+            return 0;
+        }
+        long ns = timeouts.firstBytePercentileNs(host, options.percentile());
+        return (ns == 0) ? 0 : (int) Math.max(1, Math.ceil(ns / 1_000_000.0));
+    }
+
+    /** Whether the budget has room for a hedge; takes its token when it does. */
+    public boolean tryHedge() {
+        if (!withdraw()) return false;
+        hedged.increment();
+        return true;
+    }
+
+    /** The hedged attempt answered first. */
+    public void hedgeWon() {
+        hedgesWon.increment();
+    }
+
+    /**
+     * Whether a connect that failed gets another try; takes its token when it does.
+     *
+     * @param failedConnects - connects of this request that failed so far
+     */
+    public boolean tryRetry(int failedConnects) {
+        if (failedConnects > options.connectRetries() || !withdraw()) return false;
+        retries.increment();
+        return true;
+    }
+
+    /** Runs a hedged attempt. */
+    public void execute(Runnable attempt) {
+        attempts.execute(attempt);
+    }
+
+    public void shutdown() {
+        if (attempts != null) {
+            attempts.shutdownNow();
+        }
+    }
+
+    private boolean withdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < TOKEN) {
+                overBudget.increment();
+                return false;
+            }
+            if (balance.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(options.enabled(), hedged.sum(), hedgesWon.sum(), retries.sum(), overBudget.sum(),
+                balance.get() / (double) TOKEN);
+    }
+
+    /**
+     * Hedging and retry counters exposed through /stats.
+     *
+     * @param hedged     - second attempts sent
+     * @param hedgesWon  - second attempts that answered first
+     * @param retries    - connects tried again after a failed one
+     * @param overBudget - hedges and retries not sent because the budget was used up
+     * @param budget     - attempts the budget has room for right now
+     */
+    public record Stats(boolean enabled, long hedged, long hedgesWon, long retries, long overBudget, double budget) {
+    }
+}
@@ -0,0 +1,263 @@
+package org.example.upstream;
+
+import org.example.util.Balancing;
+import org.example.util.ReverseProxyOptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Reverse-proxy routing: the request's Host picks a virtual host, the balancer picks one of its backends.
+ *
+ * ROUND_ROBIN       - a shared counter per virtual host
+ * LEAST_OUTSTANDING - a scan for the fewest requests in flight, starting at a rotating offset so ties take turns
+ * PEAK_EWMA         - power of two choices: two random backends, the one with the lower cost wins.
+ *                     cost = latency estimate x (requests in flight + 1). The estimate jumps straight
+ *                     up to a slower sample and decays towards faster ones (and towards 0 while there
+ *                     are none) with the time constant decayMs, so a backend that turns slow is avoided
+ *                     at once and one that was slow gets tried again after a while
+ *
+ * The latency sample of a request is its time to the first response byte; a request that got no
+ * response head counts as slow as the backend's connect timeout.
+ *
+ * Everything a request touches is lock-free: the in-flight counters are atomics and the latency
+ * estimate is an immutable value swapped with compare-and-set. A backend whose circuit breaker is
+ * open is passed over as long as another one is not.
+ */
+public final class LoadBalancer {
+    private static final String ANY_HOST = "*";
+
+    private final Balancing balancing;
+    private final double decayNs;
+    private final AdaptiveTimeouts timeouts;
+    private final CircuitBreakers breakers;
+    private final LongSupplier clock;
+    private final Map<String, Pool> pools = new HashMap<>(); // read only after construction
+
+    public LoadBalancer(ReverseProxyOptions options, AdaptiveTimeouts timeouts, CircuitBreakers breakers) {
+        this(options, timeouts, breakers, System::nanoTime);
+    }
+
+    LoadBalancer(ReverseProxyOptions options, AdaptiveTimeouts timeouts, CircuitBreakers breakers, LongSupplier clock) {
+        this.balancing = options.balancing();
+        this.decayNs = TimeUnit.MILLISECONDS.toNanos(options.decayMs());
+        this.timeouts = timeouts;
+        this.breakers = breakers;
+        this.clock = clock;
+        for (ReverseProxyOptions.VirtualHost vhost : options.virtualHosts()) {
+            pools.put(vhost.name(), new Pool(vhost));
+        }
+    }
+
+    public boolean isEnabled() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * Picks the backend for a request to host. The caller reports the request with
+     * Backend.start() and Backend.finish() (or Backend.cancel()).
+     *
+     * @return null when neither host nor "*" is a virtual host
+     */
+    public Backend choose(String host) {
+        Pool pool = pools.get(host.toLowerCase());
+        if (pool == null) {
+            pool = pools.get(ANY_HOST);
+        }
+        return (pool == null) ? null : pool.choose();
+    }
+
+    /** By virtual host, backends in configured order. */
+    public List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>();
+        pools.keySet().stream().sorted().forEach(name -> {
+            for (Backend backend : pools.get(name).backends) {
+                stats.add(backend.stats());
+            }
+        });
+        return stats;
+    }
+
+    private final class Pool {
+        private final Backend[] backends;
+        private final AtomicInteger next = new AtomicInteger();
+
+        Pool(ReverseProxyOptions.VirtualHost vhost) {
+            backends = new Backend[vhost.backends().size()];
+            for (int i = 0; i < backends.length; i++) {
+                ReverseProxyOptions.Backend b = vhost.backends().get(i);
+                backends[i] = new Backend(vhost.name(), b.host(), b.port());
+            }
+        }
+
+        Backend choose() {
+            if (backends.length == 1) {
+                return backends[0];
+            }
+            return switch (balancing) {
+                case ROUND_ROBIN -> roundRobin();
+                case LEAST_OUTSTANDING -> leastOutstanding();
+                case PEAK_EWMA -> peakEwma();
+            };
+        }
+
+        private Backend roundRobin() {
+            int start = next.getAndIncrement();
+            for (int i = 0; i < backends.length; i++) {
+                Backend backend = backends[Math.floorMod(start + i, backends.length)];
+                if (backend.isAvailable()) return backend;
+            }
+            return backends[Math.floorMod(start, backends.length)];
+        }
+
+        private Backend leastOutstanding() {
+            int start = next.getAndIncrement();
+            Backend best = null;
+            for (int i = 0; i < backends.length; i++) {
+                Backend backend = backends[Math.floorMod(start + i, backends.length)];
+                if (backend.isAvailable() && (best == null || backend.outstanding.get() < best.outstanding.get())) {
+                    best = backend;
+                }
+            }
+            return (best != null) ? best : backends[Math.floorMod(start, backends.length)];
+        }
+
+        private Backend peakEwma() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int i = random.nextInt(backends.length);
+            int j = random.nextInt(backends.length - 1);
+            if (j >= i) j++; // two different backends
+            Backend a = backends[i];
+            Backend b = backends[j];
+            if (!a.isAvailable() || !b.isAvailable()) {
+                if (a.isAvailable()) return a;
+                if (b.isAvailable()) return b;
+                return roundRobin(); // any other one that is not open, or the next in turn
+            }
+            long now = clock.getAsLong();
+            return (a.cost(now) <= b.cost(now)) ? a : b;
+        }
+    }
+
+    /** One backend of one virtual host. */
+    public final class Backend {
+        private final String vhost;
+        private final String host;
+        private final int port;
+        private final String name;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicReference<Ewma> latency;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private Backend(String vhost, String host, int port) {
+            this.vhost = vhost;
+            this.host = host;
+            this.port = port;
+            this.name = host + ":" + port;
+            this.latency = new AtomicReference<>(new Ewma(0, clock.getAsLong()));
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        /** host:port */
+        public String getName() {
+            return name;
+        }
+
+        /** The request is on its way to this backend. */
+        public void start() {
+            outstanding.incrementAndGet();
+            requests.increment();
+        }
+
+        /**
+         * The request start() announced is over.
+         *
+         * @param statusCode  - status of the backend's response, -1 when no response head arrived
+         * @param firstByteNs - from the request being sent to the first response byte, -1 when unknown
+         */
+        public void finish(int statusCode, long firstByteNs) {
+            outstanding.decrementAndGet();
+            if (statusCode < 0) {
+                failures.increment();
+                observe(TimeUnit.MILLISECONDS.toNanos(timeouts.connectTimeoutMs(host)));
+            } else if (firstByteNs >= 0) {
+                observe(firstByteNs);
+            }
+        }
+
+        /** The request start() announced ended before the backend could answer it (the client went away). */
+        public void cancel() {
+            outstanding.decrementAndGet();
+        }
+
+        private void observe(long sampleNs) {
+            long now = clock.getAsLong();
+            while (true) {
+                Ewma current = latency.get();
+                double value;
+                if (sampleNs > current.valueNs) {
+                    value = sampleNs; // peak: slower right away
+                } else {
+                    double w = Math.exp(-Math.max(0, now - current.stampNs) / decayNs);
+                    value = current.valueNs * w + sampleNs * (1 - w);
+                }
+                if (latency.compareAndSet(current, new Ewma(value, now))) {
+                    return;
+                }
+            }
+        }
+
+        // the estimate decayed to now, weighted by the requests already waiting on this backend
+        double cost(long now) {
+            return (latencyNs(now) + 1) * (outstanding.get() + 1);
+        }
+
+        private double latencyNs(long now) {
+            Ewma current = latency.get();
+            return current.valueNs * Math.exp(-Math.max(0, now - current.stampNs) / decayNs);
+        }
+
+        private boolean isAvailable() {
+            CircuitBreakers.Breaker breaker = breakers.forUpstream(host, port);
+            return breaker == null || breaker.retryAfterMs() == 0;
+        }
+
+        Stats stats() {
+            double latencyMs = Math.round(latencyNs(clock.getAsLong()) / 1_000) / 1_000.0;
+            return new Stats(vhost, name, outstanding.get(), requests.sum(), failures.sum(), latencyMs);
+        }
+    }
+
+    private record Ewma(double valueNs, long stampNs) {
+    }
+
+    /**
+     * One backend exposed through /stats.
+     *
+     * @param vhost       - the virtual host it serves
+     * @param backend     - host:port
+     * @param outstanding - requests in flight
+     * @param failures    - requests that got no response head
+     * @param latencyMs   - the decayed peak-EWMA latency estimate (tracked whatever the balancing)
+     */
+    public record Stats(String vhost, String backend, int outstanding, long requests, long failures,
+                        double latencyMs) {
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.upstream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A connection to an end server that can be handed back to the UpstreamPool after a response.
+ */
+public final class PooledConnection {
+    private final String host;
+    private final int port;
+    private final SocketChannel channel;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private boolean reused;
+    private long idleSinceNs;
+    private final ByteBuffer probe = ByteBuffer.allocate(1); // isAlive() reads into it
+
+    PooledConnection(String host, int port, SocketChannel channel) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.channel = channel;
+        this.socket = channel.socket();
+        this.in = socket.getInputStream();
+        this.out = socket.getOutputStream();
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /** Whether this connection came out of the pool (true) or was freshly connected (false). */
+    public boolean isReused() {
+        return reused;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    long getIdleSinceNs() {
+        return idleSinceNs;
+    }
+
+    // parked in the pool, the next lease will be a reuse
+    void markIdle(long nowNs) {
+        this.reused = true;
+        this.idleSinceNs = nowNs;
+    }
+
+    /**
+     * Cheap liveness check before reuse: an idle HTTP connection must not have anything to read.
+     * EOF means the server closed it, unexpected bytes mean it is out of sync, either way it is dead.
+     * One non-blocking read answers at once, a pool hit does not wait for a timeout to expire.
+     */
+    boolean isAlive() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+
+        try {
+            channel.configureBlocking(false);
+            try {
+                return channel.read(probe.clear()) == 0; // nothing to read, still open
+            } finally {
+                channel.configureBlocking(true); // the Forwarder uses the socket's blocking streams
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.example.upstream;
+
+import org.example.util.UpstreamOptions;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps idle persistent connections to end servers, keyed by host:port.
+ *
+ * - at most maxIdlePerHost idle connections per host:port and maxIdleTotal overall,
+ *   connections released beyond those limits are closed instead of pooled
+ * - idle connections older than the idle timeout are evicted by a background task
+ * - every connection is checked for liveness before it is handed out again
+ * - most recently used connections are handed out first (warm congestion window)
+ *
+ * The limits only apply to idle connections. A request that finds no idle connection opens a new
+ * one, however many are open to that host already; Bulkheads cap concurrent requests per host.
+ */
+public final class UpstreamPool {
+    private final int maxIdlePerHost;
+    private final int maxIdleTotal;
+    private final long idleTimeoutNs;
+
+    private final Map<String, Deque<PooledConnection>> idleByHost = new ConcurrentHashMap<>();
+    private final AtomicInteger idleTotal = new AtomicInteger(0);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder staleDiscards = new LongAdder();
+
+    private final ScheduledExecutorService evictor;
+
+    public UpstreamPool(UpstreamOptions options) {
+        this.maxIdlePerHost = options.poolMaxPerHost();
+        this.maxIdleTotal = options.poolMaxTotal();
+        this.idleTimeoutNs = TimeUnit.MILLISECONDS.toNanos(options.poolIdleTimeoutMs());
+
+        if (isEnabled()) {
+            long periodMs = Math.max(1_000, options.poolIdleTimeoutMs() / 2);
+            this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "upstream-pool-evictor");
+                t.setDaemon(true);
+                return t;
+            });
+            this.evictor.scheduleAtFixedRate(this::evictExpired, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.evictor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxIdlePerHost > 0 && maxIdleTotal > 0;
+    }
+
+    /**
+     * Returns a live idle connection to host:port, or null if there is none (a pool miss).
+     */
+    public PooledConnection acquire(String host, int port) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Deque<PooledConnection> idle = idleByHost.get(key(host, port));
+        if (idle != null) {
+            long now = System.nanoTime();
+            PooledConnection connection;
+            while ((connection = pollNewest(idle)) != null) {
+                if (now - connection.getIdleSinceNs() > idleTimeoutNs) {
+                    evictions.increment();
+                    connection.close();
+                } else if (!connection.isAlive()) {
+                    staleDiscards.increment();
+                    connection.close();
+                } else {
+                    hits.increment();
+                    return connection;
+                }
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Wraps a freshly connected blocking channel so it can be released into the pool later.
+     */
+    public PooledConnection adopt(String host, int port, SocketChannel channel) throws IOException {
+        return new PooledConnection(host, port, channel);
+    }
+
+    /**
+     * Hands a connection back after a response.
+     *
+     * @param reusable - false if the response was not cleanly delimited or the server asked to close
+     */
+    public void release(PooledConnection connection, boolean reusable) {
+        if (connection == null) return;
+        if (!reusable || !isEnabled() || connection.getSocket().isClosed()) {
+            connection.close();
+            return;
+        }
+
+        Deque<PooledConnection> idle = idleByHost.computeIfAbsent(
+                key(connection.getHost(), connection.getPort()), k -> new ArrayDeque<>());
+
+        synchronized (idle) {
+            if (idle.size() < maxIdlePerHost) {
+                if (idleTotal.incrementAndGet() <= maxIdleTotal) {
+                    connection.markIdle(System.nanoTime());
+                    idle.addFirst(connection);
+                    return;
+                }
+                idleTotal.decrementAndGet();
+            }
+        }
+        connection.close(); // over a limit
+    }
+
+    public Stats stats() {
+        return new Stats(
+                hits.sum(),
+                misses.sum(),
+                idleTotal.get(),
+                evictions.sum(),
+                staleDiscards.sum()
+        );
+    }
+
+    public void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        for (Deque<PooledConnection> idle : idleByHost.values()) {
+            synchronized (idle) {
+                for (PooledConnection connection : idle) {
+                    connection.close();
+                }
+                idleTotal.addAndGet(-idle.size());
+                idle.clear();
+            }
+        }
+    }
+
+    private PooledConnection pollNewest(Deque<PooledConnection> idle) {
+        synchronized (idle) {
+            PooledConnection connection = idle.pollFirst();
+            if (connection != null) {
+                idleTotal.decrementAndGet();
+            }
+            return connection;
+        }
+    }
+
+    // background task: close connections that sat idle for longer than the idle timeout
+    private void evictExpired() {
+        long now = System.nanoTime();
+        List<PooledConnection> expired = new ArrayList<>();
+
+        for (Deque<PooledConnection> idle : idleByHost.values()) {
+            synchronized (idle) {
+                Iterator<PooledConnection> it = idle.descendingIterator(); // oldest first
+                while (it.hasNext()) {
+                    PooledConnection connection = it.next();
+                    if (now - connection.getIdleSinceNs() <= idleTimeoutNs) break;
+                    it.remove();
+                    idleTotal.decrementAndGet();
+                    expired.add(connection);
+                }
+            }
+        }
+
+        for (PooledConnection connection : expired) {
+            evictions.increment();
+            connection.close();
+        }
+    }
+
+    private static String key(String host, int port) {
+        return host.toLowerCase() + ":" + port;
+    }
+
+    /**
+     * Pool counters exposed through /stats.
+     */
+    public record Stats(long hits, long misses, int idleConnections, long evictions, long staleDiscards) {
+    }
+}
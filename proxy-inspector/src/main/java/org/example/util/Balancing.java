@@ -0,0 +1,14 @@
+package org.example.util;
+
+/**
+ * How the reverse proxy spreads a virtual host's requests over its backends.
+ *
+ * ROUND_ROBIN       - each backend in turn
+ * LEAST_OUTSTANDING - the backend with the fewest requests in flight
+ * PEAK_EWMA         - the better of two random backends by decayed peak latency x (requests in flight + 1)
+ */
+public enum Balancing {
+    ROUND_ROBIN,
+    LEAST_OUTSTANDING,
+    PEAK_EWMA
+}
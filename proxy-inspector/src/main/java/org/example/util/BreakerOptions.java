@@ -0,0 +1,38 @@
+package org.example.util;
+
+/**
+ * Per upstream circuit breakers: stop sending requests to an origin that keeps failing.
+ *
+ * @param enabled            - whether requests are checked against a breaker at all
+ * @param window             - recent outcomes per upstream the failure rate is computed over
+ * @param minRequests        - outcomes needed before a breaker may open
+ * @param failureRatePercent - share of failed outcomes in the window that opens the breaker
+ * @param slowMs             - a response head slower than this counts as a failure (0 = latency is not judged)
+ * @param openMs             - how long an open breaker fails requests before it lets a trial request through
+ * @param probeIntervalMs    - TCP connect probes of open upstreams at this interval (0 = no probing)
+ */
+public record BreakerOptions(boolean enabled, int window, int minRequests, int failureRatePercent, int slowMs,
+                             int openMs, int probeIntervalMs) {
+
+    public BreakerOptions {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be > 0");
+        }
+        if (minRequests <= 0 || minRequests > window) {
+            throw new IllegalArgumentException("minRequests must be > 0 and <= window");
+        }
+        if (failureRatePercent <= 0 || failureRatePercent > 100) {
+            throw new IllegalArgumentException("failureRatePercent must be between 1 and 100");
+        }
+        if (slowMs < 0 || probeIntervalMs < 0) {
+            throw new IllegalArgumentException("slowMs and probeIntervalMs must be >= 0");
+        }
+        if (openMs <= 0) {
+            throw new IllegalArgumentException("openMs must be > 0");
+        }
+    }
+
+    public static BreakerOptions defaults() {
+        return new BreakerOptions(false, 50, 10, 50, 0, 10_000, 0);
+    }
+}
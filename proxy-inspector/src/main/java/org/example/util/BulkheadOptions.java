@@ -0,0 +1,39 @@
+package org.example.util;
+
+import java.util.List;
+
+/**
+ * Concurrency limits per upstream host, so one slow origin cannot hold every worker.
+ *
+ * @param maxPerHost     - requests forwarded to one host at the same time (0 = unlimited)
+ * @param queueTimeoutMs - how long a request over the limit waits for a slot before it is rejected (0 = fail fast)
+ * @param groups         - hosts sharing one bulkhead with its own limit (e.g. all endpoints of a partner API)
+ */
+public record BulkheadOptions(int maxPerHost, int queueTimeoutMs, List<Group> groups) {
+
+    public BulkheadOptions {
+        if (maxPerHost < 0) {
+            throw new IllegalArgumentException("maxPerHost must be >= 0");
+        }
+        if (queueTimeoutMs < 0) {
+            throw new IllegalArgumentException("queueTimeoutMs must be >= 0");
+        }
+        groups = (groups == null) ? List.of() : List.copyOf(groups);
+    }
+
+    /**
+     * @param hosts - lower case host names
+     */
+    public record Group(String name, int limit, List<String> hosts) {
+        public Group {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be > 0");
+            }
+            hosts = List.copyOf(hosts);
+        }
+    }
+
+    public static BulkheadOptions defaults() {
+        return new BulkheadOptions(0, 0, List.of());
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.util;
+
+import java.nio.file.Path;
+
+/**
+ * Shared HTTP response cache in front of the end servers (RFC 9111).
+ *
+ * @param maxBytes           - total size of the cached responses in memory, bodies are kept off-heap (0 disables the memory tier)
+ * @param maxObjectBytes     - larger responses are not kept in memory
+ * @param diskDir            - directory of the disk tier's segment files, null when there is no disk tier
+ * @param diskMaxBytes       - total size of the segment files
+ * @param diskMaxObjectBytes - larger responses are relayed but not stored at all
+ * @param coalesce           - identical concurrent cacheable GETs share one upstream fetch
+ */
+public record CacheOptions(long maxBytes, long maxObjectBytes, Path diskDir, long diskMaxBytes, long diskMaxObjectBytes,
+                           boolean coalesce) {
+
+    public CacheOptions {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >= 0");
+        }
+        if (maxObjectBytes <= 0 || maxObjectBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxObjectBytes must be > 0 and < 2 GiB"); // one ByteBuffer per body
+        }
+        if (diskMaxBytes <= 0) {
+            throw new IllegalArgumentException("diskMaxBytes must be > 0");
+        }
+        if (diskMaxObjectBytes <= 0 || diskMaxObjectBytes > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("diskMaxObjectBytes must be > 0 and < 1 GiB"); // one mapping per segment
+        }
+    }
+
+    /** Memory tier only, no coalescing. */
+    public CacheOptions(long maxBytes, long maxObjectBytes) {
+        this(maxBytes, maxObjectBytes, null, 1024L * 1024 * 1024, 256L * 1024 * 1024, false);
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 || diskDir != null;
+    }
+
+    public static CacheOptions defaults() {
+        return new CacheOptions(0, 1024 * 1024);
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.util;
+
+/**
+ * On-the-fly gzip / deflate of uncompressed responses, for clients on slow links.
+ *
+ * @param enabled  - whether responses are encoded at all
+ * @param level    - deflate level, 1 (fastest) to 9 (smallest)
+ * @param minBytes - smaller responses (by Content-Length) are relayed as they are, the encoding would not pay off
+ */
+public record CompressionOptions(boolean enabled, int level, int minBytes) {
+
+    public CompressionOptions {
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("level must be between 1 and 9");
+        }
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("minBytes must be >= 0");
+        }
+    }
+
+    public static CompressionOptions defaults() {
+        return new CompressionOptions(false, 6, 1024);
+    }
+}
@@ -12,6 +12,15 @@ public final class Config {
     private final Set<String> blockedHosts;
     private final Map<String, Set<String>> blockedPathsForHosts;
     private final boolean verbose;
+    private final ServerOptions serverOptions;
+    private final UpstreamOptions upstreamOptions;
+    private final BulkheadOptions bulkheadOptions;
+    private final TimeoutOptions timeoutOptions;
+    private final CacheOptions cacheOptions;
+    private final CompressionOptions compressionOptions;
+    private final BreakerOptions breakerOptions;
+    private final ReverseProxyOptions reverseProxyOptions;
+    private final HedgeOptions hedgeOptions;
 
     public Config(
             Mode mode,
@@ -21,6 +30,30 @@ public final class Config {
             List<String> blockedHosts,
             Map<String, List<String>> blockedPathsForHosts,
             boolean verbose
+    ) {
+        this(mode, proxyPort, apiPort, maxTransactions, blockedHosts, blockedPathsForHosts, verbose,
+                ServerOptions.defaults(), UpstreamOptions.defaults(), BulkheadOptions.defaults(),
+                TimeoutOptions.defaults(), CacheOptions.defaults(), CompressionOptions.defaults(),
+                BreakerOptions.defaults(), ReverseProxyOptions.defaults(), HedgeOptions.defaults());
+    }
+
+    public Config(
+            Mode mode,
+            int proxyPort,
+            int apiPort,
+            int maxTransactions,
+            List<String> blockedHosts,
+            Map<String, List<String>> blockedPathsForHosts,
+            boolean verbose,
+            ServerOptions serverOptions,
+            UpstreamOptions upstreamOptions,
+            BulkheadOptions bulkheadOptions,
+            TimeoutOptions timeoutOptions,
+            CacheOptions cacheOptions,
+            CompressionOptions compressionOptions,
+            BreakerOptions breakerOptions,
+            ReverseProxyOptions reverseProxyOptions,
+            HedgeOptions hedgeOptions
     ) {
         if (mode == null) {
             throw new IllegalArgumentException("mode is required");
@@ -40,6 +73,15 @@ public final class Config {
         this.apiPort = apiPort;
         this.maxTransactions = maxTransactions;
         this.verbose = verbose;
+        this.serverOptions = (serverOptions == null) ? ServerOptions.defaults() : serverOptions;
+        this.upstreamOptions = (upstreamOptions == null) ? UpstreamOptions.defaults() : upstreamOptions;
+        this.bulkheadOptions = (bulkheadOptions == null) ? BulkheadOptions.defaults() : bulkheadOptions;
+        this.timeoutOptions = (timeoutOptions == null) ? TimeoutOptions.defaults() : timeoutOptions;
+        this.cacheOptions = (cacheOptions == null) ? CacheOptions.defaults() : cacheOptions;
+        this.compressionOptions = (compressionOptions == null) ? CompressionOptions.defaults() : compressionOptions;
+        this.breakerOptions = (breakerOptions == null) ? BreakerOptions.defaults() : breakerOptions;
+        this.reverseProxyOptions = (reverseProxyOptions == null) ? ReverseProxyOptions.defaults() : reverseProxyOptions;
+        this.hedgeOptions = (hedgeOptions == null) ? HedgeOptions.defaults() : hedgeOptions;
 
         // Normalize blocked hosts
         if (blockedHosts == null) {
@@ -95,4 +137,13 @@ public final class Config {
     public Set<String> getBlockedHosts() { return blockedHosts; }
     public Map<String, Set<String>> getBlockedPathsForHosts() { return blockedPathsForHosts; }
     public boolean isVerbose() { return verbose; }
+    public ServerOptions getServerOptions() { return serverOptions; }
+    public UpstreamOptions getUpstreamOptions() { return upstreamOptions; }
+    public BulkheadOptions getBulkheadOptions() { return bulkheadOptions; }
+    public TimeoutOptions getTimeoutOptions() { return timeoutOptions; }
+    public CacheOptions getCacheOptions() { return cacheOptions; }
+    public CompressionOptions getCompressionOptions() { return compressionOptions; }
+    public BreakerOptions getBreakerOptions() { return breakerOptions; }
+    public ReverseProxyOptions getReverseProxyOptions() { return reverseProxyOptions; }
+    public HedgeOptions getHedgeOptions() { return hedgeOptions; }
 }
\ No newline at end of file
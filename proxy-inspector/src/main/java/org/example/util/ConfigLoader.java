@@ -1,16 +1,64 @@
 package org.example.util;
 
+import java.nio.file.Path;
 import java.util.*;
 
 /**
  * Loads configuration from CLI args only (no config file support).
  *
  * Supported flags:
- *   --mode=proxy|api|both
+ *   --mode=proxy|api|both|reverse
  *   --proxy-port=8888
  *   --api-port=9090
  *   --max-transactions=1000
- *   --block-host=example.com        (repeatable)
+ *   --executor=pool|virtual
+ *   --worker-threads=50
+ *   --engine=blocking|nio
+ *   --event-loops=N
+ *   --acceptors=1
+ *   --keep-alive-timeout-ms=15000
+ *   --max-requests-per-connection=100
+ *   --max-in-flight=1024
+ *   --drain-timeout-ms=30000
+ *   --reuse-port
+ *   --pool-max-per-host=8
+ *   --pool-max-total=256
+ *   --pool-idle-timeout-ms=30000
+ *   --dns-cache-size=1024
+ *   --dns-ttl-ms=30000
+ *   --dns-negative-ttl-ms=5000
+ *   --bulkhead-max-per-host=0
+ *   --bulkhead-queue-ms=0
+ *   --bulkhead-group=name:limit:host,host   (repeatable)
+ *   --connect-timeout-ms=3000
+ *   --read-timeout-ms=15000
+ *   --static-timeouts
+ *   --timeout-p99-multiplier=4
+ *   --connect-timeout-floor-ms=200 / --connect-timeout-ceiling-ms=10000
+ *   --read-timeout-floor-ms=1000 / --read-timeout-ceiling-ms=60000
+ *   --host-timeout=host:connectMs:readMs   (repeatable)
+ *   --cache-max-mb=0
+ *   --cache-max-object-kb=1024
+ *   --cache-dir=/var/cache/proxy-inspector   (enables the disk tier)
+ *   --cache-disk-max-mb=1024
+ *   --cache-disk-max-object-mb=256
+ *   --coalesce
+ *   --compress
+ *   --compress-level=6
+ *   --compress-min-bytes=1024
+ *   --breaker
+ *   --breaker-window=50 / --breaker-min-requests=10 / --breaker-failure-rate=50
+ *   --breaker-slow-ms=0
+ *   --breaker-open-ms=10000
+ *   --breaker-probe-interval-ms=0
+ *   --vhost=name=host:port,host:port   (repeatable, --mode=reverse)
+ *   --balance=round-robin|least-outstanding|peak-ewma
+ *   --balance-decay-ms=10000
+ *   --hedge
+ *   --hedge-percentile=95
+ *   --hedge-budget=10
+ *   --connect-retries=0
+ *   --block-host=example.com        (repeatable; .example.com = with subdomains, *.example.com = subdomains only)
  *   --block-path=host:/path         (repeatable, e.g. example.com:/admin)
  *   --verbose
  *   --help
@@ -31,12 +79,199 @@ public final class ConfigLoader {
         int proxyPort = 8888;
         int apiPort = 9090;
         int maxTransactions = 1000;
+        ServerOptions serverDefaults = ServerOptions.defaults();
+        ExecutionMode executionMode = serverDefaults.executionMode();
+        int workerThreads = serverDefaults.workerThreads();
+        Engine engine = serverDefaults.engine();
+        int eventLoops = serverDefaults.eventLoops();
+        int acceptors = serverDefaults.acceptors();
+        int keepAliveTimeoutMs = serverDefaults.keepAliveTimeoutMs();
+        int maxRequestsPerConnection = serverDefaults.maxRequestsPerConnection();
+        int maxInFlight = serverDefaults.maxInFlight();
+        int drainTimeoutMs = serverDefaults.drainTimeoutMs();
+        UpstreamOptions upstreamDefaults = UpstreamOptions.defaults();
+        int poolMaxPerHost = upstreamDefaults.poolMaxPerHost();
+        int poolMaxTotal = upstreamDefaults.poolMaxTotal();
+        int poolIdleTimeoutMs = upstreamDefaults.poolIdleTimeoutMs();
+        int dnsCacheSize = upstreamDefaults.dnsCacheSize();
+        int dnsTtlMs = upstreamDefaults.dnsTtlMs();
+        int dnsNegativeTtlMs = upstreamDefaults.dnsNegativeTtlMs();
+        BulkheadOptions bulkheadDefaults = BulkheadOptions.defaults();
+        int bulkheadMaxPerHost = bulkheadDefaults.maxPerHost();
+        int bulkheadQueueMs = bulkheadDefaults.queueTimeoutMs();
+        TimeoutOptions timeoutDefaults = TimeoutOptions.defaults();
+        int connectTimeoutMs = timeoutDefaults.connectTimeoutMs();
+        int readTimeoutMs = timeoutDefaults.readTimeoutMs();
+        double p99Multiplier = timeoutDefaults.p99Multiplier();
+        int connectFloorMs = timeoutDefaults.connectFloorMs();
+        int connectCeilingMs = timeoutDefaults.connectCeilingMs();
+        int readFloorMs = timeoutDefaults.readFloorMs();
+        int readCeilingMs = timeoutDefaults.readCeilingMs();
+        CacheOptions cacheDefaults = CacheOptions.defaults();
+        long cacheMaxBytes = cacheDefaults.maxBytes();
+        long cacheMaxObjectBytes = cacheDefaults.maxObjectBytes();
+        long cacheDiskMaxBytes = cacheDefaults.diskMaxBytes();
+        long cacheDiskMaxObjectBytes = cacheDefaults.diskMaxObjectBytes();
+        CompressionOptions compressionDefaults = CompressionOptions.defaults();
+        int compressLevel = compressionDefaults.level();
+        int compressMinBytes = compressionDefaults.minBytes();
+        BreakerOptions breakerDefaults = BreakerOptions.defaults();
+        int breakerWindow = breakerDefaults.window();
+        int breakerMinRequests = breakerDefaults.minRequests();
+        int breakerFailureRate = breakerDefaults.failureRatePercent();
+        int breakerSlowMs = breakerDefaults.slowMs();
+        int breakerOpenMs = breakerDefaults.openMs();
+        int breakerProbeIntervalMs = breakerDefaults.probeIntervalMs();
+        ReverseProxyOptions reverseDefaults = ReverseProxyOptions.defaults();
+        Balancing balancing = reverseDefaults.balancing();
+        int balanceDecayMs = reverseDefaults.decayMs();
+        HedgeOptions hedgeDefaults = HedgeOptions.defaults();
+        int hedgePercentile = hedgeDefaults.percentile();
+        int hedgeBudget = hedgeDefaults.budgetPercent();
+        int connectRetries = hedgeDefaults.connectRetries();
 
         // Apply CLI overrides
         if (parsed.mode != null) mode = parsed.mode;
         if (parsed.proxyPort != null) proxyPort = parsed.proxyPort;
         if (parsed.apiPort != null) apiPort = parsed.apiPort;
         if (parsed.maxTransactions != null) maxTransactions = parsed.maxTransactions;
+        if (parsed.executionMode != null) executionMode = parsed.executionMode;
+        if (parsed.workerThreads != null) workerThreads = parsed.workerThreads;
+        if (parsed.engine != null) engine = parsed.engine;
+        if (parsed.eventLoops != null) eventLoops = parsed.eventLoops;
+        if (parsed.acceptors != null) acceptors = parsed.acceptors;
+        if (parsed.keepAliveTimeoutMs != null) keepAliveTimeoutMs = parsed.keepAliveTimeoutMs;
+        if (parsed.maxRequestsPerConnection != null) maxRequestsPerConnection = parsed.maxRequestsPerConnection;
+        if (parsed.maxInFlight != null) maxInFlight = parsed.maxInFlight;
+        if (parsed.drainTimeoutMs != null) drainTimeoutMs = parsed.drainTimeoutMs;
+        if (parsed.poolMaxPerHost != null) poolMaxPerHost = parsed.poolMaxPerHost;
+        if (parsed.poolMaxTotal != null) poolMaxTotal = parsed.poolMaxTotal;
+        if (parsed.poolIdleTimeoutMs != null) poolIdleTimeoutMs = parsed.poolIdleTimeoutMs;
+        if (parsed.dnsCacheSize != null) dnsCacheSize = parsed.dnsCacheSize;
+        if (parsed.dnsTtlMs != null) dnsTtlMs = parsed.dnsTtlMs;
+        if (parsed.dnsNegativeTtlMs != null) dnsNegativeTtlMs = parsed.dnsNegativeTtlMs;
+        if (parsed.bulkheadMaxPerHost != null) bulkheadMaxPerHost = parsed.bulkheadMaxPerHost;
+        if (parsed.bulkheadQueueMs != null) bulkheadQueueMs = parsed.bulkheadQueueMs;
+        if (parsed.connectTimeoutMs != null) connectTimeoutMs = parsed.connectTimeoutMs;
+        if (parsed.readTimeoutMs != null) readTimeoutMs = parsed.readTimeoutMs;
+        if (parsed.p99Multiplier != null) p99Multiplier = parsed.p99Multiplier;
+        if (parsed.connectFloorMs != null) connectFloorMs = parsed.connectFloorMs;
+        if (parsed.connectCeilingMs != null) connectCeilingMs = parsed.connectCeilingMs;
+        if (parsed.readFloorMs != null) readFloorMs = parsed.readFloorMs;
+        if (parsed.readCeilingMs != null) readCeilingMs = parsed.readCeilingMs;
+        if (parsed.cacheMaxMb != null) cacheMaxBytes = parsed.cacheMaxMb * 1024L * 1024L;
+        if (parsed.cacheMaxObjectKb != null) cacheMaxObjectBytes = parsed.cacheMaxObjectKb * 1024L;
+        if (parsed.cacheDiskMaxMb != null) cacheDiskMaxBytes = parsed.cacheDiskMaxMb * 1024L * 1024L;
+        if (parsed.cacheDiskMaxObjectMb != null) cacheDiskMaxObjectBytes = parsed.cacheDiskMaxObjectMb * 1024L * 1024L;
+        if (parsed.compressLevel != null) compressLevel = parsed.compressLevel;
+        if (parsed.compressMinBytes != null) compressMinBytes = parsed.compressMinBytes;
+        if (parsed.breakerWindow != null) breakerWindow = parsed.breakerWindow;
+        if (parsed.breakerMinRequests != null) breakerMinRequests = parsed.breakerMinRequests;
+        if (parsed.breakerFailureRate != null) breakerFailureRate = parsed.breakerFailureRate;
+        if (parsed.breakerSlowMs != null) breakerSlowMs = parsed.breakerSlowMs;
+        if (parsed.breakerOpenMs != null) breakerOpenMs = parsed.breakerOpenMs;
+        if (parsed.breakerProbeIntervalMs != null) breakerProbeIntervalMs = parsed.breakerProbeIntervalMs;
+        if (parsed.balancing != null) balancing = parsed.balancing;
+        if (parsed.balanceDecayMs != null) balanceDecayMs = parsed.balanceDecayMs;
+        if (parsed.hedgePercentile != null) hedgePercentile = parsed.hedgePercentile;
+        if (parsed.hedgeBudget != null) hedgeBudget = parsed.hedgeBudget;
+        if (parsed.connectRetries != null) connectRetries = parsed.connectRetries;
+
+        if (workerThreads <= 0) {
+            throw new UsageException("Invalid worker threads: " + workerThreads + " (must be > 0)\n\n" + usage());
+        }
+        if (eventLoops <= 0) {
+            throw new UsageException("Invalid event loops: " + eventLoops + " (must be > 0)\n\n" + usage());
+        }
+        if (acceptors <= 0) {
+            throw new UsageException("Invalid acceptors: " + acceptors + " (must be > 0)\n\n" + usage());
+        }
+        if (keepAliveTimeoutMs < 0) {
+            throw new UsageException("Invalid keep-alive timeout: " + keepAliveTimeoutMs + " (must be >= 0)\n\n" + usage());
+        }
+        if (maxRequestsPerConnection <= 0) {
+            throw new UsageException("Invalid max requests per connection: " + maxRequestsPerConnection
+                    + " (must be > 0)\n\n" + usage());
+        }
+        if (maxInFlight <= 0) {
+            throw new UsageException("Invalid max in flight: " + maxInFlight + " (must be > 0)\n\n" + usage());
+        }
+        if (drainTimeoutMs < 0) {
+            throw new UsageException("Invalid drain timeout: " + drainTimeoutMs + " (must be >= 0)\n\n" + usage());
+        }
+        if (poolMaxPerHost < 0 || poolMaxTotal < 0) {
+            throw new UsageException("Invalid pool limits (must be >= 0)\n\n" + usage());
+        }
+        if (poolIdleTimeoutMs <= 0) {
+            throw new UsageException("Invalid pool idle timeout: " + poolIdleTimeoutMs + " (must be > 0)\n\n" + usage());
+        }
+        if (dnsCacheSize < 0) {
+            throw new UsageException("Invalid DNS cache size: " + dnsCacheSize + " (must be >= 0)\n\n" + usage());
+        }
+        if (dnsTtlMs <= 0 || dnsNegativeTtlMs <= 0) {
+            throw new UsageException("Invalid DNS TTL (must be > 0)\n\n" + usage());
+        }
+        if (bulkheadMaxPerHost < 0 || bulkheadQueueMs < 0) {
+            throw new UsageException("Invalid bulkhead settings (must be >= 0)\n\n" + usage());
+        }
+        if (connectTimeoutMs <= 0 || readTimeoutMs <= 0) {
+            throw new UsageException("Invalid timeouts (must be > 0)\n\n" + usage());
+        }
+        if (p99Multiplier < 1) {
+            throw new UsageException("Invalid timeout p99 multiplier: " + p99Multiplier + " (must be >= 1)\n\n" + usage());
+        }
+        if (connectFloorMs <= 0 || connectFloorMs > connectCeilingMs || readFloorMs <= 0 || readFloorMs > readCeilingMs) {
+            throw new UsageException("Invalid timeout floors/ceilings (floor must be > 0 and <= ceiling)\n\n" + usage());
+        }
+        if (cacheMaxBytes < 0) {
+            throw new UsageException("Invalid cache size (must be >= 0)\n\n" + usage());
+        }
+        if (cacheMaxObjectBytes <= 0 || cacheMaxObjectBytes > Integer.MAX_VALUE) {
+            throw new UsageException("Invalid cache max object size (must be > 0 and < 2 GiB)\n\n" + usage());
+        }
+        if (cacheDiskMaxBytes <= 0) {
+            throw new UsageException("Invalid cache disk size (must be > 0)\n\n" + usage());
+        }
+        if (cacheDiskMaxObjectBytes <= 0 || cacheDiskMaxObjectBytes > Integer.MAX_VALUE / 2) {
+            throw new UsageException("Invalid cache disk max object size (must be > 0 and < 1 GiB)\n\n" + usage());
+        }
+        if (compressLevel < 1 || compressLevel > 9) {
+            throw new UsageException("Invalid compression level: " + compressLevel + " (must be 1-9)\n\n" + usage());
+        }
+        if (compressMinBytes < 0) {
+            throw new UsageException("Invalid compression min size: " + compressMinBytes + " (must be >= 0)\n\n" + usage());
+        }
+        if (breakerWindow <= 0 || breakerMinRequests <= 0 || breakerMinRequests > breakerWindow) {
+            throw new UsageException("Invalid breaker window (min requests must be > 0 and <= window)\n\n" + usage());
+        }
+        if (breakerFailureRate <= 0 || breakerFailureRate > 100) {
+            throw new UsageException("Invalid breaker failure rate: " + breakerFailureRate + " (must be 1-100)\n\n" + usage());
+        }
+        if (breakerSlowMs < 0 || breakerOpenMs <= 0 || breakerProbeIntervalMs < 0) {
+            throw new UsageException("Invalid breaker timings (open must be > 0, slow and probe interval >= 0)\n\n" + usage());
+        }
+        if (mode == Mode.REVERSE && parsed.virtualHosts.isEmpty()) {
+            throw new UsageException("--mode=reverse needs at least one --vhost\n\n" + usage());
+        }
+        if (mode != Mode.REVERSE && !parsed.virtualHosts.isEmpty()) {
+            throw new UsageException("--vhost is only used with --mode=reverse\n\n" + usage());
+        }
+        if (balanceDecayMs <= 0) {
+            throw new UsageException("Invalid balance decay: " + balanceDecayMs + " (must be > 0)\n\n" + usage());
+        }
+        if (hedgePercentile < 50 || hedgePercentile > 99) {
+            throw new UsageException("Invalid hedge percentile: " + hedgePercentile + " (must be 50-99)\n\n" + usage());
+        }
+        if (hedgeBudget <= 0 || hedgeBudget > 100) {
+            throw new UsageException("Invalid hedge budget: " + hedgeBudget + " (must be 1-100)\n\n" + usage());
+        }
+        if (connectRetries < 0) {
+            throw new UsageException("Invalid connect retries: " + connectRetries + " (must be >= 0)\n\n" + usage());
+        }
+        if (parsed.hedge && parsed.staticTimeouts) {
+            throw new UsageException("--hedge needs the latency samples of adaptive timeouts, drop --static-timeouts\n\n"
+                    + usage());
+        }
 
         return new Config(
                 mode,
@@ -45,7 +280,22 @@ public final class ConfigLoader {
                 maxTransactions,
                 parsed.blockedHosts,
                 parsed.blockedPathsForHosts,
-                parsed.verbose
+                parsed.verbose,
+                new ServerOptions(executionMode, workerThreads, engine, eventLoops, acceptors,
+                        keepAliveTimeoutMs, maxRequestsPerConnection, maxInFlight,
+                        drainTimeoutMs, parsed.reusePort || serverDefaults.reusePort()),
+                new UpstreamOptions(poolMaxPerHost, poolMaxTotal, poolIdleTimeoutMs,
+                        dnsCacheSize, dnsTtlMs, dnsNegativeTtlMs),
+                new BulkheadOptions(bulkheadMaxPerHost, bulkheadQueueMs, parsed.bulkheadGroups),
+                new TimeoutOptions(connectTimeoutMs, readTimeoutMs, !parsed.staticTimeouts, p99Multiplier,
+                        connectFloorMs, connectCeilingMs, readFloorMs, readCeilingMs, parsed.hostTimeouts),
+                new CacheOptions(cacheMaxBytes, cacheMaxObjectBytes, parsed.cacheDir,
+                        cacheDiskMaxBytes, cacheDiskMaxObjectBytes, parsed.coalesce),
+                new CompressionOptions(parsed.compress || compressionDefaults.enabled(), compressLevel, compressMinBytes),
+                new BreakerOptions(parsed.breaker || breakerDefaults.enabled(), breakerWindow, breakerMinRequests,
+                        breakerFailureRate, breakerSlowMs, breakerOpenMs, breakerProbeIntervalMs),
+                new ReverseProxyOptions(new ArrayList<>(parsed.virtualHosts.values()), balancing, balanceDecayMs),
+                new HedgeOptions(parsed.hedge || hedgeDefaults.enabled(), hedgePercentile, hedgeBudget, connectRetries)
         );
     }
 
@@ -84,6 +334,269 @@ public final class ConfigLoader {
                 continue;
             }
 
+            if (s.startsWith("--executor=")) {
+                out.executionMode = parseExecutionMode(s.substring("--executor=".length()));
+                continue;
+            }
+
+            if (s.startsWith("--worker-threads=")) {
+                out.workerThreads = parseIntStrict(s.substring("--worker-threads=".length()), "worker threads");
+                continue;
+            }
+
+            if (s.startsWith("--engine=")) {
+                out.engine = parseEngine(s.substring("--engine=".length()));
+                continue;
+            }
+
+            if (s.startsWith("--event-loops=")) {
+                out.eventLoops = parseIntStrict(s.substring("--event-loops=".length()), "event loops");
+                continue;
+            }
+
+            if (s.startsWith("--acceptors=")) {
+                out.acceptors = parseIntStrict(s.substring("--acceptors=".length()), "acceptors");
+                continue;
+            }
+
+            if (s.startsWith("--keep-alive-timeout-ms=")) {
+                out.keepAliveTimeoutMs = parseIntStrict(s.substring("--keep-alive-timeout-ms=".length()), "keep-alive timeout");
+                continue;
+            }
+
+            if (s.startsWith("--max-requests-per-connection=")) {
+                out.maxRequestsPerConnection = parseIntStrict(
+                        s.substring("--max-requests-per-connection=".length()), "max requests per connection");
+                continue;
+            }
+
+            if (s.startsWith("--max-in-flight=")) {
+                out.maxInFlight = parseIntStrict(s.substring("--max-in-flight=".length()), "max in flight");
+                continue;
+            }
+
+            if (s.startsWith("--drain-timeout-ms=")) {
+                out.drainTimeoutMs = parseIntStrict(s.substring("--drain-timeout-ms=".length()), "drain timeout");
+                continue;
+            }
+
+            if (s.equals("--reuse-port")) {
+                out.reusePort = true;
+                continue;
+            }
+
+            if (s.startsWith("--pool-max-per-host=")) {
+                out.poolMaxPerHost = parseIntStrict(s.substring("--pool-max-per-host=".length()), "pool max per host");
+                continue;
+            }
+
+            if (s.startsWith("--pool-max-total=")) {
+                out.poolMaxTotal = parseIntStrict(s.substring("--pool-max-total=".length()), "pool max total");
+                continue;
+            }
+
+            if (s.startsWith("--pool-idle-timeout-ms=")) {
+                out.poolIdleTimeoutMs = parseIntStrict(s.substring("--pool-idle-timeout-ms=".length()), "pool idle timeout");
+                continue;
+            }
+
+            if (s.startsWith("--dns-cache-size=")) {
+                out.dnsCacheSize = parseIntStrict(s.substring("--dns-cache-size=".length()), "DNS cache size");
+                continue;
+            }
+
+            if (s.startsWith("--dns-ttl-ms=")) {
+                out.dnsTtlMs = parseIntStrict(s.substring("--dns-ttl-ms=".length()), "DNS TTL");
+                continue;
+            }
+
+            if (s.startsWith("--dns-negative-ttl-ms=")) {
+                out.dnsNegativeTtlMs = parseIntStrict(s.substring("--dns-negative-ttl-ms=".length()), "DNS negative TTL");
+                continue;
+            }
+
+            if (s.startsWith("--bulkhead-max-per-host=")) {
+                out.bulkheadMaxPerHost = parseIntStrict(s.substring("--bulkhead-max-per-host=".length()), "bulkhead max per host");
+                continue;
+            }
+
+            if (s.startsWith("--bulkhead-queue-ms=")) {
+                out.bulkheadQueueMs = parseIntStrict(s.substring("--bulkhead-queue-ms=".length()), "bulkhead queue timeout");
+                continue;
+            }
+
+            if (s.startsWith("--bulkhead-group=")) {
+                out.bulkheadGroups.add(parseBulkheadGroup(s.substring("--bulkhead-group=".length())));
+                continue;
+            }
+
+            if (s.startsWith("--connect-timeout-ms=")) {
+                out.connectTimeoutMs = parseIntStrict(s.substring("--connect-timeout-ms=".length()), "connect timeout");
+                continue;
+            }
+
+            if (s.startsWith("--read-timeout-ms=")) {
+                out.readTimeoutMs = parseIntStrict(s.substring("--read-timeout-ms=".length()), "read timeout");
+                continue;
+            }
+
+            if (s.equals("--static-timeouts")) {
+                out.staticTimeouts = true;
+                continue;
+            }
+
+            if (s.startsWith("--timeout-p99-multiplier=")) {
+                out.p99Multiplier = parseDoubleStrict(s.substring("--timeout-p99-multiplier=".length()), "timeout p99 multiplier");
+                continue;
+            }
+
+            if (s.startsWith("--connect-timeout-floor-ms=")) {
+                out.connectFloorMs = parseIntStrict(s.substring("--connect-timeout-floor-ms=".length()), "connect timeout floor");
+                continue;
+            }
+
+            if (s.startsWith("--connect-timeout-ceiling-ms=")) {
+                out.connectCeilingMs = parseIntStrict(s.substring("--connect-timeout-ceiling-ms=".length()), "connect timeout ceiling");
+                continue;
+            }
+
+            if (s.startsWith("--read-timeout-floor-ms=")) {
+                out.readFloorMs = parseIntStrict(s.substring("--read-timeout-floor-ms=".length()), "read timeout floor");
+                continue;
+            }
+
+            if (s.startsWith("--read-timeout-ceiling-ms=")) {
+                out.readCeilingMs = parseIntStrict(s.substring("--read-timeout-ceiling-ms=".length()), "read timeout ceiling");
+                continue;
+            }
+
+            if (s.startsWith("--cache-max-mb=")) {
+                out.cacheMaxMb = parseIntStrict(s.substring("--cache-max-mb=".length()), "cache size");
+                continue;
+            }
+
+            if (s.startsWith("--cache-max-object-kb=")) {
+                out.cacheMaxObjectKb = parseIntStrict(s.substring("--cache-max-object-kb=".length()), "cache max object size");
+                continue;
+            }
+
+            if (s.startsWith("--cache-dir=")) {
+                String dir = s.substring("--cache-dir=".length()).trim();
+                if (dir.isEmpty()) throw new UsageException("Missing cache directory\n\n" + usage());
+                out.cacheDir = Path.of(dir);
+                continue;
+            }
+
+            if (s.startsWith("--cache-disk-max-mb=")) {
+                out.cacheDiskMaxMb = parseIntStrict(s.substring("--cache-disk-max-mb=".length()), "cache disk size");
+                continue;
+            }
+
+            if (s.startsWith("--cache-disk-max-object-mb=")) {
+                out.cacheDiskMaxObjectMb = parseIntStrict(s.substring("--cache-disk-max-object-mb=".length()),
+                        "cache disk max object size");
+                continue;
+            }
+
+            if (s.equals("--coalesce")) {
+                out.coalesce = true;
+                continue;
+            }
+
+            if (s.equals("--compress")) {
+                out.compress = true;
+                continue;
+            }
+
+            if (s.startsWith("--compress-level=")) {
+                out.compressLevel = parseIntStrict(s.substring("--compress-level=".length()), "compression level");
+                continue;
+            }
+
+            if (s.startsWith("--compress-min-bytes=")) {
+                out.compressMinBytes = parseIntStrict(s.substring("--compress-min-bytes=".length()), "compression min size");
+                continue;
+            }
+
+            if (s.equals("--breaker")) {
+                out.breaker = true;
+                continue;
+            }
+
+            if (s.startsWith("--breaker-window=")) {
+                out.breakerWindow = parseIntStrict(s.substring("--breaker-window=".length()), "breaker window");
+                continue;
+            }
+
+            if (s.startsWith("--breaker-min-requests=")) {
+                out.breakerMinRequests = parseIntStrict(s.substring("--breaker-min-requests=".length()), "breaker min requests");
+                continue;
+            }
+
+            if (s.startsWith("--breaker-failure-rate=")) {
+                out.breakerFailureRate = parseIntStrict(s.substring("--breaker-failure-rate=".length()), "breaker failure rate");
+                continue;
+            }
+
+            if (s.startsWith("--breaker-slow-ms=")) {
+                out.breakerSlowMs = parseIntStrict(s.substring("--breaker-slow-ms=".length()), "breaker slow threshold");
+                continue;
+            }
+
+            if (s.startsWith("--breaker-open-ms=")) {
+                out.breakerOpenMs = parseIntStrict(s.substring("--breaker-open-ms=".length()), "breaker open time");
+                continue;
+            }
+
+            if (s.startsWith("--breaker-probe-interval-ms=")) {
+                out.breakerProbeIntervalMs = parseIntStrict(s.substring("--breaker-probe-interval-ms=".length()),
+                        "breaker probe interval");
+                continue;
+            }
+
+            if (s.startsWith("--vhost=")) {
+                ReverseProxyOptions.VirtualHost vhost = parseVirtualHost(s.substring("--vhost=".length()));
+                if (out.virtualHosts.putIfAbsent(vhost.name(), vhost) != null) {
+                    throw new UsageException("Duplicate --vhost: " + vhost.name() + "\n\n" + usage());
+                }
+                continue;
+            }
+
+            if (s.startsWith("--balance=")) {
+                out.balancing = parseBalancing(s.substring("--balance=".length()));
+                continue;
+            }
+
+            if (s.startsWith("--balance-decay-ms=")) {
+                out.balanceDecayMs = parseIntStrict(s.substring("--balance-decay-ms=".length()), "balance decay");
+                continue;
+            }
+
+            if (s.equals("--hedge")) {
+                out.hedge = true;
+                continue;
+            }
+
+            if (s.startsWith("--hedge-percentile=")) {
+                out.hedgePercentile = parseIntStrict(s.substring("--hedge-percentile=".length()), "hedge percentile");
+                continue;
+            }
+
+            if (s.startsWith("--hedge-budget=")) {
+                out.hedgeBudget = parseIntStrict(s.substring("--hedge-budget=".length()), "hedge budget");
+                continue;
+            }
+
+            if (s.startsWith("--connect-retries=")) {
+                out.connectRetries = parseIntStrict(s.substring("--connect-retries=".length()), "connect retries");
+                continue;
+            }
+
+            if (s.startsWith("--host-timeout=")) {
+                parseHostTimeout(s.substring("--host-timeout=".length()), out.hostTimeouts);
+                continue;
+            }
+
             if (s.startsWith("--block-host=")) {
                 String host = s.substring("--block-host=".length()).trim();
                 if (!host.isEmpty()) out.blockedHosts.add(host);
@@ -116,10 +629,42 @@ public final class ConfigLoader {
             case "proxy" -> Mode.PROXY_ONLY;
             case "api" -> Mode.API_ONLY;
             case "both" -> Mode.BOTH;
+            case "reverse" -> Mode.REVERSE;
             default -> throw new UsageException("Invalid mode: " + raw + "\n\n" + usage());
         };
     }
 
+    private static ExecutionMode parseExecutionMode(String raw) {
+        if (raw == null) throw new UsageException("Missing executor value\n\n" + usage());
+        String v = raw.trim().toLowerCase();
+        return switch (v) {
+            case "pool" -> ExecutionMode.POOL;
+            case "virtual" -> ExecutionMode.VIRTUAL;
+            default -> throw new UsageException("Invalid executor: " + raw + "\n\n" + usage());
+        };
+    }
+
+    private static Engine parseEngine(String raw) {
+        if (raw == null) throw new UsageException("Missing engine value\n\n" + usage());
+        String v = raw.trim().toLowerCase();
+        return switch (v) {
+            case "blocking" -> Engine.BLOCKING;
+            case "nio" -> Engine.NIO;
+            default -> throw new UsageException("Invalid engine: " + raw + "\n\n" + usage());
+        };
+    }
+
+    private static Balancing parseBalancing(String raw) {
+        if (raw == null) throw new UsageException("Missing balance value\n\n" + usage());
+        String v = raw.trim().toLowerCase();
+        return switch (v) {
+            case "round-robin" -> Balancing.ROUND_ROBIN;
+            case "least-outstanding" -> Balancing.LEAST_OUTSTANDING;
+            case "peak-ewma" -> Balancing.PEAK_EWMA;
+            default -> throw new UsageException("Invalid balance: " + raw + "\n\n" + usage());
+        };
+    }
+
     private static int parseIntStrict(String raw, String what) {
         if (raw == null) throw new UsageException("Missing " + what + "\n\n" + usage());
         String t = raw.trim();
@@ -147,6 +692,81 @@ public final class ConfigLoader {
         return new HostPath(host, path);
     }
 
+    private static double parseDoubleStrict(String raw, String what) {
+        String t = (raw == null) ? "" : raw.trim();
+        if (t.isEmpty()) throw new UsageException("Missing " + what + "\n\n" + usage());
+        try {
+            return Double.parseDouble(t);
+        } catch (NumberFormatException e) {
+            throw new UsageException("Invalid " + what + ": " + raw + "\n\n" + usage());
+        }
+    }
+
+    private static void parseHostTimeout(String spec, Map<String, TimeoutOptions.HostTimeout> out) {
+        // format: host:connectMs:readMs
+        String[] parts = spec.trim().split(":");
+        if (parts.length != 3 || parts[0].isBlank()) {
+            throw new UsageException("Invalid --host-timeout. Use host:connectMs:readMs (e.g. batch.internal:3000:120000)\n\n" + usage());
+        }
+        int connectMs = parseIntStrict(parts[1], "host connect timeout");
+        int readMs = parseIntStrict(parts[2], "host read timeout");
+        if (connectMs <= 0 || readMs <= 0) {
+            throw new UsageException("Invalid --host-timeout values (must be > 0)\n\n" + usage());
+        }
+        out.put(parts[0].trim().toLowerCase(), new TimeoutOptions.HostTimeout(connectMs, readMs));
+    }
+
+    private static BulkheadOptions.Group parseBulkheadGroup(String spec) {
+        // format: name:limit:host,host
+        String[] parts = spec.trim().split(":", 3);
+        if (parts.length != 3 || parts[0].isBlank() || parts[2].isBlank()) {
+            throw new UsageException("Invalid --bulkhead-group. Use name:limit:host,host (e.g. partner:8:api.partner.com)\n\n" + usage());
+        }
+        int limit = parseIntStrict(parts[1], "bulkhead group limit");
+        if (limit <= 0) {
+            throw new UsageException("Invalid bulkhead group limit: " + limit + " (must be > 0)\n\n" + usage());
+        }
+
+        List<String> hosts = new ArrayList<>();
+        for (String host : parts[2].split(",")) {
+            String h = host.trim().toLowerCase();
+            if (!h.isEmpty()) hosts.add(h);
+        }
+        return new BulkheadOptions.Group(parts[0].trim(), limit, hosts);
+    }
+
+    private static ReverseProxyOptions.VirtualHost parseVirtualHost(String spec) {
+        // format: name=host:port,host:port  ([v6]:port for IPv6 literals)
+        String usageHint = "Invalid --vhost. Use name=host:port,host:port (e.g. api.example.com=10.0.0.1:8080,10.0.0.2:8080)";
+        String[] parts = spec.trim().split("=", 2);
+        if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+            throw new UsageException(usageHint + "\n\n" + usage());
+        }
+
+        List<ReverseProxyOptions.Backend> backends = new ArrayList<>();
+        for (String backend : parts[1].split(",")) {
+            String b = backend.trim();
+            if (b.isEmpty()) continue;
+            int colon = b.lastIndexOf(':');
+            if (colon <= 0 || (b.startsWith("[") && b.charAt(colon - 1) != ']')) {
+                throw new UsageException(usageHint + "\n\n" + usage());
+            }
+            String host = b.substring(0, colon);
+            if (host.startsWith("[")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            int port = parseIntStrict(b.substring(colon + 1), "backend port");
+            if (host.isBlank() || port <= 0 || port > 65535) {
+                throw new UsageException("Invalid backend: " + b + "\n\n" + usage());
+            }
+            backends.add(new ReverseProxyOptions.Backend(host.toLowerCase(), port));
+        }
+        if (backends.isEmpty()) {
+            throw new UsageException(usageHint + "\n\n" + usage());
+        }
+        return new ReverseProxyOptions.VirtualHost(parts[0].trim().toLowerCase(), backends);
+    }
+
     // ---------------- Usage / Errors ----------------
 
     public static String usage() {
@@ -155,11 +775,60 @@ public final class ConfigLoader {
                   java -jar proxyinspector.jar [options]
 
                 Options:
-                  --mode=proxy|api|both
+                  --mode=proxy|api|both|reverse  (reverse = reverse proxy for the --vhost backends, plus the API)
                   --proxy-port=8888
                   --api-port=9090
                   --max-transactions=1000
-                  --block-host=example.com        (repeatable)
+                  --executor=pool|virtual         (virtual = one virtual thread per connection, Java 21+)
+                  --worker-threads=50             (platform worker pool size for --executor=pool)
+                  --engine=blocking|nio           (nio = non-blocking selector event loops)
+                  --event-loops=N                 (selector threads for --engine=nio, CONNECT tunnel threads otherwise, default: CPU cores)
+                  --acceptors=1                   (accept threads, each on its own SO_REUSEPORT listener on Linux)
+                  --keep-alive-timeout-ms=15000   (idle time between client requests, 0 disables keep-alive)
+                  --max-requests-per-connection=100
+                  --max-in-flight=1024            (client connections queued or served at once, beyond that: 503)
+                  --drain-timeout-ms=30000        (on shutdown, time for connections in flight to finish, 0 cuts them off)
+                  --reuse-port                    (bind with SO_REUSEPORT so a new instance can take over the port)
+                  --pool-max-per-host=8           (idle upstream connections kept per host:port, 0 disables pooling; open ones are not limited)
+                  --pool-max-total=256            (idle upstream connections kept across all hosts; open ones are not limited)
+                  --pool-idle-timeout-ms=30000
+                  --dns-cache-size=1024           (host names kept in the resolver cache, 0 disables caching)
+                  --dns-ttl-ms=30000              (how long a resolved host is reused)
+                  --dns-negative-ttl-ms=5000      (how long an unknown host is remembered)
+                  --bulkhead-max-per-host=0       (requests forwarded to one host at once, 0 = unlimited)
+                  --bulkhead-queue-ms=0           (wait for a free bulkhead slot, 0 = reject right away with 503)
+                  --bulkhead-group=name:limit:host,host  (repeatable, hosts sharing one bulkhead)
+                  --connect-timeout-ms=3000       (upstream connect timeout until a host has enough samples)
+                  --read-timeout-ms=15000         (upstream read timeout until a host has enough samples)
+                  --static-timeouts               (always use the two timeouts above, no adaptation)
+                  --timeout-p99-multiplier=4      (adaptive timeout = multiplier x the host's p99 latency)
+                  --connect-timeout-floor-ms=200 --connect-timeout-ceiling-ms=10000
+                  --read-timeout-floor-ms=1000 --read-timeout-ceiling-ms=60000
+                  --host-timeout=host:connectMs:readMs  (repeatable, static timeouts for one host)
+                  --cache-max-mb=0                (shared HTTP response cache size, bodies off-heap, 0 disables caching)
+                  --cache-max-object-kb=1024      (larger responses are not kept in memory)
+                  --cache-dir=PATH                (disk tier in memory-mapped segment files, kept across restarts)
+                  --cache-disk-max-mb=1024        (disk tier size)
+                  --cache-disk-max-object-mb=256  (larger responses are not cached)
+                  --coalesce                      (identical concurrent cacheable GETs share one upstream fetch)
+                  --compress                      (gzip/deflate uncompressed text responses for clients that accept it)
+                  --compress-level=6              (1 = fastest .. 9 = smallest)
+                  --compress-min-bytes=1024       (smaller responses are relayed as they are)
+                  --breaker                       (per upstream circuit breakers, an open one fails requests with 503 at once)
+                  --breaker-window=50             (recent outcomes per upstream)
+                  --breaker-min-requests=10       (outcomes needed before a breaker may open)
+                  --breaker-failure-rate=50       (percent of failed outcomes that opens the breaker)
+                  --breaker-slow-ms=0             (slower response heads count as failures, 0 = off)
+                  --breaker-open-ms=10000         (time open before a trial request goes through)
+                  --breaker-probe-interval-ms=0   (TCP probes of open upstreams, 0 = off)
+                  --vhost=name=host:port,host:port  (repeatable, --mode=reverse: backends of one Host name, * = any other)
+                  --balance=round-robin|least-outstanding|peak-ewma  (how requests are spread over a vhost's backends)
+                  --balance-decay-ms=10000        (peak-ewma: how fast a backend's latency estimate forgets old samples)
+                  --hedge                         (a GET/HEAD without a response head by the percentile below gets a second attempt)
+                  --hedge-percentile=95           (of the host's recent times to the first response byte)
+                  --hedge-budget=10               (percent of requests that may be hedged or retried)
+                  --connect-retries=0             (further connects after a failed one, within the budget)
+                  --block-host=example.com        (repeatable; .example.com = with subdomains, *.example.com = subdomains only)
                   --block-path=host:/path         (repeatable, e.g. example.com:/admin)
                   --verbose
                   --help
@@ -167,7 +836,10 @@ public final class ConfigLoader {
                 Examples:
                   java -jar proxyinspector.jar --mode=both
                   java -jar proxyinspector.jar --block-host=httpbin.org
+                  java -jar proxyinspector.jar --executor=virtual
+                  java -jar proxyinspector.jar --engine=nio --event-loops=4
                   java -jar proxyinspector.jar --block-path=example.com:/admin --block-path=example.com:/private
+                  java -jar proxyinspector.jar --mode=reverse --vhost=api.example.com=10.0.0.1:8080,10.0.0.2:8080 --balance=peak-ewma
                 """;
     }
 
@@ -183,6 +855,57 @@ public final class ConfigLoader {
         Integer proxyPort;
         Integer apiPort;
         Integer maxTransactions;
+        ExecutionMode executionMode;
+        Integer workerThreads;
+        Engine engine;
+        Integer eventLoops;
+        Integer acceptors;
+        Integer keepAliveTimeoutMs;
+        Integer maxRequestsPerConnection;
+        Integer maxInFlight;
+        Integer drainTimeoutMs;
+        boolean reusePort;
+        Integer poolMaxPerHost;
+        Integer poolMaxTotal;
+        Integer poolIdleTimeoutMs;
+        Integer dnsCacheSize;
+        Integer dnsTtlMs;
+        Integer dnsNegativeTtlMs;
+        Integer bulkheadMaxPerHost;
+        Integer bulkheadQueueMs;
+        final List<BulkheadOptions.Group> bulkheadGroups = new ArrayList<>();
+        Integer connectTimeoutMs;
+        Integer readTimeoutMs;
+        boolean staticTimeouts;
+        Double p99Multiplier;
+        Integer connectFloorMs;
+        Integer connectCeilingMs;
+        Integer readFloorMs;
+        Integer readCeilingMs;
+        final Map<String, TimeoutOptions.HostTimeout> hostTimeouts = new HashMap<>();
+        Integer cacheMaxMb;
+        Integer cacheMaxObjectKb;
+        Path cacheDir;
+        Integer cacheDiskMaxMb;
+        Integer cacheDiskMaxObjectMb;
+        boolean coalesce;
+        boolean compress;
+        Integer compressLevel;
+        Integer compressMinBytes;
+        boolean breaker;
+        Integer breakerWindow;
+        Integer breakerMinRequests;
+        Integer breakerFailureRate;
+        Integer breakerSlowMs;
+        Integer breakerOpenMs;
+        Integer breakerProbeIntervalMs;
+        final Map<String, ReverseProxyOptions.VirtualHost> virtualHosts = new LinkedHashMap<>();
+        Balancing balancing;
+        Integer balanceDecayMs;
+        boolean hedge;
+        Integer hedgePercentile;
+        Integer hedgeBudget;
+        Integer connectRetries;
         final List<String> blockedHosts = new ArrayList<>();
         final Map<String, List<String>> blockedPathsForHosts = new HashMap<>();
         boolean verbose;
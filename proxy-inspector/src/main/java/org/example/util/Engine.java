@@ -0,0 +1,12 @@
+package org.example.util;
+
+/**
+ * Which proxy engine serves client connections.
+ *
+ * BLOCKING - ServerSocket accept loop, one blocking handler per connection (see ExecutionMode)
+ * NIO      - non-blocking selector event loops, one per core by default (--event-loops)
+ */
+public enum Engine {
+    BLOCKING,
+    NIO
+}
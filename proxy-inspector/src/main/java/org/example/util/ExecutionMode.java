@@ -0,0 +1,12 @@
+package org.example.util;
+
+/**
+ * How the blocking proxy engine runs accepted client connections.
+ *
+ * POOL    - a fixed pool of platform worker threads (--worker-threads)
+ * VIRTUAL - one virtual thread per connection (Java 21+, falls back to POOL on older runtimes)
+ */
+public enum ExecutionMode {
+    POOL,
+    VIRTUAL
+}
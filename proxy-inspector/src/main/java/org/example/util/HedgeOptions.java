@@ -0,0 +1,29 @@
+package org.example.util;
+
+/**
+ * Hedged GET/HEAD requests and retried connects towards end servers.
+ *
+ * @param enabled        - whether a slow GET/HEAD gets a second attempt at all
+ * @param percentile     - the second attempt goes out once the first had no response head for this
+ *                         percentile of the host's recent times to the first byte
+ * @param budgetPercent  - hedges and connect retries together stay under this share of forwarded requests
+ * @param connectRetries - further connects after a failed one, before the request is given up on (0 = none)
+ */
+public record HedgeOptions(boolean enabled, int percentile, int budgetPercent, int connectRetries) {
+
+    public HedgeOptions {
+        if (percentile < 50 || percentile > 99) {
+            throw new IllegalArgumentException("percentile must be between 50 and 99");
+        }
+        if (budgetPercent <= 0 || budgetPercent > 100) {
+            throw new IllegalArgumentException("budgetPercent must be between 1 and 100");
+        }
+        if (connectRetries < 0) {
+            throw new IllegalArgumentException("connectRetries must be >= 0");
+        }
+    }
+
+    public static HedgeOptions defaults() {
+        return new HedgeOptions(false, 95, 10, 0);
+    }
+}
@@ -1,7 +1,16 @@
 package org.example.util;
 
+/**
+ * Which listeners run and what the proxy listener is.
+ *
+ * PROXY_ONLY - forward proxy, each request goes where its Host header (or CONNECT authority) says
+ * API_ONLY   - the inspection API alone
+ * BOTH       - forward proxy and API
+ * REVERSE    - reverse proxy and API: the Host header picks a --vhost, one of its backends gets the request
+ */
 public enum Mode {
     PROXY_ONLY,
     API_ONLY,
-    BOTH
+    BOTH,
+    REVERSE
 }
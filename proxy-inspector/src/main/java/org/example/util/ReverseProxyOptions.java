@@ -0,0 +1,44 @@
+package org.example.util;
+
+import java.util.List;
+
+/**
+ * Reverse-proxy virtual hosts (only used with Mode.REVERSE).
+ *
+ * @param virtualHosts - the Host names served and their backends; "*" takes every other name
+ * @param balancing    - how a virtual host's requests are spread over its backends
+ * @param decayMs      - PEAK_EWMA: time for a backend's latency estimate to fall by 1/e without new samples
+ */
+public record ReverseProxyOptions(List<VirtualHost> virtualHosts, Balancing balancing, int decayMs) {
+
+    public ReverseProxyOptions {
+        if (decayMs <= 0) {
+            throw new IllegalArgumentException("decayMs must be > 0");
+        }
+        virtualHosts = (virtualHosts == null) ? List.of() : List.copyOf(virtualHosts);
+    }
+
+    /**
+     * @param name - lower case host name, or "*"
+     */
+    public record VirtualHost(String name, List<Backend> backends) {
+        public VirtualHost {
+            if (backends.isEmpty()) {
+                throw new IllegalArgumentException("a virtual host needs at least one backend");
+            }
+            backends = List.copyOf(backends);
+        }
+    }
+
+    public record Backend(String host, int port) {
+        public Backend {
+            if (port <= 0 || port > 65535) {
+                throw new IllegalArgumentException("port must be 1-65535");
+            }
+        }
+    }
+
+    public static ReverseProxyOptions defaults() {
+        return new ReverseProxyOptions(List.of(), Balancing.ROUND_ROBIN, 10_000);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.util;
+
+/**
+ * Tuning options for the proxy listener and the way it runs client connections.
+ *
+ * @param executionMode - platform worker pool or virtual thread per connection (blocking engine)
+ * @param workerThreads - size of the platform worker pool (ignored in VIRTUAL mode)
+ * @param engine        - blocking accept loop or non-blocking selector event loops
+ * @param eventLoops    - number of selector threads for the NIO engine (CONNECT tunnel loops for the blocking one)
+ * @param acceptors     - threads accepting client connections, each on its own SO_REUSEPORT listener where supported
+ * @param keepAliveTimeoutMs - how long an idle client connection is kept open between requests (0 = no keep-alive)
+ * @param maxRequestsPerConnection - requests served on one client connection before it is closed
+ * @param maxInFlight   - client connections queued or being served at once, beyond that new ones get a 503
+ * @param drainTimeoutMs - on shutdown, how long connections in flight may finish before they are cut off
+ * @param reusePort     - bind with SO_REUSEPORT even with one acceptor, so a new instance can bind next to this one
+ */
+public record ServerOptions(ExecutionMode executionMode,
+                            int workerThreads,
+                            Engine engine,
+                            int eventLoops,
+                            int acceptors,
+                            int keepAliveTimeoutMs,
+                            int maxRequestsPerConnection,
+                            int maxInFlight,
+                            int drainTimeoutMs,
+                            boolean reusePort) {
+
+    public ServerOptions {
+        if (executionMode == null) {
+            throw new IllegalArgumentException("executionMode is required");
+        }
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads must be > 0");
+        }
+        if (engine == null) {
+            throw new IllegalArgumentException("engine is required");
+        }
+        if (eventLoops <= 0) {
+            throw new IllegalArgumentException("eventLoops must be > 0");
+        }
+        if (acceptors <= 0) {
+            throw new IllegalArgumentException("acceptors must be > 0");
+        }
+        if (keepAliveTimeoutMs < 0) {
+            throw new IllegalArgumentException("keepAliveTimeoutMs must be >= 0");
+        }
+        if (maxRequestsPerConnection <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerConnection must be > 0");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be > 0");
+        }
+        if (drainTimeoutMs < 0) {
+            throw new IllegalArgumentException("drainTimeoutMs must be >= 0");
+        }
+    }
+
+    public boolean isKeepAliveEnabled() {
+        return keepAliveTimeoutMs > 0;
+    }
+
+    public static ServerOptions defaults() {
+        return new ServerOptions(ExecutionMode.POOL, 50, Engine.BLOCKING, Runtime.getRuntime().availableProcessors(), 1,
+                15_000, 100, 1024, 30_000, false);
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.util;
+
+import java.util.Map;
+
+/**
+ * Connect and read timeouts towards end servers.
+ *
+ * With adaptive timeouts each host's timeouts follow its own latency: p99Multiplier times the
+ * p99 of its recent connect times (resp. times to the first response byte), clamped to the
+ * floors and ceilings. connectTimeoutMs / readTimeoutMs apply to hosts without enough samples
+ * yet, and to every host when adaptive is off. A host in overrides always uses its static values.
+ *
+ * @param connectTimeoutMs - whole connect race, until a host has enough samples
+ * @param readTimeoutMs    - socket read timeout (longest silence from the server), until a host has enough samples
+ * @param overrides        - lower case host name -> static timeouts
+ */
+public record TimeoutOptions(int connectTimeoutMs,
+                             int readTimeoutMs,
+                             boolean adaptive,
+                             double p99Multiplier,
+                             int connectFloorMs,
+                             int connectCeilingMs,
+                             int readFloorMs,
+                             int readCeilingMs,
+                             Map<String, HostTimeout> overrides) {
+
+    public TimeoutOptions {
+        if (connectTimeoutMs <= 0 || readTimeoutMs <= 0) {
+            throw new IllegalArgumentException("timeouts must be > 0");
+        }
+        if (p99Multiplier < 1) {
+            throw new IllegalArgumentException("p99Multiplier must be >= 1");
+        }
+        if (connectFloorMs <= 0 || connectFloorMs > connectCeilingMs) {
+            throw new IllegalArgumentException("connect floor must be > 0 and <= ceiling");
+        }
+        if (readFloorMs <= 0 || readFloorMs > readCeilingMs) {
+            throw new IllegalArgumentException("read floor must be > 0 and <= ceiling");
+        }
+        overrides = (overrides == null) ? Map.of() : Map.copyOf(overrides);
+    }
+
+    public record HostTimeout(int connectTimeoutMs, int readTimeoutMs) {
+        public HostTimeout {
+            if (connectTimeoutMs <= 0 || readTimeoutMs <= 0) {
+                throw new IllegalArgumentException("timeouts must be > 0");
+            }
+        }
+    }
+
+    public static TimeoutOptions defaults() {
+        return new TimeoutOptions(3_000, 15_000, true, 4.0, 200, 10_000, 1_000, 60_000, Map.of());
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.util;
+
+/**
+ * Tuning options for connections from the proxy to end servers.
+ *
+ * @param poolMaxPerHost    - idle persistent connections kept per host:port (0 disables pooling),
+ *                            not a limit on open connections
+ * @param poolMaxTotal      - idle persistent connections kept across all hosts, not a limit on open connections
+ * @param poolIdleTimeoutMs - idle connections older than this are closed
+ * @param dnsCacheSize      - host names kept in the resolver cache (0 disables caching)
+ * @param dnsTtlMs          - how long a successful lookup is reused
+ * @param dnsNegativeTtlMs  - how long an unknown host is answered from the cache
+ */
+public record UpstreamOptions(int poolMaxPerHost,
+                              int poolMaxTotal,
+                              int poolIdleTimeoutMs,
+                              int dnsCacheSize,
+                              int dnsTtlMs,
+                              int dnsNegativeTtlMs) {
+
+    public UpstreamOptions {
+        if (poolMaxPerHost < 0) {
+            throw new IllegalArgumentException("poolMaxPerHost must be >= 0");
+        }
+        if (poolMaxTotal < 0) {
+            throw new IllegalArgumentException("poolMaxTotal must be >= 0");
+        }
+        if (poolIdleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("poolIdleTimeoutMs must be > 0");
+        }
+        if (dnsCacheSize < 0) {
+            throw new IllegalArgumentException("dnsCacheSize must be >= 0");
+        }
+        if (dnsTtlMs <= 0 || dnsNegativeTtlMs <= 0) {
+            throw new IllegalArgumentException("DNS TTLs must be > 0");
+        }
+    }
+
+    public static UpstreamOptions defaults() {
+        return new UpstreamOptions(8, 256, 30_000, 1024, 30_000, 5_000);
+    }
+}
@@ -39,7 +39,7 @@ class TransactionControllerTest {
 
         assertFalse(response.success);
         assertEquals(400, response.statusCode);
-        assertEquals("Invalid verdict. Use ALLOWED, BLOCKED or ERROR", response.error);
+        assertEquals("Invalid verdict. Use ALLOWED, BLOCKED, ERROR or SHED", response.error);
     }
 
     @Test
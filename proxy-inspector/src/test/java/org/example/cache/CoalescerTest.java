@@ -0,0 +1,157 @@
+package org.example.cache;
+
+import org.example.http.BodyFramer;
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+import org.example.util.CacheOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescerTest {
+    private final Coalescer coalescer = new Coalescer(true, new ResponseCache(new CacheOptions(1024 * 1024, 1024 * 1024)));
+
+    @Test
+    void followersGetTheLeadersResponse() throws Exception {
+        Coalescer.Ticket leader = coalescer.join(get("/app.js"));
+        Coalescer.Ticket follower = coalescer.join(get("/app.js"));
+        assertTrue(leader.leads());
+        assertFalse(follower.leads());
+        assertSame(leader.flight(), follower.flight());
+        assertTrue(coalescer.join(get("/other.js")).leads());
+
+        leader.flight().start(head("Cache-Control: max-age=60", "Content-Length: 10", "Keep-Alive: timeout=5"),
+                BodyFramer.Mode.FIXED);
+        assertTrue(coalescer.join(get("/app.js")).leads()); // too late to follow once the head is in
+        leader.flight().append(bytes("hello"));
+        leader.flight().append(bytes("world"));
+        leader.flight().complete();
+
+        ResponseHead head = follower.follower().awaitHead(1000);
+        assertNotNull(head);
+        assertNull(head.getHeader("Keep-Alive"));
+        assertEquals("hello", text(follower.follower().next(1000)));
+        assertEquals("world", text(follower.follower().next(1000)));
+        assertNull(follower.follower().next(1000));
+        assertEquals(1, coalescer.stats().coalesced());
+    }
+
+    @Test
+    void responsesASharedCacheWouldNotStoreAreNotShared() throws Exception {
+        Coalescer.Ticket leader = coalescer.join(get("/me"));
+        Coalescer.Ticket follower = coalescer.join(get("/me"));
+        leader.flight().start(head("Cache-Control: private, max-age=60"), BodyFramer.Mode.FIXED);
+
+        assertNull(follower.follower().awaitHead(1000));
+        assertEquals(1, coalescer.stats().passed());
+        assertEquals(0, coalescer.stats().waiting());
+    }
+
+    @Test
+    void followersWithOtherVariedHeadersFetchOnTheirOwn() throws Exception {
+        Coalescer.Ticket leader = coalescer.join(get("/", "Accept-Language", "en"));
+        Coalescer.Ticket same = coalescer.join(get("/", "Accept-Language", "en"));
+        Coalescer.Ticket other = coalescer.join(get("/", "Accept-Language", "de"));
+        leader.flight().start(head("Cache-Control: max-age=60", "Vary: Accept-Language"), BodyFramer.Mode.FIXED);
+
+        assertNotNull(same.follower().awaitHead(1000));
+        assertNull(other.follower().awaitHead(1000));
+    }
+
+    @Test
+    void onlyPlainCacheableGetsAreCoalesced() {
+        assertNull(coalescer.join(request("POST", "/")));
+        assertNull(coalescer.join(get("/", "Range", "bytes=0-9")));
+        assertNull(coalescer.join(get("/", "If-None-Match", "\"a\"")));
+        assertNull(coalescer.join(get("/", "Cache-Control", "no-store")));
+        assertNull(coalescer.join(get("/", "Authorization", "Bearer x")));
+        assertNull(new Coalescer(false, null).join(get("/")));
+    }
+
+    @Test
+    void aFollowerStopsWaitingAfterItsTimeout() throws Exception {
+        Coalescer.Ticket leader = coalescer.join(get("/slow"));
+        Coalescer.Ticket follower = coalescer.join(get("/slow"));
+
+        assertNull(follower.follower().awaitHead(10));
+        assertEquals(1, coalescer.stats().passed());
+        assertSame(leader.flight(), coalescer.join(get("/slow")).flight()); // the flight itself still waits
+        leader.flight().abort();
+    }
+
+    @Test
+    void followersFailWithTheLeader() throws Exception {
+        Coalescer.Ticket leader = coalescer.join(get("/a"));
+        Coalescer.Ticket during = coalescer.join(get("/a"));
+        leader.flight().start(head("Cache-Control: max-age=60"), BodyFramer.Mode.CHUNKED);
+        leader.flight().append(bytes("part"));
+        leader.flight().abort();
+
+        assertNotNull(during.follower().awaitHead(1000));
+        assertEquals("part", text(during.follower().next(1000)));
+        assertThrows(IOException.class, () -> during.follower().next(1000));
+    }
+
+    @Test
+    void aLeaderFailingBeforeTheHeadPassesItsFollowers() throws Exception {
+        Coalescer.Ticket leader = coalescer.join(get("/a"));
+        Coalescer.Ticket follower = coalescer.join(get("/a"));
+        leader.flight().abort();
+
+        assertNull(follower.follower().awaitHead(1000));
+        assertTrue(coalescer.join(get("/a")).leads());
+    }
+
+    @Test
+    void aFollowerTooFarBehindIsCut() throws Exception {
+        Coalescer.Ticket leader = coalescer.join(get("/big"));
+        Coalescer.Ticket follower = coalescer.join(get("/big"));
+        leader.flight().start(head("Cache-Control: max-age=60"), BodyFramer.Mode.CHUNKED);
+        ByteBuffer mib = ByteBuffer.allocate(1024 * 1024);
+        for (int i = 0; i < 17; i++) {
+            leader.flight().append(mib);
+        }
+
+        assertNotNull(follower.follower().awaitHead(1000));
+        assertThrows(IOException.class, () -> follower.follower().next(1000));
+        assertEquals(1, coalescer.stats().cut());
+    }
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return StandardCharsets.US_ASCII.decode(buffer).toString();
+    }
+
+    private static ResponseHead head(String... headers) throws IOException {
+        byte[] raw = ("HTTP/1.1 200 OK\r\n" + String.join("\r\n", headers) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        return ResponseHead.parse(raw, raw.length);
+    }
+
+    private static HttpRequest get(String path, String... headers) {
+        return request("GET", path, headers);
+    }
+
+    private static HttpRequest request(String method, String path, String... headers) {
+        Map<String, String> map = new HashMap<>();
+        map.put("Host", "origin.test");
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        return new HttpRequest(method, path, "HTTP/1.1", map, null);
+    }
+}
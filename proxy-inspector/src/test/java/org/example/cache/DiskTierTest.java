@@ -0,0 +1,226 @@
+package org.example.cache;
+
+import org.example.http.BodyFramer;
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+import org.example.util.CacheOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskTierTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+    private ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void stopWriter() {
+        writer.shutdownNow();
+    }
+
+    @Test
+    void responsesSurviveARestart() throws Exception {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/", "Accept-Language", "en"), head("Cache-Control: max-age=60", "Vary: Accept-Language"), "hello");
+        store(cache, get("/", "Accept-Language", "de"), head("Cache-Control: max-age=60", "Vary: Accept-Language"), "hallo");
+        cache.shutdown();
+
+        ResponseCache restarted = restart(1024 * 1024);
+        ResponseCache.Lookup lookup = restarted.lookup(get("/", "Accept-Language", "de"));
+        assertTrue(lookup.isHit());
+        assertEquals("hallo", body(lookup.entry()));
+        assertEquals("hello", body(restarted.lookup(get("/", "Accept-Language", "en")).entry()));
+        assertEquals(2, restarted.stats().disk().entries());
+        assertEquals(0, restarted.stats().entries()); // nothing in memory, the memory tier is off
+    }
+
+    @Test
+    void invalidationsSurviveARestart() throws Exception {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/item"), head("Cache-Control: max-age=60"), "v1");
+        drain();
+        cache.invalidate(post("/item"), parse("HTTP/1.1 204 No Content"));
+        drain();
+        assertNull(cache.lookup(get("/item")).entry());
+        cache.shutdown();
+
+        assertNull(restart(1024 * 1024).lookup(get("/item")).entry());
+    }
+
+    @Test
+    void bodiesTooLargeForMemorySpillToTheDiskTier() throws Exception {
+        DiskTier disk = DiskTier.open(dir, 1024 * 1024, 512 * 1024, 64 * 1024, writer);
+        ResponseCache cache = new ResponseCache(new CacheOptions(1024 * 1024, 1024), clock::get, disk);
+        String large = "0123456789abcdef".repeat(10_000); // 160 KB, a segment of its own
+
+        BodyRecorder recorder = recorder(cache, get("/artifact.jar"), head("Cache-Control: max-age=60"));
+        byte[] bytes = large.getBytes(StandardCharsets.US_ASCII);
+        for (int off = 0; off < bytes.length; off += 1000) {
+            recorder.append(bytes, off, Math.min(1000, bytes.length - off));
+        }
+        cache.store(recorder);
+        drain();
+
+        assertEquals(large, body(cache.lookup(get("/artifact.jar")).entry()));
+        assertEquals(0, cache.stats().entries());
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(f -> f.toString().endsWith(".spill")));
+        }
+    }
+
+    @Test
+    void evictionKeepsWhatWasReadSinceItWasWritten() throws Exception {
+        DiskTier disk = DiskTier.open(dir, 8 * 1024, 4096, 4096, writer);
+        ResponseCache cache = new ResponseCache(new CacheOptions(0, 4096), clock::get, disk);
+        String body = "x".repeat(1800); // two records per 4 KiB segment, four fit the budget
+
+        store(cache, get("/1"), head("Cache-Control: max-age=60"), body);
+        store(cache, get("/2"), head("Cache-Control: max-age=60"), body);
+        drain();
+        assertTrue(cache.lookup(get("/1")).isHit()); // marks /1 as read
+        store(cache, get("/3"), head("Cache-Control: max-age=60"), body);
+        store(cache, get("/4"), head("Cache-Control: max-age=60"), body);
+        store(cache, get("/5"), head("Cache-Control: max-age=60"), body);
+        drain();
+
+        assertNotNull(cache.lookup(get("/1")).entry());
+        assertNull(cache.lookup(get("/2")).entry());
+        assertNotNull(cache.lookup(get("/5")).entry());
+        DiskTier.Stats stats = disk.stats();
+        assertTrue(stats.evictions() >= 1);
+        assertTrue(stats.bytes() <= 8 * 1024);
+    }
+
+    @Test
+    void compactsSegmentsThatAreMostlyReplaced() throws Exception {
+        DiskTier disk = DiskTier.open(dir, 1024 * 1024, 4096, 4096, writer);
+        ResponseCache cache = new ResponseCache(new CacheOptions(0, 4096), clock::get, disk);
+        String body = "y".repeat(1500);
+
+        store(cache, get("/keep"), head("Cache-Control: max-age=60"), body);
+        store(cache, get("/hot"), head("Cache-Control: max-age=60"), body);
+        for (int i = 0; i < 6; i++) {
+            store(cache, get("/hot"), head("Cache-Control: max-age=60", "X-Version: " + i), body);
+        }
+        drain();
+
+        DiskTier.Stats stats = disk.stats();
+        assertTrue(stats.compactions() >= 1);
+        assertEquals(2, stats.entries());
+        assertEquals("5", cache.lookup(get("/hot")).entry().head().getHeader("X-Version"));
+        assertEquals(body, body(cache.lookup(get("/keep")).entry()));
+        cache.shutdown();
+
+        ResponseCache restarted = restart(1024 * 1024, 4096);
+        assertEquals("5", restarted.lookup(get("/hot")).entry().head().getHeader("X-Version"));
+        assertEquals(body, body(restarted.lookup(get("/keep")).entry()));
+    }
+
+    @Test
+    void aTornRecordIsIgnoredOnReplay() throws Exception {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/a"), head("Cache-Control: max-age=60"), "complete");
+        cache.shutdown();
+        restart(1024 * 1024).shutdown(); // the replay trims the segment to its records
+
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.filter(f -> f.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        long size = Files.size(segment);
+        // the header of a record whose body never made it to disk
+        ByteBuffer torn = ByteBuffer.allocate(17).putInt(0x50494331).put((byte) 1).putInt(10).putInt(1000).putInt(0);
+        Files.write(segment, torn.array(), StandardOpenOption.APPEND);
+
+        ResponseCache restarted = restart(1024 * 1024);
+        assertEquals("complete", body(restarted.lookup(get("/a")).entry()));
+        assertEquals(size, Files.size(segment));
+    }
+
+    private ResponseCache cache(long diskBytes) throws IOException {
+        return cache(diskBytes, DiskTier.SEGMENT_BYTES);
+    }
+
+    private ResponseCache cache(long diskBytes, int segmentBytes) throws IOException {
+        DiskTier disk = DiskTier.open(dir, diskBytes, 1024 * 1024, segmentBytes, writer);
+        return new ResponseCache(new CacheOptions(0, 1024 * 1024), clock::get, disk);
+    }
+
+    private ResponseCache restart(long diskBytes) throws IOException {
+        return restart(diskBytes, DiskTier.SEGMENT_BYTES);
+    }
+
+    private ResponseCache restart(long diskBytes, int segmentBytes) throws IOException {
+        writer = Executors.newSingleThreadExecutor();
+        return cache(diskBytes, segmentBytes);
+    }
+
+    // the writer runs in order, an empty task finishing means everything before it was written
+    private void drain() throws Exception {
+        writer.submit(() -> { }).get();
+    }
+
+    private BodyRecorder recorder(ResponseCache cache, HttpRequest request, ResponseHead head) throws IOException {
+        BodyFramer.Mode mode = BodyFramer.forResponse(request.getMethod(), head).getMode();
+        return cache.startRecording(request, head, mode, clock.get(), clock.get());
+    }
+
+    private void store(ResponseCache cache, HttpRequest request, ResponseHead head, String body) throws IOException {
+        head.setHeader("Content-Length", String.valueOf(body.length()));
+        BodyRecorder recorder = recorder(cache, request, head);
+        recorder.append(ByteBuffer.wrap(body.getBytes(StandardCharsets.US_ASCII)));
+        cache.store(recorder);
+    }
+
+    private static String body(CachedResponse entry) {
+        return StandardCharsets.US_ASCII.decode(entry.body()).toString();
+    }
+
+    private static ResponseHead head(String... headers) throws IOException {
+        String[] lines = new String[headers.length + 1];
+        lines[0] = "HTTP/1.1 200 OK";
+        System.arraycopy(headers, 0, lines, 1, headers.length);
+        return parse(lines);
+    }
+
+    private static ResponseHead parse(String... lines) throws IOException {
+        byte[] raw = (String.join("\r\n", lines) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        return ResponseHead.parse(raw, raw.length);
+    }
+
+    private static HttpRequest get(String path, String... headers) {
+        Map<String, String> map = new HashMap<>();
+        map.put("Host", "origin.test");
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        return new HttpRequest("GET", path, "HTTP/1.1", map, null);
+    }
+
+    private static HttpRequest post(String path) {
+        Map<String, String> map = new HashMap<>();
+        map.put("Host", "origin.test");
+        return new HttpRequest("POST", path, "HTTP/1.1", map, null);
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.cache;
+
+import org.example.http.BodyFramer;
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+import org.example.util.CacheOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+
+    @Test
+    void servesAStoredResponseUntilItIsStale() throws IOException {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/app.js"), head("Cache-Control: max-age=60"), "body");
+
+        ResponseCache.Lookup lookup = cache.lookup(get("/app.js"));
+        assertTrue(lookup.isHit());
+        assertEquals("body", StandardCharsets.US_ASCII.decode(lookup.entry().body()).toString());
+        assertTrue(cache.lookup(headRequest("/app.js")).isHit());
+
+        clock.addAndGet(61_000);
+        lookup = cache.lookup(get("/app.js"));
+        assertFalse(lookup.isHit());
+        assertNotNull(lookup.stale());
+        assertNull(cache.lookup(get("/other.js")).entry());
+        assertEquals(2, cache.stats().hits());
+        assertEquals(2, cache.stats().misses());
+    }
+
+    @Test
+    void requestDirectivesLimitWhatIsFreshEnough() throws IOException {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/a"), head("Cache-Control: max-age=60"), "a");
+        clock.addAndGet(30_000);
+
+        assertFalse(cache.lookup(get("/a", "Cache-Control", "no-cache")).isHit());
+        assertFalse(cache.lookup(get("/a", "Cache-Control", "max-age=10")).isHit());
+        assertFalse(cache.lookup(get("/a", "Cache-Control", "min-fresh=40")).isHit());
+        assertTrue(cache.lookup(get("/a", "Cache-Control", "max-age=40")).isHit());
+        assertNull(cache.lookup(get("/a", "Cache-Control", "no-store")));
+        assertNull(cache.lookup(get("/a", "Authorization", "Bearer x")));
+    }
+
+    @Test
+    void onlyStoresWhatASharedCacheMayStore() throws IOException {
+        ResponseCache cache = cache(1024 * 1024);
+
+        assertNull(recorder(cache, get("/"), head("Cache-Control: private, max-age=60")));
+        assertNull(recorder(cache, get("/"), head("Cache-Control: no-store")));
+        assertNull(recorder(cache, get("/"), head("Cache-Control: max-age=60", "Set-Cookie: id=1")));
+        assertNull(recorder(cache, get("/"), head("Cache-Control: max-age=60", "Vary: *")));
+        assertNull(recorder(cache, get("/"), head("Content-Type: text/plain"))); // no freshness, no validator
+        assertNull(recorder(cache, post("/"), head("Cache-Control: max-age=60")));
+        assertNotNull(recorder(cache, get("/"), head("ETag: \"v1\"")));
+        assertNotNull(recorder(cache, get("/"), head("Cache-Control: public, max-age=60")));
+    }
+
+    @Test
+    void varySelectsTheMatchingResponse() throws IOException {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/", "Accept-Language", "en"), head("Cache-Control: max-age=60", "Vary: Accept-Language"), "hello");
+        store(cache, get("/", "Accept-Language", "de"), head("Cache-Control: max-age=60", "Vary: Accept-Language"), "hallo");
+
+        assertEquals("hallo", body(cache.lookup(get("/", "Accept-Language", "de")).entry()));
+        assertEquals("hello", body(cache.lookup(get("/", "Accept-Language", "en")).entry()));
+        assertNull(cache.lookup(get("/", "Accept-Language", "fr")).entry());
+        assertEquals(2, cache.stats().entries());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedOverBudget() throws IOException {
+        ResponseCache cache = cache(3 * 1024);
+        String kb = "x".repeat(900);
+        store(cache, get("/1"), head("Cache-Control: max-age=60"), kb);
+        store(cache, get("/2"), head("Cache-Control: max-age=60"), kb);
+        cache.lookup(get("/1")); // /2 is now the least recently used
+        store(cache, get("/3"), head("Cache-Control: max-age=60"), kb);
+
+        assertNotNull(cache.lookup(get("/1")).entry());
+        assertNull(cache.lookup(get("/2")).entry());
+        assertNotNull(cache.lookup(get("/3")).entry());
+        assertEquals(1, cache.stats().evictions());
+        assertTrue(cache.stats().bytes() <= 3 * 1024);
+    }
+
+    @Test
+    void aNotModifiedRefreshesTheStoredResponse() throws IOException {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/r"), head("Cache-Control: max-age=10", "ETag: \"v1\"", "X-Version: 1"), "same");
+        clock.addAndGet(20_000);
+
+        CachedResponse stale = cache.lookup(get("/r")).stale();
+        assertEquals(Map.of("If-None-Match", "\"v1\""), stale.validators());
+
+        ResponseHead notModified = parse("HTTP/1.1 304 Not Modified", "Cache-Control: max-age=10", "X-Version: 2");
+        CachedResponse fresh = cache.revalidated(stale, notModified, clock.get(), clock.get());
+
+        assertEquals("2", fresh.head().getHeader("X-Version"));
+        assertEquals("same", body(fresh));
+        assertTrue(cache.lookup(get("/r")).isHit());
+        assertEquals(1, cache.stats().revalidated());
+    }
+
+    @Test
+    void unsafeRequestsInvalidateTheirUrl() throws IOException {
+        ResponseCache cache = cache(1024 * 1024);
+        store(cache, get("/item"), head("Cache-Control: max-age=60"), "v1");
+
+        cache.invalidate(post("/item"), parse("HTTP/1.1 500 Internal Server Error"));
+        assertTrue(cache.lookup(get("/item")).isHit());
+
+        cache.invalidate(post("/item"), parse("HTTP/1.1 204 No Content"));
+        assertNull(cache.lookup(get("/item")).entry());
+        assertEquals(0, cache.stats().bytes());
+    }
+
+    @Test
+    void tooLargeBodiesAreNotStored() throws IOException {
+        ResponseCache cache = new ResponseCache(new CacheOptions(1024 * 1024, 8), clock::get);
+        BodyRecorder recorder = recorder(cache, get("/big"), head("Cache-Control: max-age=60"));
+        recorder.append("0123456789".getBytes(StandardCharsets.US_ASCII), 0, 10);
+        assertFalse(recorder.isRecording());
+
+        cache.store(recorder);
+        assertNull(cache.lookup(get("/big")).entry());
+    }
+
+    @Test
+    void parsesQuotedDirectiveLists() {
+        CacheControl cc = CacheControl.parse("no-cache=\"Set-Cookie, X-Token\", MAX-AGE=\"30\", s-maxage=x");
+
+        assertTrue(cc.has("no-cache"));
+        assertFalse(cc.has("x-token\""));
+        assertEquals(30, cc.seconds("max-age"));
+        assertEquals(-1, cc.seconds("s-maxage"));
+    }
+
+    private ResponseCache cache(long maxBytes) {
+        return new ResponseCache(new CacheOptions(maxBytes, 1024 * 1024), clock::get);
+    }
+
+    private BodyRecorder recorder(ResponseCache cache, HttpRequest request, ResponseHead head) throws IOException {
+        BodyFramer.Mode mode = BodyFramer.forResponse(request.getMethod(), head).getMode();
+        return cache.startRecording(request, head, mode, clock.get(), clock.get());
+    }
+
+    private void store(ResponseCache cache, HttpRequest request, ResponseHead head, String body) throws IOException {
+        head.setHeader("Content-Length", String.valueOf(body.length()));
+        BodyRecorder recorder = recorder(cache, request, head);
+        recorder.append(ByteBuffer.wrap(body.getBytes(StandardCharsets.US_ASCII)));
+        cache.store(recorder);
+    }
+
+    private static String body(CachedResponse entry) {
+        return StandardCharsets.US_ASCII.decode(entry.body()).toString();
+    }
+
+    private static ResponseHead head(String... headers) throws IOException {
+        String[] lines = new String[headers.length + 1];
+        lines[0] = "HTTP/1.1 200 OK";
+        System.arraycopy(headers, 0, lines, 1, headers.length);
+        return parse(lines);
+    }
+
+    private static ResponseHead parse(String... lines) throws IOException {
+        byte[] raw = (String.join("\r\n", lines) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        return ResponseHead.parse(raw, raw.length);
+    }
+
+    private static HttpRequest get(String path, String... headers) {
+        return request("GET", path, headers);
+    }
+
+    private static HttpRequest headRequest(String path) {
+        return request("HEAD", path);
+    }
+
+    private static HttpRequest post(String path) {
+        return request("POST", path);
+    }
+
+    private static HttpRequest request(String method, String path, String... headers) {
+        Map<String, String> map = new HashMap<>();
+        map.put("Host", "origin.test");
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        return new HttpRequest(method, path, "HTTP/1.1", map, null);
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodyFramerTest {
+
+    @Test
+    void fixedLengthBodyStopsAtContentLength() throws IOException {
+        BodyFramer framer = BodyFramer.fixed(5);
+        byte[] bytes = bytes("helloHTTP/1.1 200 OK");
+
+        int taken = framer.feed(bytes, 0, bytes.length);
+
+        assertEquals(5, taken);
+        assertTrue(framer.isComplete());
+    }
+
+    @Test
+    void chunkedBodyEndsAfterLastChunkEvenWhenSplitAcrossReads() throws IOException {
+        BodyFramer framer = BodyFramer.chunked();
+        byte[] bytes = bytes("5;ext=1\r\nhello\r\n6\r\n world\r\n0\r\nX-Trailer: yes\r\n\r\nNEXT");
+        int bodyLength = bytes.length - "NEXT".length();
+
+        int taken = 0;
+        for (int i = 0; i < bytes.length && !framer.isComplete(); i++) {
+            taken += framer.feed(bytes, i, 1); // worst case: one byte per read
+        }
+
+        assertTrue(framer.isComplete());
+        assertEquals(bodyLength, taken);
+    }
+
+    @Test
+    void responseWithoutFramingIsReadUntilClose() throws IOException {
+        ResponseHead head = head("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\n");
+        BodyFramer framer = BodyFramer.forResponse("GET", head);
+
+        assertEquals(BodyFramer.Mode.UNTIL_CLOSE, framer.getMode());
+        assertFalse(framer.isComplete());
+        assertTrue(framer.closed());
+    }
+
+    @Test
+    void headAndNoContentResponsesHaveNoBody() throws IOException {
+        ResponseHead ok = head("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n");
+        ResponseHead noContent = head("HTTP/1.1 204 No Content\r\n\r\n");
+
+        assertTrue(BodyFramer.forResponse("HEAD", ok).isComplete());
+        assertTrue(BodyFramer.forResponse("GET", noContent).isComplete());
+    }
+
+    @Test
+    void rejectsMalformedChunkSize() {
+        BodyFramer framer = BodyFramer.chunked();
+        byte[] bytes = bytes("zz\r\n");
+
+        assertThrows(IOException.class, () -> framer.feed(bytes, 0, bytes.length));
+    }
+
+    @Test
+    void requestBodyFramingFollowsTransferEncodingThenContentLength() {
+        BodyFramer chunked = BodyFramer.forRequest(request(Map.of("Transfer-Encoding", "chunked", "Content-Length", "3")));
+        BodyFramer fixed = BodyFramer.forRequest(request(Map.of("Content-Length", "3")));
+        BodyFramer none = BodyFramer.forRequest(request(Map.of()));
+
+        assertEquals(BodyFramer.Mode.CHUNKED, chunked.getMode());
+        assertEquals(BodyFramer.Mode.FIXED, fixed.getMode());
+        assertTrue(none.isComplete());
+    }
+
+    @Test
+    void rejectsRequestBodyThatCannotBeFramed() {
+        HttpRequest gzipOnly = request(Map.of("Transfer-Encoding", "gzip"));
+
+        assertThrows(InvalidRequestException.class, () -> BodyFramer.forRequest(gzipOnly));
+    }
+
+    private static HttpRequest request(Map<String, String> headers) {
+        Map<String, String> all = new HashMap<>(headers);
+        all.put("Host", "example.com");
+        return new HttpRequest("POST", "http://example.com/upload", "HTTP/1.1", all, null);
+    }
+
+    private static ResponseHead head(String raw) throws IOException {
+        byte[] bytes = bytes(raw);
+        return ResponseHead.parse(bytes, bytes.length);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpParserTest {
+
+    @Test
+    void parsesRequestLineAndHeaders() throws IOException {
+        HttpRequest request = parser("GET http://example.com/docs?q=1 HTTP/1.1\r\nHost: example.com\r\nX-Empty:\r\n\r\n")
+                .readRequest();
+
+        assertEquals("GET", request.getMethod());
+        assertEquals("http://example.com/docs?q=1", request.getTarget());
+        assertEquals("HTTP/1.1", request.getVersion());
+        assertEquals("example.com", request.getHeader("HOST"));
+        assertEquals("", request.getHeader("X-Empty"));
+        assertNull(request.getHeader("Accept"));
+    }
+
+    @Test
+    void combinesRepeatedHeadersIntoOneEntry() throws IOException {
+        HttpRequest request = parser("GET / HTTP/1.1\r\nHost: a\r\nAccept: text/html\r\naccept:  */*  \r\n\r\n")
+                .readRequest();
+        Map<String, String> headers = request.getHeaders();
+
+        assertEquals(2, headers.size());
+        assertEquals("text/html, */*", headers.get("Accept"));
+        assertEquals(Map.of("Host", "a", "Accept", "text/html, */*"), Map.copyOf(headers));
+    }
+
+    @Test
+    void leavesBodyAndPipelinedRequestInTheStream() throws IOException {
+        HttpParser parser = parser("\r\nPOST /a HTTP/1.1\r\nHost: a\r\nContent-Length: 4\r\n\r\nbodyGET /b HTTP/1.0\nHost: a\n\n");
+
+        assertEquals("/a", parser.readRequest().getPath());
+
+        InputStream in = parser.getInputStream();
+        byte[] body = new byte[4];
+        in.mark(body.length);
+        assertEquals(4, in.read(body));
+        assertEquals("body", new String(body, StandardCharsets.US_ASCII));
+
+        HttpRequest next = parser.readRequest();
+        assertEquals("/b", next.getPath());
+        assertEquals("HTTP/1.0", next.getVersion());
+        assertNull(parser.readRequest());
+    }
+
+    @Test
+    void headSplitAcrossManyReads() throws IOException {
+        byte[] bytes = ascii("GET /slow HTTP/1.1\r\nHost: example.com\r\n\r\n");
+        InputStream oneByteAtATime = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        HttpRequest request = new HttpParser(oneByteAtATime).readRequest();
+
+        assertEquals("/slow", request.getPath());
+        assertEquals("example.com", request.getHost());
+    }
+
+    @Test
+    void rejectsOversizedRequestLineAndHeaders() {
+        String longTarget = "/" + "a".repeat(100);
+        String longHeader = "X-Big: " + "b".repeat(100) + "\r\n";
+
+        InvalidRequestException line = assertThrows(InvalidRequestException.class,
+                () -> new HttpParser(stream("GET " + longTarget + " HTTP/1.1\r\n\r\n"), 64, 64).readRequest());
+        InvalidRequestException headers = assertThrows(InvalidRequestException.class,
+                () -> new HttpParser(stream("GET / HTTP/1.1\r\n" + longHeader + "\r\n"), 64, 64).readRequest());
+
+        assertEquals(414, line.getStatusCode());
+        assertEquals(431, headers.getStatusCode());
+    }
+
+    @Test
+    void rejectsMalformedHeads() {
+        assertThrows(InvalidRequestException.class, () -> parser("GET /\r\n\r\n").readRequest());
+        assertThrows(InvalidRequestException.class, () -> parser("GET / HTTP/1.1\r\nBad Name: x\r\n\r\n").readRequest());
+        assertThrows(InvalidRequestException.class, () -> parser("GET / HTTP/1.1\r\nHost: a\r\n folded\r\n\r\n").readRequest());
+        assertThrows(InvalidRequestException.class, () -> parser("GET / HTTP/1.1\r\nNoColon\r\n\r\n").readRequest());
+    }
+
+    private static HttpParser parser(String raw) {
+        return new HttpParser(stream(raw));
+    }
+
+    private static InputStream stream(String raw) {
+        return new ByteArrayInputStream(ascii(raw));
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
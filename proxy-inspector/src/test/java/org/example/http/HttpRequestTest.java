@@ -5,7 +5,9 @@ import org.junit.jupiter.api.Test;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class HttpRequestTest {
 
@@ -61,4 +63,49 @@ class HttpRequestTest {
 
         assertThrows(InvalidRequestException.class, request::getHost);
     }
+
+    @Test
+    void connectTakesItsDestinationFromTheAuthorityForm() {
+        HttpRequest explicitPort = new HttpRequest("CONNECT", "example.com:8443", "HTTP/1.1",
+                Map.of("Host", "other.example:80"), null);
+        HttpRequest defaultPort = new HttpRequest("CONNECT", "example.com", "HTTP/1.1", Map.of(), null);
+
+        assertTrue(explicitPort.isConnect());
+        assertEquals("example.com", explicitPort.getHost());
+        assertEquals(8443, explicitPort.getPort());
+        assertEquals("example.com:8443", explicitPort.getPath());
+        assertEquals(443, defaultPort.getPort());
+    }
+
+    @Test
+    void http11ConnectionsPersistUnlessClientSendsClose() {
+        HttpRequest persistent = new HttpRequest("GET", "/", "HTTP/1.1", Map.of("Host", "example.com"), null);
+        HttpRequest closing = new HttpRequest("GET", "/", "HTTP/1.1",
+                Map.of("Host", "example.com", "Proxy-Connection", "close"), null);
+
+        assertTrue(persistent.wantsKeepAlive());
+        assertFalse(closing.wantsKeepAlive());
+    }
+
+    @Test
+    void http10ConnectionsPersistOnlyWithExplicitKeepAlive() {
+        HttpRequest plain = new HttpRequest("GET", "/", "HTTP/1.0", Map.of("Host", "example.com"), null);
+        HttpRequest keepAlive = new HttpRequest("GET", "/", "HTTP/1.0",
+                Map.of("Host", "example.com", "Connection", "Keep-Alive"), null);
+
+        assertFalse(plain.wantsKeepAlive());
+        assertTrue(keepAlive.wantsKeepAlive());
+    }
+
+    @Test
+    void onlyIdempotentMethodsMayBeRetried() {
+        for (String method : new String[] { "GET", "head", "OPTIONS", "TRACE", "PUT", "DELETE" }) {
+            assertTrue(new HttpRequest(method, "/", "HTTP/1.1", Map.of("Host", "example.com"), null).isIdempotent(),
+                    method);
+        }
+        for (String method : new String[] { "POST", "PATCH", "CONNECT", "PURGE" }) {
+            assertFalse(new HttpRequest(method, "/", "HTTP/1.1", Map.of("Host", "example.com"), null).isIdempotent(),
+                    method);
+        }
+    }
 }
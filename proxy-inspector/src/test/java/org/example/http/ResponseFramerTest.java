@@ -0,0 +1,119 @@
+package org.example.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseFramerTest {
+
+    @Test
+    void headSplitAcrossReadsThenFixedBody() throws IOException {
+        ResponseFramer framer = new ResponseFramer("GET");
+        byte[] bytes = bytes("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhelloHTTP/1.1 204");
+        int responseLength = bytes.length - "HTTP/1.1 204".length();
+
+        int taken = feedOneByteAtATime(framer, bytes);
+
+        assertTrue(framer.isComplete());
+        assertEquals(responseLength, taken);
+        assertEquals(200, framer.getHead().getStatusCode());
+        assertEquals(BodyFramer.Mode.FIXED, framer.getBodyMode());
+    }
+
+    @Test
+    void interimResponsesAreReportedBeforeTheFinalHead() throws IOException {
+        ResponseFramer framer = new ResponseFramer("POST");
+        byte[] bytes = bytes("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n");
+
+        int taken = framer.feed(bytes, 0, bytes.length);
+        ResponseHead interim = framer.pollHead();
+
+        assertEquals(100, interim.getStatusCode());
+        assertFalse(framer.isHeadComplete());
+
+        taken += framer.feed(bytes, taken, bytes.length - taken);
+
+        assertEquals(201, framer.pollHead().getStatusCode());
+        assertNull(framer.pollHead());
+        assertTrue(framer.isComplete());
+        assertEquals(bytes.length, taken);
+    }
+
+    @Test
+    void headResponseEndsAfterHeadDespiteContentLength() throws IOException {
+        ResponseFramer framer = new ResponseFramer("HEAD");
+        byte[] bytes = bytes("HTTP/1.1 200 OK\r\nContent-Length: 1000\r\n\r\nHTTP/1.1");
+
+        int taken = framer.feed(bytes, 0, bytes.length);
+
+        assertTrue(framer.isComplete());
+        assertEquals(bytes.length - "HTTP/1.1".length(), taken);
+    }
+
+    @Test
+    void chunkedBodyFedFromDirectBufferUsingAbsoluteIndexes() throws IOException {
+        ResponseFramer framer = new ResponseFramer("GET");
+        byte[] bytes = bytes("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n");
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length + 4);
+        buf.position(4);
+        buf.put(bytes);
+
+        int taken = 0;
+        while (!framer.isComplete()) {
+            taken += framer.feed(buf, 4 + taken, buf.position());
+        }
+
+        assertEquals(bytes.length, taken);
+        assertEquals(bytes.length + 4, buf.position());
+    }
+
+    @Test
+    void unframedBodyOnlyEndsWhenServerCloses() throws IOException {
+        ResponseFramer framer = new ResponseFramer("GET");
+        byte[] bytes = bytes("HTTP/1.0 200 OK\r\n\r\nsome body");
+
+        int taken = feedOneByteAtATime(framer, bytes);
+
+        assertEquals(bytes.length, taken);
+        assertFalse(framer.isComplete());
+        assertTrue(framer.closed());
+    }
+
+    @Test
+    void closeBeforeHeadIsNotAValidEnd() throws IOException {
+        ResponseFramer framer = new ResponseFramer("GET");
+        byte[] bytes = bytes("HTTP/1.1 200 OK\r\nContent-");
+
+        framer.feed(bytes, 0, bytes.length);
+
+        assertFalse(framer.closed());
+    }
+
+    @Test
+    void rejectsOversizedHead() {
+        ResponseFramer framer = new ResponseFramer("GET", 32);
+        byte[] bytes = bytes("HTTP/1.1 200 OK\r\nX-Long: " + "a".repeat(64) + "\r\n\r\n");
+
+        assertThrows(IOException.class, () -> framer.feed(bytes, 0, bytes.length));
+    }
+
+    private static int feedOneByteAtATime(ResponseFramer framer, byte[] bytes) throws IOException {
+        int taken = 0;
+        for (int i = 0; i < bytes.length && !framer.isComplete(); i++) {
+            taken += framer.feed(bytes, i, 1);
+        }
+        return taken;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
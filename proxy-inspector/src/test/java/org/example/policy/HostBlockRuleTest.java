@@ -0,0 +1,60 @@
+package org.example.policy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HostBlockRuleTest {
+
+    @Test
+    void exactRulesMatchOnlyTheHost() {
+        HostBlockRule rule = new HostBlockRule(Set.of("Example.com "));
+
+        assertEquals(403, rule.evaluateHost("example.com").getHttpStatus());
+        assertEquals(403, rule.evaluateHost(" EXAMPLE.com").getHttpStatus());
+        assertEquals(403, rule.evaluateHost("example.com.").getHttpStatus());
+        for (String host : List.of("www.example.com", "notexample.com", "example.co", "", "  ")) {
+            assertNull(rule.evaluateHost(host), host);
+        }
+        assertNull(rule.evaluateHost(null));
+    }
+
+    @Test
+    void suffixRulesCoverTheDomainAndWildcardRulesOnlyNamesBelowIt() {
+        HostBlockRule rule = new HostBlockRule(Set.of(".example.com", "*.Tracker.net", "ads.example.org"));
+
+        for (String host : List.of("example.com", "www.example.com", "a.b.EXAMPLE.com", "x.tracker.net",
+                "a.b.tracker.net", "ads.example.org", "example.com.", "x.example.com.", "x.tracker.net.",
+                "ads.example.org.")) {
+            assertEquals(403, rule.evaluateHost(host).getHttpStatus(), host);
+        }
+        for (String host : List.of("tracker.net", "notexample.com", "example.com.evil", "com", "net",
+                "example.org", "x.ads.example.org", ".tracker.net", "tracker.net.", "example.com..", ".")) {
+            assertNull(rule.evaluateHost(host), host);
+        }
+    }
+
+    @Test
+    void dropsRulesWithEmptyLabels() {
+        HostBlockRule rule = new HostBlockRule(Set.of(".", "*.", "..com", "*.example..com", " ", ".example.com."));
+
+        for (String host : List.of("com", "a.com", "x.example.com", "example.com")) {
+            assertNull(rule.evaluateHost(host), host);
+        }
+    }
+
+    @Test
+    void answersWithOneDecision() {
+        HostBlockRule rule = new HostBlockRule(Set.of("example.com", ".example.org", "*.example.net"));
+
+        PolicyDecision decision = rule.evaluateHost("example.com");
+        assertEquals("Host is on blocked list", decision.getReason());
+        assertSame(decision, rule.evaluateHost("www.example.org"));
+        assertSame(decision, rule.evaluateHost("www.example.net"));
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.policy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PathBlockRuleTest {
+
+    @Test
+    void matchesWholeSegmentsOnly() {
+        PathBlockRule rule = new PathBlockRule(Map.of("example.com", Set.of("/admin", "private/", "/a/b")));
+
+        for (String path : List.of("/admin", "/admin/", "/ADMIN/users", " /admin ", "admin", "admin/x", "/private",
+                "/private/keys", "/a/b", "/a/b/c")) {
+            assertEquals(403, rule.evaluatePathForHost("Example.com", path).getHttpStatus(), path);
+        }
+        for (String path : List.of("/administrator", "/adm", "/", "", "  ", "/a", "/a/bc", "/x/admin", "//admin")) {
+            assertNull(rule.evaluatePathForHost("example.com", path), path);
+        }
+        assertEquals(403, rule.evaluatePathForHost("example.com.", "/admin").getHttpStatus());
+        assertNull(rule.evaluatePathForHost("other.com", "/admin"));
+    }
+
+    @Test
+    void theRootRuleCoversOnlyTheRootAsBefore() {
+        PathBlockRule rule = new PathBlockRule(Map.of("example.com", Set.of("/")));
+
+        assertEquals(403, rule.evaluatePathForHost("example.com", "/").getHttpStatus());
+        assertEquals(403, rule.evaluatePathForHost("example.com", "//x").getHttpStatus());
+        assertNull(rule.evaluatePathForHost("example.com", "/x"));
+        assertNull(rule.evaluatePathForHost("example.com", "x"));
+    }
+
+    @Test
+    void answersWithTheDecisionBuiltForTheRule() {
+        Set<String> paths = new HashSet<>();
+        for (int i = 0; i < 5_000; i++) {
+            paths.add("/api/v" + (i % 7) + "/tenant-" + i);
+        }
+        PathBlockRule rule = new PathBlockRule(Map.of("example.com", paths));
+
+        PolicyDecision decision = rule.evaluatePathForHost("example.com", "/api/v2/tenant-1234/orders?page=2");
+        assertEquals("Blocked path /api/v2/tenant-1234 on host example.com", decision.getReason());
+        assertSame(decision, rule.evaluatePathForHost("example.com", "/api/v2/tenant-1234"));
+        assertNull(rule.evaluatePathForHost("example.com", "/api/v2/tenant-12345"));
+        assertNull(rule.evaluatePathForHost("example.com", "/api/v2/tenant-1234?page=2")); // the query is part of the last segment
+    }
+}
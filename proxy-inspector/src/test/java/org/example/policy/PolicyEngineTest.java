@@ -68,6 +68,20 @@ class PolicyEngineTest {
         assertTrue(decision.isAllowed());
     }
 
+    @Test
+    void connectIsCheckedAgainstHostRulesOnly() {
+        PolicyEngine engine = new PolicyEngine(config(
+                List.of("blocked.example"),
+                Map.of("example.com", List.of("/"))
+        ));
+
+        HttpRequest blocked = new HttpRequest("CONNECT", "blocked.example:443", "HTTP/1.1", Map.of(), null);
+        HttpRequest allowed = new HttpRequest("CONNECT", "example.com:443", "HTTP/1.1", Map.of(), null);
+
+        assertTrue(engine.evaluate(blocked, "127.0.0.1").isBlocked());
+        assertTrue(engine.evaluate(allowed, "127.0.0.1").isAllowed());
+    }
+
     private static Config config(List<String> blockedHosts, Map<String, List<String>> blockedPaths) {
         return new Config(Mode.BOTH, 8888, 9090, 1000, blockedHosts, blockedPaths, false);
     }
@@ -0,0 +1,28 @@
+package org.example.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AcceptCountersTest {
+
+    @Test
+    void countsAcceptsPerAcceptorInRegistrationOrder() {
+        AcceptCounters counters = new AcceptCounters();
+        AcceptCounters.Counter first = counters.register("acceptor-0");
+        AcceptCounters.Counter second = counters.register("acceptor-1");
+
+        first.accepted();
+        first.accepted();
+        second.accepted();
+
+        List<AcceptCounters.Stats> stats = counters.stats();
+        assertEquals(2, stats.size());
+        assertEquals("acceptor-0", stats.get(0).name());
+        assertEquals(2, stats.get(0).accepted());
+        assertEquals(1, stats.get(1).accepted());
+        assertEquals(0.0, stats.get(1).acceptsPerSec()); // no completed window yet
+    }
+}
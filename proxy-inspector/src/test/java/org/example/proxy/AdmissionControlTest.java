@@ -0,0 +1,60 @@
+package org.example.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    @Test
+    void shedsConnectionsOverTheLimitUntilOneFinishes() {
+        AdmissionControl admission = new AdmissionControl(2);
+
+        assertTrue(admission.tryAdmit());
+        assertTrue(admission.tryAdmit());
+        assertFalse(admission.tryAdmit());
+
+        admission.finished();
+        assertTrue(admission.tryAdmit());
+
+        AdmissionControl.Stats stats = admission.stats();
+        assertEquals(2, stats.inFlight());
+        assertEquals(3, stats.admitted());
+        assertEquals(1, stats.shed());
+        assertEquals(2, stats.maxInFlight());
+    }
+
+    @Test
+    void tracksQueueDepthAndWait() {
+        AdmissionControl admission = new AdmissionControl(4);
+
+        admission.tryAdmit();
+        admission.tryAdmit();
+        assertEquals(2, admission.stats().queued());
+
+        admission.started(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+        AdmissionControl.Stats stats = admission.stats();
+
+        assertEquals(1, stats.queued());
+        assertEquals(2, stats.inFlight());
+        assertTrue(stats.maxQueueWaitMs() >= 10);
+        assertTrue(stats.avgQueueWaitMs() >= 10);
+    }
+
+    @Test
+    void awaitDrainedReportsWhatIsStillInFlightAtTheDeadline() throws InterruptedException {
+        AdmissionControl admission = new AdmissionControl(4);
+        admission.tryAdmit();
+        admission.tryAdmit();
+        admission.finished();
+
+        assertEquals(1, admission.awaitDrained(50));
+
+        admission.finished();
+        assertEquals(0, admission.awaitDrained(50));
+    }
+}
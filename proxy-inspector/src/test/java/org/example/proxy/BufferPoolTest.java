@@ -0,0 +1,41 @@
+package org.example.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+
+    @Test
+    void recyclesDirectBuffersCleared() {
+        BufferPool pool = new BufferPool(1024, 2);
+
+        ByteBuffer first = pool.acquire();
+        first.put((byte) 1);
+        pool.release(first);
+        ByteBuffer again = pool.acquire();
+
+        assertSame(first, again);
+        assertTrue(again.isDirect());
+        assertEquals(0, again.position());
+        assertEquals(1024, again.remaining());
+    }
+
+    @Test
+    void fallsBackToHeapBuffersOnceDirectBudgetIsUsed() {
+        BufferPool pool = new BufferPool(1024, 1);
+
+        ByteBuffer direct = pool.acquire();
+        ByteBuffer heap = pool.acquire();
+        pool.release(heap);
+
+        assertTrue(direct.isDirect());
+        assertFalse(heap.isDirect());
+        assertEquals(new BufferPool.Stats(1, 0, 1), pool.stats());
+    }
+}
@@ -0,0 +1,222 @@
+package org.example.proxy;
+
+import org.example.cache.BodyRecorder;
+import org.example.cache.ResponseCache;
+import org.example.http.BodyFramer;
+import org.example.http.HttpRequest;
+import org.example.http.ResponseHead;
+import org.example.log.Transaction;
+import org.example.util.CacheOptions;
+import org.example.util.CompressionOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCompressionTest {
+    private final ResponseCompression compression = new ResponseCompression(new CompressionOptions(true, 6, 100));
+
+    @Test
+    void encodesUncompressedTextForClientsThatAcceptIt() throws IOException {
+        ResponseHead head = head("Content-Type: application/json; charset=utf-8", "Content-Length: 500", "ETag: \"v1\"");
+        assertEquals("gzip", compression.prepare(get("Accept-Encoding", "gzip, deflate"), head, BodyFramer.Mode.FIXED));
+
+        assertNull(head.getHeader("Content-Length"));
+        assertEquals("chunked", head.getHeader("Transfer-Encoding"));
+        assertEquals("gzip", head.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", head.getHeader("Vary"));
+        assertEquals("W/\"v1\"", head.getHeader("ETag"));
+        assertEquals(BodyFramer.Mode.CHUNKED, BodyFramer.forResponse("GET", head).getMode());
+    }
+
+    @Test
+    void leavesOtherResponsesAlone() throws IOException {
+        HttpRequest gzip = get("Accept-Encoding", "gzip");
+        assertNull(compression.prepare(gzip, head("Content-Type: image/png", "Content-Length: 500"), BodyFramer.Mode.FIXED));
+        assertNull(compression.prepare(gzip, head("Content-Type: text/html", "Content-Length: 99"), BodyFramer.Mode.FIXED));
+        assertNull(compression.prepare(gzip, head("Content-Type: text/html", "Content-Encoding: br", "Content-Length: 500"),
+                BodyFramer.Mode.FIXED));
+        assertNull(compression.prepare(gzip, head("Content-Type: text/html", "Transfer-Encoding: chunked"),
+                BodyFramer.Mode.CHUNKED));
+        assertNull(compression.prepare(gzip, head("Content-Type: text/html", "Cache-Control: no-transform",
+                "Content-Length: 500"), BodyFramer.Mode.FIXED));
+        assertNull(new ResponseCompression(CompressionOptions.defaults())
+                .prepare(gzip, head("Content-Type: text/html", "Content-Length: 500"), BodyFramer.Mode.FIXED));
+
+        ResponseHead identity = head("Content-Type: text/css", "Content-Length: 500", "Vary: Origin");
+        assertNull(compression.prepare(get("Accept-Encoding", "br"), identity, BodyFramer.Mode.FIXED));
+        assertEquals("500", identity.getHeader("Content-Length"));
+        assertEquals("Origin, Accept-Encoding", identity.getHeader("Vary")); // the next client may get it encoded
+    }
+
+    @Test
+    void followsAcceptEncodingQualities() {
+        assertEquals("gzip", ResponseCompression.accepted("deflate, gzip"));
+        assertEquals("deflate", ResponseCompression.accepted("gzip;q=0, deflate"));
+        assertEquals("deflate", ResponseCompression.accepted("gzip;q=0.2, deflate;q=0.5"));
+        assertEquals("gzip", ResponseCompression.accepted("*"));
+        assertNull(ResponseCompression.accepted("identity"));
+        assertNull(ResponseCompression.accepted("*;q=0"));
+        assertNull(ResponseCompression.accepted(null));
+    }
+
+    @Test
+    void encodedBodiesDecodeToTheOriginal() throws IOException {
+        byte[] body = "{\"items\":[1,2,3]}\n".repeat(2000).getBytes(StandardCharsets.US_ASCII);
+        for (String coding : new String[] { "gzip", "deflate" }) {
+            ByteArrayOutputStream wire = new ByteArrayOutputStream();
+            ResponseEncoder encoder = compression.newEncoder(coding, wire);
+            encoder.write(body, 0, 1000);
+            encoder.flush();
+            encoder.write(body, 1000, body.length - 1000);
+            encoder.finish();
+            encoder.close();
+
+            assertEquals(body.length, encoder.originBytes());
+            assertEquals(wire.size(), encoder.wireBytes());
+            assertTrue(encoder.wireBytes() < body.length / 10);
+            byte[] decoded = decode(coding, dechunk(wire.toByteArray()));
+            assertEquals(new String(body, StandardCharsets.US_ASCII), new String(decoded, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void anAbandonedBodyIsNotFinished() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        ResponseEncoder encoder = compression.newEncoder("gzip", wire);
+        encoder.write(new byte[1000], 0, 1000);
+        encoder.flush();
+        int sent = wire.size();
+        encoder.close();
+
+        assertEquals(sent, wire.size());
+        assertFalse(new String(wire.toByteArray(), StandardCharsets.ISO_8859_1).endsWith("0\r\n\r\n"));
+    }
+
+    @Test
+    void cacheHitsGoOutLikeTheMissBeforeThem() throws IOException {
+        byte[] body = "line of text\n".repeat(1000).getBytes(StandardCharsets.US_ASCII);
+        ResponseHead origin = head("Content-Type: text/plain", "Cache-Control: max-age=60", "ETag: \"v1\"",
+                "Content-Length: " + body.length);
+        HttpRequest gzip = get("Accept-Encoding", "gzip");
+        ResponseCache cache = new ResponseCache(new CacheOptions(1024 * 1024, 1024 * 1024));
+        long now = System.currentTimeMillis();
+        BodyRecorder recorder = cache.startRecording(gzip, origin, BodyFramer.Mode.FIXED, now, now);
+        recorder.append(ByteBuffer.wrap(body));
+        cache.store(recorder);
+
+        ResponseHead miss = origin.copy();
+        assertEquals("gzip", compression.prepare(gzip, miss, BodyFramer.Mode.FIXED));
+        Transaction tx = new Transaction("GET", "origin.test", 80, "/", System.nanoTime());
+        byte[] hit = serveHit(cache, gzip, tx);
+        ResponseHead hitHead = ResponseHead.parse(hit, hit.length);
+        assertEquals(miss.getHeader("Vary"), hitHead.getHeader("Vary"));
+        assertEquals("W/\"v1\"", hitHead.getHeader("ETag"));
+        assertEquals("gzip", hitHead.getHeader("Content-Encoding"));
+        assertEquals("chunked", hitHead.getHeader("Transfer-Encoding"));
+        assertNull(hitHead.getHeader("Content-Length"));
+        byte[] wire = Arrays.copyOfRange(hit, headLength(hit), hit.length);
+        assertEquals(new String(body, StandardCharsets.US_ASCII),
+                new String(decode("gzip", dechunk(wire)), StandardCharsets.US_ASCII));
+        assertEquals("gzip", tx.getContentEncoding());
+        assertEquals(body.length, tx.getOriginBodyBytes());
+        assertEquals(wire.length, tx.getWireBodyBytes());
+
+        // a client that does not accept gzip gets the stored body, still with Vary and the strong ETag
+        byte[] identity = serveHit(cache, get(), tx);
+        ResponseHead identityHead = ResponseHead.parse(identity, identity.length);
+        assertEquals("Accept-Encoding", identityHead.getHeader("Vary"));
+        assertEquals("\"v1\"", identityHead.getHeader("ETag"));
+        assertEquals(String.valueOf(body.length), identityHead.getHeader("Content-Length"));
+        assertEquals(body.length, identity.length - headLength(identity));
+
+        // revalidating the encoded copy: a 304 with the validator and Vary the 200 went out with
+        byte[] notModified = serveHit(cache, get("Accept-Encoding", "gzip", "If-None-Match", "W/\"v1\""), tx);
+        ResponseHead notModifiedHead = ResponseHead.parse(notModified, notModified.length);
+        assertEquals(304, notModifiedHead.getStatusCode());
+        assertEquals("W/\"v1\"", notModifiedHead.getHeader("ETag"));
+        assertEquals("Accept-Encoding", notModifiedHead.getHeader("Vary"));
+        assertNull(notModifiedHead.getHeader("Content-Encoding"));
+        assertEquals(notModified.length, headLength(notModified));
+    }
+
+    // what serve() writes for request, read back from a local connection
+    private byte[] serveHit(ResponseCache cache, HttpRequest request, Transaction tx) throws IOException {
+        ResponseCache.Lookup lookup = cache.lookup(request);
+        assertTrue(lookup.isHit());
+        try (ServerSocket listener = new ServerSocket(0);
+             Socket client = new Socket("127.0.0.1", listener.getLocalPort())) {
+            try (Socket proxySide = listener.accept()) {
+                cache.serve(lookup.entry(), request, proxySide, false, compression, tx);
+            }
+            return client.getInputStream().readAllBytes();
+        }
+    }
+
+    private static int headLength(byte[] response) {
+        return new String(response, StandardCharsets.ISO_8859_1).indexOf("\r\n\r\n") + 4;
+    }
+
+    private static byte[] dechunk(byte[] wire) throws IOException {
+        BodyFramer framer = BodyFramer.chunked();
+        assertEquals(wire.length, framer.feed(wire, 0, wire.length));
+        assertTrue(framer.isComplete());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int i = 0;
+        while (true) {
+            int lineEnd = indexOfCrlf(wire, i);
+            int size = Integer.parseInt(new String(wire, i, lineEnd - i, StandardCharsets.US_ASCII), 16);
+            if (size == 0) {
+                return body.toByteArray();
+            }
+            body.write(wire, lineEnd + 2, size);
+            i = lineEnd + 2 + size + 2;
+        }
+    }
+
+    private static int indexOfCrlf(byte[] b, int from) {
+        for (int i = from; i < b.length - 1; i++) {
+            if (b[i] == '\r' && b[i + 1] == '\n') return i;
+        }
+        throw new AssertionError("no CRLF after " + from);
+    }
+
+    private static byte[] decode(String coding, byte[] encoded) throws IOException {
+        try (InputStream in = coding.equals("gzip")
+                ? new GZIPInputStream(new ByteArrayInputStream(encoded))
+                : new InflaterInputStream(new ByteArrayInputStream(encoded))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static ResponseHead head(String... headers) throws IOException {
+        byte[] raw = ("HTTP/1.1 200 OK\r\n" + String.join("\r\n", headers) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        return ResponseHead.parse(raw, raw.length);
+    }
+
+    private static HttpRequest get(String... headers) {
+        Map<String, String> map = new HashMap<>();
+        map.put("Host", "origin.test");
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        return new HttpRequest("GET", "/", "HTTP/1.1", map, null);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.server;
+
+import org.example.proxy.ProxyContext;
+import org.example.upstream.LoadBalancer;
+import org.example.util.ConfigLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NioProxyServerTest {
+
+    @Test
+    void aMalformedRequestBodyLeavesTheBackendsInFlightCountAlone() throws Exception {
+        int proxyPort = freePort();
+        ProxyContext context = new ProxyContext(ConfigLoader.load(new String[] { "--mode=reverse",
+                "--engine=nio", "--event-loops=1", "--proxy-port=" + proxyPort,
+                "--vhost=api.test=127.0.0.1:" + freePort() }));
+        NioProxyServer proxy = new NioProxyServer(context);
+        Thread server = new Thread(proxy::start, "proxy-server-test");
+        server.start();
+        try {
+            for (String framing : new String[] { "Transfer-Encoding: gzip", "Content-Length: ten" }) {
+                String response = exchange(proxyPort, "POST /orders HTTP/1.1\r\nHost: api.test\r\n"
+                        + framing + "\r\n\r\n");
+                assertTrue(response.startsWith("HTTP/1.1 400"), response);
+            }
+
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (context.getAdmission().stats().inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10); // the loop closes the connections after answering
+            }
+            for (LoadBalancer.Stats stats : context.getLoadBalancer().stats()) {
+                assertEquals(0, stats.outstanding(), stats.backend());
+            }
+        } finally {
+            proxy.stop();
+            server.join(2_000);
+            context.shutdown();
+        }
+    }
+
+    private static String exchange(int port, String request) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5_000);
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.server;
+
+import org.example.proxy.ProxyContext;
+import org.example.util.ConfigLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyServerTest {
+
+    @Test
+    void drainKeepsTunnelsOpenUntilTheDeadlineAndCountsThemCutOff() throws Exception {
+        int proxyPort = freePort();
+        ProxyContext context = new ProxyContext(ConfigLoader.load(new String[] { "--mode=proxy",
+                "--proxy-port=" + proxyPort }));
+        ProxyServer proxy = new ProxyServer(context);
+        Thread server = new Thread(proxy::start, "proxy-server-test");
+        server.start();
+
+        try (ServerSocket origin = new ServerSocket(0);
+             Socket client = new Socket("127.0.0.1", proxyPort)) { // the listener is bound by the constructor
+            client.setSoTimeout(5_000);
+            String authority = "127.0.0.1:" + origin.getLocalPort();
+            OutputStream toProxy = client.getOutputStream();
+            toProxy.write(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            toProxy.flush();
+            assertTrue(readHead(client.getInputStream()).startsWith("HTTP/1.1 200"));
+
+            try (Socket upstream = origin.accept()) {
+                upstream.setSoTimeout(5_000);
+                CompletableFuture<Integer> drained = CompletableFuture.supplyAsync(() -> proxy.drain(1_000));
+                Thread.sleep(300);
+
+                // well into the drain the tunnel still carries bytes
+                toProxy.write("ping".getBytes(StandardCharsets.US_ASCII));
+                toProxy.flush();
+                assertEquals("ping", new String(upstream.getInputStream().readNBytes(4), StandardCharsets.US_ASCII));
+                assertFalse(drained.isDone());
+
+                assertEquals(1, drained.get(5, TimeUnit.SECONDS));
+                assertEquals(-1, client.getInputStream().read()); // cut off at the deadline
+            }
+        } finally {
+            proxy.stop();
+            server.join(2_000);
+            context.shutdown();
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) break;
+            head.append((char) b);
+        }
+        return head.toString();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
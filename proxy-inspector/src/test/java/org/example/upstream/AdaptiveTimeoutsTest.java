@@ -0,0 +1,76 @@
+package org.example.upstream;
+
+import org.example.util.TimeoutOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveTimeoutsTest {
+
+    @Test
+    void usesTheDefaultsUntilAHostHasEnoughSamples() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(TimeoutOptions.defaults());
+        record(timeouts, "api.test", AdaptiveTimeouts.MIN_SAMPLES - 1, 10);
+
+        assertEquals(3_000, timeouts.connectTimeoutMs("api.test"));
+        assertEquals(15_000, timeouts.readTimeoutMs("api.test"));
+        assertEquals(0.0, timeouts.stats().get(0).connectP99Ms());
+    }
+
+    @Test
+    void followsTheP99OfEachHost() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(TimeoutOptions.defaults());
+        record(timeouts, "fast.test", 100, 100);
+        record(timeouts, "slow.test", 100, 2_000);
+
+        assertEquals(400, timeouts.connectTimeoutMs("fast.test"));
+        assertEquals(8_000, timeouts.readTimeoutMs("SLOW.test"));
+        assertEquals(2, timeouts.stats().size());
+    }
+
+    @Test
+    void clampsToTheFloorAndCeiling() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(TimeoutOptions.defaults());
+        record(timeouts, "local.test", 100, 1);
+        record(timeouts, "batch.test", 100, 30_000);
+
+        assertEquals(200, timeouts.connectTimeoutMs("local.test"));
+        assertEquals(1_000, timeouts.readTimeoutMs("local.test"));
+        assertEquals(10_000, timeouts.connectTimeoutMs("batch.test"));
+        assertEquals(60_000, timeouts.readTimeoutMs("batch.test"));
+    }
+
+    @Test
+    void timeoutsPushTheTimeoutUp() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(TimeoutOptions.defaults());
+        record(timeouts, "flaky.test", 100, 100);
+        assertEquals(1_000, timeouts.readTimeoutMs("flaky.test"));
+
+        for (int i = 0; i < 8; i++) {
+            timeouts.recordReadTimeout("flaky.test");
+        }
+        assertEquals(4_000, timeouts.readTimeoutMs("flaky.test"));
+    }
+
+    @Test
+    void overridesAndStaticModeIgnoreSamples() {
+        TimeoutOptions options = new TimeoutOptions(3_000, 15_000, false, 4.0, 200, 10_000, 1_000, 60_000,
+                Map.of("batch.test", new TimeoutOptions.HostTimeout(5_000, 120_000)));
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(options);
+        record(timeouts, "api.test", 100, 100);
+
+        assertEquals(3_000, timeouts.connectTimeoutMs("api.test"));
+        assertEquals(120_000, timeouts.readTimeoutMs("batch.test"));
+        assertEquals(0, timeouts.stats().size());
+    }
+
+    private static void record(AdaptiveTimeouts timeouts, String host, int samples, long latencyMs) {
+        for (int i = 0; i < samples; i++) {
+            timeouts.recordConnect(host, TimeUnit.MILLISECONDS.toNanos(latencyMs));
+            timeouts.recordFirstByte(host, TimeUnit.MILLISECONDS.toNanos(latencyMs));
+        }
+    }
+}
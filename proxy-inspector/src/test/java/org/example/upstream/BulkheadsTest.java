@@ -0,0 +1,79 @@
+package org.example.upstream;
+
+import org.example.util.BulkheadOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkheadsTest {
+
+    @Test
+    void unlimitedHostsHaveNoBulkhead() {
+        Bulkheads bulkheads = new Bulkheads(BulkheadOptions.defaults());
+
+        assertNull(bulkheads.forHost("example.com"));
+        assertTrue(bulkheads.stats().isEmpty());
+    }
+
+    @Test
+    void aFullHostDoesNotAffectOtherHosts() throws InterruptedException {
+        Bulkheads bulkheads = new Bulkheads(new BulkheadOptions(1, 0, List.of()));
+        Bulkheads.Bulkhead slow = bulkheads.forHost("slow.test");
+
+        assertTrue(slow.acquire(0));
+        assertFalse(bulkheads.forHost("SLOW.test").acquire(0));
+        assertTrue(bulkheads.forHost("fast.test").acquire(0));
+
+        slow.release();
+        assertTrue(slow.acquire(0));
+
+        Bulkheads.Stats stats = bulkheads.stats().get(1);
+        assertEquals("slow.test", stats.name());
+        assertEquals(1, stats.inFlight());
+        assertEquals(2, stats.admitted());
+        assertEquals(1, stats.rejected());
+    }
+
+    @Test
+    void groupedHostsShareTheGroupLimit() {
+        BulkheadOptions.Group partner = new BulkheadOptions.Group("partner", 2, List.of("a.partner.test", "b.partner.test"));
+        Bulkheads bulkheads = new Bulkheads(new BulkheadOptions(0, 0, List.of(partner)));
+
+        assertSame(bulkheads.forHost("a.partner.test"), bulkheads.forHost("b.partner.test"));
+        assertNull(bulkheads.forHost("other.test"));
+        assertEquals(2, bulkheads.forHost("a.partner.test").getLimit());
+    }
+
+    @Test
+    void queuedRequestsGetTheNextFreePermit() throws Exception {
+        Bulkheads bulkheads = new Bulkheads(new BulkheadOptions(1, 2_000, List.of()));
+        Bulkheads.Bulkhead bulkhead = bulkheads.forHost("queued.test");
+        assertTrue(bulkhead.acquire(0));
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                if (bulkhead.acquire(2_000)) acquired.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        waiter.start();
+        while (bulkheads.stats().get(0).waiting() == 0) {
+            Thread.sleep(5);
+        }
+
+        bulkhead.release();
+        assertTrue(acquired.await(2, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(0, bulkheads.stats().get(0).waiting());
+        assertEquals(0, bulkheads.stats().get(0).rejected());
+    }
+}
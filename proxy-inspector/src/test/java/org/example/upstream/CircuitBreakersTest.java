@@ -0,0 +1,139 @@
+package org.example.upstream;
+
+import org.example.util.BreakerOptions;
+import org.example.util.TimeoutOptions;
+import org.example.util.UpstreamOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakersTest {
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void breakersAreOffByDefault() {
+        CircuitBreakers breakers = new CircuitBreakers(BreakerOptions.defaults(), null, null, now::get);
+
+        assertNull(breakers.forUpstream("example.com", 80));
+        assertTrue(breakers.stats().isEmpty());
+    }
+
+    @Test
+    void opensOnceEnoughRecentRequestsFailed() {
+        CircuitBreakers breakers = breakers(0);
+        CircuitBreakers.Breaker breaker = breakers.forUpstream("down.test", 80);
+        assertSame(breaker, breakers.forUpstream("DOWN.test", 80));
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.allow());
+            breaker.record(200, ms(5));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allow());
+            breaker.record(-1, -1); // 3 of 7: under the rate, and under the minimum of 10 anyway
+        }
+        assertEquals(CircuitBreakers.State.CLOSED, breaker.getState());
+        breaker.record(503, ms(5));
+        breaker.record(-1, -1);
+        breaker.record(200, ms(5000)); // slow
+
+        assertEquals(CircuitBreakers.State.OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+        assertEquals(10_000, breaker.retryAfterMs());
+        assertTrue(breakers.forUpstream("down.test", 8080).allow()); // another port, another breaker
+
+        CircuitBreakers.Stats stats = breakers.stats().get(0);
+        assertEquals("down.test:80", stats.upstream());
+        assertEquals("OPEN", stats.state());
+        assertEquals(0.6, stats.failureRate());
+        assertEquals(1, stats.opened());
+        assertEquals(1, stats.rejected());
+    }
+
+    @Test
+    void oneTrialRequestDecidesAfterTheOpenTime() {
+        CircuitBreakers.Breaker breaker = openBreaker(breakers(0));
+
+        now.addAndGet(ms(10_000));
+        assertTrue(breaker.allow());
+        assertEquals(CircuitBreakers.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allow()); // the trial is still out
+        breaker.record(-1, -1);
+        assertEquals(CircuitBreakers.State.OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+
+        now.addAndGet(ms(10_000));
+        assertTrue(breaker.allow());
+        breaker.skip(); // not sent after all, the next request is the trial
+        assertTrue(breaker.allow());
+        breaker.record(200, ms(5));
+        assertEquals(CircuitBreakers.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allow());
+    }
+
+    @Test
+    void aTrialThatNeverReportsIsGivenUpOn() {
+        CircuitBreakers.Breaker breaker = openBreaker(breakers(0));
+        now.addAndGet(ms(10_000));
+        assertTrue(breaker.allow());
+
+        now.addAndGet(ms(10_000));
+        assertTrue(breaker.allow());
+    }
+
+    @Test
+    void probesReopenOrReleaseAnOpenBreaker() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            CircuitBreakers breakers = breakers(60_000); // rounds run by hand here
+            CircuitBreakers.Breaker up = openBreaker(breakers, "127.0.0.1", server.getLocalPort());
+            int closedPort;
+            try (ServerSocket gone = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+                closedPort = gone.getLocalPort();
+            }
+            CircuitBreakers.Breaker down = openBreaker(breakers, "127.0.0.1", closedPort);
+            now.addAndGet(ms(9_000));
+
+            breakers.probeOpen();
+
+            assertTrue(up.allow()); // connected: the trial goes through before the open time is up
+            assertFalse(down.allow());
+            assertEquals(10_000, down.retryAfterMs()); // refused: open for another open time
+            assertEquals(1, breakers.stats().get(0).probes());
+            breakers.shutdown();
+        }
+    }
+
+    private CircuitBreakers.Breaker openBreaker(CircuitBreakers breakers) {
+        return openBreaker(breakers, "down.test", 80);
+    }
+
+    private CircuitBreakers.Breaker openBreaker(CircuitBreakers breakers, String host, int port) {
+        CircuitBreakers.Breaker breaker = breakers.forUpstream(host, port);
+        for (int i = 0; i < 10; i++) {
+            breaker.allow();
+            breaker.record(-1, -1);
+        }
+        assertEquals(CircuitBreakers.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private CircuitBreakers breakers(int probeIntervalMs) {
+        BreakerOptions options = new BreakerOptions(true, 20, 10, 50, 1000, 10_000, probeIntervalMs);
+        return new CircuitBreakers(options, new DnsCache(UpstreamOptions.defaults()),
+                new AdaptiveTimeouts(TimeoutOptions.defaults()), now::get);
+    }
+
+    private static long ms(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ConnectRacerTest {
+
+    @Test
+    void interleavesAddressFamiliesStartingWithTheFirstOne() throws IOException {
+        InetAddress v6a = InetAddress.getByName("::1");
+        InetAddress v6b = InetAddress.getByName("::2");
+        InetAddress v4a = InetAddress.getByName("10.0.0.1");
+        InetAddress v4b = InetAddress.getByName("10.0.0.2");
+
+        assertEquals(List.of(v6a, v4a, v6b, v4b), ConnectRacer.interleave(new InetAddress[] { v6a, v6b, v4a, v4b }));
+        assertEquals(List.of(v4a, v6a, v4b), ConnectRacer.interleave(new InetAddress[] { v4a, v4b, v6a }));
+    }
+
+    @Test
+    void aBlackholedFirstAddressOnlyCostsTheAttemptDelay() throws IOException {
+        InetAddress live = InetAddress.getByName("127.0.0.1");
+        InetAddress blackholed = InetAddress.getByName("127.0.0.2");
+        List<Socket> backlog = new ArrayList<>();
+
+        try (ServerSocket liveServer = new ServerSocket(0, 50, live);
+             ServerSocket fullServer = bindOrSkip(liveServer.getLocalPort(), blackholed)) {
+            fillBacklog(fullServer, backlog); // further SYNs to it are dropped, like a blackholed route
+
+            ConnectRacer.Connected connected = ConnectRacer.connect(
+                    new InetAddress[] { blackholed, live }, liveServer.getLocalPort(), 3_000);
+            connected.channel().close();
+
+            assertEquals(live, connected.address().getAddress());
+            assertEquals("IPv4", connected.family());
+            assertTrue(connected.channel().isBlocking());
+            assertTrue(connected.connectNs() >= ConnectRacer.ATTEMPT_DELAY_NS);
+            assertTrue(connected.connectNs() < TimeUnit.SECONDS.toNanos(2));
+        } finally {
+            for (Socket socket : backlog) socket.close();
+        }
+    }
+
+    @Test
+    void timesOutWhenNoAttemptCompletes() throws IOException {
+        InetAddress blackholed = InetAddress.getByName("127.0.0.2");
+        List<Socket> backlog = new ArrayList<>();
+
+        try (ServerSocket fullServer = bindOrSkip(0, blackholed)) {
+            fillBacklog(fullServer, backlog);
+
+            assertThrows(SocketTimeoutException.class, () -> ConnectRacer.connect(
+                    new InetAddress[] { blackholed }, fullServer.getLocalPort(), 300));
+        } finally {
+            for (Socket socket : backlog) socket.close();
+        }
+    }
+
+    // 127.0.0.2 is only routed to loopback on Linux
+    private static ServerSocket bindOrSkip(int port, InetAddress address) throws IOException {
+        try {
+            return new ServerSocket(port, 1, address);
+        } catch (BindException e) {
+            assumeTrue(false, "cannot bind " + address);
+            throw e;
+        }
+    }
+
+    private static void fillBacklog(ServerSocket server, List<Socket> backlog) throws IOException {
+        while (backlog.size() < 64) {
+            Socket socket = new Socket();
+            backlog.add(socket);
+            try {
+                socket.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()), 200);
+            } catch (SocketTimeoutException e) {
+                return;
+            }
+        }
+    }
+}
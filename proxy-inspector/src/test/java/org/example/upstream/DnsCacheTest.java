@@ -0,0 +1,114 @@
+package org.example.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsCacheTest {
+    private static final long MS = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong(0);
+    private final AtomicInteger lookups = new AtomicInteger(0);
+
+    @Test
+    void reusesLookupsUntilTheTtlExpires() throws Exception {
+        DnsCache cache = cache(16, Executors.newSingleThreadExecutor());
+
+        InetAddress[] first = cache.resolveAll("Example.com");
+        now.set(500 * MS);
+        InetAddress[] second = cache.resolveAll("example.com");
+        now.set(1_000 * MS);
+        cache.resolveAll("example.com");
+
+        assertArrayEquals(first, second);
+        assertEquals(2, lookups.get());
+        assertEquals(1, cache.stats().hits());
+        assertEquals(2, cache.stats().misses());
+        cache.shutdown();
+    }
+
+    @Test
+    void remembersUnknownHostsForTheNegativeTtl() {
+        DnsCache cache = cache(16, Executors.newSingleThreadExecutor());
+
+        assertThrows(UnknownHostException.class, () -> cache.resolveAll("missing.test"));
+        assertThrows(UnknownHostException.class, () -> cache.resolveAll("missing.test"));
+        now.set(100 * MS);
+        assertThrows(UnknownHostException.class, () -> cache.resolveAll("missing.test"));
+
+        assertEquals(2, lookups.get());
+        assertEquals(1, cache.stats().negativeHits());
+        cache.shutdown();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedHost() throws Exception {
+        DnsCache cache = cache(2, Executors.newSingleThreadExecutor());
+
+        cache.resolveAll("a.test");
+        cache.resolveAll("b.test");
+        cache.resolveAll("a.test"); // b is now the least recently used
+        cache.resolveAll("c.test");
+
+        assertEquals(2, cache.stats().entries());
+        assertEquals(1, cache.stats().evictions());
+        assertNotNull(cache.resolveCached("a.test"));
+        assertNull(cache.resolveCached("b.test"));
+        cache.shutdown();
+    }
+
+    @Test
+    void refreshesHotHostsBeforeTheyExpire() throws Exception {
+        ExecutorService refresher = Executors.newSingleThreadExecutor();
+        DnsCache cache = cache(16, refresher);
+
+        cache.resolveAll("hot.test");
+        now.set(800 * MS); // last quarter of the 1s TTL
+        cache.resolveAll("hot.test");
+        refresher.shutdown();
+        assertTrue(refresher.awaitTermination(5, TimeUnit.SECONDS));
+
+        now.set(1_500 * MS); // past the original expiry, served by the refreshed entry
+        cache.resolveAll("hot.test");
+
+        assertEquals(2, lookups.get());
+        assertEquals(1, cache.stats().refreshes());
+        assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    void ipLiteralsBypassTheCache() throws Exception {
+        DnsCache cache = cache(16, Executors.newSingleThreadExecutor());
+
+        cache.resolveAll("127.0.0.1");
+        cache.resolveAll("127.0.0.1");
+
+        assertNull(cache.resolveCached("127.0.0.1"));
+        assertEquals(2, lookups.get());
+        assertEquals(0, cache.stats().entries());
+        cache.shutdown();
+    }
+
+    private DnsCache cache(int maxEntries, ExecutorService refresher) {
+        return new DnsCache(maxEntries, 1_000, 100, host -> {
+            lookups.incrementAndGet();
+            if (host.startsWith("missing")) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] { InetAddress.getByAddress(host, new byte[] { 10, 0, 0, (byte) lookups.get() }) };
+        }, now::get, refresher);
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.upstream;
+
+import org.example.util.HedgeOptions;
+import org.example.util.TimeoutOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgePolicyTest {
+    private final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(TimeoutOptions.defaults());
+
+    @Test
+    void hedgesGetAndHeadAtTheHostsPercentile() {
+        HedgePolicy hedging = new HedgePolicy(new HedgeOptions(true, 90, 10, 0), timeouts);
+        assertEquals(0, hedging.hedgeAfterMs("api.test", "GET")); // no samples yet
+
+        for (int ms = 1; ms <= 100; ms++) {
+            timeouts.recordFirstByte("api.test", TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        assertEquals(90, hedging.hedgeAfterMs("api.test", "GET"));
+        assertEquals(90, hedging.hedgeAfterMs("API.test", "head"));
+        assertEquals(0, hedging.hedgeAfterMs("api.test", "POST"));
+        assertEquals(0, new HedgePolicy(HedgeOptions.defaults(), timeouts).hedgeAfterMs("api.test", "GET"));
+        hedging.shutdown();
+    }
+
+    @Test
+    void theBudgetFollowsTheTraffic() {
+        HedgePolicy hedging = new HedgePolicy(new HedgeOptions(false, 95, 10, 3), timeouts);
+        assertFalse(hedging.tryRetry(1)); // nothing forwarded, nothing to spend
+
+        for (int i = 0; i < 20; i++) {
+            hedging.deposit();
+        }
+        assertTrue(hedging.tryHedge());
+        assertTrue(hedging.tryRetry(1));
+        assertFalse(hedging.tryHedge()); // 10% of 20 requests
+        assertEquals(2, hedging.stats().overBudget());
+
+        for (int i = 0; i < 1_000; i++) {
+            hedging.deposit();
+        }
+        assertEquals(HedgePolicy.MAX_TOKENS, hedging.stats().budget(), 0.0);
+    }
+
+    @Test
+    void connectRetriesAreBounded() {
+        HedgePolicy hedging = new HedgePolicy(new HedgeOptions(false, 95, 100, 2), timeouts);
+        for (int i = 0; i < 10; i++) {
+            hedging.deposit();
+        }
+        assertTrue(hedging.tryRetry(1));
+        assertTrue(hedging.tryRetry(2));
+        assertFalse(hedging.tryRetry(3));
+        assertEquals(2, hedging.stats().retries());
+        assertFalse(new HedgePolicy(HedgeOptions.defaults(), timeouts).tryRetry(1));
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.upstream;
+
+import org.example.util.Balancing;
+import org.example.util.BreakerOptions;
+import org.example.util.ReverseProxyOptions;
+import org.example.util.TimeoutOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LoadBalancerTest {
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(TimeoutOptions.defaults());
+    private final CircuitBreakers noBreakers = new CircuitBreakers(BreakerOptions.defaults(), null, null);
+
+    @Test
+    void routesByHostWithAFallbackVirtualHost() {
+        LoadBalancer named = balancer(Balancing.ROUND_ROBIN, noBreakers, vhost("api.test", "a:8080"));
+        assertEquals("a:8080", named.choose("API.test").getName());
+        assertNull(named.choose("other.test"));
+
+        LoadBalancer fallback = balancer(Balancing.ROUND_ROBIN, noBreakers,
+                vhost("api.test", "a:8080"), vhost("*", "b:80"));
+        assertEquals("b:80", fallback.choose("other.test").getName());
+        assertEquals("a:8080", fallback.choose("api.test").getName());
+    }
+
+    @Test
+    void roundRobinTakesTurnsAndPassesOverOpenBreakers() {
+        CircuitBreakers breakers = new CircuitBreakers(new BreakerOptions(true, 10, 1, 100, 0, 10_000, 0),
+                null, null, now::get);
+        LoadBalancer balancer = balancer(Balancing.ROUND_ROBIN, breakers, vhost("api.test", "a:1", "b:1", "c:1"));
+        assertEquals("a:1", balancer.choose("api.test").getName());
+        assertEquals("b:1", balancer.choose("api.test").getName());
+        assertEquals("c:1", balancer.choose("api.test").getName());
+
+        CircuitBreakers.Breaker b = breakers.forUpstream("b", 1);
+        b.allow();
+        b.record(-1, -1);
+        assertEquals(CircuitBreakers.State.OPEN, b.getState());
+
+        assertEquals("a:1", balancer.choose("api.test").getName());
+        assertEquals("c:1", balancer.choose("api.test").getName()); // b's turn, but its breaker is open
+        assertEquals("c:1", balancer.choose("api.test").getName());
+    }
+
+    @Test
+    void leastOutstandingPicksTheIdlestBackend() {
+        LoadBalancer balancer = balancer(Balancing.LEAST_OUTSTANDING, noBreakers, vhost("api.test", "a:1", "b:1", "c:1"));
+        LoadBalancer.Backend first = balancer.choose("api.test");
+        first.start();
+        LoadBalancer.Backend second = balancer.choose("api.test");
+        second.start();
+        LoadBalancer.Backend third = balancer.choose("api.test");
+        third.start();
+        assertEquals(3, List.of(first.getName(), second.getName(), third.getName()).stream().distinct().count());
+
+        first.finish(200, ms(5));
+        assertSame(first, balancer.choose("api.test"));
+        second.cancel();
+        third.finish(200, ms(5));
+        assertEquals(0, balancer.stats().stream().mapToInt(LoadBalancer.Stats::outstanding).sum());
+    }
+
+    @Test
+    void peakEwmaPrefersTheFasterBackendUntilItIsBusy() {
+        LoadBalancer balancer = balancer(Balancing.PEAK_EWMA, noBreakers, vhost("api.test", "slow:1", "fast:1"));
+        LoadBalancer.Backend slow = backend(balancer, "slow:1");
+        LoadBalancer.Backend fast = backend(balancer, "fast:1");
+        slow.start();
+        slow.finish(200, ms(100));
+        fast.start();
+        fast.finish(200, ms(10));
+        for (int i = 0; i < 20; i++) {
+            assertSame(fast, balancer.choose("api.test"));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            fast.start(); // 10 ms x 11 now costs more than 100 ms x 1
+        }
+        assertSame(slow, balancer.choose("api.test"));
+
+        fast.finish(200, ms(300)); // one slow answer counts in full right away
+        assertEquals(300.0, stats(balancer, "fast:1").latencyMs());
+    }
+
+    @Test
+    void latencyEstimatesDecayAndFailuresCountAsTheConnectTimeout() {
+        LoadBalancer balancer = balancer(Balancing.PEAK_EWMA, noBreakers, vhost("api.test", "a:1", "b:1"));
+        LoadBalancer.Backend a = backend(balancer, "a:1");
+        a.start();
+        a.finish(200, ms(100));
+
+        now.addAndGet(ms(1_000)); // one decay time
+        assertEquals(36.788, stats(balancer, "a:1").latencyMs());
+        a.start();
+        a.finish(200, ms(10));
+        assertEquals(43.109, stats(balancer, "a:1").latencyMs()); // 100/e + 10 x (1 - 1/e)
+
+        LoadBalancer.Backend b = backend(balancer, "b:1");
+        b.start();
+        b.finish(-1, -1);
+        LoadBalancer.Stats failed = stats(balancer, "b:1");
+        assertEquals((double) timeouts.connectTimeoutMs("b"), failed.latencyMs());
+        assertEquals(1, failed.failures());
+        assertEquals(1, failed.requests());
+    }
+
+    private LoadBalancer.Backend backend(LoadBalancer balancer, String name) {
+        for (int i = 0; i < 100; i++) {
+            LoadBalancer.Backend backend = balancer.choose("api.test");
+            if (backend.getName().equals(name)) return backend;
+        }
+        throw new AssertionError("never picked " + name);
+    }
+
+    private static LoadBalancer.Stats stats(LoadBalancer balancer, String backend) {
+        return balancer.stats().stream().filter(s -> s.backend().equals(backend)).findFirst().orElseThrow();
+    }
+
+    private LoadBalancer balancer(Balancing balancing, CircuitBreakers breakers, ReverseProxyOptions.VirtualHost... vhosts) {
+        return new LoadBalancer(new ReverseProxyOptions(List.of(vhosts), balancing, 1_000), timeouts, breakers, now::get);
+    }
+
+    private static ReverseProxyOptions.VirtualHost vhost(String name, String... backends) {
+        return new ReverseProxyOptions.VirtualHost(name, Arrays.stream(backends)
+                .map(b -> new ReverseProxyOptions.Backend(b.substring(0, b.indexOf(':')),
+                        Integer.parseInt(b.substring(b.indexOf(':') + 1))))
+                .toList());
+    }
+
+    private static long ms(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.upstream;
+
+import org.example.util.UpstreamOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamPoolTest {
+    private static final String HOST = "127.0.0.1";
+
+    private ServerSocket origin;
+    private final List<Socket> accepted = new ArrayList<>();
+    private UpstreamPool pool;
+
+    @BeforeEach
+    void startOrigin() throws IOException {
+        origin = new ServerSocket(0);
+    }
+
+    @AfterEach
+    void stopOrigin() throws IOException {
+        if (pool != null) pool.shutdown();
+        for (Socket socket : accepted) socket.close();
+        origin.close();
+    }
+
+    @Test
+    void handsOutTheReleasedConnectionAgain() throws IOException {
+        pool = new UpstreamPool(new UpstreamOptions(8, 256, 30_000, 1024, 30_000, 5_000));
+
+        assertNull(pool.acquire(HOST, origin.getLocalPort()));
+        PooledConnection connection = connect();
+        assertFalse(connection.isReused());
+        pool.release(connection, true);
+        assertEquals(1, pool.stats().idleConnections());
+
+        PooledConnection again = pool.acquire(HOST, origin.getLocalPort());
+        assertSame(connection, again);
+        assertTrue(again.isReused());
+        assertTrue(again.getSocket().getChannel().isBlocking()); // the liveness check leaves it blocking
+        assertNull(pool.acquire(HOST, origin.getLocalPort())); // leased, not idle anymore
+
+        UpstreamPool.Stats stats = pool.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(0, stats.idleConnections());
+    }
+
+    @Test
+    void discardsConnectionsTheServerClosedOrWroteTo() throws Exception {
+        pool = new UpstreamPool(new UpstreamOptions(8, 256, 30_000, 1024, 30_000, 5_000));
+        PooledConnection closed = connect();
+        PooledConnection stray = connect();
+        pool.release(closed, true);
+        pool.release(stray, true);
+
+        accepted.get(0).close();
+        accepted.get(1).getOutputStream().write('x');
+        Thread.sleep(50); // the FIN and the byte reach the proxy side
+
+        assertNull(pool.acquire(HOST, origin.getLocalPort()));
+        assertEquals(2, pool.stats().staleDiscards());
+        assertTrue(closed.getSocket().isClosed());
+        assertTrue(stray.getSocket().isClosed());
+    }
+
+    @Test
+    void theLivenessCheckDoesNotWait() throws IOException {
+        pool = new UpstreamPool(new UpstreamOptions(8, 256, 30_000, 1024, 30_000, 5_000));
+        pool.release(connect(), true);
+
+        long startNs = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            pool.release(pool.acquire(HOST, origin.getLocalPort()), true);
+        }
+        // a timed read of 1 ms per check would take at least 200 ms
+        assertTrue(System.nanoTime() - startNs < TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(200, pool.stats().hits());
+    }
+
+    @Test
+    void closesIdleConnectionsOlderThanTheIdleTimeout() throws Exception {
+        pool = new UpstreamPool(new UpstreamOptions(8, 256, 20, 1024, 30_000, 5_000));
+        PooledConnection connection = connect();
+        pool.release(connection, true);
+        Thread.sleep(50);
+
+        assertNull(pool.acquire(HOST, origin.getLocalPort()));
+        assertEquals(1, pool.stats().evictions());
+        assertTrue(connection.getSocket().isClosed());
+    }
+
+    @Test
+    void closesConnectionsReleasedOverTheIdleLimits() throws IOException {
+        pool = new UpstreamPool(new UpstreamOptions(2, 3, 30_000, 1024, 30_000, 5_000));
+        PooledConnection[] connections = new PooledConnection[3];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = connect(); // three open at once: the limits only apply to idle connections
+        }
+        for (PooledConnection connection : connections) {
+            pool.release(connection, true);
+        }
+        assertEquals(2, pool.stats().idleConnections());
+        assertTrue(connections[2].getSocket().isClosed());
+
+        PooledConnection notReusable = connect();
+        pool.release(notReusable, false);
+        assertTrue(notReusable.getSocket().isClosed());
+        assertEquals(2, pool.stats().idleConnections());
+    }
+
+    private PooledConnection connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(HOST, origin.getLocalPort()));
+        accepted.add(origin.accept());
+        return pool.adopt(HOST, origin.getLocalPort(), channel);
+    }
+}
@@ -2,7 +2,11 @@ package org.example.util;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -18,6 +22,9 @@ class ConfigLoaderTest {
         assertEquals(1000, config.getMaxTransactions());
         assertTrue(config.getBlockedHosts().isEmpty());
         assertTrue(config.getBlockedPathsForHosts().isEmpty());
+        assertEquals(ExecutionMode.POOL, config.getServerOptions().executionMode());
+        assertEquals(50, config.getServerOptions().workerThreads());
+        assertEquals(Engine.BLOCKING, config.getServerOptions().engine());
     }
 
     @Test
@@ -45,6 +52,153 @@ class ConfigLoaderTest {
         assertTrue(config.isVerbose());
     }
 
+    @Test
+    void parsesExecutorFlags() {
+        Config config = ConfigLoader.load(new String[] {
+                "--executor=virtual",
+                "--worker-threads=200"
+        });
+
+        assertEquals(ExecutionMode.VIRTUAL, config.getServerOptions().executionMode());
+        assertEquals(200, config.getServerOptions().workerThreads());
+    }
+
+    @Test
+    void rejectsInvalidExecutorSettings() {
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--executor=forkjoin" }));
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--worker-threads=0" }));
+    }
+
+    @Test
+    void parsesNioEngineFlags() {
+        Config config = ConfigLoader.load(new String[] {
+                "--engine=nio",
+                "--event-loops=4",
+                "--acceptors=2"
+        });
+
+        assertEquals(Engine.NIO, config.getServerOptions().engine());
+        assertEquals(4, config.getServerOptions().eventLoops());
+        assertEquals(2, config.getServerOptions().acceptors());
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--engine=epoll" }));
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--acceptors=0" }));
+    }
+
+    @Test
+    void parsesDrainFlags() {
+        Config config = ConfigLoader.load(new String[] { "--drain-timeout-ms=5000", "--reuse-port" });
+
+        assertEquals(5000, config.getServerOptions().drainTimeoutMs());
+        assertTrue(config.getServerOptions().reusePort());
+        assertFalse(ConfigLoader.load(new String[0]).getServerOptions().reusePort());
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--drain-timeout-ms=-1" }));
+    }
+
+    @Test
+    void parsesTimeoutFlags() {
+        Config config = ConfigLoader.load(new String[] {
+                "--static-timeouts", "--read-timeout-ms=30000", "--host-timeout=Batch.internal:5000:120000" });
+
+        TimeoutOptions timeouts = config.getTimeoutOptions();
+        assertFalse(timeouts.adaptive());
+        assertEquals(30000, timeouts.readTimeoutMs());
+        assertEquals(new TimeoutOptions.HostTimeout(5000, 120000), timeouts.overrides().get("batch.internal"));
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--host-timeout=batch.internal:5000" }));
+    }
+
+    @Test
+    void parsesCacheFlags() {
+        assertFalse(ConfigLoader.load(new String[0]).getCacheOptions().isEnabled());
+
+        CacheOptions cache = ConfigLoader.load(new String[] { "--cache-max-mb=64", "--cache-max-object-kb=512" })
+                .getCacheOptions();
+        assertTrue(cache.isEnabled());
+        assertEquals(64L * 1024 * 1024, cache.maxBytes());
+        assertEquals(512L * 1024, cache.maxObjectBytes());
+        assertNull(cache.diskDir());
+        assertFalse(cache.coalesce());
+        assertTrue(ConfigLoader.load(new String[] { "--coalesce" }).getCacheOptions().coalesce());
+
+        CacheOptions disk = ConfigLoader.load(new String[] { "--cache-dir=/tmp/pi-cache", "--cache-disk-max-mb=2048" })
+                .getCacheOptions();
+        assertTrue(disk.isEnabled());
+        assertEquals(Path.of("/tmp/pi-cache"), disk.diskDir());
+        assertEquals(2048L * 1024 * 1024, disk.diskMaxBytes());
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--cache-max-object-kb=0" }));
+    }
+
+    @Test
+    void parsesCompressionFlags() {
+        assertFalse(ConfigLoader.load(new String[0]).getCompressionOptions().enabled());
+
+        CompressionOptions compression = ConfigLoader.load(new String[] {
+                "--compress", "--compress-level=9", "--compress-min-bytes=256" }).getCompressionOptions();
+        assertTrue(compression.enabled());
+        assertEquals(9, compression.level());
+        assertEquals(256, compression.minBytes());
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--compress-level=0" }));
+    }
+
+    @Test
+    void parsesBreakerFlags() {
+        assertFalse(ConfigLoader.load(new String[0]).getBreakerOptions().enabled());
+
+        BreakerOptions breaker = ConfigLoader.load(new String[] {
+                "--breaker", "--breaker-failure-rate=75", "--breaker-probe-interval-ms=2000" }).getBreakerOptions();
+        assertTrue(breaker.enabled());
+        assertEquals(75, breaker.failureRatePercent());
+        assertEquals(2000, breaker.probeIntervalMs());
+        assertEquals(BreakerOptions.defaults().window(), breaker.window());
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--breaker-failure-rate=101" }));
+    }
+
+    @Test
+    void parsesHedgeFlags() {
+        assertFalse(ConfigLoader.load(new String[0]).getHedgeOptions().enabled());
+
+        HedgeOptions hedge = ConfigLoader.load(new String[] {
+                "--hedge", "--hedge-percentile=90", "--connect-retries=2" }).getHedgeOptions();
+        assertTrue(hedge.enabled());
+        assertEquals(90, hedge.percentile());
+        assertEquals(2, hedge.connectRetries());
+        assertEquals(HedgeOptions.defaults().budgetPercent(), hedge.budgetPercent());
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--hedge-percentile=100" }));
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--hedge", "--static-timeouts" }));
+    }
+
+    @Test
+    void parsesReverseProxyFlags() {
+        Config config = ConfigLoader.load(new String[] { "--mode=reverse",
+                "--vhost=API.test=10.0.0.1:8080,[::1]:8081", "--vhost=*=fallback:80", "--balance=peak-ewma" });
+        ReverseProxyOptions reverse = config.getReverseProxyOptions();
+
+        assertEquals(Mode.REVERSE, config.getMode());
+        assertEquals(Balancing.PEAK_EWMA, reverse.balancing());
+        assertEquals(2, reverse.virtualHosts().size());
+        ReverseProxyOptions.VirtualHost api = reverse.virtualHosts().get(0);
+        assertEquals("api.test", api.name());
+        assertEquals(new ReverseProxyOptions.Backend("10.0.0.1", 8080), api.backends().get(0));
+        assertEquals(new ReverseProxyOptions.Backend("::1", 8081), api.backends().get(1));
+        assertEquals("*", reverse.virtualHosts().get(1).name());
+
+        assertThrows(ConfigLoader.UsageException.class, () -> ConfigLoader.load(new String[] { "--mode=reverse" }));
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--vhost=api.test=10.0.0.1:8080" }));
+        assertThrows(ConfigLoader.UsageException.class,
+                () -> ConfigLoader.load(new String[] { "--mode=reverse", "--vhost=api.test=10.0.0.1" }));
+    }
+
     @Test
     void rejectsUnknownArguments() {
         ConfigLoader.UsageException exception = assertThrows(